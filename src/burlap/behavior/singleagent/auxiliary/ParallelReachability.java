@@ -0,0 +1,200 @@
+package burlap.behavior.singleagent.auxiliary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import burlap.behavior.statehashing.StateHashTuple;
+
+
+/**
+ * A level-synchronous parallel breadth first search over hashed states. The search proceeds one BFS level (frontier) at a time: the states
+ * of the current frontier are split into chunks that are expanded concurrently, and each successor state is claimed by adding it to a
+ * concurrent visited set, so that exactly one expanding task adds it to the next frontier. The chunks' new states are concatenated in chunk
+ * order to form the next frontier. With a single thread, or when a frontier is too small to split, the frontier is expanded in the calling thread.
+ * <p/>
+ * How a state is expanded is defined by a {@link StateExpander}, which is called concurrently from multiple threads and therefore must
+ * not modify any shared data structures that are not thread safe. Expansion with {@link burlap.oomdp.singleagent.Action#getTransitions(burlap.oomdp.core.State, String[])}
+ * of standard actions only reads the source state and creates new states, so it can safely be run in parallel. States should be hashed
+ * before they are returned by an expander (which the visited set does when a state is claimed), so that any lazily computed hashing data
+ * is created by the thread that created the state.
+ * <p/>
+ * This search is used by {@link StateReachability}, {@link StateEnumerator}, and the reachability analysis of
+ * {@link burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration}.
+ * @author James MacGlashan
+ *
+ */
+public class ParallelReachability {
+
+	/**
+	 * The number of threads used to expand a frontier
+	 */
+	protected int								numThreads;
+
+	/**
+	 * The minimum number of states in a chunk of a frontier that is expanded as a separate task
+	 */
+	protected int								minChunkSize = 16;
+
+
+	/**
+	 * Initializes.
+	 * @param numThreads the number of threads used to expand a frontier. If 1, the search is performed in the calling thread.
+	 */
+	public ParallelReachability(int numThreads){
+		if(numThreads < 1){
+			throw new RuntimeException("The number of threads for reachability analysis must be at least 1; received: " + numThreads);
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Sets the minimum number of states in a chunk of a frontier that is expanded as a separate task. Frontiers with fewer than twice this
+	 * many states are expanded in the calling thread.
+	 * @param minChunkSize the minimum number of states in a chunk
+	 */
+	public void setMinChunkSize(int minChunkSize){
+		this.minChunkSize = Math.max(1, minChunkSize);
+	}
+
+
+	/**
+	 * Performs the search from the given source state.
+	 * @param from the hashed source state
+	 * @param expander the expander that generates the successors of a state
+	 * @return all states found by the search, including the source state, in the order in which they were first found.
+	 */
+	public List <StateHashTuple> search(StateHashTuple from, StateExpander expander){
+
+		Set <StateHashTuple> visited = Collections.newSetFromMap(new ConcurrentHashMap<StateHashTuple, Boolean>());
+		List <StateHashTuple> found = new ArrayList<StateHashTuple>();
+
+		visited.add(from);
+		found.add(from);
+		List <StateHashTuple> frontier = new ArrayList<StateHashTuple>();
+		frontier.add(from);
+
+		ExecutorService executor = null;
+		try{
+			while(frontier.size() > 0){
+
+				int nChunks = Math.min(4*this.numThreads, frontier.size() / this.minChunkSize);
+				List <StateHashTuple> next;
+				if(this.numThreads == 1 || nChunks < 2){
+					next = expandChunk(frontier, 0, frontier.size(), expander, visited);
+				}
+				else{
+					if(executor == null){
+						executor = Executors.newFixedThreadPool(this.numThreads);
+					}
+					next = this.expandInParallel(frontier, nChunks, expander, visited, executor);
+				}
+
+				found.addAll(next);
+				frontier = next;
+
+			}
+		} finally{
+			if(executor != null){
+				executor.shutdown();
+			}
+		}
+
+		return found;
+	}
+
+
+	/**
+	 * Expands a frontier by splitting it into chunks that are expanded concurrently.
+	 * @param frontier the frontier to expand
+	 * @param nChunks the number of chunks into which the frontier is split
+	 * @param expander the expander that generates the successors of a state
+	 * @param visited the concurrent set of states that have been found
+	 * @param executor the executor that runs the chunk tasks
+	 * @return the next frontier
+	 */
+	protected List <StateHashTuple> expandInParallel(final List <StateHashTuple> frontier, int nChunks, final StateExpander expander,
+			final Set <StateHashTuple> visited, ExecutorService executor){
+
+		List <Callable<List<StateHashTuple>>> tasks = new ArrayList<Callable<List<StateHashTuple>>>(nChunks);
+		int n = frontier.size();
+		for(int c = 0; c < nChunks; c++){
+			final int lo = (int)((long)n * c / nChunks);
+			final int hi = (int)((long)n * (c+1) / nChunks);
+			tasks.add(new Callable<List<StateHashTuple>>() {
+
+				@Override
+				public List<StateHashTuple> call(){
+					return expandChunk(frontier, lo, hi, expander, visited);
+				}
+			});
+		}
+
+		List <StateHashTuple> next = new ArrayList<StateHashTuple>();
+		try{
+			for(Future<List<StateHashTuple>> result : executor.invokeAll(tasks)){
+				next.addAll(result.get());
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Parallel reachability analysis was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("Parallel reachability analysis failed to expand a state.", e.getCause());
+		}
+
+		return next;
+	}
+
+
+	/**
+	 * Expands the states of a frontier in the range [lo, hi) and returns the successors that this call claimed in the visited set.
+	 * @param frontier the frontier being expanded
+	 * @param lo the first position of the frontier to expand
+	 * @param hi the end position (exclusive) of the frontier to expand
+	 * @param expander the expander that generates the successors of a state
+	 * @param visited the concurrent set of states that have been found
+	 * @return the successor states claimed by this call
+	 */
+	protected static List <StateHashTuple> expandChunk(List <StateHashTuple> frontier, int lo, int hi, StateExpander expander, Set <StateHashTuple> visited){
+		List <StateHashTuple> claimed = new ArrayList<StateHashTuple>();
+		for(int i = lo; i < hi; i++){
+			List <StateHashTuple> successors = expander.expand(frontier.get(i));
+			if(successors == null){
+				continue;
+			}
+			for(StateHashTuple nsh : successors){
+				if(visited.add(nsh)){
+					claimed.add(nsh);
+				}
+			}
+		}
+		return claimed;
+	}
+
+
+
+	/**
+	 * Generates the successor states of a state for a {@link ParallelReachability} search. Implementations are called concurrently
+	 * from multiple threads.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static interface StateExpander{
+
+		/**
+		 * Expands the given state and returns its successor states. Successors that should not be searched may be omitted.
+		 * @param sh the hashed state to expand
+		 * @return the successor states of the state, or null if the state should not be expanded.
+		 */
+		public List <StateHashTuple> expand(StateHashTuple sh);
+
+	}
+
+}
@@ -0,0 +1,257 @@
+package burlap.behavior.singleagent.auxiliary;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.planning.QComputablePlanner;
+import burlap.behavior.statehashing.FingerprintStateHashFactory;
+import burlap.datastructures.MappedRegion;
+import burlap.oomdp.core.AbstractGroundedAction;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * A read-only, memory-mapped view of a value function and Q-value snapshot written by a {@link QSnapshotWriter}. Opening a snapshot only reads its
+ * header and action table; the records are paged in by the operating system as they are queried, so a snapshot of any size can serve Q-values to
+ * a policy such as {@link burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy} immediately after it is opened, without replanning or
+ * relearning.
+ * <p/>
+ * States are looked up by their 64-bit {@link FingerprintStateHashFactory} fingerprint, so two different states with the same fingerprint cannot be
+ * distinguished. Grounded actions are stored by action name and parameters; parameterized actions are returned with the object names they had
+ * when the snapshot was written. For states that are not in the snapshot, the values and Q-values of the applicable actions are given by a
+ * {@link ValueFunctionInitialization}, which by default is 0 everywhere.
+ * @author James MacGlashan
+ *
+ */
+public class QSnapshot implements QComputablePlanner {
+
+	/**
+	 * The mapped snapshot file
+	 */
+	protected MappedRegion							region;
+
+	/**
+	 * The number of states in the snapshot
+	 */
+	protected long									numStates;
+
+	/**
+	 * The file position of the fingerprint hash table
+	 */
+	protected long									indexOffset;
+
+	/**
+	 * The capacity of the fingerprint hash table; always a power of 2
+	 */
+	protected int									tableCapacity;
+
+	/**
+	 * The grounded action of each action id of the snapshot
+	 */
+	protected List<GroundedAction>					actionTable = new ArrayList<GroundedAction>();
+
+	/**
+	 * The actions of the planning problem, used to get the applicable actions of states that are not in the snapshot
+	 */
+	protected List<Action>							actions;
+
+	/**
+	 * The fingerprinting factory used to key states
+	 */
+	protected FingerprintStateHashFactory			fingerprinter;
+
+	/**
+	 * The values and Q-values of states that are not in the snapshot
+	 */
+	protected ValueFunctionInitialization			valueInitializer = new ValueFunctionInitialization.ConstantValueFunctionInitialization();
+
+
+	/**
+	 * Opens a snapshot whose states were fingerprinted with all of their attributes.
+	 * @param file the snapshot file
+	 * @param actions the actions of the planning problem. Stored grounded actions are matched to them by name, so options must be included.
+	 */
+	public QSnapshot(File file, List<Action> actions){
+		this(file, actions, new FingerprintStateHashFactory());
+	}
+
+
+	/**
+	 * Opens a snapshot.
+	 * @param file the snapshot file
+	 * @param actions the actions of the planning problem. Stored grounded actions are matched to them by name, so options must be included.
+	 * @param fingerprinter the fingerprinting factory used to key states, which must be configured identically to the one used to write the snapshot
+	 */
+	public QSnapshot(File file, List<Action> actions, FingerprintStateHashFactory fingerprinter){
+
+		this.actions = new ArrayList<Action>(actions);
+		this.fingerprinter = fingerprinter;
+
+		Map<String, Action> actionsByName = new HashMap<String, Action>();
+		for(Action a : actions){
+			actionsByName.put(a.getName(), a);
+		}
+
+		try{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try{
+				ByteBuffer header = ByteBuffer.allocate(QSnapshotWriter.HEADER_SIZE);
+				raf.getChannel().read(header, 0);
+				header.flip();
+				if(header.getLong() != QSnapshotWriter.MAGIC){
+					throw new RuntimeException("The file " + file + " is not a snapshot.");
+				}
+				int version = header.getInt();
+				if(version != QSnapshotWriter.VERSION){
+					throw new RuntimeException("Unsupported snapshot version " + version + " in " + file);
+				}
+				int numActions = header.getInt();
+				this.numStates = header.getLong();
+				header.getLong(); //end of the records
+				long actionTableOffset = header.getLong();
+				this.indexOffset = header.getLong();
+				this.tableCapacity = header.getInt();
+
+				raf.seek(actionTableOffset);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+				for(int i = 0; i < numActions; i++){
+					String [] entry = new String[in.readInt()];
+					for(int j = 0; j < entry.length; j++){
+						entry[j] = in.readUTF();
+					}
+					Action a = actionsByName.get(entry[0]);
+					if(a == null){
+						throw new RuntimeException("The snapshot " + file + " uses the action " + entry[0] + ", which was not provided.");
+					}
+					String [] params = new String[entry.length-1];
+					System.arraycopy(entry, 1, params, 0, params.length);
+					this.actionTable.add(new GroundedAction(a, params));
+				}
+
+				this.region = new MappedRegion(raf.getChannel(), FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			}finally{
+				raf.close();
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Could not open the snapshot " + file, e);
+		}
+
+	}
+
+
+	/**
+	 * Sets the values and Q-values returned for states that are not in the snapshot.
+	 * @param vfInit the values and Q-values of states that are not in the snapshot
+	 */
+	public void setValueFunctionInitialization(ValueFunctionInitialization vfInit){
+		this.valueInitializer = vfInit;
+	}
+
+
+	/**
+	 * Returns the number of states in the snapshot.
+	 * @return the number of states in the snapshot
+	 */
+	public long numStates(){
+		return this.numStates;
+	}
+
+
+	/**
+	 * Returns whether the snapshot has a record for the given state.
+	 * @param s the state
+	 * @return true if the snapshot has a record for the state; false otherwise.
+	 */
+	public boolean contains(State s){
+		return this.findRecord(s) != -1;
+	}
+
+
+	/**
+	 * Returns the stored value of the given state, or the initialization value if the state is not in the snapshot.
+	 * @param s the state
+	 * @return the value of the state
+	 */
+	public double value(State s){
+		long record = this.findRecord(s);
+		if(record == -1){
+			return this.valueInitializer.value(s);
+		}
+		return this.region.getDouble(record + 8);
+	}
+
+
+	@Override
+	public List<QValue> getQs(State s) {
+
+		long record = this.findRecord(s);
+		if(record == -1){
+			List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, s);
+			List<QValue> qs = new ArrayList<QValue>(gas.size());
+			for(GroundedAction ga : gas){
+				qs.add(new QValue(s, ga, this.valueInitializer.qValue(s, ga)));
+			}
+			return qs;
+		}
+
+		int n = this.region.getInt(record + 16);
+		List<QValue> qs = new ArrayList<QValue>(n);
+		long pos = record + 20;
+		for(int i = 0; i < n; i++){
+			GroundedAction stored = this.actionTable.get(this.region.getInt(pos));
+			qs.add(new QValue(s, new GroundedAction(stored.action, stored.params), this.region.getDouble(pos + 4)));
+			pos += 12;
+		}
+
+		return qs;
+	}
+
+
+	@Override
+	public QValue getQ(State s, AbstractGroundedAction a) {
+		for(QValue q : this.getQs(s)){
+			if(q.a.equals(a)){
+				return q;
+			}
+		}
+		return new QValue(s, a, this.valueInitializer.qValue(s, a));
+	}
+
+
+	/**
+	 * Returns the file position of the record of the given state, or -1 if the state is not in the snapshot.
+	 * @param s the state
+	 * @return the file position of the state's record or -1 if the state is not in the snapshot
+	 */
+	protected long findRecord(State s){
+		long fingerprint = this.fingerprinter.fingerprint(s);
+		int mask = this.tableCapacity - 1;
+		int slot = (int)FingerprintStateHashFactory.mix64(fingerprint) & mask;
+		while(true){
+			long entry = this.indexOffset + (long)slot*QSnapshotWriter.INDEX_ENTRY_SIZE;
+			long pos = this.region.getLong(entry + 8);
+			if(pos == 0){
+				return -1;
+			}
+			if(this.region.getLong(entry) == fingerprint){
+				return pos;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+}
@@ -0,0 +1,468 @@
+package burlap.behavior.singleagent.auxiliary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.statehashing.FingerprintStateHashFactory;
+import burlap.datastructures.MappedRegion;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * Writes a binary snapshot of a value function and its Q-values that can be reopened with memory mapping by {@link QSnapshot}. Each state is
+ * stored as a record keyed by the state's 64-bit {@link FingerprintStateHashFactory} fingerprint, holding the state's value and the Q-value of each
+ * of its actions. Records are streamed to the file as they are added, so a snapshot can be written incrementally without holding the value
+ * function in memory; only the fingerprint and file position of each record are kept until the snapshot is closed. If a state is added more than
+ * once, its last record is used. A closed snapshot can be reopened for appending more records, for instance to checkpoint a learning agent periodically.
+ * <p/>
+ * The snapshot is written to a temporary file in the directory of the snapshot file, which is renamed to the snapshot file when the snapshot is
+ * {@link #close()}d. An existing snapshot file is therefore never modified in place: if writing fails, the previous snapshot remains intact, and
+ * {@link QSnapshot}s that have the previous file mapped keep reading its contents.
+ * <p/>
+ * The file consists of a header, the records, the table of distinct grounded actions (stored by action name and parameters), and an open addressing
+ * hash table from fingerprints to record positions that is written when the snapshot is {@link #close()}d. Records are padded so that none
+ * crosses a {@link MappedRegion#CHUNK_SIZE} boundary of the file. Snapshots of planners and learning agents can be written with
+ * {@link burlap.behavior.singleagent.planning.ValueFunctionPlanner#writeSnapshot(QSnapshotWriter)} and
+ * {@link burlap.behavior.singleagent.learning.tdmethods.QLearning#writeSnapshot(QSnapshotWriter)}.
+ * @author James MacGlashan
+ *
+ */
+public class QSnapshotWriter {
+
+	/**
+	 * The magic number that identifies a snapshot file
+	 */
+	public static final long						MAGIC = 0x4255524C41505153L;
+
+	/**
+	 * The version of the snapshot file format
+	 */
+	public static final int							VERSION = 1;
+
+	/**
+	 * The size of the snapshot file header in bytes
+	 */
+	public static final int							HEADER_SIZE = 64;
+
+	/**
+	 * The size of an entry of the fingerprint hash table in bytes
+	 */
+	public static final int							INDEX_ENTRY_SIZE = 16;
+
+
+	/**
+	 * The snapshot file
+	 */
+	protected File									file;
+
+	/**
+	 * The temporary file to which the snapshot is written until it is closed
+	 */
+	protected File									tempFile;
+
+	/**
+	 * The stream to which records are written; null once the snapshot is closed
+	 */
+	protected DataOutputStream						out;
+
+	/**
+	 * The file position at which the next record will be written
+	 */
+	protected long									position;
+
+	/**
+	 * The fingerprint of each written record, in the order written
+	 */
+	protected long []								recordFingerprints = new long[1024];
+
+	/**
+	 * The file position of each written record, in the order written
+	 */
+	protected long []								recordPositions = new long[1024];
+
+	/**
+	 * The number of written records
+	 */
+	protected int									numRecords;
+
+	/**
+	 * The distinct grounded actions of the snapshot, each stored as its action name followed by its parameters
+	 */
+	protected List<String[]>						actionTable = new ArrayList<String[]>();
+
+	/**
+	 * The index of each distinct grounded action in the action table, keyed by its string representation
+	 */
+	protected Map<String, Integer>					actionIds = new HashMap<String, Integer>();
+
+	/**
+	 * The fingerprinting factory used to key states
+	 */
+	protected FingerprintStateHashFactory			fingerprinter;
+
+
+	/**
+	 * Creates a new snapshot file, overwriting any existing file. States are fingerprinted with all of their attributes.
+	 * @param file the snapshot file
+	 */
+	public QSnapshotWriter(File file){
+		this(file, false, new FingerprintStateHashFactory());
+	}
+
+
+	/**
+	 * Creates a new snapshot file or opens an existing one for appending. States are fingerprinted with all of their attributes.
+	 * @param file the snapshot file
+	 * @param append if true and the file exists, the records of the existing snapshot are kept and new records are appended; if false, the file is overwritten.
+	 */
+	public QSnapshotWriter(File file, boolean append){
+		this(file, append, new FingerprintStateHashFactory());
+	}
+
+
+	/**
+	 * Creates a new snapshot file or opens an existing one for appending.
+	 * @param file the snapshot file
+	 * @param append if true and the file exists, the records of the existing snapshot are kept and new records are appended; if false, the file is overwritten.
+	 * @param fingerprinter the fingerprinting factory used to key states; a snapshot must be read with an identically configured factory.
+	 */
+	public QSnapshotWriter(File file, boolean append, FingerprintStateHashFactory fingerprinter){
+		this.file = file;
+		this.fingerprinter = fingerprinter;
+		try{
+			File dir = file.getAbsoluteFile().getParentFile();
+			this.tempFile = File.createTempFile(file.getName() + ".", ".tmp", dir);
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.tempFile), 1 << 16));
+			if(append && file.exists()){
+				this.readExistingSnapshot();
+				this.copyExistingRecords();
+			}
+			else{
+				this.out.write(new byte[HEADER_SIZE]); //rewritten on close
+				this.position = HEADER_SIZE;
+			}
+		}catch(IOException e){
+			this.discardTempFile();
+			throw new RuntimeException("Could not open the snapshot file " + file, e);
+		}catch(RuntimeException e){
+			this.discardTempFile();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Returns the fingerprinting factory used to key states.
+	 * @return the fingerprinting factory used to key states
+	 */
+	public FingerprintStateHashFactory getFingerprinter(){
+		return this.fingerprinter;
+	}
+
+
+	/**
+	 * Adds a record for a state. If the state was already added, the new record replaces it.
+	 * @param s the state
+	 * @param value the value of the state
+	 * @param qs the Q-values of the state's actions; may be empty
+	 */
+	public void add(State s, double value, List<QValue> qs){
+
+		if(this.out == null){
+			throw new RuntimeException("Cannot add to the snapshot " + this.file + " after it has been closed.");
+		}
+
+		long fingerprint = this.fingerprinter.fingerprint(s);
+		int [] ids = new int[qs.size()];
+		for(int i = 0; i < ids.length; i++){
+			ids[i] = this.actionId((GroundedAction)qs.get(i).a);
+		}
+
+		long size = 20 + 12L*ids.length;
+		try{
+			//records are kept within a single mapped chunk
+			if((this.position & (MappedRegion.CHUNK_SIZE-1)) + size > MappedRegion.CHUNK_SIZE){
+				this.pad(MappedRegion.CHUNK_SIZE - (this.position & (MappedRegion.CHUNK_SIZE-1)));
+			}
+			this.addRecordPosition(fingerprint, this.position);
+			this.out.writeLong(fingerprint);
+			this.out.writeDouble(value);
+			this.out.writeInt(ids.length);
+			for(int i = 0; i < ids.length; i++){
+				this.out.writeInt(ids[i]);
+				this.out.writeDouble(qs.get(i).q);
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Could not write to the snapshot " + this.file, e);
+		}
+		this.position += size;
+
+	}
+
+
+	/**
+	 * Writes the action table and the fingerprint hash table of the snapshot, closes the temporary file and renames it to the snapshot file,
+	 * replacing any existing file. Has no effect if the snapshot is already closed.
+	 */
+	public void close(){
+
+		if(this.out == null){
+			return;
+		}
+
+		try{
+
+			long recordsEnd = this.position;
+
+			long actionTableOffset = this.position;
+			ByteArrayOutputStream actionBytes = new ByteArrayOutputStream();
+			DataOutputStream actionOut = new DataOutputStream(actionBytes);
+			for(String [] ga : this.actionTable){
+				actionOut.writeInt(ga.length);
+				for(String str : ga){
+					actionOut.writeUTF(str);
+				}
+			}
+			actionOut.close();
+			actionBytes.writeTo(this.out);
+			this.position += actionBytes.size();
+
+			long indexOffset = (this.position + INDEX_ENTRY_SIZE - 1) / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE;
+			this.pad(indexOffset - this.position);
+
+			//build the table; later records of a state replace earlier ones
+			int capacity = Integer.highestOneBit(Math.max(2*this.numRecords, 2) - 1) << 1;
+			long [] tableFingerprints = new long[capacity];
+			long [] tablePositions = new long[capacity];
+			int mask = capacity - 1;
+			int numStates = 0;
+			for(int i = 0; i < this.numRecords; i++){
+				long fingerprint = this.recordFingerprints[i];
+				int slot = (int)FingerprintStateHashFactory.mix64(fingerprint) & mask;
+				while(tablePositions[slot] != 0 && tableFingerprints[slot] != fingerprint){
+					slot = (slot + 1) & mask;
+				}
+				if(tablePositions[slot] == 0){
+					numStates++;
+				}
+				tableFingerprints[slot] = fingerprint;
+				tablePositions[slot] = this.recordPositions[i];
+			}
+			for(int i = 0; i < capacity; i++){
+				this.out.writeLong(tableFingerprints[i]);
+				this.out.writeLong(tablePositions[i]);
+			}
+			this.out.close();
+			this.out = null;
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putLong(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(this.actionTable.size());
+			header.putLong(numStates);
+			header.putLong(recordsEnd);
+			header.putLong(actionTableOffset);
+			header.putLong(indexOffset);
+			header.putInt(capacity);
+			header.flip();
+			RandomAccessFile raf = new RandomAccessFile(this.tempFile, "rw");
+			try{
+				raf.getChannel().write(header, 0);
+				raf.getFD().sync();
+			}finally{
+				raf.close();
+			}
+
+		}catch(IOException e){
+			this.discardTempFile();
+			throw new RuntimeException("Could not write the snapshot " + this.file, e);
+		}
+
+		//rename is atomic on POSIX file systems; where it cannot replace an existing file, the old file is deleted first
+		if(!this.tempFile.renameTo(this.file) && !(this.file.delete() && this.tempFile.renameTo(this.file))){
+			this.discardTempFile();
+			throw new RuntimeException("Could not replace the snapshot " + this.file + " with " + this.tempFile);
+		}
+
+	}
+
+
+	/**
+	 * Returns the index of a grounded action in the action table, adding it if needed.
+	 * @param ga the grounded action
+	 * @return the index of the grounded action in the action table
+	 */
+	protected int actionId(GroundedAction ga){
+		String key = ga.toString();
+		Integer id = this.actionIds.get(key);
+		if(id == null){
+			id = this.actionTable.size();
+			String [] entry = new String[ga.params.length+1];
+			entry[0] = ga.actionName();
+			System.arraycopy(ga.params, 0, entry, 1, ga.params.length);
+			this.actionTable.add(entry);
+			this.actionIds.put(key, id);
+		}
+		return id;
+	}
+
+
+	/**
+	 * Records the fingerprint and file position of a written record.
+	 * @param fingerprint the fingerprint of the record's state
+	 * @param pos the file position of the record
+	 */
+	protected void addRecordPosition(long fingerprint, long pos){
+		if(this.numRecords == this.recordFingerprints.length){
+			this.recordFingerprints = Arrays.copyOf(this.recordFingerprints, 2*this.numRecords);
+			this.recordPositions = Arrays.copyOf(this.recordPositions, 2*this.numRecords);
+		}
+		this.recordFingerprints[this.numRecords] = fingerprint;
+		this.recordPositions[this.numRecords] = pos;
+		this.numRecords++;
+	}
+
+
+	/**
+	 * Writes the given number of zero bytes.
+	 * @param n the number of bytes to write
+	 * @throws IOException if the stream cannot be written
+	 */
+	protected void pad(long n) throws IOException{
+		for(long i = 0; i < n; i++){
+			this.out.writeByte(0);
+		}
+		this.position += n;
+	}
+
+
+	/**
+	 * Closes the temporary file, if open, and deletes it.
+	 */
+	protected void discardTempFile(){
+		if(this.out != null){
+			try{
+				this.out.close();
+			}catch(IOException e){
+				//the file is deleted anyway
+			}
+			this.out = null;
+		}
+		if(this.tempFile != null){
+			this.tempFile.delete();
+		}
+	}
+
+
+	/**
+	 * Reads the record positions and action table of the existing snapshot file and sets the position at which new records are written
+	 * to the end of its records. The existing file is not modified.
+	 * @throws IOException if the file cannot be read
+	 */
+	protected void readExistingSnapshot() throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			raf.getChannel().read(header, 0);
+			header.flip();
+			if(header.getLong() != MAGIC){
+				throw new RuntimeException("The file " + this.file + " is not a snapshot.");
+			}
+			int version = header.getInt();
+			if(version != VERSION){
+				throw new RuntimeException("Unsupported snapshot version " + version + " in " + this.file);
+			}
+			int numActions = header.getInt();
+			header.getLong(); //number of states
+			long recordsEnd = header.getLong();
+			long actionTableOffset = header.getLong();
+			long indexOffset = header.getLong();
+			int capacity = header.getInt();
+
+			raf.seek(actionTableOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 1 << 16));
+			for(int i = 0; i < numActions; i++){
+				String [] entry = new String[in.readInt()];
+				for(int j = 0; j < entry.length; j++){
+					entry[j] = in.readUTF();
+				}
+				this.actionIds.put(join(entry), i);
+				this.actionTable.add(entry);
+			}
+
+			raf.seek(indexOffset);
+			in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 1 << 16));
+			for(int i = 0; i < capacity; i++){
+				long fingerprint = in.readLong();
+				long pos = in.readLong();
+				if(pos != 0){
+					this.addRecordPosition(fingerprint, pos);
+				}
+			}
+
+			this.position = recordsEnd;
+		}finally{
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Copies the header and records of the existing snapshot file to the temporary file, so that new records can be appended after them.
+	 * The header is rewritten when the snapshot is closed.
+	 * @throws IOException if the existing file cannot be read or the temporary file cannot be written
+	 */
+	protected void copyExistingRecords() throws IOException{
+		InputStream in = new FileInputStream(this.file);
+		try{
+			byte [] buf = new byte[1 << 16];
+			long remaining = this.position;
+			while(remaining > 0){
+				int n = in.read(buf, 0, (int)Math.min(buf.length, remaining));
+				if(n < 0){
+					throw new IOException("The snapshot " + this.file + " ends before its records do.");
+				}
+				this.out.write(buf, 0, n);
+				remaining -= n;
+			}
+		}finally{
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Joins an action name and its parameters with spaces, which is the string representation of a grounded action.
+	 * @param entry the action name followed by its parameters
+	 * @return the joined string
+	 */
+	protected static String join(String [] entry){
+		StringBuilder buf = new StringBuilder();
+		for(int i = 0; i < entry.length; i++){
+			if(i > 0){
+				buf.append(" ");
+			}
+			buf.append(entry[i]);
+		}
+		return buf.toString();
+	}
+
+}
@@ -87,6 +87,22 @@ public class StateEnumerator {
 	}
 	
 	
+	/**
+	 * Finds all states that are reachable from an input state and enumerates them in the order in which a breadth first search finds them,
+	 * expanding each level of the search in parallel (see {@link ParallelReachability}).
+	 * Will not search from states that are marked as terminal states.
+	 * @param from the state from which all reachable states should be searched
+	 * @param tf the terminal function that prevents expanding from terminal states
+	 * @param numThreads the number of threads used to expand the search frontiers
+	 */
+	public void findReachableStatesAndEnumerate(State from, TerminalFunction tf, int numThreads){
+		Set<StateHashTuple> reachable = StateReachability.getReachableHashedStates(from, (SADomain)this.domain, this.hashingFactory, tf, numThreads);
+		for(StateHashTuple sh : reachable){
+			this.getEnumeratedID(sh);
+		}
+	}
+	
+	
 	/**
 	 * Get or create and get the enumeration id for a state
 	 * @param s the state to get the enumeration id
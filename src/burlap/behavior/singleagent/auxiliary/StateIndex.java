@@ -0,0 +1,125 @@
+package burlap.behavior.singleagent.auxiliary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+
+
+/**
+ * A {@link StateEnumerator} that interns states to dense int ids (0, 1, 2, ...) in the order in which they are first added and that
+ * stores the hashed state for each id in an array list, so that the reverse lookup from an id to its state does not require any hashing.
+ * Once the states of a planning problem have been interned, tabular algorithms can store value functions in double arrays and
+ * transition dynamics as int-indexed structures (see {@link burlap.behavior.singleagent.planning.IndexedTransitionModel}) and
+ * perform their backups without any state hashing or equality checks.
+ * <p/>
+ * Unlike the {@link #getEnumeratedID(State)} method, the {@link #getIndex(StateHashTuple)} and {@link #getIndex(State)} methods do not
+ * intern states that have not been added and instead return -1 for them.
+ * @author James MacGlashan
+ *
+ */
+public class StateIndex extends StateEnumerator {
+
+	/**
+	 * The hashed state for each id
+	 */
+	protected List<StateHashTuple>					hashedStates = new ArrayList<StateHashTuple>();
+
+
+	/**
+	 * Initializes an empty index.
+	 * @param domain the domain of the states to be indexed
+	 * @param hashingFactory the hashing factory to use
+	 */
+	public StateIndex(Domain domain, StateHashFactory hashingFactory){
+		super(domain, hashingFactory);
+	}
+
+
+	/**
+	 * Returns the id of the given hashed state, interning it with the next id if it has not been added before.
+	 * @param sh the hashed state
+	 * @return the id of the hashed state
+	 */
+	public int getOrCreateIndex(StateHashTuple sh){
+		return this.getEnumeratedID(sh);
+	}
+
+
+	/**
+	 * Returns the id of the given hashed state or -1 if it has not been added to this index.
+	 * @param sh the hashed state
+	 * @return the id of the hashed state or -1 if it has not been added
+	 */
+	public int getIndex(StateHashTuple sh){
+		Integer id = this.enumeration.get(sh);
+		if(id == null){
+			return -1;
+		}
+		return id;
+	}
+
+
+	/**
+	 * Returns the id of the given state or -1 if it has not been added to this index.
+	 * @param s the state
+	 * @return the id of the state or -1 if it has not been added
+	 */
+	public int getIndex(State s){
+		return this.getIndex(this.hashingFactory.hashState(s));
+	}
+
+
+	/**
+	 * Returns the hashed state with the given id.
+	 * @param id the id of the state
+	 * @return the hashed state with the given id
+	 */
+	public StateHashTuple getHashedState(int id){
+		if(id < 0 || id >= this.hashedStates.size()){
+			throw new RuntimeException("There is no state stored with the enumeration id: " + id);
+		}
+		return this.hashedStates.get(id);
+	}
+
+
+	@Override
+	public State getStateForEnumertionId(int id){
+		return this.getHashedState(id).s;
+	}
+
+
+	/**
+	 * Returns the number of states that have been indexed. Ids range from 0 to this value (exclusive).
+	 * @return the number of states that have been indexed
+	 */
+	public int size(){
+		return this.hashedStates.size();
+	}
+
+
+	/**
+	 * Returns the hashing factory this index uses.
+	 * @return the hashing factory this index uses
+	 */
+	public StateHashFactory getHashingFactory(){
+		return this.hashingFactory;
+	}
+
+
+	@Override
+	protected int getEnumeratedID(StateHashTuple sh){
+		Integer storedID = this.enumeration.get(sh);
+		if(storedID == null){
+			storedID = this.hashedStates.size();
+			this.enumeration.put(sh, storedID);
+			this.hashedStates.add(sh);
+			this.nextEnumeratedID = this.hashedStates.size();
+		}
+		return storedID;
+	}
+
+}
@@ -1,10 +1,10 @@
 package burlap.behavior.singleagent.auxiliary;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -84,42 +84,53 @@ public class StateReachability {
 	 * @return the set of {@link burlap.oomdp.core.State} objects that are reachable from a source state. 
 	 */
 	public static Set <StateHashTuple> getReachableHashedStates(State from, SADomain inDomain, StateHashFactory usingHashFactory, TerminalFunction tf){
+		return getReachableHashedStates(from, inDomain, usingHashFactory, tf, 1);
+	}
+	
+	
+	/**
+	 * Returns the set of {@link burlap.oomdp.core.State} objects that are reachable from a source state, using a level-synchronous
+	 * breadth first search whose frontiers are expanded in parallel (see {@link ParallelReachability}). The returned set iterates
+	 * over the states in the order in which they were found.
+	 * @param from the source state
+	 * @param inDomain the domain of the state
+	 * @param usingHashFactory the state hashing factory to use for indexing states and testing equality.
+	 * @param tf a terminal function that prevents expansion from terminal states.
+	 * @param numThreads the number of threads used to expand the search frontiers
+	 * @return the set of {@link burlap.oomdp.core.State} objects that are reachable from a source state. 
+	 */
+	public static Set <StateHashTuple> getReachableHashedStates(State from, SADomain inDomain, final StateHashFactory usingHashFactory, final TerminalFunction tf, int numThreads){
 		
+		final List <Action> actions = inDomain.getActions();
+		final AtomicInteger nGenerated = new AtomicInteger();
 		
-		Set<StateHashTuple> hashedStates = new HashSet<StateHashTuple>();
-		StateHashTuple shi = usingHashFactory.hashState(from);
-		List <Action> actions = inDomain.getActions();
-		int nGenerated = 0;
-		
-		LinkedList <StateHashTuple> openList = new LinkedList<StateHashTuple>();
-		openList.offer(shi);
-		hashedStates.add(shi);
-		while(openList.size() > 0){
-			StateHashTuple sh = openList.poll();
-			
+		ParallelReachability search = new ParallelReachability(numThreads);
+		List <StateHashTuple> found = search.search(usingHashFactory.hashState(from), new ParallelReachability.StateExpander() {
 			
-			if(tf.isTerminal(sh.s)){
-				continue; //don't expand
-			}
-			
-			//List <GroundedAction> gas = sh.s.getAllGroundedActionsFor(actions);
-			List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(actions, sh.s);
-			for(GroundedAction ga : gas){
-				List <TransitionProbability> tps = ga.action.getTransitions(sh.s, ga.params);
-				for(TransitionProbability tp : tps){
-					StateHashTuple nsh = usingHashFactory.hashState(tp.s);
-					nGenerated++;
-					if(!hashedStates.contains(nsh)){
-						openList.offer(nsh);
-						hashedStates.add(nsh);
+			@Override
+			public List<StateHashTuple> expand(StateHashTuple sh) {
+				
+				if(tf.isTerminal(sh.s)){
+					return null; //don't expand
+				}
+				
+				List <StateHashTuple> successors = new ArrayList<StateHashTuple>();
+				List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(actions, sh.s);
+				for(GroundedAction ga : gas){
+					List <TransitionProbability> tps = ga.action.getTransitions(sh.s, ga.params);
+					for(TransitionProbability tp : tps){
+						successors.add(usingHashFactory.hashState(tp.s));
 					}
 				}
+				nGenerated.addAndGet(successors.size());
 				
+				return successors;
 			}
-			
-		}
+		});
+		
+		Set<StateHashTuple> hashedStates = new LinkedHashSet<StateHashTuple>(found);
 		
-		DPrint.cl(debugID, "Num generated: " + nGenerated + "; num unique: " + hashedStates.size());
+		DPrint.cl(debugID, "Num generated: " + nGenerated.get() + "; num unique: " + hashedStates.size());
 		
 		return hashedStates;
 	}
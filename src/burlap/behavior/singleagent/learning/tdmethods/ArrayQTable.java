@@ -0,0 +1,285 @@
+package burlap.behavior.singleagent.learning.tdmethods;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * A tabular Q-function stored in primitive arrays. Each hashed state is interned with an int id when it is first added, and its Q-values are stored
+ * in a contiguous block of a single double array, one entry for each of its grounded actions in the order in which they were listed when the state
+ * was added. Each state-action pair is therefore identified by a single int entry id, and reading or updating a Q-value by its entry id allocates
+ * no objects, as does selecting a greedy entry of a state with {@link #getGreedyEntry(int, Random)}. {@link QValue} objects are only created when the
+ * Q-values of a state are requested as a list with {@link #getQs(int)}.
+ * <p/>
+ * Compared to storing a list of {@link QValue} objects for every state, this avoids an object, a state reference, and a list slot per state-action pair
+ * and keeps the Q-values of a state in adjacent memory.
+ * @author James MacGlashan
+ *
+ */
+public class ArrayQTable {
+
+	/**
+	 * The id of each interned state
+	 */
+	protected Map<StateHashTuple, Integer>		stateIds = new HashMap<StateHashTuple, Integer>();
+
+	/**
+	 * The interned states by id
+	 */
+	protected StateHashTuple []					states = new StateHashTuple[16];
+
+	/**
+	 * The first entry of each state; the entries of state i are offsets[i] to offsets[i+1]-1
+	 */
+	protected int []							offsets = new int[17];
+
+	/**
+	 * The grounded action of each entry
+	 */
+	protected GroundedAction []					entryActions = new GroundedAction[64];
+
+	/**
+	 * The Q-value of each entry
+	 */
+	protected double []							values = new double[64];
+
+	/**
+	 * The number of interned states
+	 */
+	protected int								numStates = 0;
+
+
+	/**
+	 * Returns the number of interned states.
+	 * @return the number of interned states
+	 */
+	public int numStates(){
+		return this.numStates;
+	}
+
+
+	/**
+	 * Returns the number of state-action entries.
+	 * @return the number of state-action entries
+	 */
+	public int numEntries(){
+		return this.offsets[this.numStates];
+	}
+
+
+	/**
+	 * Returns the id of a hashed state.
+	 * @param sh the hashed state
+	 * @return the id of the state, or -1 if it has not been added
+	 */
+	public int getStateId(StateHashTuple sh){
+		Integer id = this.stateIds.get(sh);
+		if(id == null){
+			return -1;
+		}
+		return id;
+	}
+
+
+	/**
+	 * Interns a hashed state and adds an entry for each of its grounded actions with Q-values set by a Q-value initialization.
+	 * @param sh the hashed state, which must not already have been added
+	 * @param gas the grounded actions of the state, in the order of its entries
+	 * @param qInit the Q-value initialization of the entries
+	 * @return the id of the state
+	 */
+	public int addState(StateHashTuple sh, List<GroundedAction> gas, ValueFunctionInitialization qInit){
+
+		int id = this.numStates;
+		if(id + 1 == this.offsets.length){
+			this.states = Arrays.copyOf(this.states, 2*this.states.length);
+			this.offsets = Arrays.copyOf(this.offsets, 2*this.offsets.length - 1);
+		}
+
+		int first = this.offsets[id];
+		int end = first + gas.size();
+		if(end > this.values.length){
+			int n = Math.max(2*this.values.length, end);
+			this.entryActions = Arrays.copyOf(this.entryActions, n);
+			this.values = Arrays.copyOf(this.values, n);
+		}
+
+		for(int i = 0; i < gas.size(); i++){
+			GroundedAction ga = gas.get(i);
+			this.entryActions[first+i] = ga;
+			this.values[first+i] = qInit.qValue(sh.s, ga);
+		}
+
+		this.states[id] = sh;
+		this.offsets[id+1] = end;
+		this.stateIds.put(sh, id);
+		this.numStates++;
+
+		return id;
+	}
+
+
+	/**
+	 * Returns the interned hashed state with the given id.
+	 * @param stateId the id of the state
+	 * @return the interned hashed state
+	 */
+	public StateHashTuple getState(int stateId){
+		return this.states[stateId];
+	}
+
+
+	/**
+	 * Returns the first entry of a state.
+	 * @param stateId the id of the state
+	 * @return the first entry of the state
+	 */
+	public int firstEntry(int stateId){
+		return this.offsets[stateId];
+	}
+
+
+	/**
+	 * Returns one past the last entry of a state.
+	 * @param stateId the id of the state
+	 * @return one past the last entry of the state
+	 */
+	public int endEntry(int stateId){
+		return this.offsets[stateId+1];
+	}
+
+
+	/**
+	 * Returns the entry of the given grounded action in a state.
+	 * @param stateId the id of the state
+	 * @param ga the grounded action
+	 * @return the entry of the grounded action, or -1 if the state has no entry for it
+	 */
+	public int getEntry(int stateId, GroundedAction ga){
+		int end = this.offsets[stateId+1];
+		for(int e = this.offsets[stateId]; e < end; e++){
+			if(this.entryActions[e].equals(ga)){
+				return e;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns the grounded action of an entry.
+	 * @param entry the entry
+	 * @return the grounded action of the entry
+	 */
+	public GroundedAction getAction(int entry){
+		return this.entryActions[entry];
+	}
+
+
+	/**
+	 * Returns the Q-value of an entry.
+	 * @param entry the entry
+	 * @return the Q-value of the entry
+	 */
+	public double getQ(int entry){
+		return this.values[entry];
+	}
+
+
+	/**
+	 * Sets the Q-value of an entry.
+	 * @param entry the entry
+	 * @param q the new Q-value of the entry
+	 */
+	public void setQ(int entry, double q){
+		this.values[entry] = q;
+	}
+
+
+	/**
+	 * Returns the maximum Q-value of a state.
+	 * @param stateId the id of the state
+	 * @return the maximum Q-value of the state
+	 */
+	public double getMaxQ(int stateId){
+		double max = Double.NEGATIVE_INFINITY;
+		int end = this.offsets[stateId+1];
+		for(int e = this.offsets[stateId]; e < end; e++){
+			if(this.values[e] > max){
+				max = this.values[e];
+			}
+		}
+		return max;
+	}
+
+
+	/**
+	 * Returns an entry of a state with the maximum Q-value. If multiple entries tie for the maximum Q-value, then the tied entry selected by
+	 * <code>rand.nextInt(numberOfTiedEntries)</code>, in entry order, is returned. No objects are allocated.
+	 * @param stateId the id of the state
+	 * @param rand the random number generator used to break ties
+	 * @return an entry of the state with the maximum Q-value
+	 */
+	public int getGreedyEntry(int stateId, Random rand){
+		int first = this.offsets[stateId];
+		int end = this.offsets[stateId+1];
+		double max = this.values[first];
+		int numMax = 1;
+		for(int e = first+1; e < end; e++){
+			if(this.values[e] == max){
+				numMax++;
+			}
+			else if(this.values[e] > max){
+				max = this.values[e];
+				numMax = 1;
+			}
+		}
+		int selected = rand.nextInt(numMax);
+		for(int e = first; e < end; e++){
+			if(this.values[e] == max){
+				if(selected == 0){
+					return e;
+				}
+				selected--;
+			}
+		}
+		return first;
+	}
+
+
+	/**
+	 * Returns new {@link QValue} objects holding the current Q-values of a state. Changing the returned objects does not change the table.
+	 * @param stateId the id of the state
+	 * @return the Q-values of the state
+	 */
+	public List<QValue> getQs(int stateId){
+		int first = this.offsets[stateId];
+		int end = this.offsets[stateId+1];
+		List<QValue> qs = new ArrayList<QValue>(end - first);
+		for(int e = first; e < end; e++){
+			qs.add(new QValue(this.states[stateId].s, this.entryActions[e], this.values[e]));
+		}
+		return qs;
+	}
+
+
+	/**
+	 * Removes all states and entries.
+	 */
+	public void clear(){
+		this.stateIds.clear();
+		Arrays.fill(this.states, 0, this.numStates, null);
+		Arrays.fill(this.entryActions, 0, this.offsets[this.numStates], null);
+		this.numStates = 0;
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import javax.management.RuntimeErrorException;
 
@@ -13,9 +14,11 @@ import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.auxiliary.QSnapshotWriter;
 import burlap.behavior.singleagent.learning.LearningAgent;
 import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
+import burlap.behavior.singleagent.planning.QActionSelector;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.EpsilonGreedy;
 import burlap.behavior.statehashing.StateHashFactory;
@@ -33,6 +36,12 @@ import burlap.oomdp.singleagent.RewardFunction;
  * Tabular Q-learning algorithm [1]. This implementation will work correctly with Options [2]. The implementation can either be used for learning or planning,
  * the latter of which is performed by running many learning episodes in succession. The number of episodes used for planning can be determined
  * by a threshold maximum number of episodes, or by a maximum change in the Q-function threshold.
+ * <p/>
+ * By default, the Q-values of each state are stored as a list of {@link QValue} objects, which are returned directly by the Q-value query methods.
+ * For long learning runs, the Q-values can instead be stored in an {@link ArrayQTable} with {@link #toggleArrayQTable(boolean)}, which keeps them in
+ * primitive arrays and lets learning updates read and write them without allocating objects. Policies that select actions through the
+ * {@link QActionSelector} methods, such as the default {@link EpsilonGreedy} learning policy, then also select actions without allocating Q-value objects.
+ * The Q-value query methods return new {@link QValue} objects holding copies of the Q-values, so changing a returned object does not change the Q-function.
  * 
  * <p/>
  * 1. Watkins, Christopher JCH, and Peter Dayan. "Q-learning." Machine learning 8.3-4 (1992): 279-292. <br/>
@@ -41,7 +50,7 @@ import burlap.oomdp.singleagent.RewardFunction;
  * @author James MacGlashan
  *
  */
-public class QLearning extends OOMDPPlanner implements QComputablePlanner, LearningAgent{
+public class QLearning extends OOMDPPlanner implements QComputablePlanner, QActionSelector, LearningAgent{
 
 	
 	/**
@@ -49,6 +58,11 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 	 */
 	protected Map<StateHashTuple, QLearningStateNode>				qIndex;
 	
+	/**
+	 * The primitive array storage of the Q-values; null if the Q-values are stored in {@link #qIndex}
+	 */
+	protected ArrayQTable											arrayQTable = null;
+	
 	/**
 	 * The object that defines how Q-values are initialized.
 	 */
@@ -297,6 +311,23 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 	}
 	
 	
+	/**
+	 * Sets whether the Q-values are stored in an {@link ArrayQTable} rather than as lists of {@link QValue} objects. With the array table, learning
+	 * updates allocate no Q-value objects and the Q-value query methods return copies of the Q-values. Changing the storage clears all learned
+	 * Q-values, so this should be set before learning.
+	 * @param toggle true to store the Q-values in an {@link ArrayQTable}; false to store them as lists of {@link QValue} objects.
+	 */
+	public void toggleArrayQTable(boolean toggle){
+		this.qIndex.clear();
+		if(toggle){
+			this.arrayQTable = new ArrayQTable();
+		}
+		else{
+			this.arrayQTable = null;
+		}
+	}
+	
+	
 	/**
 	 * Sets whether the primitive actions taken during an options will be included as steps in produced EpisodeAnalysis objects.
 	 * The default value is true. If this is set to false, then EpisodeAnalysis objects returned from a learning episode will record options
@@ -353,12 +384,66 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 	}
 	
 	
+	/**
+	 * Returns whether the Q-values are stored in an {@link ArrayQTable}, from which actions are selected without creating Q-value objects.
+	 * @return true if the Q-values are stored in an {@link ArrayQTable}; false otherwise.
+	 */
+	@Override
+	public boolean canSelectActions() {
+		return this.arrayQTable != null;
+	}
+
+	@Override
+	public AbstractGroundedAction selectGreedyAction(State s, Random rand) {
+		if(this.arrayQTable == null){
+			throw new UnsupportedOperationException("Actions can only be selected directly when the Q-values are stored in an ArrayQTable.");
+		}
+		int id = this.getStateId(this.stateHash(s));
+		int entry = this.arrayQTable.getGreedyEntry(id, rand);
+		//return translated action parameters if the action is parameterized with objects in a object identifier indepdent domain
+		return this.arrayQTable.getAction(entry).translateParameters(this.arrayQTable.getState(id).s, s);
+	}
+
+	@Override
+	public AbstractGroundedAction selectRandomAction(State s, Random rand) {
+		if(this.arrayQTable == null){
+			throw new UnsupportedOperationException("Actions can only be selected directly when the Q-values are stored in an ArrayQTable.");
+		}
+		int id = this.getStateId(this.stateHash(s));
+		int first = this.arrayQTable.firstEntry(id);
+		int entry = first + rand.nextInt(this.arrayQTable.endEntry(id) - first);
+		return this.arrayQTable.getAction(entry).translateParameters(this.arrayQTable.getState(id).s, s);
+	}
+	
+	
+	/**
+	 * Adds the Q-values of every state visited so far to a snapshot, with the max Q-value as the value of each state. The snapshot can be
+	 * reopened with {@link burlap.behavior.singleagent.auxiliary.QSnapshot} to serve a policy without relearning. The writer is not closed, so
+	 * snapshots may be written periodically to a writer opened in append mode.
+	 * @param writer the snapshot writer to which the states are added
+	 */
+	public void writeSnapshot(QSnapshotWriter writer){
+		if(this.arrayQTable != null){
+			for(int i = 0; i < this.arrayQTable.numStates(); i++){
+				writer.add(this.arrayQTable.getState(i).s, this.arrayQTable.getMaxQ(i), this.arrayQTable.getQs(i));
+			}
+			return;
+		}
+		for(QLearningStateNode node : this.qIndex.values()){
+			writer.add(node.s.s, this.getMaxQ(node.s), node.qEntry);
+		}
+	}
+	
+	
 	/**
 	 * Returns the possible Q-values for a given hashed stated.
 	 * @param s the hashed state for which to get the Q-values.
 	 * @return the possible Q-values for a given hashed stated.
 	 */
 	protected List<QValue> getQs(StateHashTuple s) {
+		if(this.arrayQTable != null){
+			return this.arrayQTable.getQs(this.getStateId(s));
+		}
 		QLearningStateNode node = this.getStateNode(s);
 		return node.qEntry;
 	}
@@ -371,6 +456,14 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 	 * @return the Q-value for a given hashed state and action; null is returned if there is not Q-value currently stored.
 	 */
 	protected QValue getQ(StateHashTuple s, GroundedAction a) {
+		if(this.arrayQTable != null){
+			int entry = this.getQEntry(s, a);
+			if(entry == -1){
+				return null;
+			}
+			return new QValue(s.s, this.arrayQTable.getAction(entry), this.arrayQTable.getQ(entry));
+		}
+		
 		QLearningStateNode node = this.getStateNode(s);
 		
 		if(a.params.length > 0 && !this.domain.isObjectIdentifierDependent() && a.parametersAreObjects()){
@@ -416,12 +509,52 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 		
 	}
 	
+	/**
+	 * Returns the id of the given hashed state in the {@link ArrayQTable}. If the state has not been added, it is added with its Q-values initialized
+	 * using this object's {@link burlap.behavior.singleagent.ValueFunctionInitialization} data member.
+	 * @param s the hashed state
+	 * @return the id of the state in the {@link ArrayQTable}
+	 */
+	protected int getStateId(StateHashTuple s){
+		int id = this.arrayQTable.getStateId(s);
+		if(id == -1){
+			List<GroundedAction> gas = this.getAllGroundedActions(s.s);
+			if(gas.size() == 0){
+				throw new RuntimeErrorException(new Error("No possible actions in this state, cannot continue Q-learning"));
+			}
+			id = this.arrayQTable.addState(s, gas, this.qInitFunction);
+		}
+		return id;
+	}
+	
+	
+	/**
+	 * Returns the entry of the given hashed state and action in the {@link ArrayQTable}, adding the state if it has not been added.
+	 * @param s the hashed state
+	 * @param a the action
+	 * @return the entry of the state and action; -1 if the state has no entry for the action.
+	 */
+	protected int getQEntry(StateHashTuple s, GroundedAction a){
+		int id = this.getStateId(s);
+		
+		if(a.params.length > 0 && !this.domain.isObjectIdentifierDependent() && a.parametersAreObjects()){
+			Map<String, String> matching = s.s.getObjectMatchingTo(this.arrayQTable.getState(id).s, false);
+			a = this.translateAction(a, matching);
+		}
+		
+		return this.arrayQTable.getEntry(id, a);
+	}
+	
+	
 	/**
 	 * Returns the maximum Q-value in the hashed stated.
 	 * @param s the state for which to get he maximum Q-value;
 	 * @return the maximum Q-value in the hashed stated.
 	 */
 	protected double getMaxQ(StateHashTuple s){
+		if(this.arrayQTable != null){
+			return this.arrayQTable.getMaxQ(this.getStateId(s));
+		}
 		List <QValue> qs = this.getQs(s);
 		double max = Double.NEGATIVE_INFINITY;
 		for(QValue q : qs){
@@ -465,7 +598,14 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 		while(!tf.isTerminal(curState.s) && eStepCounter < maxSteps){
 			
 			GroundedAction action = (GroundedAction)learningPolicy.getAction(curState.s);
-			QValue curQ = this.getQ(curState, action);
+			QValue curQ = null;
+			int curEntry = -1;
+			if(this.arrayQTable != null){
+				curEntry = this.getQEntry(curState, action);
+			}
+			else{
+				curQ = this.getQ(curState, action);
+			}
 			
 			StateHashTuple nextState = this.stateHash(action.executeIn(curState.s));
 			double maxQ = 0.;
@@ -498,12 +638,18 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 			
 			
 			
-			double oldQ = curQ.q;
+			double oldQ = curQ != null ? curQ.q : this.arrayQTable.getQ(curEntry);
 			
 			//update Q-value
-			curQ.q = curQ.q + this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s, action) * (r + (discount * maxQ) - curQ.q);
+			double newQ = oldQ + this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s, action) * (r + (discount * maxQ) - oldQ);
+			if(curQ != null){
+				curQ.q = newQ;
+			}
+			else{
+				this.arrayQTable.setQ(curEntry, newQ);
+			}
 			
-			double deltaQ = Math.abs(oldQ - curQ.q);
+			double deltaQ = Math.abs(oldQ - newQ);
 			if(deltaQ > maxQChangeInLastEpisode){
 				maxQChangeInLastEpisode = deltaQ;
 			}
@@ -551,6 +697,9 @@ public class QLearning extends OOMDPPlanner implements QComputablePlanner, Learn
 	public void resetPlannerResults(){
 		this.mapToStateIndex.clear();
 		this.qIndex.clear();
+		if(this.arrayQTable != null){
+			this.arrayQTable.clear();
+		}
 		this.episodeHistory.clear();
 		this.eStepCounter = 0;
 		this.maxQChangeInLastEpisode = Double.POSITIVE_INFINITY;
@@ -1,11 +1,13 @@
 package burlap.behavior.singleagent.learning.tdmethods;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 
 import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.learning.tdmethods.SparseEligibilityTraces.TraceType;
 import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -35,6 +37,16 @@ public class SarsaLam extends QLearning {
 	 */
 	protected double				lambda;
 	
+	/**
+	 * The way the trace of the current state-action pair is set on each step. The default is {@link TraceType#REPLACING}.
+	 */
+	protected TraceType				traceType = TraceType.REPLACING;
+	
+	/**
+	 * Traces whose magnitude falls below this value are dropped. The default is 0, which keeps every trace for the rest of the episode.
+	 */
+	protected double				minimumTrace = 0.;
+	
 	
 	/**
 	 * Initializes SARSA(\lambda) with 0.1 epsilon greedy policy, the same Q-value initialization everywhere, and places no limit on the number of steps the 
@@ -138,6 +150,27 @@ public class SarsaLam extends QLearning {
 		this.lambda = lambda;
 	}
 	
+	
+	/**
+	 * Sets the way the trace of the current state-action pair is set on each step. With replacing traces, which are the default, the trace is set to 1
+	 * and the traces of the other actions in the same state are set to 0; with accumulating traces 1 is added to the trace; with dutch traces
+	 * the trace is set to (1 - alpha) e + 1, where alpha is the learning rate of the state-action pair.
+	 * @param traceType the type of eligibility traces to use
+	 */
+	public void setTraceType(TraceType traceType){
+		this.traceType = traceType;
+	}
+	
+	
+	/**
+	 * Sets the magnitude below which a decayed trace is dropped for the rest of the episode, which bounds the number of traces updated on each step
+	 * when lambda * gamma < 1. The default is 0, which keeps every trace.
+	 * @param minimumTrace the magnitude below which a trace is dropped
+	 */
+	public void setMinimumTrace(double minimumTrace){
+		this.minimumTrace = minimumTrace;
+	}
+	
 		
 	
 	@Override
@@ -148,10 +181,24 @@ public class SarsaLam extends QLearning {
 		
 		StateHashTuple curState = this.stateHash(initialState);
 		eStepCounter = 0;
-		LinkedList<EligibilityTrace> traces = new LinkedList<SarsaLam.EligibilityTrace>();
+		LinkedList<EligibilityTrace> traces = null;
+		SparseEligibilityTraces<StateHashTuple> sparseTraces = null;
+		if(this.arrayQTable != null){
+			sparseTraces = new SparseEligibilityTraces<StateHashTuple>(this.minimumTrace);
+		}
+		else{
+			traces = new LinkedList<SarsaLam.EligibilityTrace>();
+		}
 		
 		GroundedAction action = (GroundedAction)learningPolicy.getAction(curState.s);
-		QValue curQ = this.getQ(curState, action);
+		QValue curQ = null;
+		int curEntry = -1;
+		if(this.arrayQTable != null){
+			curEntry = this.getQEntry(curState, action);
+		}
+		else{
+			curQ = this.getQ(curState, action);
+		}
 		
 		
 		
@@ -159,8 +206,17 @@ public class SarsaLam extends QLearning {
 			
 			StateHashTuple nextState = this.stateHash(action.executeIn(curState.s));
 			GroundedAction nextAction = (GroundedAction)learningPolicy.getAction(nextState.s);
-			QValue nextQ = this.getQ(nextState, nextAction);
-			double nextQV = nextQ.q;
+			QValue nextQ = null;
+			int nextEntry = -1;
+			double nextQV;
+			if(this.arrayQTable != null){
+				nextEntry = this.getQEntry(nextState, nextAction);
+				nextQV = this.arrayQTable.getQ(nextEntry);
+			}
+			else{
+				nextQ = this.getQ(nextState, nextAction);
+				nextQV = nextQ.q;
+			}
 			
 			if(tf.isTerminal(nextState.s)){
 				nextQV = 0.;
@@ -192,47 +248,15 @@ public class SarsaLam extends QLearning {
 			
 			
 			//delta
-			double delta = r + (discount * nextQV) - curQ.q;
+			double curQV = curQ != null ? curQ.q : this.arrayQTable.getQ(curEntry);
+			double delta = r + (discount * nextQV) - curQV;
 			
 			//update all
-			boolean foundCurrentQTrace = false;
-			for(EligibilityTrace et : traces){
-				
-				if(et.sh.equals(curState)){
-					if(et.q.a.equals(action)){
-						foundCurrentQTrace = true;
-						et.eligibility = 1.; //replacing traces
-					}
-					else{
-						et.eligibility = 0.; //replacing traces
-					}
-				}
-				
-				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.sh.s, et.q.a);
-				
-				et.q.q = et.q.q + (learningRate * et.eligibility * delta);
-				et.eligibility = et.eligibility * lambda * discount;
-				
-				double deltaQ = Math.abs(et.initialQ - et.q.q);
-				if(deltaQ > maxQChangeInLastEpisode){
-					maxQChangeInLastEpisode = deltaQ;
-				}
-				
+			if(sparseTraces != null){
+				this.updateSparseTraces(sparseTraces, curState, curEntry, delta, discount);
 			}
-			
-			if(!foundCurrentQTrace){
-				//then update and add it
-				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, curQ.s, curQ.a);
-				curQ.q = curQ.q + (learningRate * delta);
-				EligibilityTrace et = new EligibilityTrace(curState, curQ, lambda*discount);
-				
-				traces.add(et);
-
-				double deltaQ = Math.abs(et.initialQ - et.q.q);
-				if(deltaQ > maxQChangeInLastEpisode){
-					maxQChangeInLastEpisode = deltaQ;
-				}
-				
+			else{
+				this.updateTraces(traces, curState, curQ, delta, discount);
 			}
 			
 			
@@ -240,6 +264,7 @@ public class SarsaLam extends QLearning {
 			curState = nextState;
 			action = nextAction;
 			curQ = nextQ;
+			curEntry = nextEntry;
 			
 			this.totalNumberOfSteps++;
 			
@@ -259,6 +284,127 @@ public class SarsaLam extends QLearning {
 	
 	
 	
+	/**
+	 * Visits the current state-action pair, updates the Q-values of all traced state-action pairs, and decays the traces when the Q-values are stored
+	 * as {@link QValue} objects.
+	 * @param traces the traces of the episode
+	 * @param curState the current state
+	 * @param curQ the {@link QValue} of the current state-action pair
+	 * @param delta the TD error of the current step
+	 * @param discount the discount of the current step
+	 */
+	protected void updateTraces(LinkedList<EligibilityTrace> traces, StateHashTuple curState, QValue curQ, double delta, double discount){
+		
+		boolean foundCurrentQTrace = false;
+		Iterator<EligibilityTrace> iter = traces.iterator();
+		while(iter.hasNext()){
+			
+			EligibilityTrace et = iter.next();
+			
+			if(et.sh.equals(curState)){
+				if(et.q.a.equals(curQ.a)){
+					foundCurrentQTrace = true;
+					double dutchCorrection = 0.;
+					if(this.traceType == TraceType.DUTCH){
+						dutchCorrection = this.learningRate.peekAtLearningRate(et.sh.s, et.q.a) * et.eligibility;
+					}
+					et.eligibility = SparseEligibilityTraces.visitedTrace(this.traceType, et.eligibility, 1., dutchCorrection);
+				}
+				else if(this.traceType == TraceType.REPLACING){
+					et.eligibility = 0.;
+				}
+			}
+			
+			double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.sh.s, et.q.a);
+			
+			et.q.q = et.q.q + (learningRate * et.eligibility * delta);
+			et.eligibility = et.eligibility * lambda * discount;
+			
+			double deltaQ = Math.abs(et.initialQ - et.q.q);
+			if(deltaQ > maxQChangeInLastEpisode){
+				maxQChangeInLastEpisode = deltaQ;
+			}
+			
+			if(Math.abs(et.eligibility) < this.minimumTrace){
+				iter.remove();
+			}
+			
+		}
+		
+		if(!foundCurrentQTrace){
+			//then update and add it
+			double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s, curQ.a);
+			curQ.q = curQ.q + (learningRate * delta);
+			EligibilityTrace et = new EligibilityTrace(curState, curQ, lambda*discount);
+			
+			if(Math.abs(et.eligibility) >= this.minimumTrace){
+				traces.add(et);
+			}
+			
+			double deltaQ = Math.abs(et.initialQ - curQ.q);
+			if(deltaQ > maxQChangeInLastEpisode){
+				maxQChangeInLastEpisode = deltaQ;
+			}
+			
+		}
+		
+	}
+	
+	
+	/**
+	 * Visits the current state-action pair, updates the Q-values of all traced state-action pairs, and decays the traces when the Q-values are stored
+	 * in an {@link ArrayQTable}. The traces are keyed by {@link ArrayQTable} entry and hold the state of their entry.
+	 * @param traces the traces of the episode
+	 * @param curState the current state
+	 * @param curEntry the {@link ArrayQTable} entry of the current state-action pair
+	 * @param delta the TD error of the current step
+	 * @param discount the discount of the current step
+	 */
+	protected void updateSparseTraces(SparseEligibilityTraces<StateHashTuple> traces, StateHashTuple curState, int curEntry, double delta, double discount){
+		
+		if(this.traceType == TraceType.REPLACING){
+			int stateId = this.arrayQTable.getStateId(curState);
+			int end = this.arrayQTable.endEntry(stateId);
+			for(int entry = this.arrayQTable.firstEntry(stateId); entry < end; entry++){
+				int i = entry != curEntry ? traces.indexOf(entry) : -1;
+				if(i != -1){
+					traces.setTrace(i, 0.);
+				}
+			}
+		}
+		
+		int cur = traces.indexOf(curEntry);
+		double e = cur != -1 ? traces.getTrace(cur) : 0.;
+		double dutchCorrection = 0.;
+		if(this.traceType == TraceType.DUTCH){
+			dutchCorrection = this.learningRate.peekAtLearningRate(curState.s, this.arrayQTable.getAction(curEntry)) * e;
+		}
+		e = SparseEligibilityTraces.visitedTrace(this.traceType, e, 1., dutchCorrection);
+		if(cur != -1){
+			traces.setTrace(cur, e);
+		}
+		else{
+			traces.add(curEntry, curState, e, this.arrayQTable.getQ(curEntry));
+		}
+		
+		for(int i = 0; i < traces.size(); i++){
+			int entry = traces.getKey(i);
+			double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, traces.getItem(i).s, this.arrayQTable.getAction(entry));
+			double q = this.arrayQTable.getQ(entry) + (learningRate * traces.getTrace(i) * delta);
+			this.arrayQTable.setQ(entry, q);
+			
+			double deltaQ = Math.abs(traces.getInitialValue(i) - q);
+			if(deltaQ > maxQChangeInLastEpisode){
+				maxQChangeInLastEpisode = deltaQ;
+			}
+		}
+		
+		traces.decay(lambda * discount);
+		
+	}
+	
+	
+	
 	/**
 	 * A data structure for maintaining eligibility trace values
 	 * @author James MacGlashan
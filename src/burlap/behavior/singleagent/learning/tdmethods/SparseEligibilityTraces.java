@@ -0,0 +1,362 @@
+package burlap.behavior.singleagent.learning.tdmethods;
+
+import java.util.Arrays;
+
+
+/**
+ * A sparse set of eligibility traces keyed by int ids, such as the entries of an {@link ArrayQTable} or the weight ids of a value function approximation.
+ * Traces are stored densely in primitive arrays and indexed by an open addressing hash table with linear probing, so finding, adding, and removing a
+ * trace take constant expected time and allocate no objects. Each trace may also hold a reference to an item, such as the weight it traces, so that
+ * learners do not have to look it up again when they update it.
+ * <p/>
+ * Traces whose magnitude falls below a minimum trace value when they are decayed with {@link #decay(double)} are removed, so the cost of updating all traces
+ * on a step is bounded by the number of traces that are still large enough to matter rather than by the number of features visited in the episode.
+ * The dense order of the traces changes when traces are removed.
+ * @author James MacGlashan
+ *
+ * @param <T> the type of the item held by each trace
+ */
+public class SparseEligibilityTraces<T> {
+
+	/**
+	 * The way the trace of a feature is set when it is visited. With accumulating traces the feature value is added to the trace; with replacing traces
+	 * the trace is set to the feature value; with dutch traces [1] the trace is set to e + (1 - alpha * e^T x) x, which for tabular features is
+	 * (1 - alpha) e + 1.
+	 * <p/>
+	 * 1. van Seijen, Harm, and Richard S. Sutton. "True online TD(lambda)." Proceedings of the 31st International Conference on Machine Learning. 2014.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum TraceType{
+		REPLACING,
+		ACCUMULATING,
+		DUTCH
+	}
+
+
+	/**
+	 * Traces whose magnitude is less than this value after they are decayed are removed
+	 */
+	protected double			minTrace;
+
+	/**
+	 * The key of each trace
+	 */
+	protected int []			keys = new int[16];
+
+	/**
+	 * The value of each trace
+	 */
+	protected double []			traces = new double[16];
+
+	/**
+	 * The value of the traced parameter when each trace was added
+	 */
+	protected double []			initialValues = new double[16];
+
+	/**
+	 * The item held by each trace
+	 */
+	protected Object []			items = new Object[16];
+
+	/**
+	 * The number of traces
+	 */
+	protected int				size = 0;
+
+	/**
+	 * The open addressing hash table; each slot holds one more than the dense index of a trace, or 0 if the slot is empty. Its length is a power of two.
+	 */
+	protected int []			slots = new int[32];
+
+
+	/**
+	 * Returns the trace of a feature after it is visited.
+	 * @param type the type of traces
+	 * @param e the current trace of the feature, which is 0 if it has no trace
+	 * @param x the value of the feature, which is 1 for tabular features or the partial derivative of a weight for function approximation
+	 * @param dutchCorrection the learning rate of the feature times the dot product of the traces and the feature values of the visited state-action pair; only used by dutch traces
+	 * @return the trace of the feature after it is visited
+	 */
+	public static double visitedTrace(TraceType type, double e, double x, double dutchCorrection){
+		switch(type){
+			case REPLACING:
+				return x;
+			case DUTCH:
+				return e + (1. - dutchCorrection) * x;
+			default:
+				return e + x;
+		}
+	}
+
+
+	/**
+	 * Initializes an empty set of traces.
+	 * @param minTrace traces whose magnitude is less than this value after they are decayed are removed
+	 */
+	public SparseEligibilityTraces(double minTrace){
+		this.minTrace = minTrace;
+	}
+
+
+	/**
+	 * Returns the minimum magnitude of a trace below which it is removed when it is decayed.
+	 * @return the minimum magnitude of a trace
+	 */
+	public double getMinTrace(){
+		return this.minTrace;
+	}
+
+
+	/**
+	 * Sets the minimum magnitude of a trace below which it is removed when it is decayed.
+	 * @param minTrace the minimum magnitude of a trace
+	 */
+	public void setMinTrace(double minTrace){
+		this.minTrace = minTrace;
+	}
+
+
+	/**
+	 * Returns the number of traces.
+	 * @return the number of traces
+	 */
+	public int size(){
+		return this.size;
+	}
+
+
+	/**
+	 * Returns the key of the trace at a dense index.
+	 * @param i the dense index of the trace
+	 * @return the key of the trace
+	 */
+	public int getKey(int i){
+		return this.keys[i];
+	}
+
+
+	/**
+	 * Returns the value of the trace at a dense index.
+	 * @param i the dense index of the trace
+	 * @return the value of the trace
+	 */
+	public double getTrace(int i){
+		return this.traces[i];
+	}
+
+
+	/**
+	 * Sets the value of the trace at a dense index.
+	 * @param i the dense index of the trace
+	 * @param e the new value of the trace
+	 */
+	public void setTrace(int i, double e){
+		this.traces[i] = e;
+	}
+
+
+	/**
+	 * Returns the value of the traced parameter when the trace at a dense index was added.
+	 * @param i the dense index of the trace
+	 * @return the value of the traced parameter when the trace was added
+	 */
+	public double getInitialValue(int i){
+		return this.initialValues[i];
+	}
+
+
+	/**
+	 * Returns the item held by the trace at a dense index.
+	 * @param i the dense index of the trace
+	 * @return the item held by the trace
+	 */
+	@SuppressWarnings("unchecked")
+	public T getItem(int i){
+		return (T)this.items[i];
+	}
+
+
+	/**
+	 * Returns the dense index of the trace with a key.
+	 * @param key the key of the trace
+	 * @return the dense index of the trace, or -1 if there is no trace with the key
+	 */
+	public int indexOf(int key){
+		int mask = this.slots.length - 1;
+		for(int s = hash(key) & mask; ; s = (s + 1) & mask){
+			int p = this.slots[s];
+			if(p == 0){
+				return -1;
+			}
+			if(this.keys[p-1] == key){
+				return p-1;
+			}
+		}
+	}
+
+
+	/**
+	 * Adds a trace for a key that does not have one.
+	 * @param key the key of the trace
+	 * @param item the item held by the trace
+	 * @param e the value of the trace
+	 * @param initialValue the current value of the traced parameter
+	 * @return the dense index of the new trace
+	 */
+	public int add(int key, T item, double e, double initialValue){
+
+		if(this.size == this.keys.length){
+			int n = 2*this.keys.length;
+			this.keys = Arrays.copyOf(this.keys, n);
+			this.traces = Arrays.copyOf(this.traces, n);
+			this.initialValues = Arrays.copyOf(this.initialValues, n);
+			this.items = Arrays.copyOf(this.items, n);
+		}
+		if(2*(this.size+1) > this.slots.length){
+			this.rehash(2*this.slots.length);
+		}
+
+		int i = this.size;
+		this.keys[i] = key;
+		this.traces[i] = e;
+		this.initialValues[i] = initialValue;
+		this.items[i] = item;
+		this.size++;
+
+		int mask = this.slots.length - 1;
+		int s = hash(key) & mask;
+		while(this.slots[s] != 0){
+			s = (s + 1) & mask;
+		}
+		this.slots[s] = i+1;
+
+		return i;
+	}
+
+
+	/**
+	 * Removes the trace with a key if there is one.
+	 * @param key the key of the trace
+	 */
+	public void remove(int key){
+		int i = this.indexOf(key);
+		if(i != -1){
+			this.removeAt(i);
+		}
+	}
+
+
+	/**
+	 * Multiplies every trace by a factor and removes the traces whose magnitude becomes less than the minimum trace.
+	 * @param factor the factor by which the traces are multiplied
+	 */
+	public void decay(double factor){
+		for(int i = this.size-1; i >= 0; i--){
+			this.traces[i] *= factor;
+			if(Math.abs(this.traces[i]) < this.minTrace){
+				this.removeAt(i);
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all traces.
+	 */
+	public void clear(){
+		Arrays.fill(this.slots, 0);
+		Arrays.fill(this.items, 0, this.size, null);
+		this.size = 0;
+	}
+
+
+	/**
+	 * Removes the trace at a dense index by moving the last trace into its place.
+	 * @param i the dense index of the trace
+	 */
+	protected void removeAt(int i){
+
+		this.deleteSlot(this.slotOf(i));
+
+		int last = this.size-1;
+		if(i != last){
+			this.keys[i] = this.keys[last];
+			this.traces[i] = this.traces[last];
+			this.initialValues[i] = this.initialValues[last];
+			this.items[i] = this.items[last];
+			this.slots[this.slotOf(last)] = i+1;
+		}
+		this.items[last] = null;
+		this.size--;
+
+	}
+
+
+	/**
+	 * Returns the hash table slot that points to the trace at a dense index.
+	 * @param i the dense index of the trace
+	 * @return the slot that points to the trace
+	 */
+	protected int slotOf(int i){
+		int mask = this.slots.length - 1;
+		int s = hash(this.keys[i]) & mask;
+		while(this.slots[s] != i+1){
+			s = (s + 1) & mask;
+		}
+		return s;
+	}
+
+
+	/**
+	 * Empties a hash table slot and shifts back any later slots of its probe sequence that would otherwise become unreachable.
+	 * @param hole the slot to empty
+	 */
+	protected void deleteSlot(int hole){
+		int mask = this.slots.length - 1;
+		int s = hole;
+		while(true){
+			s = (s + 1) & mask;
+			int p = this.slots[s];
+			if(p == 0){
+				break;
+			}
+			int home = hash(this.keys[p-1]) & mask;
+			boolean movable = s > hole ? (home <= hole || home > s) : (home <= hole && home > s);
+			if(movable){
+				this.slots[hole] = p;
+				hole = s;
+			}
+		}
+		this.slots[hole] = 0;
+	}
+
+
+	/**
+	 * Rebuilds the hash table with a new number of slots.
+	 * @param numSlots the new number of slots, which must be a power of two
+	 */
+	protected void rehash(int numSlots){
+		this.slots = new int[numSlots];
+		int mask = numSlots - 1;
+		for(int i = 0; i < this.size; i++){
+			int s = hash(this.keys[i]) & mask;
+			while(this.slots[s] != 0){
+				s = (s + 1) & mask;
+			}
+			this.slots[s] = i+1;
+		}
+	}
+
+
+	/**
+	 * Spreads the bits of a key so that consecutive keys do not fill consecutive slots.
+	 * @param key the key
+	 * @return the hash of the key
+	 */
+	protected static int hash(int key){
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
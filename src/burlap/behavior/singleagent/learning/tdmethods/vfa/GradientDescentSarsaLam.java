@@ -1,12 +1,8 @@
 package burlap.behavior.singleagent.learning.tdmethods.vfa;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import burlap.behavior.learningrate.ConstantLR;
 import burlap.behavior.learningrate.LearningRate;
@@ -14,6 +10,8 @@ import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.learning.LearningAgent;
+import burlap.behavior.singleagent.learning.tdmethods.SparseEligibilityTraces;
+import burlap.behavior.singleagent.learning.tdmethods.SparseEligibilityTraces.TraceType;
 import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
@@ -102,7 +100,7 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 	protected boolean												useFeatureWiseLearningRate = true;
 	
 	/**
-	 * The minimum eligibility value of a trace that will cause it to be updated
+	 * The minimum eligibility magnitude of a trace that will cause it to be updated; traces that decay below it are dropped
 	 */
 	protected double												minEligibityForUpdate = 0.01;
 	
@@ -119,9 +117,9 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 	
 	
 	/**
-	 * Whether to use accumulating or replacing eligibility traces.
+	 * The way the traces of the weights of the selected action are set on each step. The default is {@link TraceType#ACCUMULATING}.
 	 */
-	protected boolean												useReplacingTraces = false;
+	protected TraceType												traceType = TraceType.ACCUMULATING;
 	
 	/**
 	 * Whether options should be decomposed into actions in the returned {@link burlap.behavior.singleagent.EpisodeAnalysis} objects.
@@ -306,7 +304,28 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 	 * @param toggle
 	 */
 	public void setUseReplaceTraces(boolean toggle){
-		this.useReplacingTraces = toggle;
+		this.traceType = toggle ? TraceType.REPLACING : TraceType.ACCUMULATING;
+	}
+	
+	
+	/**
+	 * Sets the way the traces of the weights of the selected action are set on each step. With accumulating traces, which are the default,
+	 * the gradient is added to the traces; with replacing traces the traces are set to the gradient and the traces of the weights of the unselected
+	 * actions are dropped; with dutch traces each trace e is set to e + (1 - alpha * e^T g) g, where g is the gradient.
+	 * @param traceType the type of eligibility traces to use
+	 */
+	public void setTraceType(TraceType traceType){
+		this.traceType = traceType;
+	}
+	
+	
+	/**
+	 * Sets the magnitude below which a decayed trace is dropped for the rest of the episode, which bounds the number of weights updated on each step.
+	 * The default is 0.01.
+	 * @param minimumTrace the magnitude below which a trace is dropped
+	 */
+	public void setMinimumTrace(double minimumTrace){
+		this.minEligibityForUpdate = minimumTrace;
 	}
 	
 	
@@ -359,7 +378,7 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 		
 		State curState = initialState;
 		eStepCounter = 0;
-		Map <Integer, EligibilityTraceVector> traces = new HashMap<Integer, GradientDescentSarsaLam.EligibilityTraceVector>();
+		SparseEligibilityTraces<FunctionWeight> traces = new SparseEligibilityTraces<FunctionWeight>(this.minEligibityForUpdate);
 		
 		GroundedAction action = (GroundedAction)this.learningPolicy.getAction(curState);
 		List<ActionApproximationResult> allCurApproxResults = this.getAllActionApproximations(curState);
@@ -407,22 +426,14 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 			double delta = r + (discount * nextQV) - curApprox.approximationResult.predictedValue;
 			
 			
-			if(useReplacingTraces){
-				//then first clear traces of unselected action and reset the trace for the selected one
+			if(this.traceType == TraceType.REPLACING){
+				//then first clear traces of unselected actions; the traces of the selected action are replaced when they are visited
 				for(ActionApproximationResult aar : allCurApproxResults){
-					if(!aar.ga.equals(action)){ //clear unselected action trace
+					if(!aar.ga.equals(action)){
 						for(FunctionWeight fw : aar.approximationResult.functionWeights){
 							traces.remove(fw.weightId());
 						}
 					}
-					else{ //reset trace of selected action
-						for(FunctionWeight fw : aar.approximationResult.functionWeights){
-							EligibilityTraceVector storedTrace = traces.get(fw.weightId());
-							if(storedTrace != null){
-								storedTrace.eligibilityValue = 0.;
-							}
-						}
-					}
 				}
 			}
 			
@@ -433,65 +444,62 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 			}
 			
 			
-			//update all traces
-			Set <Integer> deletedSet = new HashSet<Integer>();
-			for(EligibilityTraceVector et : traces.values()){
-				
-				int weightId = et.weight.weightId();
-				if(this.useFeatureWiseLearningRate){
-					learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.weight.weightId());
+			//dutch traces are corrected by the dot product of the traces and the gradient
+			double traceDotGradient = 0.;
+			if(this.traceType == TraceType.DUTCH){
+				for(FunctionWeight fw : curApprox.approximationResult.functionWeights){
+					int i = traces.indexOf(fw.weightId());
+					if(i != -1){
+						traceDotGradient += traces.getTrace(i) * gradient.getPartialDerivative(fw.weightId());
+					}
 				}
+			}
+			
+			
+			//visit the weights of the selected action
+			for(FunctionWeight fw : curApprox.approximationResult.functionWeights){
 				
+				int weightId = fw.weightId();
+				int i = traces.indexOf(weightId);
+				double e = i != -1 ? traces.getTrace(i) : 0.;
 				
-				et.eligibilityValue += gradient.getPartialDerivative(weightId);
-				double newWeight = et.weight.weightValue() + learningRate*delta*et.eligibilityValue;
-				et.weight.setWeight(newWeight);
-				
-				double deltaW = Math.abs(et.initialWeightValue - newWeight);
-				if(deltaW > maxWeightChangeInLastEpisode){
-					maxWeightChangeInLastEpisode = deltaW;
+				double dutchCorrection = 0.;
+				if(this.traceType == TraceType.DUTCH){
+					double alpha = this.useFeatureWiseLearningRate ? this.learningRate.peekAtLearningRate(weightId) : learningRate;
+					dutchCorrection = alpha * traceDotGradient;
 				}
 				
-				et.eligibilityValue *= this.lambda*discount;
-				if(et.eligibilityValue < this.minEligibityForUpdate){
-					deletedSet.add(weightId);
+				e = SparseEligibilityTraces.visitedTrace(this.traceType, e, gradient.getPartialDerivative(weightId), dutchCorrection);
+				if(i != -1){
+					traces.setTrace(i, e);
+				}
+				else{
+					traces.add(weightId, fw, e, fw.weightValue());
 				}
 				
 			}
 			
-			//add new traces if need be
-			for(FunctionWeight fw : curApprox.approximationResult.functionWeights){
+			
+			//update all traced weights
+			for(int i = 0; i < traces.size(); i++){
 				
-				int weightId = fw.weightId();
-				if(!traces.containsKey(fw)){
-					
-					//then it's new and we need to add it
-					if(this.useFeatureWiseLearningRate){
-						learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, weightId);
-					}
-					
-					EligibilityTraceVector et = new EligibilityTraceVector(fw, gradient.getPartialDerivative(weightId));
-					double newWeight = fw.weightValue() + learningRate*delta*et.eligibilityValue;
-					fw.setWeight(newWeight);
-					
-					double deltaW = Math.abs(et.initialWeightValue - newWeight);
-					if(deltaW > maxWeightChangeInLastEpisode){
-						maxWeightChangeInLastEpisode = deltaW;
-					}
-					
-					et.eligibilityValue *= this.lambda*discount;
-					if(et.eligibilityValue >= this.minEligibityForUpdate){
-						traces.put(weightId, et);
-					}
-					
+				FunctionWeight fw = traces.getItem(i);
+				if(this.useFeatureWiseLearningRate){
+					learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, fw.weightId());
+				}
+				
+				double newWeight = fw.weightValue() + learningRate*delta*traces.getTrace(i);
+				fw.setWeight(newWeight);
+				
+				double deltaW = Math.abs(traces.getInitialValue(i) - newWeight);
+				if(deltaW > maxWeightChangeInLastEpisode){
+					maxWeightChangeInLastEpisode = deltaW;
 				}
 				
 			}
 			
-			//delete any traces
-			for(Integer t : deletedSet){
-				traces.remove(t);
-			}
+			//decay traces and drop the ones that became negligible
+			traces.decay(this.lambda*discount);
 			
 			
 			//move on
@@ -623,8 +631,10 @@ public class GradientDescentSarsaLam extends OOMDPPlanner implements QComputable
 	/**
 	 * An object for keeping track of the eligibility traces within an episode for each VFA weight
 	 * @author James MacGlashan
+	 * @deprecated traces are now kept in a {@link SparseEligibilityTraces} keyed by weight id; this class is no longer used by {@link GradientDescentSarsaLam}.
 	 *
 	 */
+	@Deprecated
 	public static class EligibilityTraceVector{
 		
 		/**
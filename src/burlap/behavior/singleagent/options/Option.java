@@ -176,6 +176,11 @@ public abstract class Option extends Action {
 	 */
 	protected double												expectationSearchCutoffProb = 0.001;
 	
+	/**
+	 * The precompiled transition dynamics and expected rewards of this option; null if they are computed on demand
+	 */
+	protected OptionModelTable										compiledModel;
+	
 	
 	/**
 	 * An option state mapping to use to map from a source MDP state representation to a representation that this option will use
@@ -321,6 +326,26 @@ public abstract class Option extends Action {
 	}
 	
 	
+	/**
+	 * Sets a table of precompiled transition dynamics and expected rewards that this option will use for the initiation states it contains instead of
+	 * computing them on demand. The table must have been compiled with the same reward function and discount factor that this option is
+	 * tracking; see {@link OptionModelCompiler}.
+	 * @param compiledModel the precompiled option model table, or null to compute all transition dynamics on demand
+	 */
+	public void setCompiledModel(OptionModelTable compiledModel){
+		this.compiledModel = compiledModel;
+	}
+	
+	
+	/**
+	 * Returns the table of precompiled transition dynamics and expected rewards that this option uses.
+	 * @return the table of precompiled transition dynamics and expected rewards; null if there is none
+	 */
+	public OptionModelTable getCompiledModel(){
+		return this.compiledModel;
+	}
+	
+	
 	/**
 	 * Sets the minimum probability of reaching a terminal state for it to be included in the options computed transition dynamics distribution.
 	 * @param cutoff the minimum probability of reaching a terminal state for it to be included in the options computed transition dynamics distribution.
@@ -583,6 +608,12 @@ public abstract class Option extends Action {
 	 * @return the expected reward to be received from initiating this option from state s.
 	 */
 	public double getExpectedRewards(State s, String [] params){
+		if(this.compiledModel != null){
+			int id = this.compiledModel.getInitiationStateId(s);
+			if(id != -1){
+				return this.compiledModel.getExpectedReward(id);
+			}
+		}
 		StateHashTuple sh = this.expectationStateHashingFactory.hashState(s);
 		Double result = this.cachedExpectedRewards.get(sh);
 		if(result != null){
@@ -596,6 +627,13 @@ public abstract class Option extends Action {
 	@Override
 	public List<TransitionProbability> getTransitions(State st, String [] params){
 		
+		if(this.compiledModel != null){
+			int id = this.compiledModel.getInitiationStateId(st);
+			if(id != -1){
+				return this.compiledModel.getTransitions(id);
+			}
+		}
+		
 		StateHashTuple sh = this.expectationStateHashingFactory.hashState(st);
 		
 		List <TransitionProbability> result = this.cachedExpectations.get(sh);
@@ -603,26 +641,43 @@ public abstract class Option extends Action {
 			return result;
 		}
 		
+		double [] expectedReturn = new double[]{0.};
+		List <TransitionProbability> transition = this.computeTransitions(st, params, expectedReturn);
+		
+		this.cachedExpectedRewards.put(sh, expectedReturn[0]);
+		this.cachedExpectations.put(sh, transition);
+		
+		//State res = this.performAction(st, params);
+		//transition.add(new TransitionProbability(res, 1.0));
+		
+		return transition;
+	}
+	
+	
+
+	/**
+	 * Computes the transition dynamics of this option from an initiation state by enumerating its possible paths of execution, without caching them.
+	 * The returned {@link TransitionProbability} objects hold the discounted probabilities of the termination states.
+	 * @param st the state in which the option is initiated
+	 * @param params the parameters that were passed to the option at initiation
+	 * @param expectedReturn an array of length 1 in which the expected discounted cumulative reward of the option is returned
+	 * @return the transition dynamics of this option from the initiation state
+	 */
+	public List<TransitionProbability> computeTransitions(State st, String [] params, double [] expectedReturn){
+		
 		this.initiateInState(st, params);
 		
 		ExpectationSearchNode esn = new ExpectationSearchNode(st, params);
 		Map <StateHashTuple, Double> possibleTerminations = new HashMap<StateHashTuple, Double>();
-		double [] expectedReturn = new double[]{0.};
+		expectedReturn[0] = 0.;
 		this.iterateExpectationScan(esn, 1., possibleTerminations, expectedReturn);
 		
-		this.cachedExpectedRewards.put(sh, expectedReturn[0]);
-		
-		List <TransitionProbability> transition = new ArrayList<TransitionProbability>();
+		List <TransitionProbability> transition = new ArrayList<TransitionProbability>(possibleTerminations.size());
 		for(Map.Entry<StateHashTuple, Double> e : possibleTerminations.entrySet()){
 			TransitionProbability tp = new TransitionProbability(e.getKey().s, e.getValue());
 			transition.add(tp);
 		}
 		
-		this.cachedExpectations.put(sh, transition);
-		
-		//State res = this.performAction(st, params);
-		//transition.add(new TransitionProbability(res, 1.0));
-		
 		return transition;
 	}
 	
@@ -0,0 +1,301 @@
+package burlap.behavior.singleagent.options;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import burlap.behavior.singleagent.auxiliary.StateReachability;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.core.TransitionProbability;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
+
+
+/**
+ * Precompiles the multi-time models of a set of {@link Option}s for a set of initiation states, so that planners that use the full transition dynamics,
+ * such as value iteration, do not have to enumerate the executions of an option the first time they query its transitions from each state. The
+ * initiation states are either given or found with {@link StateReachability}, and the model of each option is stored in an {@link OptionModelTable}
+ * that is installed in the option with {@link Option#setCompiledModel(OptionModelTable)}.
+ * <p/>
+ * With more than one thread, the initiation states of each Markov option are split into chunks whose models are computed as parallel tasks, so the
+ * policies, termination conditions, and reward function of Markov options must be safe to query concurrently. Non-Markov options, such as
+ * {@link MacroAction}s, keep execution state in the option object, so their models are always computed serially in the calling thread.
+ * <p/>
+ * The models hold discounted probabilities and rewards, so they are only valid for the reward function and discount factor they were compiled with;
+ * the planner that uses the options must use the same ones. Only options without parameters can be compiled, since option models are indexed
+ * by their initiation state alone.
+ * @author James MacGlashan
+ *
+ */
+public class OptionModelCompiler {
+
+	/**
+	 * The options whose models are compiled
+	 */
+	protected List<Option>				options;
+
+	/**
+	 * The reward function the option models are compiled for
+	 */
+	protected RewardFunction			rf;
+
+	/**
+	 * The discount factor the option models are compiled for
+	 */
+	protected double					gamma;
+
+	/**
+	 * The hashing factory used to index the states of the option models
+	 */
+	protected StateHashFactory			hashingFactory;
+
+	/**
+	 * The number of threads that compile the models of Markov options. The default is 1.
+	 */
+	protected int						numThreads = 1;
+
+	/**
+	 * The number of chunks into which the initiation states are split per thread, which balances the work of options whose executions vary in length.
+	 */
+	protected int						chunksPerThread = 4;
+
+	/**
+	 * The debug code used for printing compilation results
+	 */
+	protected int						debugCode = 7328641;
+
+
+	/**
+	 * Initializes.
+	 * @param options the options whose models are compiled
+	 * @param rf the reward function of the planning problem in which the options will be used
+	 * @param gamma the discount factor of the planning problem in which the options will be used
+	 * @param hashingFactory the hashing factory used to index the states of the option models
+	 */
+	public OptionModelCompiler(List<Option> options, RewardFunction rf, double gamma, StateHashFactory hashingFactory){
+		this.options = new ArrayList<Option>(options);
+		this.rf = rf;
+		this.gamma = gamma;
+		this.hashingFactory = hashingFactory;
+		for(Option o : this.options){
+			if(o.getParameterClasses().length > 0){
+				throw new RuntimeException("Option " + o.getName() + " cannot be compiled because it has parameters; option models are indexed by their initiation state alone.");
+			}
+		}
+	}
+
+
+	/**
+	 * Sets the number of threads that compile the models of Markov options.
+	 * @param numThreads the number of threads that compile the models of Markov options
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Returns the debug code used for printing compilation results with {@link DPrint}.
+	 * @return the debug code used for printing compilation results
+	 */
+	public int getDebugCode(){
+		return this.debugCode;
+	}
+
+
+	/**
+	 * Sets the debug code used for printing compilation results with {@link DPrint}.
+	 * @param debugCode the debug code to use
+	 */
+	public void setDebugCode(int debugCode){
+		this.debugCode = debugCode;
+	}
+
+
+	/**
+	 * Compiles the models of the options for all non-terminal states that are reachable from a source state with the primitive actions of the domain
+	 * and installs them in the options.
+	 * @param from the source state
+	 * @param domain the domain of the primitive actions
+	 * @param tf the terminal function; terminal states are neither expanded nor compiled as initiation states
+	 */
+	public void compileReachable(State from, SADomain domain, TerminalFunction tf){
+		List<State> reachable = StateReachability.getReachableStates(from, domain, this.hashingFactory, tf);
+		List<State> initiationStates = new ArrayList<State>(reachable.size());
+		for(State s : reachable){
+			if(!tf.isTerminal(s)){
+				initiationStates.add(s);
+			}
+		}
+		this.compile(initiationStates);
+	}
+
+
+	/**
+	 * Compiles the models of the options for the given initiation states in which they are applicable and installs them in the options, replacing
+	 * any models the options had.
+	 * @param initiationStates the initiation states for which the option models are compiled
+	 */
+	public void compile(Collection<State> initiationStates){
+
+		long start = System.currentTimeMillis();
+		List<State> states = new ArrayList<State>(initiationStates);
+
+		ExecutorService executor = null;
+		if(this.numThreads > 1){
+			executor = Executors.newFixedThreadPool(this.numThreads);
+		}
+
+		try{
+			for(Option o : this.options){
+				o.keepTrackOfRewardWith(this.rf, this.gamma);
+				if(o.expectationStateHashingFactory == null){
+					o.setExpectationHashingFactory(this.hashingFactory);
+				}
+
+				List<State> applicable = new ArrayList<State>(states.size());
+				for(State s : states){
+					if(o.applicableInState(s, new String[0])){
+						applicable.add(s);
+					}
+				}
+
+				OptionModelTable table;
+				if(executor != null && o.isMarkov()){
+					table = this.compileInParallel(o, applicable, executor);
+				}
+				else{
+					table = new OptionModelTable(this.hashingFactory);
+					CompiledChunk chunk = this.compileChunk(o, applicable, 0, applicable.size());
+					chunk.addTo(table, applicable);
+				}
+				o.setCompiledModel(table);
+
+				DPrint.cl(this.debugCode, "Compiled " + applicable.size() + " initiation states of option " + o.getName() + " with " + table.numStates() + " distinct states.");
+			}
+		} finally{
+			if(executor != null){
+				executor.shutdown();
+			}
+		}
+
+		DPrint.cl(this.debugCode, "Compiled " + this.options.size() + " option models in " + (System.currentTimeMillis() - start) + "ms.");
+
+	}
+
+
+	/**
+	 * Computes the models of an option for chunks of its initiation states as parallel tasks and adds them to a table in the order of the states.
+	 * @param o the option
+	 * @param states the initiation states in which the option is applicable
+	 * @param executor the executor that runs the tasks
+	 * @return the table of the option's models
+	 */
+	protected OptionModelTable compileInParallel(final Option o, final List<State> states, ExecutorService executor){
+
+		int numChunks = Math.max(1, Math.min(states.size(), this.numThreads * this.chunksPerThread));
+		List<Callable<CompiledChunk>> tasks = new ArrayList<Callable<CompiledChunk>>(numChunks);
+		for(int i = 0; i < numChunks; i++){
+			final int lo = (int)((long)states.size() * i / numChunks);
+			final int hi = (int)((long)states.size() * (i+1) / numChunks);
+			tasks.add(new Callable<CompiledChunk>() {
+
+				@Override
+				public CompiledChunk call(){
+					return compileChunk(o, states, lo, hi);
+				}
+			});
+		}
+
+		OptionModelTable table = new OptionModelTable(this.hashingFactory);
+		try{
+			for(Future<CompiledChunk> result : executor.invokeAll(tasks)){
+				result.get().addTo(table, states);
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Option model compilation was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("Option model compilation failed for option " + o.getName() + ".", e.getCause());
+		}
+
+		return table;
+
+	}
+
+
+	/**
+	 * Computes the models of an option for a range of initiation states.
+	 * @param o the option
+	 * @param states the initiation states
+	 * @param lo the index of the first initiation state of the range
+	 * @param hi one past the index of the last initiation state of the range
+	 * @return the models of the option for the range of initiation states
+	 */
+	protected CompiledChunk compileChunk(Option o, List<State> states, int lo, int hi){
+		CompiledChunk chunk = new CompiledChunk(lo, hi);
+		double [] expectedReturn = new double[1];
+		for(int i = lo; i < hi; i++){
+			chunk.transitions.add(o.computeTransitions(states.get(i), new String[0], expectedReturn));
+			chunk.expectedRewards[i-lo] = expectedReturn[0];
+		}
+		return chunk;
+	}
+
+
+	/**
+	 * The models of an option for a range of initiation states, computed by one task.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class CompiledChunk{
+
+		/**
+		 * The index of the first initiation state of the range
+		 */
+		public int									lo;
+
+		/**
+		 * The transition dynamics from each initiation state of the range
+		 */
+		public List<List<TransitionProbability>>	transitions;
+
+		/**
+		 * The expected discounted reward from each initiation state of the range
+		 */
+		public double []							expectedRewards;
+
+
+		/**
+		 * Initializes an empty chunk for a range of initiation states.
+		 * @param lo the index of the first initiation state of the range
+		 * @param hi one past the index of the last initiation state of the range
+		 */
+		public CompiledChunk(int lo, int hi){
+			this.lo = lo;
+			this.transitions = new ArrayList<List<TransitionProbability>>(hi-lo);
+			this.expectedRewards = new double[hi-lo];
+		}
+
+
+		/**
+		 * Adds the models of this chunk to a table.
+		 * @param table the table to which the models are added
+		 * @param states the initiation states indexed by the range of this chunk
+		 */
+		public void addTo(OptionModelTable table, List<State> states){
+			for(int i = 0; i < this.transitions.size(); i++){
+				table.addModel(states.get(this.lo + i), this.transitions.get(i), this.expectedRewards[i]);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,194 @@
+package burlap.behavior.singleagent.options;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TransitionProbability;
+
+
+/**
+ * A compact table of the precompiled multi-time models of an {@link Option}: for each compiled initiation state, the discounted probabilities of its
+ * termination states and its expected discounted reward. The initiation and termination states are indexed by integer ids and the model of each initiation
+ * state is stored in primitive arrays of termination state ids and probabilities, so the table holds one state object per distinct state rather than
+ * one {@link TransitionProbability} list per initiation state. Tables are built by an {@link OptionModelCompiler} and are not modified after they are
+ * installed in an option, so they may be read by several threads.
+ * @author James MacGlashan
+ *
+ */
+public class OptionModelTable {
+
+	/**
+	 * The hashing factory used to index states
+	 */
+	protected StateHashFactory					hashingFactory;
+
+	/**
+	 * The id of each indexed state
+	 */
+	protected Map<StateHashTuple, Integer>		stateIds = new HashMap<StateHashTuple, Integer>();
+
+	/**
+	 * The indexed states by id
+	 */
+	protected List<State>						states = new ArrayList<State>();
+
+	/**
+	 * The ids of the termination states of each state; null for states whose model was not compiled
+	 */
+	protected List<int []>						terminationStates = new ArrayList<int[]>();
+
+	/**
+	 * The discounted probabilities of the termination states of each state; null for states whose model was not compiled
+	 */
+	protected List<double []>					terminationProbabilities = new ArrayList<double[]>();
+
+	/**
+	 * The expected discounted reward of each state; NaN for states whose model was not compiled
+	 */
+	protected double []							expectedRewards = new double[16];
+
+
+	/**
+	 * Initializes an empty table.
+	 * @param hashingFactory the hashing factory used to index states
+	 */
+	public OptionModelTable(StateHashFactory hashingFactory){
+		this.hashingFactory = hashingFactory;
+	}
+
+
+	/**
+	 * Returns the number of initiation and termination states in the table.
+	 * @return the number of initiation and termination states in the table
+	 */
+	public int numStates(){
+		return this.states.size();
+	}
+
+
+	/**
+	 * Returns the id of the given state if its model was compiled.
+	 * @param s the initiation state
+	 * @return the id of the state if its model was compiled; -1 otherwise.
+	 */
+	public int getInitiationStateId(State s){
+		Integer id = this.stateIds.get(this.hashingFactory.hashState(s));
+		if(id == null || this.terminationStates.get(id) == null){
+			return -1;
+		}
+		return id;
+	}
+
+
+	/**
+	 * Returns the state with the given id.
+	 * @param id the id of the state
+	 * @return the state with the given id
+	 */
+	public State getState(int id){
+		return this.states.get(id);
+	}
+
+
+	/**
+	 * Returns the ids of the termination states of the compiled initiation state with the given id.
+	 * @param id the id of the initiation state
+	 * @return the ids of the termination states
+	 */
+	public int [] getTerminationStateIds(int id){
+		return this.terminationStates.get(id);
+	}
+
+
+	/**
+	 * Returns the discounted probabilities of the termination states of the compiled initiation state with the given id, in the order
+	 * of {@link #getTerminationStateIds(int)}.
+	 * @param id the id of the initiation state
+	 * @return the discounted probabilities of the termination states
+	 */
+	public double [] getTerminationProbabilities(int id){
+		return this.terminationProbabilities.get(id);
+	}
+
+
+	/**
+	 * Returns the expected discounted reward of the option from the compiled initiation state with the given id.
+	 * @param id the id of the initiation state
+	 * @return the expected discounted reward of the option
+	 */
+	public double getExpectedReward(int id){
+		return this.expectedRewards[id];
+	}
+
+
+	/**
+	 * Returns the transition dynamics of the option from the compiled initiation state with the given id as a new list of {@link TransitionProbability}
+	 * objects holding the discounted probabilities of the termination states.
+	 * @param id the id of the initiation state
+	 * @return the transition dynamics of the option from the initiation state
+	 */
+	public List<TransitionProbability> getTransitions(int id){
+		int [] terminations = this.terminationStates.get(id);
+		double [] probabilities = this.terminationProbabilities.get(id);
+		List<TransitionProbability> transitions = new ArrayList<TransitionProbability>(terminations.length);
+		for(int i = 0; i < terminations.length; i++){
+			transitions.add(new TransitionProbability(this.states.get(terminations[i]), probabilities[i]));
+		}
+		return transitions;
+	}
+
+
+	/**
+	 * Adds the compiled model of an initiation state to the table, replacing any previous model of the state.
+	 * @param s the initiation state
+	 * @param transitions the transition dynamics of the option from the initiation state, holding discounted probabilities
+	 * @param expectedReward the expected discounted reward of the option from the initiation state
+	 */
+	public void addModel(State s, List<TransitionProbability> transitions, double expectedReward){
+		int id = this.indexState(s);
+		int [] terminations = new int[transitions.size()];
+		double [] probabilities = new double[transitions.size()];
+		for(int i = 0; i < terminations.length; i++){
+			TransitionProbability tp = transitions.get(i);
+			terminations[i] = this.indexState(tp.s);
+			probabilities[i] = tp.p;
+		}
+		this.terminationStates.set(id, terminations);
+		this.terminationProbabilities.set(id, probabilities);
+		this.expectedRewards[id] = expectedReward;
+	}
+
+
+	/**
+	 * Returns the id of a state, indexing it if it is not already indexed.
+	 * @param s the state
+	 * @return the id of the state
+	 */
+	protected int indexState(State s){
+		StateHashTuple sh = this.hashingFactory.hashState(s);
+		Integer id = this.stateIds.get(sh);
+		if(id != null){
+			return id;
+		}
+
+		int newId = this.states.size();
+		this.stateIds.put(sh, newId);
+		this.states.add(s);
+		this.terminationStates.add(null);
+		this.terminationProbabilities.add(null);
+		if(newId == this.expectedRewards.length){
+			double [] expanded = new double[2*newId];
+			System.arraycopy(this.expectedRewards, 0, expanded, 0, newId);
+			this.expectedRewards = expanded;
+		}
+		this.expectedRewards[newId] = Double.NaN;
+
+		return newId;
+	}
+
+}
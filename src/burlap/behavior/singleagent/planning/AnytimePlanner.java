@@ -0,0 +1,24 @@
+package burlap.behavior.singleagent.planning;
+
+import burlap.oomdp.core.State;
+
+
+/**
+ * An interface for planning classes that can stop planning when a {@link PlanningDeadline} expires and leave the best results found so far
+ * available, such as their current Q-value estimates. This allows a planner to be used in a control loop that must select an action within a
+ * fixed amount of time.
+ * @author James MacGlashan
+ *
+ */
+public interface AnytimePlanner {
+
+	/**
+	 * Plans from the input state until planning finishes as it would with {@link OOMDPPlanner#planFromState(State)} or until the deadline expires,
+	 * whichever comes first. The deadline is checked frequently enough that planning returns shortly after it expires; how shortly depends on the
+	 * planner, which documents the granularity of its checks.
+	 * @param initialState the initial state of the planning problem
+	 * @param deadline the deadline at which planning stops
+	 */
+	public void planFromState(State initialState, PlanningDeadline deadline);
+	
+}
@@ -0,0 +1,444 @@
+package burlap.behavior.singleagent.planning;
+
+import java.util.Arrays;
+
+import burlap.behavior.singleagent.auxiliary.StateIndex;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * An int-indexed representation of the cached transition dynamics of a tabular planner, stored in compressed sparse row (CSR) form.
+ * States are identified by their id in a {@link StateIndex}. Each applicable action of an expanded state is a row of the model;
+ * the rows of state s are the range [stateRowOffsets[s], stateRowOffsets[s+1]), and for each row the model stores its grounded action,
+ * its expected immediate reward, and the discount factor applied to successor values. The possible transitions of row r are the entries
+ * [rowEntryOffsets[r], rowEntryOffsets[r+1]) of the parallel columns (next state ids) and probabilities arrays. Bellman backups over
+ * this model are tight sweeps over primitive arrays against a double array value function indexed by state id and require no state hashing
+ * or object allocation.
+ * <p/>
+ * The first {@link #numExpandedStates()} ids are the states whose transitions were compiled into the model (or that are terminal).
+ * The remaining ids are states that are only reachable as successors (for instance, when reachability analysis was pruned); their values
+ * are never updated by a backup.
+ * <p/>
+ * The model is compatible with {@link burlap.behavior.singleagent.options.Option}s: for an option, the expected reward is the option's
+ * expected cumulative discounted reward and the transition probabilities are already discounted, so its discount factor is 1.
+ * <p/>
+ * Models are built by adding the expanded states in id order with {@link #addState(boolean)}, each followed by the rows of its
+ * actions with {@link #addActionTransitions(GroundedAction, double, double, int[], double[])}, and then calling {@link #trimToSize()}.
+ * @author James MacGlashan
+ *
+ */
+public class IndexedTransitionModel {
+
+	/**
+	 * The index of the states in this model
+	 */
+	protected StateIndex							stateIndex;
+
+	/**
+	 * The number of states whose transitions are defined by this model
+	 */
+	protected int									numExpandedStates;
+
+	/**
+	 * The number of action rows in this model
+	 */
+	protected int									numRows;
+
+	/**
+	 * The number of transition entries in this model
+	 */
+	protected int									numEntries;
+
+	/**
+	 * Whether each expanded state is a terminal state
+	 */
+	protected boolean []							terminal;
+
+	/**
+	 * The first row of each expanded state; the last element is the total number of rows
+	 */
+	protected int []								stateRowOffsets;
+
+	/**
+	 * The grounded action of each row
+	 */
+	protected GroundedAction []						rowActions;
+
+	/**
+	 * The expected immediate reward of each row
+	 */
+	protected double []								rowRewards;
+
+	/**
+	 * The discount factor applied to the successor values of each row
+	 */
+	protected double []								rowDiscounts;
+
+	/**
+	 * The first transition entry of each row; the last element is the total number of entries
+	 */
+	protected int []								rowEntryOffsets;
+
+	/**
+	 * The successor state id of each transition entry
+	 */
+	protected int []								columns;
+
+	/**
+	 * The probability of each transition entry
+	 */
+	protected double []								probabilities;
+
+
+	/**
+	 * Initializes an empty model.
+	 * @param stateIndex the index of the states in this model
+	 * @param expectedStates the number of expanded states expected to be added, used to size the arrays
+	 */
+	public IndexedTransitionModel(StateIndex stateIndex, int expectedStates){
+		this.stateIndex = stateIndex;
+		int cap = Math.max(expectedStates, 1);
+		this.terminal = new boolean[cap];
+		this.stateRowOffsets = new int[cap+1];
+		this.rowActions = new GroundedAction[cap];
+		this.rowRewards = new double[cap];
+		this.rowDiscounts = new double[cap];
+		this.rowEntryOffsets = new int[cap+1];
+		this.columns = new int[cap];
+		this.probabilities = new double[cap];
+	}
+
+
+	/**
+	 * Adds the next expanded state to the model. States must be added in the order of their ids, and the rows of a state's actions
+	 * must be added after it and before the next state is added.
+	 * @param isTerminal whether the state is a terminal state
+	 * @return the id of the added state
+	 */
+	public int addState(boolean isTerminal){
+		int s = this.numExpandedStates;
+		if(s == this.terminal.length){
+			this.terminal = Arrays.copyOf(this.terminal, 2*s);
+			this.stateRowOffsets = Arrays.copyOf(this.stateRowOffsets, 2*s+1);
+		}
+		this.terminal[s] = isTerminal;
+		this.numExpandedStates++;
+		this.stateRowOffsets[s] = this.numRows;
+		this.stateRowOffsets[s+1] = this.numRows;
+		return s;
+	}
+
+
+	/**
+	 * Adds a row for an action of the last added state.
+	 * @param ga the grounded action that generates the transitions
+	 * @param expectedReward the expected immediate reward of the action
+	 * @param discount the discount factor applied to the successor values
+	 * @param next the id of each possible successor state
+	 * @param p the probability of each possible successor state
+	 */
+	public void addActionTransitions(GroundedAction ga, double expectedReward, double discount, int [] next, double [] p){
+
+		if(this.numExpandedStates == 0){
+			throw new RuntimeException("Cannot add action transitions to an indexed transition model before a state has been added.");
+		}
+
+		int r = this.numRows;
+		if(r == this.rowActions.length){
+			this.rowActions = Arrays.copyOf(this.rowActions, 2*r);
+			this.rowRewards = Arrays.copyOf(this.rowRewards, 2*r);
+			this.rowDiscounts = Arrays.copyOf(this.rowDiscounts, 2*r);
+			this.rowEntryOffsets = Arrays.copyOf(this.rowEntryOffsets, 2*r+1);
+		}
+		int needed = this.numEntries + next.length;
+		if(needed > this.columns.length){
+			int cap = Math.max(needed, 2*this.columns.length);
+			this.columns = Arrays.copyOf(this.columns, cap);
+			this.probabilities = Arrays.copyOf(this.probabilities, cap);
+		}
+
+		this.rowActions[r] = ga;
+		this.rowRewards[r] = expectedReward;
+		this.rowDiscounts[r] = discount;
+		this.rowEntryOffsets[r] = this.numEntries;
+		System.arraycopy(next, 0, this.columns, this.numEntries, next.length);
+		System.arraycopy(p, 0, this.probabilities, this.numEntries, p.length);
+		this.numEntries = needed;
+		this.rowEntryOffsets[r+1] = this.numEntries;
+
+		this.numRows++;
+		this.stateRowOffsets[this.numExpandedStates] = this.numRows;
+
+	}
+
+
+	/**
+	 * Shrinks the arrays of this model to the number of states, rows, and entries that have been added.
+	 */
+	public void trimToSize(){
+		int n = this.numExpandedStates;
+		this.terminal = Arrays.copyOf(this.terminal, n);
+		this.stateRowOffsets = Arrays.copyOf(this.stateRowOffsets, n+1);
+		this.rowActions = Arrays.copyOf(this.rowActions, this.numRows);
+		this.rowRewards = Arrays.copyOf(this.rowRewards, this.numRows);
+		this.rowDiscounts = Arrays.copyOf(this.rowDiscounts, this.numRows);
+		this.rowEntryOffsets = Arrays.copyOf(this.rowEntryOffsets, this.numRows+1);
+		this.columns = Arrays.copyOf(this.columns, this.numEntries);
+		this.probabilities = Arrays.copyOf(this.probabilities, this.numEntries);
+	}
+
+
+	/**
+	 * Returns the index of the states in this model.
+	 * @return the index of the states in this model.
+	 */
+	public StateIndex getStateIndex(){
+		return this.stateIndex;
+	}
+
+
+	/**
+	 * Returns the number of states referenced by this model, including successor states that were not expanded.
+	 * @return the number of states referenced by this model
+	 */
+	public int numStates(){
+		return this.stateIndex.size();
+	}
+
+
+	/**
+	 * Returns the number of states whose transitions are defined by this model. These states have ids 0 to this value (exclusive).
+	 * @return the number of states whose transitions are defined by this model
+	 */
+	public int numExpandedStates(){
+		return this.numExpandedStates;
+	}
+
+
+	/**
+	 * Returns the number of action rows in this model.
+	 * @return the number of action rows in this model.
+	 */
+	public int numRows(){
+		return this.numRows;
+	}
+
+
+	/**
+	 * Returns the number of transition entries in this model.
+	 * @return the number of transition entries in this model.
+	 */
+	public int numEntries(){
+		return this.numEntries;
+	}
+
+
+	/**
+	 * Returns whether the expanded state with the given id is a terminal state.
+	 * @param s the state id
+	 * @return true if the state is terminal; false otherwise.
+	 */
+	public boolean isTerminal(int s){
+		return this.terminal[s];
+	}
+
+
+	/**
+	 * Returns the number of actions applicable in the expanded state with the given id.
+	 * @param s the state id
+	 * @return the number of actions applicable in the state; 0 for terminal states.
+	 */
+	public int numActions(int s){
+		return this.stateRowOffsets[s+1] - this.stateRowOffsets[s];
+	}
+
+
+	/**
+	 * Returns the grounded action of an action of an expanded state.
+	 * @param s the state id
+	 * @param a the index of the action in the state
+	 * @return the grounded action
+	 */
+	public GroundedAction getAction(int s, int a){
+		return this.rowActions[this.stateRowOffsets[s] + a];
+	}
+
+
+	/**
+	 * Returns the first row of an expanded state. The rows of state s are the range [getFirstRow(s), getFirstRow(s) + numActions(s)).
+	 * @param s the state id
+	 * @return the first row of the state
+	 */
+	public int getFirstRow(int s){
+		return this.stateRowOffsets[s];
+	}
+
+
+	/**
+	 * Returns the grounded action of a row.
+	 * @param r the row
+	 * @return the grounded action of the row
+	 */
+	public GroundedAction getRowAction(int r){
+		return this.rowActions[r];
+	}
+
+
+	/**
+	 * Returns the expected immediate reward of a row.
+	 * @param r the row
+	 * @return the expected immediate reward of the row
+	 */
+	public double getRowReward(int r){
+		return this.rowRewards[r];
+	}
+
+
+	/**
+	 * Returns the discount factor applied to the successor values of a row.
+	 * @param r the row
+	 * @return the discount factor of the row
+	 */
+	public double getRowDiscount(int r){
+		return this.rowDiscounts[r];
+	}
+
+
+	/**
+	 * Returns the first transition entry of a row. The entries of row r are the range [getFirstEntry(r), getFirstEntry(r+1)).
+	 * @param r the row, or {@link #numRows()} for the total number of entries
+	 * @return the first transition entry of the row
+	 */
+	public int getFirstEntry(int r){
+		return this.rowEntryOffsets[r];
+	}
+
+
+	/**
+	 * Returns the successor state id of a transition entry.
+	 * @param e the transition entry
+	 * @return the successor state id
+	 */
+	public int getColumn(int e){
+		return this.columns[e];
+	}
+
+
+	/**
+	 * Returns the probability of a transition entry.
+	 * @param e the transition entry
+	 * @return the probability of the transition
+	 */
+	public double getProbability(int e){
+		return this.probabilities[e];
+	}
+
+
+	/**
+	 * Returns the Q-value of an action in an expanded state under the given value function.
+	 * @param s the state id
+	 * @param a the index of the action in the state
+	 * @param V the value function, indexed by state id
+	 * @return the Q-value
+	 */
+	public double q(int s, int a, double [] V){
+		return this.rowQ(this.stateRowOffsets[s] + a, V);
+	}
+
+
+	/**
+	 * Returns the Q-value of the given row under the given value function.
+	 * @param r the row
+	 * @param V the value function, indexed by state id
+	 * @return the Q-value
+	 */
+	public double rowQ(int r, double [] V){
+		double sum = 0.;
+		int end = this.rowEntryOffsets[r+1];
+		for(int e = this.rowEntryOffsets[r]; e < end; e++){
+			sum += this.probabilities[e] * V[this.columns[e]];
+		}
+		return this.rowRewards[r] + this.rowDiscounts[r] * sum;
+	}
+
+
+	/**
+	 * Returns the Bellman backup (max Q-value) of an expanded state under the given value function. Terminal states have
+	 * a value of 0.
+	 * @param s the state id
+	 * @param V the value function, indexed by state id
+	 * @return the backed up value of the state
+	 */
+	public double bellmanBackup(int s, double [] V){
+		if(this.terminal[s]){
+			return 0.;
+		}
+		double maxQ = Double.NEGATIVE_INFINITY;
+		int end = this.stateRowOffsets[s+1];
+		for(int r = this.stateRowOffsets[s]; r < end; r++){
+			double q = this.rowQ(r, V);
+			if(q > maxQ){
+				maxQ = q;
+			}
+		}
+		return maxQ;
+	}
+
+
+	/**
+	 * Returns the Bellman backup (max Q-value) of an expanded state for a block (chunked) Gauss-Seidel sweep, in which the values
+	 * of the states in the block [blockStart, blockEnd) are read from the block's working value function and all other values
+	 * are read from the value function of the previous sweep. Terminal states have a value of 0.
+	 * @param s the state id
+	 * @param blockV the working value function of the block, indexed by state id
+	 * @param V the value function of the previous sweep, indexed by state id
+	 * @param blockStart the first state id of the block
+	 * @param blockEnd the end state id (exclusive) of the block
+	 * @return the backed up value of the state
+	 */
+	public double bellmanBackup(int s, double [] blockV, double [] V, int blockStart, int blockEnd){
+		if(this.terminal[s]){
+			return 0.;
+		}
+		double maxQ = Double.NEGATIVE_INFINITY;
+		int end = this.stateRowOffsets[s+1];
+		for(int r = this.stateRowOffsets[s]; r < end; r++){
+			double sum = 0.;
+			int eEnd = this.rowEntryOffsets[r+1];
+			for(int e = this.rowEntryOffsets[r]; e < eEnd; e++){
+				int c = this.columns[e];
+				double v = c >= blockStart && c < blockEnd ? blockV[c] : V[c];
+				sum += this.probabilities[e] * v;
+			}
+			double q = this.rowRewards[r] + this.rowDiscounts[r] * sum;
+			if(q > maxQ){
+				maxQ = q;
+			}
+		}
+		return maxQ;
+	}
+
+
+	/**
+	 * Returns the fixed-policy Bellman backup of an expanded state under the given value function. Terminal states have a value of 0.
+	 * @param s the state id
+	 * @param actionProbs the probability of the policy selecting each action of the state, in the order of the state's actions
+	 * @param V the value function, indexed by state id
+	 * @return the backed up value of the state
+	 */
+	public double fixedPolicyBackup(int s, double [] actionProbs, double [] V){
+		if(this.terminal[s]){
+			return 0.;
+		}
+		int start = this.stateRowOffsets[s];
+		double weightedQ = 0.;
+		for(int a = 0; a < actionProbs.length; a++){
+			if(actionProbs[a] == 0.){
+				continue; //doesn't contribute
+			}
+			weightedQ += actionProbs[a] * this.rowQ(start + a, V);
+		}
+		return weightedQ;
+	}
+
+}
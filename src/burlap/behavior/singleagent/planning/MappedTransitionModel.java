@@ -0,0 +1,878 @@
+package burlap.behavior.singleagent.planning;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.singleagent.auxiliary.StateIndex;
+import burlap.behavior.statehashing.FingerprintStateHashFactory;
+import burlap.datastructures.MappedRegion;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * An {@link IndexedTransitionModel} whose transition CSR arrays are stored in a memory-mapped file rather than on the Java heap, so that the
+ * transition dynamics, which dominate the memory of a compiled model, are paged in and out by the operating system as they are swept. The file also
+ * holds a fingerprint table of the states and a copy of their values, so that a planned value function can be reopened without replanning.
+ * <p/>
+ * The model does not let a planner solve MDPs whose states do not fit in memory: while a model is built and planned with, the planner still keeps
+ * every state in the {@link StateIndex} of the model and in its own state map, and sweeps a value array on the heap that is only copied into the
+ * file by {@link #storeValues(double[])}. Only the transitions are moved off the heap.
+ * <p/>
+ * A model is written by adding states and action rows exactly as with an {@link IndexedTransitionModel}; the rows are streamed to temporary
+ * files next to the model file as they are added, so they are never held in memory. When {@link #trimToSize()} is called, the model file is assembled
+ * and memory-mapped. The state table stores the 64-bit {@link FingerprintStateHashFactory} fingerprint of each state id, along with an open addressing
+ * hash table from fingerprints to ids, and the value array holds a value for every state id that can be written with {@link #storeValues(double[])}.
+ * A model file can later be reopened with {@link #open(File, List, boolean)} without any replanning or state enumeration: the values and Q-values of a state
+ * are then looked up by the state's fingerprint. Since states themselves are not stored, two different states with the same 64-bit fingerprint cannot be
+ * distinguished by a reopened model.
+ * <p/>
+ * The arrays are mapped in chunks of at most 1GB (see {@link MappedRegion}), so individual arrays may be larger than 2GB; the number of transition entries is limited to
+ * {@link Integer#MAX_VALUE}. Like an {@link IndexedTransitionModel}, the model is read through its row and entry accessors and backup methods.
+ * <p/>
+ * A planner writes its compiled model to a mapped file when it is given a file with
+ * {@link ValueFunctionPlanner#setMappedTransitionModelFile(File)}.
+ * @author James MacGlashan
+ *
+ */
+public class MappedTransitionModel extends IndexedTransitionModel {
+
+	/**
+	 * The magic number that identifies a model file
+	 */
+	protected static final long						MAGIC = 0x4255524C41504D54L;
+
+	/**
+	 * The version of the model file format
+	 */
+	protected static final int						VERSION = 1;
+
+	/**
+	 * The size of the model file header in bytes
+	 */
+	protected static final int						HEADER_SIZE = 64;
+
+
+	protected static final int						FINGERPRINTS = 0;
+	protected static final int						TABLE_FINGERPRINTS = 1;
+	protected static final int						TABLE_IDS = 2;
+	protected static final int						VALUES = 3;
+	protected static final int						TERMINAL = 4;
+	protected static final int						STATE_ROW_OFFSETS = 5;
+	protected static final int						ROW_ACTIONS = 6;
+	protected static final int						ROW_REWARDS = 7;
+	protected static final int						ROW_DISCOUNTS = 8;
+	protected static final int						ROW_ENTRY_OFFSETS = 9;
+	protected static final int						COLUMNS = 10;
+	protected static final int						PROBABILITIES = 11;
+	protected static final int						ACTION_TABLE = 12;
+
+	/**
+	 * The element size of each section, as a power of 2 of bytes
+	 */
+	protected static final int []					SECTION_SHIFTS = new int[]{3, 3, 2, 3, 0, 2, 2, 3, 3, 2, 2, 3};
+
+
+	/**
+	 * The model file
+	 */
+	protected File									file;
+
+	/**
+	 * The number of state ids in the state table
+	 */
+	protected int									numStates;
+
+	/**
+	 * The capacity of the fingerprint hash table; always a power of 2
+	 */
+	protected int									tableCapacity;
+
+	/**
+	 * The mapped sections of the model file
+	 */
+	protected MappedSection []						sections;
+
+	/**
+	 * The distinct grounded actions of the rows; the row actions section stores indices into this list
+	 */
+	protected List<GroundedAction>					actionTable = new ArrayList<GroundedAction>();
+
+	/**
+	 * Whether the model file has been assembled and mapped
+	 */
+	protected boolean								mapped = false;
+
+	/**
+	 * The fingerprinting factory used to key states
+	 */
+	protected FingerprintStateHashFactory			fingerprinter = new FingerprintStateHashFactory();
+
+
+	/**
+	 * The id of the distinct grounded action of each action string, used while the model is written
+	 */
+	protected Map<String, Integer>					actionIds;
+
+	/**
+	 * The temporary streams of the sections that are written as states and rows are added
+	 */
+	protected DataOutputStream []					sectionStreams;
+
+	/**
+	 * The temporary files of the sections that are written as states and rows are added
+	 */
+	protected File []								sectionFiles;
+
+
+
+	/**
+	 * Initializes a model that will be written to the given file. Any existing file will be overwritten once the model is assembled.
+	 * @param stateIndex the index of the states in this model
+	 * @param file the model file
+	 */
+	public MappedTransitionModel(StateIndex stateIndex, File file){
+		super(stateIndex, 0);
+		this.file = file;
+		this.actionIds = new HashMap<String, Integer>();
+		this.releaseArrays();
+
+		this.sectionStreams = new DataOutputStream[PROBABILITIES+1];
+		this.sectionFiles = new File[PROBABILITIES+1];
+		try{
+			for(int i = TERMINAL; i <= PROBABILITIES; i++){
+				this.sectionFiles[i] = new File(file.getPath() + ".part" + i);
+				this.sectionStreams[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.sectionFiles[i]), 1 << 16));
+			}
+		}catch(IOException e){
+			this.deleteSectionFiles();
+			throw new RuntimeException("Could not create the temporary files for the mapped transition model " + file, e);
+		}
+	}
+
+
+	/**
+	 * Initializes an empty model for reading an existing model file.
+	 * @param file the model file
+	 */
+	protected MappedTransitionModel(File file){
+		super(null, 0);
+		this.file = file;
+		this.releaseArrays();
+	}
+
+
+	/**
+	 * Opens an existing model file.
+	 * @param file the model file
+	 * @param actions the actions of the planning problem, used to recreate the grounded actions of the rows. Actions are matched by name, so options must be included.
+	 * @param writable whether the value array of the model may be changed with {@link #storeValues(double[])}
+	 * @return the opened model
+	 */
+	public static MappedTransitionModel open(File file, List<Action> actions, boolean writable){
+
+		MappedTransitionModel model = new MappedTransitionModel(file);
+		try{
+			RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+			try{
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				raf.getChannel().read(header, 0);
+				header.flip();
+				if(header.getLong() != MAGIC){
+					throw new RuntimeException("The file " + file + " is not a mapped transition model.");
+				}
+				int version = header.getInt();
+				if(version != VERSION){
+					throw new RuntimeException("Unsupported mapped transition model version " + version + " in " + file);
+				}
+				model.numStates = header.getInt();
+				model.numExpandedStates = header.getInt();
+				model.numRows = header.getInt();
+				model.numEntries = header.getInt();
+				model.tableCapacity = header.getInt();
+				int nActions = header.getInt();
+
+				long [] offsets = model.sectionOffsets();
+				model.map(raf.getChannel(), writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, offsets);
+
+				Map<String, Action> actionsByName = new HashMap<String, Action>();
+				for(Action a : actions){
+					actionsByName.put(a.getName(), a);
+				}
+				InputStream in = new BufferedInputStream(new FileInputStream(file));
+				try{
+					DataInputStream din = new DataInputStream(in);
+					long toSkip = offsets[ACTION_TABLE];
+					while(toSkip > 0){
+						toSkip -= din.skip(toSkip);
+					}
+					for(int i = 0; i < nActions; i++){
+						String name = din.readUTF();
+						String [] params = new String[din.readInt()];
+						for(int j = 0; j < params.length; j++){
+							params[j] = din.readUTF();
+						}
+						Action a = actionsByName.get(name);
+						if(a == null){
+							throw new RuntimeException("The mapped transition model " + file + " uses the action " + name + ", which was not provided.");
+						}
+						model.actionTable.add(new GroundedAction(a, params));
+					}
+				}finally{
+					in.close();
+				}
+			}finally{
+				raf.close();
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Could not open the mapped transition model " + file, e);
+		}
+
+		return model;
+	}
+
+
+
+	@Override
+	public int addState(boolean isTerminal){
+		this.checkWritable();
+		int s = this.numExpandedStates;
+		try{
+			this.sectionStreams[TERMINAL].writeByte(isTerminal ? 1 : 0);
+			this.sectionStreams[STATE_ROW_OFFSETS].writeInt(this.numRows);
+		}catch(IOException e){
+			throw new RuntimeException("Could not write to the mapped transition model " + this.file, e);
+		}
+		this.numExpandedStates++;
+		return s;
+	}
+
+
+	@Override
+	public void addActionTransitions(GroundedAction ga, double expectedReward, double discount, int [] next, double [] p){
+
+		this.checkWritable();
+		if(this.numExpandedStates == 0){
+			throw new RuntimeException("Cannot add action transitions to an indexed transition model before a state has been added.");
+		}
+		if((long)this.numEntries + next.length > Integer.MAX_VALUE){
+			throw new RuntimeException("The mapped transition model " + this.file + " cannot store more than " + Integer.MAX_VALUE + " transitions.");
+		}
+
+		String actionKey = ga.toString();
+		Integer actionId = this.actionIds.get(actionKey);
+		if(actionId == null){
+			actionId = this.actionTable.size();
+			this.actionIds.put(actionKey, actionId);
+			this.actionTable.add(ga);
+		}
+
+		try{
+			this.sectionStreams[ROW_ACTIONS].writeInt(actionId);
+			this.sectionStreams[ROW_REWARDS].writeDouble(expectedReward);
+			this.sectionStreams[ROW_DISCOUNTS].writeDouble(discount);
+			this.sectionStreams[ROW_ENTRY_OFFSETS].writeInt(this.numEntries);
+			DataOutputStream cols = this.sectionStreams[COLUMNS];
+			DataOutputStream probs = this.sectionStreams[PROBABILITIES];
+			for(int i = 0; i < next.length; i++){
+				cols.writeInt(next[i]);
+				probs.writeDouble(p[i]);
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Could not write to the mapped transition model " + this.file, e);
+		}
+
+		this.numEntries += next.length;
+		this.numRows++;
+
+	}
+
+
+	/**
+	 * Assembles the model file from the added states and rows, fingerprints the states of the state index, and memory-maps the file.
+	 * The temporary files are deleted. Has no effect if the model is already mapped.
+	 */
+	@Override
+	public void trimToSize(){
+
+		if(this.mapped){
+			return;
+		}
+
+		try{
+			this.sectionStreams[STATE_ROW_OFFSETS].writeInt(this.numRows);
+			this.sectionStreams[ROW_ENTRY_OFFSETS].writeInt(this.numEntries);
+			for(int i = TERMINAL; i <= PROBABILITIES; i++){
+				this.sectionStreams[i].close();
+			}
+			this.sectionStreams = null;
+
+			this.numStates = this.stateIndex.size();
+			long [] fingerprints = new long[this.numStates];
+			for(int i = 0; i < this.numStates; i++){
+				fingerprints[i] = this.fingerprinter.fingerprint(this.stateIndex.getStateForEnumertionId(i));
+			}
+
+			this.tableCapacity = Integer.highestOneBit(Math.max(2*this.numStates, 2) - 1) << 1;
+			long [] tableFingerprints = new long[this.tableCapacity];
+			int [] tableIds = new int[this.tableCapacity];
+			Arrays.fill(tableIds, -1);
+			int mask = this.tableCapacity - 1;
+			for(int i = 0; i < this.numStates; i++){
+				int slot = (int)FingerprintStateHashFactory.mix64(fingerprints[i]) & mask;
+				while(tableIds[slot] != -1){
+					slot = (slot + 1) & mask;
+				}
+				tableFingerprints[slot] = fingerprints[i];
+				tableIds[slot] = i;
+			}
+
+			long [] offsets = this.sectionOffsets();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file), 1 << 16));
+			try{
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(this.numStates);
+				out.writeInt(this.numExpandedStates);
+				out.writeInt(this.numRows);
+				out.writeInt(this.numEntries);
+				out.writeInt(this.tableCapacity);
+				out.writeInt(this.actionTable.size());
+				long written = 36;
+				for(int sec = FINGERPRINTS; sec <= ACTION_TABLE; sec++){
+					while(written < offsets[sec]){
+						out.writeByte(0);
+						written++;
+					}
+					if(sec == FINGERPRINTS){
+						for(long f : fingerprints){
+							out.writeLong(f);
+						}
+					}
+					else if(sec == TABLE_FINGERPRINTS){
+						for(long f : tableFingerprints){
+							out.writeLong(f);
+						}
+					}
+					else if(sec == TABLE_IDS){
+						for(int id : tableIds){
+							out.writeInt(id);
+						}
+					}
+					else if(sec == VALUES){
+						for(int i = 0; i < this.numStates; i++){
+							out.writeDouble(0.);
+						}
+					}
+					else if(sec == ACTION_TABLE){
+						for(GroundedAction ga : this.actionTable){
+							out.writeUTF(ga.actionName());
+							out.writeInt(ga.params.length);
+							for(String param : ga.params){
+								out.writeUTF(param);
+							}
+						}
+						break;
+					}
+					else{
+						copy(this.sectionFiles[sec], out);
+					}
+					written = offsets[sec] + (this.sectionLength(sec) << SECTION_SHIFTS[sec]);
+				}
+			}finally{
+				out.close();
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+			try{
+				this.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, offsets);
+			}finally{
+				raf.close();
+			}
+
+		}catch(IOException e){
+			throw new RuntimeException("Could not write the mapped transition model " + this.file, e);
+		}finally{
+			this.deleteSectionFiles();
+		}
+
+		this.actionIds = null;
+
+	}
+
+
+	/**
+	 * Returns the file of this model.
+	 * @return the file of this model
+	 */
+	public File getFile(){
+		return this.file;
+	}
+
+
+	@Override
+	public int numStates(){
+		if(!this.mapped){
+			return this.stateIndex.size();
+		}
+		return this.numStates;
+	}
+
+
+	/**
+	 * Returns the fingerprint of the state with the given id.
+	 * @param id the state id
+	 * @return the fingerprint of the state
+	 */
+	public long getFingerprint(int id){
+		this.checkMapped();
+		return this.sections[FINGERPRINTS].getLong(id);
+	}
+
+
+	/**
+	 * Returns the id of the state with the given fingerprint or -1 if there is no such state in this model.
+	 * @param fingerprint the fingerprint of a state
+	 * @return the id of the state or -1 if there is no such state
+	 */
+	public int getIndex(long fingerprint){
+		this.checkMapped();
+		MappedSection fps = this.sections[TABLE_FINGERPRINTS];
+		MappedSection ids = this.sections[TABLE_IDS];
+		int mask = this.tableCapacity - 1;
+		int slot = (int)FingerprintStateHashFactory.mix64(fingerprint) & mask;
+		while(true){
+			int id = ids.getInt(slot);
+			if(id == -1){
+				return -1;
+			}
+			if(fps.getLong(slot) == fingerprint){
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+
+	/**
+	 * Returns the id of the given state or -1 if the state is not in this model.
+	 * @param s the state
+	 * @return the id of the state or -1 if the state is not in this model
+	 */
+	public int getIndex(State s){
+		return this.getIndex(this.fingerprinter.fingerprint(s));
+	}
+
+
+	/**
+	 * Returns the stored value of the state with the given id.
+	 * @param id the state id
+	 * @return the stored value of the state
+	 */
+	public double getValue(int id){
+		this.checkMapped();
+		return this.sections[VALUES].getDouble(id);
+	}
+
+
+	/**
+	 * Returns the stored value of the given state.
+	 * @param s the state
+	 * @param defaultValue the value to return if the state is not in this model
+	 * @return the stored value of the state, or the default value if the state is not in this model
+	 */
+	public double getValue(State s, double defaultValue){
+		int id = this.getIndex(s);
+		if(id == -1){
+			return defaultValue;
+		}
+		return this.getValue(id);
+	}
+
+
+	/**
+	 * Copies the stored values of all states into the given array.
+	 * @param V the array into which the values are copied, indexed by state id
+	 */
+	public void loadValues(double [] V){
+		this.checkMapped();
+		MappedSection values = this.sections[VALUES];
+		for(int i = 0; i < this.numStates; i++){
+			V[i] = values.getDouble(i);
+		}
+	}
+
+
+	/**
+	 * Stores the values of all states in the model file and flushes them to disk.
+	 * @param V the values of the states, indexed by state id
+	 */
+	public void storeValues(double [] V){
+		this.checkMapped();
+		MappedSection values = this.sections[VALUES];
+		for(int i = 0; i < this.numStates; i++){
+			values.putDouble(i, V[i]);
+		}
+		values.force();
+	}
+
+
+	@Override
+	public boolean isTerminal(int s){
+		return this.sections[TERMINAL].getByte(s) != 0;
+	}
+
+
+	@Override
+	public int numActions(int s){
+		MappedSection offsets = this.sections[STATE_ROW_OFFSETS];
+		return offsets.getInt(s+1) - offsets.getInt(s);
+	}
+
+
+	@Override
+	public GroundedAction getAction(int s, int a){
+		return this.getRowAction(this.getFirstRow(s) + a);
+	}
+
+
+	@Override
+	public int getFirstRow(int s){
+		return this.sections[STATE_ROW_OFFSETS].getInt(s);
+	}
+
+
+	@Override
+	public GroundedAction getRowAction(int r){
+		return this.actionTable.get(this.sections[ROW_ACTIONS].getInt(r));
+	}
+
+
+	@Override
+	public double getRowReward(int r){
+		return this.sections[ROW_REWARDS].getDouble(r);
+	}
+
+
+	@Override
+	public double getRowDiscount(int r){
+		return this.sections[ROW_DISCOUNTS].getDouble(r);
+	}
+
+
+	@Override
+	public int getFirstEntry(int r){
+		return this.sections[ROW_ENTRY_OFFSETS].getInt(r);
+	}
+
+
+	@Override
+	public int getColumn(int e){
+		return this.sections[COLUMNS].getInt(e);
+	}
+
+
+	@Override
+	public double getProbability(int e){
+		return this.sections[PROBABILITIES].getDouble(e);
+	}
+
+
+	@Override
+	public double q(int s, int a, double [] V){
+		return this.rowQ(this.getFirstRow(s) + a, V);
+	}
+
+
+	@Override
+	public double rowQ(int r, double [] V){
+		MappedSection offsets = this.sections[ROW_ENTRY_OFFSETS];
+		MappedSection cols = this.sections[COLUMNS];
+		MappedSection probs = this.sections[PROBABILITIES];
+		double sum = 0.;
+		int end = offsets.getInt(r+1);
+		for(int e = offsets.getInt(r); e < end; e++){
+			sum += probs.getDouble(e) * V[cols.getInt(e)];
+		}
+		return this.getRowReward(r) + this.getRowDiscount(r) * sum;
+	}
+
+
+	@Override
+	public double bellmanBackup(int s, double [] V){
+		if(this.isTerminal(s)){
+			return 0.;
+		}
+		double maxQ = Double.NEGATIVE_INFINITY;
+		int end = this.getFirstRow(s+1);
+		for(int r = this.getFirstRow(s); r < end; r++){
+			double q = this.rowQ(r, V);
+			if(q > maxQ){
+				maxQ = q;
+			}
+		}
+		return maxQ;
+	}
+
+
+	@Override
+	public double bellmanBackup(int s, double [] blockV, double [] V, int blockStart, int blockEnd){
+		if(this.isTerminal(s)){
+			return 0.;
+		}
+		MappedSection offsets = this.sections[ROW_ENTRY_OFFSETS];
+		MappedSection cols = this.sections[COLUMNS];
+		MappedSection probs = this.sections[PROBABILITIES];
+		double maxQ = Double.NEGATIVE_INFINITY;
+		int end = this.getFirstRow(s+1);
+		for(int r = this.getFirstRow(s); r < end; r++){
+			double sum = 0.;
+			int eEnd = offsets.getInt(r+1);
+			for(int e = offsets.getInt(r); e < eEnd; e++){
+				int c = cols.getInt(e);
+				double v = c >= blockStart && c < blockEnd ? blockV[c] : V[c];
+				sum += probs.getDouble(e) * v;
+			}
+			double q = this.getRowReward(r) + this.getRowDiscount(r) * sum;
+			if(q > maxQ){
+				maxQ = q;
+			}
+		}
+		return maxQ;
+	}
+
+
+	@Override
+	public double fixedPolicyBackup(int s, double [] actionProbs, double [] V){
+		if(this.isTerminal(s)){
+			return 0.;
+		}
+		int start = this.getFirstRow(s);
+		double weightedQ = 0.;
+		for(int a = 0; a < actionProbs.length; a++){
+			if(actionProbs[a] == 0.){
+				continue; //doesn't contribute
+			}
+			weightedQ += actionProbs[a] * this.rowQ(start + a, V);
+		}
+		return weightedQ;
+	}
+
+
+	/**
+	 * Returns the byte offset of each section in the model file.
+	 * @return the byte offset of each section
+	 */
+	protected long [] sectionOffsets(){
+		long [] offsets = new long[ACTION_TABLE+1];
+		long pos = HEADER_SIZE;
+		for(int i = FINGERPRINTS; i <= PROBABILITIES; i++){
+			offsets[i] = pos;
+			pos += this.sectionLength(i) << SECTION_SHIFTS[i];
+			pos = (pos + 7) & ~7L; //align sections to 8 bytes
+		}
+		offsets[ACTION_TABLE] = pos;
+		return offsets;
+	}
+
+
+	/**
+	 * Returns the number of elements of a fixed size section.
+	 * @param section the section
+	 * @return the number of elements of the section
+	 */
+	protected long sectionLength(int section){
+		switch(section){
+			case FINGERPRINTS: return this.numStates;
+			case TABLE_FINGERPRINTS: return this.tableCapacity;
+			case TABLE_IDS: return this.tableCapacity;
+			case VALUES: return this.numStates;
+			case TERMINAL: return this.numExpandedStates;
+			case STATE_ROW_OFFSETS: return this.numExpandedStates+1L;
+			case ROW_ACTIONS: return this.numRows;
+			case ROW_REWARDS: return this.numRows;
+			case ROW_DISCOUNTS: return this.numRows;
+			case ROW_ENTRY_OFFSETS: return this.numRows+1L;
+			case COLUMNS: return this.numEntries;
+			case PROBABILITIES: return this.numEntries;
+			default: throw new RuntimeException("Section " + section + " does not have a fixed size.");
+		}
+	}
+
+
+	/**
+	 * Maps the sections of the model file.
+	 * @param channel the channel of the model file
+	 * @param mode the mapping mode
+	 * @param offsets the byte offset of each section
+	 * @throws IOException if the file cannot be mapped
+	 */
+	protected void map(FileChannel channel, FileChannel.MapMode mode, long [] offsets) throws IOException{
+		this.sections = new MappedSection[PROBABILITIES+1];
+		for(int i = FINGERPRINTS; i <= PROBABILITIES; i++){
+			long numElements = this.sectionLength(i);
+			//values are the only writable section
+			FileChannel.MapMode sectionMode = i == VALUES ? mode : FileChannel.MapMode.READ_ONLY;
+			this.sections[i] = new MappedSection(channel, sectionMode, offsets[i], numElements, SECTION_SHIFTS[i]);
+		}
+		this.mapped = true;
+	}
+
+
+	/**
+	 * Releases the heap arrays of the parent class, which are not used by this model.
+	 */
+	protected void releaseArrays(){
+		this.terminal = null;
+		this.stateRowOffsets = null;
+		this.rowActions = null;
+		this.rowRewards = null;
+		this.rowDiscounts = null;
+		this.rowEntryOffsets = null;
+		this.columns = null;
+		this.probabilities = null;
+	}
+
+
+	/**
+	 * Throws a runtime exception if states or rows can no longer be added to this model.
+	 */
+	protected void checkWritable(){
+		if(this.sectionStreams == null){
+			throw new RuntimeException("States and transitions cannot be added to the mapped transition model " + this.file + " after it has been assembled.");
+		}
+	}
+
+
+	/**
+	 * Throws a runtime exception if the model file has not been assembled and mapped yet.
+	 */
+	protected void checkMapped(){
+		if(!this.mapped){
+			throw new RuntimeException("The mapped transition model " + this.file + " must be assembled with trimToSize before it can be queried.");
+		}
+	}
+
+
+	/**
+	 * Closes and deletes the temporary section files.
+	 */
+	protected void deleteSectionFiles(){
+		if(this.sectionFiles == null){
+			return;
+		}
+		if(this.sectionStreams != null){
+			for(DataOutputStream out : this.sectionStreams){
+				if(out != null){
+					try{
+						out.close();
+					}catch(IOException e){
+						//the file is deleted next anyway
+					}
+				}
+			}
+			this.sectionStreams = null;
+		}
+		for(File f : this.sectionFiles){
+			if(f != null){
+				f.delete();
+			}
+		}
+		this.sectionFiles = null;
+	}
+
+
+	/**
+	 * Copies the contents of a file to an output stream.
+	 * @param f the file to copy
+	 * @param out the stream to which the file is copied
+	 * @throws IOException if the file cannot be read or the stream cannot be written
+	 */
+	protected static void copy(File f, DataOutputStream out) throws IOException{
+		InputStream in = new FileInputStream(f);
+		try{
+			byte [] buf = new byte[1 << 16];
+			int n;
+			while((n = in.read(buf)) > 0){
+				out.write(buf, 0, n);
+			}
+		}finally{
+			in.close();
+		}
+	}
+
+
+
+	/**
+	 * A section of the model file holding an array of fixed size elements, which are accessed by their index. Sections are aligned so that no element
+	 * spans two chunks of the underlying {@link MappedRegion}.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class MappedSection{
+
+		/**
+		 * The mapped region of this section
+		 */
+		protected final MappedRegion			region;
+
+
+		/**
+		 * Maps a section of a file.
+		 * @param channel the channel of the file
+		 * @param mode the mapping mode
+		 * @param offset the byte offset of the section in the file
+		 * @param numElements the number of elements in the section
+		 * @param elementShift the size of the elements, as a power of 2 of bytes
+		 * @throws IOException if the section cannot be mapped
+		 */
+		public MappedSection(FileChannel channel, FileChannel.MapMode mode, long offset, long numElements, int elementShift) throws IOException{
+			this.region = new MappedRegion(channel, mode, offset, numElements << elementShift);
+		}
+
+		public byte getByte(long i){
+			return this.region.getByte(i);
+		}
+
+		public int getInt(long i){
+			return this.region.getInt(i << 2);
+		}
+
+		public long getLong(long i){
+			return this.region.getLong(i << 3);
+		}
+
+		public double getDouble(long i){
+			return this.region.getDouble(i << 3);
+		}
+
+		public void putDouble(long i, double v){
+			this.region.putDouble(i << 3, v);
+		}
+
+		/**
+		 * Writes any changes to this section to the file.
+		 */
+		public void force(){
+			this.region.force();
+		}
+
+	}
+
+}
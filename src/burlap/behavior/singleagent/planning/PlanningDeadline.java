@@ -0,0 +1,85 @@
+package burlap.behavior.singleagent.planning;
+
+import java.util.concurrent.Future;
+
+
+/**
+ * A deadline for an {@link AnytimePlanner}. A deadline expires once a time budget has elapsed since it was created, or once a cancellation
+ * {@link Future} is cancelled, whichever comes first. The cancellation future lets another thread, such as the control loop that is waiting
+ * on the planner, end planning at any time by calling its {@link Future#cancel(boolean)} method. Since planners only poll the future,
+ * it does not matter whether it is cancelled with interruption.
+ * @author James MacGlashan
+ *
+ */
+public class PlanningDeadline {
+
+	/**
+	 * The value of {@link System#nanoTime()} at which the time budget is used up
+	 */
+	protected long					expirationNanos;
+	
+	/**
+	 * Whether the deadline has a time budget
+	 */
+	protected boolean				hasTimeBudget;
+	
+	/**
+	 * The future whose cancellation expires the deadline; null if there is none
+	 */
+	protected Future<?>				cancellationSignal;
+	
+	
+	/**
+	 * Initializes a deadline that expires after the given time budget.
+	 * @param timeBudgetMillis the time budget in milliseconds from now.
+	 */
+	public PlanningDeadline(long timeBudgetMillis){
+		this(timeBudgetMillis, null);
+	}
+	
+	
+	/**
+	 * Initializes a deadline that expires when the given future is cancelled.
+	 * @param cancellationSignal the future whose cancellation expires the deadline
+	 */
+	public PlanningDeadline(Future<?> cancellationSignal){
+		this(-1, cancellationSignal);
+	}
+	
+	
+	/**
+	 * Initializes a deadline that expires after the given time budget or when the given future is cancelled, whichever comes first.
+	 * @param timeBudgetMillis the time budget in milliseconds from now; if negative, the deadline has no time budget.
+	 * @param cancellationSignal the future whose cancellation expires the deadline; if null, the deadline can only expire from its time budget.
+	 */
+	public PlanningDeadline(long timeBudgetMillis, Future<?> cancellationSignal){
+		this.hasTimeBudget = timeBudgetMillis >= 0;
+		this.expirationNanos = System.nanoTime() + timeBudgetMillis * 1000000L;
+		this.cancellationSignal = cancellationSignal;
+	}
+	
+	
+	/**
+	 * Returns whether this deadline has expired.
+	 * @return true if the time budget has elapsed or the cancellation future has been cancelled; false otherwise.
+	 */
+	public boolean hasExpired(){
+		if(this.hasTimeBudget && System.nanoTime() - this.expirationNanos >= 0){
+			return true;
+		}
+		return this.cancellationSignal != null && this.cancellationSignal.isCancelled();
+	}
+	
+	
+	/**
+	 * Returns the number of milliseconds left in the time budget.
+	 * @return the number of milliseconds left in the time budget, which is 0 once it has elapsed, or Long.MAX_VALUE if there is no time budget.
+	 */
+	public long remainingMillis(){
+		if(!this.hasTimeBudget){
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0L, (this.expirationNanos - System.nanoTime()) / 1000000L);
+	}
+	
+}
@@ -0,0 +1,45 @@
+package burlap.behavior.singleagent.planning;
+
+import java.util.Random;
+
+import burlap.oomdp.core.AbstractGroundedAction;
+import burlap.oomdp.core.State;
+
+
+/**
+ * An interface for {@link QComputablePlanner}s that can select a greedy action or a uniformly random action of a state directly from their
+ * Q-value storage, without creating a list of {@link burlap.behavior.singleagent.QValue} objects. Policies over Q-values, such as
+ * {@link burlap.behavior.singleagent.planning.commonpolicies.EpsilonGreedy} and {@link burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy},
+ * use these methods when {@link #canSelectActions()} returns true so that selecting an action on each learning step does not allocate Q-value objects.
+ * The methods must draw from the random number generator exactly as the policies do over the list of Q-values, so that both ways of selecting an action
+ * produce the same actions from the same random seed.
+ * @author James MacGlashan
+ *
+ */
+public interface QActionSelector {
+
+	/**
+	 * Returns whether this planner can currently select actions without creating Q-value objects.
+	 * @return true if {@link #selectGreedyAction(State, Random)} and {@link #selectRandomAction(State, Random)} may be used; false otherwise.
+	 */
+	public boolean canSelectActions();
+
+	/**
+	 * Returns an action with the highest Q-value in a state. If multiple actions tie for the highest Q-value, then the tied action selected
+	 * by <code>rand.nextInt(numberOfTiedActions)</code>, in the order of the actions returned by {@link QComputablePlanner#getQs(State)}, is returned.
+	 * @param s the state
+	 * @param rand the random number generator used to break ties
+	 * @return an action with the highest Q-value in the state
+	 */
+	public AbstractGroundedAction selectGreedyAction(State s, Random rand);
+
+	/**
+	 * Returns the action selected by <code>rand.nextInt(numberOfActions)</code> among the actions of a state, in the order of the actions returned
+	 * by {@link QComputablePlanner#getQs(State)}.
+	 * @param s the state
+	 * @param rand the random number generator used to select the action
+	 * @return a uniformly random action of the state
+	 */
+	public AbstractGroundedAction selectRandomAction(State s, Random rand);
+
+}
@@ -1,18 +1,23 @@
 package burlap.behavior.singleagent.planning;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.Policy.ActionProb;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.auxiliary.QSnapshotWriter;
+import burlap.behavior.singleagent.auxiliary.StateIndex;
 import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
+import burlap.debugtools.DPrint;
 import burlap.oomdp.auxiliary.common.NullTermination;
 import burlap.oomdp.core.AbstractGroundedAction;
 import burlap.oomdp.core.Domain;
@@ -33,6 +38,12 @@ import burlap.oomdp.singleagent.RewardFunction;
  * Note that by default ValueFunction planners will cache the transition dynamics so that they do not have to be procedurally generated
  * by the {@link burlap.oomdp.singleagent.Action}. Transition dynamic caching can be disable by calling the {@link #toggleUseCachedTransitionDynamics(boolean)}
  * method. This may be desirable if the transition dynamics are expected to change with time, such as when the model is being learned in model-based RL.
+ * <p/>
+ * Planners that sweep over a fixed set of states (such as {@link burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration})
+ * may also support an indexed mode, enabled with {@link #toggleIndexedBackups(boolean)}. In indexed mode, the cached transition dynamics of the
+ * states being planned for are compiled into an {@link IndexedTransitionModel} in which each state is interned to a dense int id, and Bellman
+ * backups are performed on a double array value function without any state hashing. The values are copied back into the value function map when
+ * planning completes, so all other methods behave the same in either mode.
  * @author James MacGlashan
  *
  */
@@ -67,6 +78,36 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 	protected ValueFunctionInitialization							valueInitializer = new ValueFunctionInitialization.ConstantValueFunctionInitialization();
 	
 	
+	/**
+	 * Whether planners that support it should perform their backups on an {@link IndexedTransitionModel} rather than on the hashed transition dynamics.
+	 */
+	protected boolean												useIndexedBackups = false;
+	
+	
+	/**
+	 * The compiled int-indexed transition dynamics used in indexed mode; null if they have not been compiled since the states to plan for last changed.
+	 */
+	protected IndexedTransitionModel								indexedModel;
+	
+	
+	/**
+	 * The value function used in indexed mode, indexed by the state ids of {@link #indexedModel}.
+	 */
+	protected double []												indexedValueFunction;
+	
+	
+	/**
+	 * Whether the hashed transition dynamics of states should be removed from the cache once they have been compiled into the indexed model.
+	 */
+	protected boolean												releaseCompiledTransitions = false;
+	
+	
+	/**
+	 * The file to which the indexed model is written as a {@link MappedTransitionModel}; if null, the indexed model is stored on the heap.
+	 */
+	protected File													mappedModelFile;
+	
+	
 	
 	
 	
@@ -105,6 +146,7 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 		this.mapToStateIndex.clear();
 		this.valueFunction.clear();
 		this.transitionDynamics.clear();
+		this.clearIndexedModel();
 	}
 	
 	/**
@@ -124,6 +166,87 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 	}
 	
 	
+	/**
+	 * Sets whether planners that support it should perform Bellman backups on an int-indexed compilation of the cached transition dynamics
+	 * ({@link IndexedTransitionModel}) rather than on the hashed transition dynamics. Indexed backups require transition dynamics caching
+	 * to be enabled; if it is disabled, the hashed backups are used regardless of this setting. The default is false.
+	 * @param useIndexedBackups true if indexed backups should be used; false otherwise.
+	 */
+	public void toggleIndexedBackups(boolean useIndexedBackups){
+		this.useIndexedBackups = useIndexedBackups;
+	}
+	
+	
+	/**
+	 * Sets whether the cached hashed transition dynamics of states should be released once they have been compiled into the indexed model
+	 * used in indexed mode. The compiled model stores the transitions as int and double arrays, whereas the hashed transition dynamics hold
+	 * a hashed state object for every possible outcome, so releasing them reduces the memory used for large state spaces several fold. Hashed
+	 * transition dynamics that are needed afterwards (for instance, to compute the Q-values of a state for a policy) are regenerated and cached
+	 * on demand. The default is false.
+	 * @param release true if compiled hashed transition dynamics should be released; false if they should be kept.
+	 */
+	public void toggleReleaseCompiledTransitionDynamics(boolean release){
+		this.releaseCompiledTransitions = release;
+	}
+	
+	
+	/**
+	 * Sets a file to which the indexed model used in indexed mode is written as a {@link MappedTransitionModel}, so that the compiled transition
+	 * dynamics are stored in a memory-mapped file rather than on the heap. The transitions are streamed to disk as they are compiled and the
+	 * values computed in indexed mode are stored in the file along with the fingerprint of every state, so the file can later be reopened
+	 * with {@link MappedTransitionModel#open(File, List, boolean)} without replanning. This setting has no effect unless indexed backups are enabled.
+	 * <p/>
+	 * When the first reachability analysis of a planner that supports it runs with a mapped model file, each state's transitions are written to the model
+	 * as the state is expanded (see {@link #compileReachableStatesToMappedModel(StateHashTuple, boolean)}), so the hashed transition dynamics of all
+	 * states are never held at once; if {@link #toggleReleaseCompiledTransitionDynamics(boolean)} is enabled, they are not cached at all.
+	 * <p/>
+	 * Only the transitions are moved off the heap: every reachable state is still held on the heap by the state index of the model and by this
+	 * planner's state map, and the value function is swept in a heap array that is copied into the file when it is written back. The memory used
+	 * therefore still grows with the number of states, so the mapped model reduces the footprint of planning without removing the need to hold
+	 * the state space in memory.
+	 * @param file the file to which the indexed model is written, or null to store the indexed model on the heap.
+	 */
+	public void setMappedTransitionModelFile(File file){
+		this.mappedModelFile = file;
+	}
+	
+	
+	/**
+	 * Returns the compiled int-indexed transition dynamics if they have been compiled; null otherwise.
+	 * @return the compiled int-indexed transition dynamics or null if they have not been compiled.
+	 */
+	public IndexedTransitionModel getIndexedModel(){
+		return this.indexedModel;
+	}
+	
+	
+	/**
+	 * Replaces the value function, cached transition dynamics, and state index maps of this planner with concurrent copies of them, so that
+	 * they may be read and updated by multiple threads at once, such as by the workers of a parallel planning mode. Maps that are already
+	 * concurrent are left as they are.
+	 */
+	protected void useConcurrentMaps(){
+		if(!(this.valueFunction instanceof ConcurrentHashMap)){
+			this.valueFunction = new ConcurrentHashMap<StateHashTuple, Double>(this.valueFunction);
+		}
+		if(!(this.transitionDynamics instanceof ConcurrentHashMap)){
+			this.transitionDynamics = new ConcurrentHashMap<StateHashTuple, List<ActionTransitions>>(this.transitionDynamics);
+		}
+		if(!(this.mapToStateIndex instanceof ConcurrentHashMap)){
+			this.mapToStateIndex = new ConcurrentHashMap<StateHashTuple, StateHashTuple>(this.mapToStateIndex);
+		}
+	}
+	
+	
+	/**
+	 * Returns whether this planner should use indexed backups, which requires that indexed mode is enabled and transition dynamics are cached.
+	 * @return true if indexed backups should be used; false otherwise.
+	 */
+	protected boolean usingIndexedBackups(){
+		return this.useIndexedBackups && this.useCachedTransitions;
+	}
+	
+	
 	/**
 	 * Returns whether a value for the given state has been computed previously.
 	 * @param s the state to check
@@ -262,6 +385,18 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 	public StaticVFPlanner getCopyOfValueFunction(){
 		return new StaticVFPlanner(this.domain, this.rf, this.gamma, this.hashingFactory, this.actions, this.valueFunction);
 	}
+	
+	
+	/**
+	 * Adds the value and Q-values of every state stored in this planner's value function to a snapshot, which can be reopened with
+	 * {@link burlap.behavior.singleagent.auxiliary.QSnapshot} to serve a policy without replanning. The writer is not closed.
+	 * @param writer the snapshot writer to which the states are added
+	 */
+	public void writeSnapshot(QSnapshotWriter writer){
+		for(Map.Entry<StateHashTuple, Double> e : this.valueFunction.entrySet()){
+			writer.add(e.getKey().s, e.getValue(), this.getQs(e.getKey().s));
+		}
+	}
 
 	
 	/**
@@ -316,20 +451,8 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 			mapToStateIndex.put(sh, sh);
 			
 			
-			//first get all grounded actions for this state
-			/*
-			List <GroundedAction> gas = new ArrayList<GroundedAction>();
-			for(Action a : actions){
-				gas.addAll(sh.s.getAllGroundedActionsFor(a));
-			}*/
-			List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, sh.s);
-			
-			//now add transitions
-			allTransitions = new ArrayList<ActionTransitions>(gas.size());
-			for(GroundedAction ga : gas){
-				ActionTransitions at = new ActionTransitions(sh.s, ga, hashingFactory);
-				allTransitions.add(at);
-			}
+			//get the transitions of all applicable grounded actions for this state
+			allTransitions = this.computeActionsTransitions(sh.s);
 			
 			//set it if we're caching
 			if(this.useCachedTransitions){
@@ -344,6 +467,22 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 	
 	
 	
+	/**
+	 * Computes the action transitions of all applicable actions in the given state without storing them. This method does not modify
+	 * this planner, so it may be called concurrently as long as the actions' transition computations are thread safe.
+	 * @param s the state from which to compute the transitions
+	 * @return the action transitions of all applicable actions in the state
+	 */
+	protected List <ActionTransitions> computeActionsTransitions(State s){
+		List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, s);
+		List <ActionTransitions> allTransitions = new ArrayList<ActionTransitions>(gas.size());
+		for(GroundedAction ga : gas){
+			allTransitions.add(new ActionTransitions(s, ga, hashingFactory));
+		}
+		return allTransitions;
+	}
+	
+	
 	/**
 	 * Performs a Bellman value function update on the provided state. Results are stored in the value function map as well as returned.
 	 * If this object is set to used cached transition dynamics and the transition dynamics for this state are not cached, then they will be created and cached.
@@ -571,6 +710,194 @@ public abstract class ValueFunctionPlanner extends OOMDPPlanner implements QComp
 	
 	
 	
+	/**
+	 * Compiles the cached transition dynamics of all states in {@link #mapToStateIndex} into an {@link IndexedTransitionModel}, if they
+	 * have not already been compiled, and initializes the indexed value function from the value function map (or from the value function initialization
+	 * for states without a stored value). States in {@link #mapToStateIndex} receive the ids 0 to n-1; successor states that are not
+	 * in it receive the subsequent ids and keep their initial values.
+	 */
+	protected void compileIndexedModel(){
+		
+		if(this.indexedModel != null){
+			return ;
+		}
+		
+		StateIndex index = new StateIndex(this.domain, this.hashingFactory);
+		for(StateHashTuple sh : this.mapToStateIndex.keySet()){
+			index.getOrCreateIndex(sh);
+		}
+		
+		int n = index.size();
+		IndexedTransitionModel model = this.mappedModelFile != null ? new MappedTransitionModel(index, this.mappedModelFile) : new IndexedTransitionModel(index, n);
+		for(int i = 0; i < n; i++){
+			StateHashTuple sh = index.getHashedState(i);
+			boolean terminal = this.tf.isTerminal(sh.s);
+			model.addState(terminal);
+			if(terminal){
+				continue;
+			}
+			List<ActionTransitions> ats = this.getActionsTransitions(sh);
+			for(ActionTransitions at : ats){
+				this.addActionTransitionsToModel(sh.s, at, model);
+			}
+			if(this.releaseCompiledTransitions){
+				this.transitionDynamics.remove(sh);
+			}
+		}
+		model.trimToSize();
+		
+		this.setIndexedModel(model);
+		
+		DPrint.cl(this.debugCode, "Compiled indexed model; # states: " + n + " (" + index.size() + " referenced)");
+		
+	}
+	
+	
+	/**
+	 * Returns whether a reachability analysis should compile the reachable states directly into a {@link MappedTransitionModel} with
+	 * {@link #compileReachableStatesToMappedModel(StateHashTuple, boolean)}. This is the case when indexed backups are used with a mapped model file
+	 * and no states have been found yet.
+	 * @return true if the reachable states should be compiled directly into a mapped model; false otherwise.
+	 */
+	protected boolean compilesReachabilityToMappedModel(){
+		return this.usingIndexedBackups() && this.mappedModelFile != null && this.mapToStateIndex.isEmpty();
+	}
+	
+	
+	/**
+	 * Finds all states reachable from a state with a breadth first search and writes the transitions of each state to a new {@link MappedTransitionModel}
+	 * as soon as it is expanded, so that the hashed transition dynamics of the reachable states do not have to be cached before the model is compiled.
+	 * States receive their ids in the order in which they are first reached, so the state index of the model is also the open list of the search.
+	 * The found states are added to {@link #mapToStateIndex} and the model becomes the indexed model of this planner. The hashed transition dynamics
+	 * are only cached if {@link #toggleReleaseCompiledTransitionDynamics(boolean)} is disabled.
+	 * @param sih the hashed source state
+	 * @param expandTerminalStates whether the successors of terminal states are searched; terminal states have no transitions in the model either way
+	 */
+	protected void compileReachableStatesToMappedModel(StateHashTuple sih, boolean expandTerminalStates){
+		
+		StateIndex index = new StateIndex(this.domain, this.hashingFactory);
+		index.getOrCreateIndex(sih);
+		MappedTransitionModel model = new MappedTransitionModel(index, this.mappedModelFile);
+		
+		for(int i = 0; i < index.size(); i++){
+			
+			StateHashTuple sh = index.getHashedState(i);
+			mapToStateIndex.put(sh, sh);
+			
+			boolean terminal = this.tf.isTerminal(sh.s);
+			model.addState(terminal);
+			if(terminal && !expandTerminalStates){
+				continue;
+			}
+			
+			List<ActionTransitions> ats = this.computeActionsTransitions(sh.s);
+			for(ActionTransitions at : ats){
+				if(terminal){
+					//only queue up the successors
+					for(HashedTransitionProbability tp : at.transitions){
+						index.getOrCreateIndex(tp.sh);
+					}
+				}
+				else{
+					this.addActionTransitionsToModel(sh.s, at, model);
+				}
+			}
+			
+			if(!this.releaseCompiledTransitions){
+				this.transitionDynamics.put(sh, ats);
+			}
+			
+		}
+		model.trimToSize();
+		
+		this.setIndexedModel(model);
+		
+		DPrint.cl(this.debugCode, "Finished reachability analysis and compiled mapped model; # states: " + index.size());
+		
+	}
+	
+	
+	/**
+	 * Sets the indexed model and initializes the indexed value function from the value function map (or from the value function initialization
+	 * for states without a stored value).
+	 * @param model the compiled indexed model
+	 */
+	protected void setIndexedModel(IndexedTransitionModel model){
+		
+		this.indexedModel = model;
+		
+		StateIndex index = model.getStateIndex();
+		this.indexedValueFunction = new double[index.size()];
+		for(int i = 0; i < index.size(); i++){
+			this.indexedValueFunction[i] = this.value(index.getHashedState(i));
+		}
+		
+	}
+	
+	
+	/**
+	 * Compiles hashed action transitions into a row of an indexed model, interning any successor states that have not been indexed.
+	 * @param s the state from which the action is applied
+	 * @param trans the hashed action transitions
+	 * @param model the model to which the row is added; its last added state must be s
+	 */
+	protected void addActionTransitionsToModel(State s, ActionTransitions trans, IndexedTransitionModel model){
+		
+		StateIndex index = model.getStateIndex();
+		int [] next = new int[trans.transitions.size()];
+		double [] p = new double[next.length];
+		
+		double expectedReward = 0.;
+		double discount = this.gamma;
+		boolean isOption = trans.ga.action instanceof Option;
+		if(isOption){
+			//options have discounted transition probabilities and their own expected cumulative reward
+			Option o = (Option)trans.ga.action;
+			expectedReward = o.getExpectedRewards(s, trans.ga.params);
+			discount = 1.;
+		}
+		
+		for(int i = 0; i < next.length; i++){
+			HashedTransitionProbability tp = trans.transitions.get(i);
+			next[i] = index.getOrCreateIndex(tp.sh);
+			p[i] = tp.p;
+			if(!isOption){
+				expectedReward += tp.p * rf.reward(s, trans.ga, tp.sh.s);
+			}
+		}
+		
+		model.addActionTransitions(trans.ga, expectedReward, discount, next, p);
+	}
+	
+	
+	/**
+	 * Copies the values of the expanded states of the indexed model into the value function map. If the indexed model is a
+	 * {@link MappedTransitionModel}, the values of all of its states are also stored in its file.
+	 */
+	protected void writeBackIndexedValues(){
+		if(this.indexedModel == null){
+			return ;
+		}
+		StateIndex index = this.indexedModel.getStateIndex();
+		for(int i = 0; i < this.indexedModel.numExpandedStates(); i++){
+			this.valueFunction.put(index.getHashedState(i), this.indexedValueFunction[i]);
+		}
+		if(this.indexedModel instanceof MappedTransitionModel){
+			((MappedTransitionModel)this.indexedModel).storeValues(this.indexedValueFunction);
+		}
+	}
+	
+	
+	/**
+	 * Discards the compiled indexed model so that it is recompiled the next time it is needed. Values computed with it should
+	 * first be written back with {@link #writeBackIndexedValues()}.
+	 */
+	protected void clearIndexedModel(){
+		this.indexedModel = null;
+		this.indexedValueFunction = null;
+	}
+	
+	
 	/**
 	 * Returns the default V-value to use for the state
 	 * @param s the input state to get the default V-value for
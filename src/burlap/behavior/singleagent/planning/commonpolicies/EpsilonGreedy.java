@@ -10,6 +10,7 @@ import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
 import burlap.behavior.singleagent.planning.PlannerDerivedPolicy;
+import burlap.behavior.singleagent.planning.QActionSelector;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.debugtools.RandomFactory;
 import burlap.oomdp.core.AbstractGroundedAction;
@@ -82,6 +83,14 @@ public class EpsilonGreedy extends Policy implements PlannerDerivedPolicy{
 	@Override
 	public AbstractGroundedAction getAction(State s) {
 		
+		if(this.qplanner instanceof QActionSelector && ((QActionSelector)this.qplanner).canSelectActions()){
+			//select the action from the planner's Q-value storage without creating Q-value objects
+			QActionSelector selector = (QActionSelector)this.qplanner;
+			if(rand.nextDouble() <= epsilon){
+				return selector.selectRandomAction(s, rand);
+			}
+			return selector.selectGreedyAction(s, rand);
+		}
 		
 		List<QValue> qValues = this.qplanner.getQs(s);
 		
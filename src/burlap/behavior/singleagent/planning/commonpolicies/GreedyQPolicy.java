@@ -10,6 +10,7 @@ import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
 import burlap.behavior.singleagent.planning.PlannerDerivedPolicy;
+import burlap.behavior.singleagent.planning.QActionSelector;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.debugtools.RandomFactory;
 import burlap.oomdp.core.AbstractGroundedAction;
@@ -42,7 +43,18 @@ public class GreedyQPolicy extends Policy implements PlannerDerivedPolicy{
 		qplanner = planner;
 		rand = RandomFactory.getMapped(0);
 	}
-	
+
+
+	/**
+	 * Initializes with a QComputablePlanner and the random number generator used to break ties
+	 * @param planner the QComputablePlanner to use
+	 * @param rand the random number generator used to break ties
+	 */
+	public GreedyQPolicy(QComputablePlanner planner, Random rand){
+		qplanner = planner;
+		this.rand = rand;
+	}
+
 	@Override
 	public void setPlanner(OOMDPPlanner planner){
 		
@@ -55,6 +67,10 @@ public class GreedyQPolicy extends Policy implements PlannerDerivedPolicy{
 	
 	@Override
 	public AbstractGroundedAction getAction(State s) {
+		if(this.qplanner instanceof QActionSelector && ((QActionSelector)this.qplanner).canSelectActions()){
+			//select the action from the planner's Q-value storage without creating Q-value objects
+			return ((QActionSelector)this.qplanner).selectGreedyAction(s, rand);
+		}
 		List<QValue> qValues = this.qplanner.getQs(s);
 		List <QValue> maxActions = new ArrayList<QValue>();
 		maxActions.add(qValues.get(0));
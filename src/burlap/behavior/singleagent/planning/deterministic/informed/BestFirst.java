@@ -7,6 +7,8 @@ import java.util.Map;
 import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
 import burlap.behavior.statehashing.StateHashTuple;
 import burlap.datastructures.HashIndexedHeap;
+import burlap.datastructures.IntBucketQueue;
+import burlap.datastructures.IntDaryHeap;
 import burlap.debugtools.DPrint;
 import burlap.oomdp.core.State;
 import burlap.oomdp.singleagent.Action;
@@ -22,6 +24,12 @@ import burlap.oomdp.singleagent.GroundedAction;
  * if a better path to it has been found. To efficiently provide that functionality, this class makes use of a custom
  * hash-backed priority queue (heap) which performs contains tests using a hash map.
  * <p/>
+ * The open queue may instead be ordered with an int-keyed d-ary heap or bucket queue by setting the open queue type with
+ * {@link #setOpenQueueType(OpenQueueType)}; see {@link OpenQueueType} for more information. With these queues, the search assigns each state
+ * an int id when it is first generated and keeps a single map from states to their latest search node, which replaces both the closed set
+ * and the hash lookups of the open queue. Subclasses that maintain information about open nodes should override both versions of
+ * {@link #insertIntoOpen(HashIndexedHeap, PrioritizedSearchNode)} and {@link #updateOpen(HashIndexedHeap, PrioritizedSearchNode, PrioritizedSearchNode)}.
+ * <p/>
  * If a terminal function is provided to subclasses of BestFirst, then the BestFirst search algorithm will not expand any nodes
  * that are terminal states, as if there were no actions that could be executed from that state. Note that terminal states
  * are not necessarily the same as goal states, since there could be a fail condition from which the agent cannot act, but
@@ -32,6 +40,31 @@ import burlap.oomdp.singleagent.GroundedAction;
 public abstract class BestFirst extends DeterministicPlanner {
 
 	
+	/**
+	 * The data structures that can be used for the open queue. The default is HASHINDEXEDHEAP.<p/>
+	 * HASHINDEXEDHEAP uses a {@link burlap.datastructures.HashIndexedHeap}, which updates a hash map with the position of every node that
+	 * moves in the heap.
+	 * <p/>
+	 * DARYHEAP assigns each state an int id and orders the ids with an {@link burlap.datastructures.IntDaryHeap}, which stores heap positions in
+	 * arrays, so each generated successor requires a single hash lookup of its state.
+	 * <p/>
+	 * BUCKETQUEUE assigns each state an int id and orders the ids with an {@link burlap.datastructures.IntBucketQueue} with a resolution of 1,
+	 * which inserts and reorders nodes in constant time. It requires every f-score to be an integer, such as the f-scores of A* with integer
+	 * costs and an integer heuristic, and throws a runtime exception otherwise.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum OpenQueueType{
+		HASHINDEXEDHEAP, DARYHEAP, BUCKETQUEUE
+	}
+	
+	
+	/**
+	 * The data structure used for the open queue
+	 */
+	protected OpenQueueType							openQueueType = OpenQueueType.HASHINDEXEDHEAP;
+	
+	
 	/**
 	 * This method returns the f-score for a state given the parent search node, the generating action, the state that was produced.
 	 * @param parentNode the parent search node (and its priority) that from which the next state was generated.
@@ -60,6 +93,37 @@ public abstract class BestFirst extends DeterministicPlanner {
 	}
 	
 	
+	/**
+	 * Sets the data structure used for the open queue. See the {@link OpenQueueType} documentation for more information on the types.
+	 * @param type the data structure used for the open queue
+	 */
+	public void setOpenQueueType(OpenQueueType type){
+		this.openQueueType = type;
+	}
+	
+	
+	/**
+	 * Creates an empty hash indexed open queue, which is used when the open queue type is {@link OpenQueueType#HASHINDEXEDHEAP}.
+	 * @return an empty open queue
+	 */
+	protected HashIndexedHeap<PrioritizedSearchNode> createOpenQueue(){
+		return new HashIndexedHeap<PrioritizedSearchNode>(new PrioritizedSearchNode.PSNComparator());
+	}
+	
+	
+	/**
+	 * Creates an empty int-keyed open queue of the type set with {@link #setOpenQueueType(OpenQueueType)}, which must be
+	 * {@link OpenQueueType#DARYHEAP} or {@link OpenQueueType#BUCKETQUEUE}.
+	 * @return an empty int-keyed open queue
+	 */
+	protected IntKeyedSearchNodeHeap createIntKeyedOpenQueue(){
+		if(this.openQueueType == OpenQueueType.BUCKETQUEUE){
+			return new IntKeyedSearchNodeHeap(new IntBucketQueue());
+		}
+		return new IntKeyedSearchNodeHeap(new IntDaryHeap());
+	}
+	
+	
 	/**
 	 * This method is used to insert a prioritized search node into the openQueue. If the subclass needs
 	 * to do special procedures on his insert (such as using a subclass of {@link PrioritizedSearchNode} with more information),
@@ -85,6 +149,44 @@ public abstract class BestFirst extends DeterministicPlanner {
 	}
 	
 	
+	/**
+	 * This method is used to insert a prioritized search node, whose state id has been assigned, into an int-keyed openQueue. Subclasses
+	 * that override {@link #insertIntoOpen(HashIndexedHeap, PrioritizedSearchNode)} should override this method in the same way.
+	 * @param openQueue the open queue in which the search node will be inserted.
+	 * @param psn the search node to insert.
+	 */
+	public void insertIntoOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode psn){
+		openQueue.insert(psn);
+	}
+	
+	
+	/**
+	 * This method is called whenever a search node already in an int-keyed openQueue needs to have its information or priority updated to reflect
+	 * a new search node. Subclasses that override {@link #updateOpen(HashIndexedHeap, PrioritizedSearchNode, PrioritizedSearchNode)} should override
+	 * this method in the same way.
+	 * @param openQueue the open queue in which the search node exists.
+	 * @param openPSN the search node in the open queue that will be updated.
+	 * @param npsn the new search node that contains the updated information.
+	 */
+	public void updateOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode openPSN, PrioritizedSearchNode npsn){
+		openPSN.setAuxInfoTo(npsn);
+		openQueue.refreshPriority(openPSN);
+	}
+	
+	
+	/**
+	 * Returns whether a newly generated search node is a better path to its state than the latest search node of the state, in which case
+	 * the state is reopened or its open node is updated. Used by the search over an int-keyed open queue; by default, the new node is better
+	 * if it has a higher f-score.
+	 * @param existing the latest search node of the state
+	 * @param npsn the newly generated search node of the state
+	 * @return true if the new search node is a better path to the state; false otherwise.
+	 */
+	public boolean improvesOn(PrioritizedSearchNode existing, PrioritizedSearchNode npsn){
+		return npsn.priority > existing.priority;
+	}
+	
+	
 	@Override
 	public void planFromState(State initialState) {
 		
@@ -96,10 +198,15 @@ public abstract class BestFirst extends DeterministicPlanner {
 		}
 		
 		
+		if(this.openQueueType != OpenQueueType.HASHINDEXEDHEAP){
+			this.planWithIntKeyedOpenQueue(sih);
+			return ;
+		}
+		
 		//a plan is not cached so being planning process
 		this.prePlanPrep();
 
-		HashIndexedHeap<PrioritizedSearchNode> openQueue = new HashIndexedHeap<PrioritizedSearchNode>(new PrioritizedSearchNode.PSNComparator());
+		HashIndexedHeap<PrioritizedSearchNode> openQueue = this.createOpenQueue();
 		Map<PrioritizedSearchNode, PrioritizedSearchNode> closedSet = new HashMap<PrioritizedSearchNode,PrioritizedSearchNode>();
 		
 		PrioritizedSearchNode ipsn = new PrioritizedSearchNode(sih, this.computeF(null, null, sih));
@@ -179,4 +286,89 @@ public abstract class BestFirst extends DeterministicPlanner {
 		
 	}
 
+	
+	
+	/**
+	 * Plans from a hashed initial state using an int-keyed open queue created with {@link #createIntKeyedOpenQueue()}. Each state is assigned
+	 * an int id when it is first generated, and a single map from states to their latest search node tells whether a successor's state has been
+	 * generated; whether it is open or closed is then answered by the open queue from the state's id without hashing.
+	 * @param sih the hashed initial state
+	 */
+	protected void planWithIntKeyedOpenQueue(StateHashTuple sih){
+		
+		this.prePlanPrep();
+		
+		IntKeyedSearchNodeHeap openQueue = this.createIntKeyedOpenQueue();
+		Map<PrioritizedSearchNode, PrioritizedSearchNode> generated = new HashMap<PrioritizedSearchNode, PrioritizedSearchNode>();
+		
+		PrioritizedSearchNode ipsn = new PrioritizedSearchNode(sih, this.computeF(null, null, sih));
+		ipsn.id = 0;
+		generated.put(ipsn, ipsn);
+		this.insertIntoOpen(openQueue, ipsn);
+		
+		int nexpanded = 0;
+		PrioritizedSearchNode lastVistedNode = null;
+		double minF = ipsn.priority;
+		while(openQueue.size() > 0){
+			
+			PrioritizedSearchNode node = openQueue.poll();
+			
+			nexpanded++;
+			if(node.priority < minF){
+				minF = node.priority;
+				DPrint.cl(debugCode, "Min F Expanded: " + minF + "; Nodes expanded so far: " + nexpanded + "; Open size: " + openQueue.size());
+			}
+			
+			State s = node.s.s;
+			if(gc.satisfies(s)){
+				lastVistedNode = node;
+				break;
+			}
+			
+			if(this.tf.isTerminal(s)){
+				continue; //do not expand nodes from a terminal state
+			}
+			
+			//generate successors
+			for(Action a : actions){
+				List<GroundedAction> gas = a.getAllApplicableGroundedActions(s);
+				for(GroundedAction ga : gas){
+					State ns = ga.executeIn(s);
+					StateHashTuple nsh = this.stateHash(ns);
+					
+					double F = this.computeF(node, ga, nsh);
+					PrioritizedSearchNode npsn = new PrioritizedSearchNode(nsh, ga, node, F);
+					
+					PrioritizedSearchNode existing = generated.get(npsn);
+					if(existing == null){
+						npsn.id = generated.size();
+						generated.put(npsn, npsn);
+						this.insertIntoOpen(openQueue, npsn);
+					}
+					else if(this.improvesOn(existing, npsn)){
+						if(openQueue.contains(existing.id)){
+							this.updateOpen(openQueue, existing, npsn);
+						}
+						else{
+							//reopen a closed state with a better path to it
+							npsn.id = existing.id;
+							generated.put(npsn, npsn);
+							this.insertIntoOpen(openQueue, npsn);
+						}
+					}
+					
+				}
+			}
+			
+		}
+		
+		//search to goal complete. Now follow back pointers to set policy
+		this.encodePlanIntoPolicy(lastVistedNode);
+		
+		DPrint.cl(debugCode, "Num Expanded: " + nexpanded);
+		
+		this.postPlanPrep();
+		
+	}
+
 }
@@ -0,0 +1,109 @@
+package burlap.behavior.singleagent.planning.deterministic.informed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import burlap.datastructures.IntPriorityQueue;
+
+
+/**
+ * A max priority queue of {@link PrioritizedSearchNode}s that is addressed by the {@link PrioritizedSearchNode#id} of each node and orders the
+ * ids with an int-keyed {@link burlap.datastructures.IntPriorityQueue}, such as an {@link burlap.datastructures.IntDaryHeap} or an
+ * {@link burlap.datastructures.IntBucketQueue}. The search that uses this queue assigns each state a distinct id, from 0 upward, before its first
+ * node is inserted, and gives every later node of the state the same id; the queue itself performs no hashing, so inserting, reordering, and
+ * "contains" checks only update arrays.
+ * @author James MacGlashan
+ *
+ */
+public class IntKeyedSearchNodeHeap {
+
+	/**
+	 * The int-keyed priority queue of state ids
+	 */
+	protected IntPriorityQueue						queue;
+
+	/**
+	 * The most recently inserted node of each state id
+	 */
+	protected List<PrioritizedSearchNode>			nodes = new ArrayList<PrioritizedSearchNode>();
+
+
+	/**
+	 * Initializes with the int-keyed priority queue used to order the nodes.
+	 * @param queue an empty int-keyed priority queue
+	 */
+	public IntKeyedSearchNodeHeap(IntPriorityQueue queue){
+		this.queue = queue;
+	}
+
+
+	/**
+	 * Returns the number of nodes in the queue.
+	 * @return the number of nodes in the queue
+	 */
+	public int size(){
+		return this.queue.size();
+	}
+
+
+	/**
+	 * Returns whether a node of the state with the given id is in the queue.
+	 * @param id the id of the state
+	 * @return true if a node of the state is in the queue; false otherwise.
+	 */
+	public boolean contains(int id){
+		return this.queue.contains(id);
+	}
+
+
+	/**
+	 * Returns the node with the highest priority without removing it.
+	 * @return the node with the highest priority, or null if the queue is empty
+	 */
+	public PrioritizedSearchNode peek(){
+		int id = this.queue.peek();
+		if(id == -1){
+			return null;
+		}
+		return this.nodes.get(id);
+	}
+
+
+	/**
+	 * Removes and returns the node with the highest priority.
+	 * @return the node with the highest priority, or null if the queue is empty
+	 */
+	public PrioritizedSearchNode poll(){
+		int id = this.queue.poll();
+		if(id == -1){
+			return null;
+		}
+		return this.nodes.get(id);
+	}
+
+
+	/**
+	 * Inserts a node whose state has no node in the queue. The node's id must have been assigned by the search.
+	 * @param node the node to insert
+	 */
+	public void insert(PrioritizedSearchNode node){
+		if(node.id < 0){
+			throw new RuntimeException("Cannot insert a search node into an int-keyed queue before an id is assigned to its state.");
+		}
+		while(this.nodes.size() <= node.id){
+			this.nodes.add(null);
+		}
+		this.nodes.set(node.id, node);
+		this.queue.insert(node.id, node.priority);
+	}
+
+
+	/**
+	 * Reorders a node in the queue after its priority has changed.
+	 * @param node the node in the queue whose priority has changed
+	 */
+	public void refreshPriority(PrioritizedSearchNode node){
+		this.queue.updatePriority(node.id, node.priority);
+	}
+
+}
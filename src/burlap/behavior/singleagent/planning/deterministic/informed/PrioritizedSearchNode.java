@@ -20,8 +20,13 @@ public class PrioritizedSearchNode extends SearchNode {
 	 * The priority of the node used to order it for expansion.
 	 */
 	public double priority;
-	
-	
+
+	/**
+	 * The id of this node's state in a search whose open queue is an {@link IntKeyedSearchNodeHeap}; -1 if no id has been assigned.
+	 */
+	public int id = -1;
+
+
 	/**
 	 * Initializes a PrioritizedSearchNode for a given (hashed) input state and priority value. 
 	 * The generating action and back pointer will be set to null which is valid for initial states.
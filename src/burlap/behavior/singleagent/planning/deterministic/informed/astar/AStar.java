@@ -6,6 +6,7 @@ import java.util.Map;
 import burlap.behavior.singleagent.planning.StateConditionTest;
 import burlap.behavior.singleagent.planning.deterministic.informed.BestFirst;
 import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
+import burlap.behavior.singleagent.planning.deterministic.informed.IntKeyedSearchNodeHeap;
 import burlap.behavior.singleagent.planning.deterministic.informed.PrioritizedSearchNode;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -88,6 +89,18 @@ public class AStar extends BestFirst{
 		super.updateOpen(openQueue, openPSN, npsn);
 		cumulatedRewardMap.put(npsn.s, lastComputedCumR);
 	}
+	
+	@Override
+	public void insertIntoOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode psn){
+		super.insertIntoOpen(openQueue, psn);
+		cumulatedRewardMap.put(psn.s, lastComputedCumR);
+	}
+	
+	@Override
+	public void updateOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode openPSN, PrioritizedSearchNode npsn){
+		super.updateOpen(openQueue, openPSN, npsn);
+		cumulatedRewardMap.put(npsn.s, lastComputedCumR);
+	}
 
 
 	@Override
@@ -7,6 +7,7 @@ import java.util.Map;
 import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.singleagent.planning.StateConditionTest;
 import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
+import burlap.behavior.singleagent.planning.deterministic.informed.IntKeyedSearchNodeHeap;
 import burlap.behavior.singleagent.planning.deterministic.informed.PrioritizedSearchNode;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -105,6 +106,26 @@ public class DynamicWeightedAStar extends AStar {
 		super.updateOpen(openQueue, openPSN, npsn);
 		depthMap.put(npsn.s, lastComputedDepth);
 	}
+	
+	@Override
+	public void insertIntoOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode psn){
+		super.insertIntoOpen(openQueue, psn);
+		depthMap.put(psn.s, lastComputedDepth);
+	}
+	
+	@Override
+	public void updateOpen(IntKeyedSearchNodeHeap openQueue, PrioritizedSearchNode openPSN, PrioritizedSearchNode npsn){
+		super.updateOpen(openQueue, openPSN, npsn);
+		depthMap.put(npsn.s, lastComputedDepth);
+	}
+	
+	/**
+	 * A new node is a better path to its state if it has a higher cumulative reward, for the same reason as in {@link #planFromState(State)}.
+	 */
+	@Override
+	public boolean improvesOn(PrioritizedSearchNode existing, PrioritizedSearchNode npsn){
+		return lastComputedCumR > cumulatedRewardMap.get(existing.s);
+	}
 
 	
 	/**
@@ -122,10 +143,15 @@ public class DynamicWeightedAStar extends AStar {
 		}
 		
 		
+		if(this.openQueueType != OpenQueueType.HASHINDEXEDHEAP){
+			this.planWithIntKeyedOpenQueue(sih);
+			return ;
+		}
+		
 		//a plan is not cached so being planning process
 		this.prePlanPrep();
 
-		HashIndexedHeap<PrioritizedSearchNode> openQueue = new HashIndexedHeap<PrioritizedSearchNode>(new PrioritizedSearchNode.PSNComparator());
+		HashIndexedHeap<PrioritizedSearchNode> openQueue = this.createOpenQueue();
 		Map<PrioritizedSearchNode, PrioritizedSearchNode> closedSet = new HashMap<PrioritizedSearchNode,PrioritizedSearchNode>();
 		
 		PrioritizedSearchNode ipsn = new PrioritizedSearchNode(sih, this.computeF(null, null, sih));
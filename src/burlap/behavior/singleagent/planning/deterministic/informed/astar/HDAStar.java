@@ -0,0 +1,402 @@
+package burlap.behavior.singleagent.planning.deterministic.informed.astar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import burlap.behavior.singleagent.planning.StateConditionTest;
+import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
+import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
+import burlap.behavior.singleagent.planning.deterministic.informed.IntKeyedSearchNodeHeap;
+import burlap.behavior.singleagent.planning.deterministic.informed.PrioritizedSearchNode;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.datastructures.IntDaryHeap;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.auxiliary.common.NullTermination;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+
+/**
+ * A parallel implementation of A* using hash distributed A* (HDA*) [1]. Each state is owned by one of the worker threads, chosen by its state hash code,
+ * and each worker has its own open queue and its own table of the best cost found to each state it owns. When a worker expands a node, it computes the f-score
+ * of each successor and sends the successor to the worker that owns it through that worker's lock-free inbox queue, so duplicate detection never requires
+ * locking. As in {@link AStar}, costs are represented by negative rewards, the heuristic should return non-positive values, and an admissible heuristic
+ * satisfies h(n) >= C(n) for all n.
+ * <p/>
+ * Because the workers expand nodes in parallel, the first goal node a worker expands is not necessarily on an optimal path. Instead, every expanded goal node
+ * becomes the incumbent solution if its cumulative reward is higher than that of the current incumbent, and workers discard any node whose f-score is no
+ * greater than the incumbent's cumulative reward. The search terminates once every worker has no remaining node with a greater f-score and no successor
+ * nodes remain in transit between workers, at which point the incumbent is optimal when the heuristic is admissible. The solution path is then encoded
+ * into the policy with {@link #encodePlanIntoPolicy(burlap.behavior.singleagent.planning.deterministic.SearchNode)}, so
+ * {@link burlap.behavior.singleagent.planning.deterministic.SDPlannerPolicy} can be used with this planner as with any other deterministic planner.
+ * <p/>
+ * The reward function, heuristic, goal condition, terminal function, state hashing factory, and the domain's actions are called concurrently by the workers
+ * and must be safe to use from multiple threads. If a terminal function is provided via the setter method defined for OO-MDPs, then the search algorithm will
+ * not expand any nodes that are terminal states.
+ * <p/>
+ * 1. Kishimoto, Akihiro, Alex Fukunaga, and Adi Botea. "Scalable, parallel best-first search for optimal sequential planning." ICAPS. 2009.
+ *
+ * @author James MacGlashan
+ *
+ */
+public class HDAStar extends DeterministicPlanner {
+
+	/**
+	 * The number of nanoseconds an idle worker parks between checks of its inbox once it has been idle for a while
+	 */
+	protected static final long							IDLEPARKNANOS = 50000;
+
+	/**
+	 * The heuristic function.
+	 */
+	protected Heuristic									heuristic;
+
+	/**
+	 * The number of worker threads that own states and expand nodes
+	 */
+	protected int										numThreads;
+
+	/**
+	 * The workers of the current search
+	 */
+	protected List<HDAWorker>							workers;
+
+	/**
+	 * The number of busy workers plus the number of nodes in transit between workers. The search terminates when it reaches zero.
+	 */
+	protected AtomicInteger								activity;
+
+	/**
+	 * Whether a worker of the current search has failed with an exception.
+	 */
+	protected AtomicBoolean								aborted;
+
+	/**
+	 * The cumulative reward of the incumbent solution.
+	 */
+	protected volatile double							incumbentReward;
+
+	/**
+	 * The goal node of the incumbent solution.
+	 */
+	protected HDASearchNode								incumbent;
+
+
+	/**
+	 * Initializes HDA* with as many worker threads as there are available processors. Goal states are indicated by gc evaluating to true.
+	 * The costs are stored as negative rewards in the reward function. By default there are no terminal states except the goal states,
+	 * so a terminal function is not taken.
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function that represents costs as negative reward
+	 * @param gc should evaluate to true for goal states; false otherwise
+	 * @param hashingFactory the state hashing factory to use
+	 * @param heuristic the planning heuristic. Should return non-positive values.
+	 */
+	public HDAStar(Domain domain, RewardFunction rf, StateConditionTest gc, StateHashFactory hashingFactory, Heuristic heuristic){
+		this(domain, rf, gc, hashingFactory, heuristic, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * Initializes HDA*. Goal states are indicated by gc evaluating to true. The costs are stored as negative rewards in the reward function.
+	 * By default there are no terminal states except the goal states, so a terminal function is not taken.
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function that represents costs as negative reward
+	 * @param gc should evaluate to true for goal states; false otherwise
+	 * @param hashingFactory the state hashing factory to use
+	 * @param heuristic the planning heuristic. Should return non-positive values.
+	 * @param numThreads the number of worker threads
+	 */
+	public HDAStar(Domain domain, RewardFunction rf, StateConditionTest gc, StateHashFactory hashingFactory, Heuristic heuristic, int numThreads){
+
+		this.deterministicPlannerInit(domain, rf, new NullTermination(), gc, hashingFactory);
+
+		this.heuristic = heuristic;
+		this.setNumThreads(numThreads);
+
+	}
+
+
+	/**
+	 * Sets the number of worker threads that own states and expand nodes.
+	 * @param numThreads the number of worker threads; must be at least 1
+	 */
+	public void setNumThreads(int numThreads){
+		if(numThreads < 1){
+			throw new RuntimeException("HDA* requires at least one worker thread.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	@Override
+	public void planFromState(State initialState) {
+
+		//first determine if there is even a need to plan
+		StateHashTuple sih = this.stateHash(initialState);
+
+		if(mapToStateIndex.containsKey(sih)){
+			return ; //no need to plan since this is already solved
+		}
+
+		this.workers = new ArrayList<HDAWorker>(this.numThreads);
+		for(int i = 0; i < this.numThreads; i++){
+			this.workers.add(new HDAWorker());
+		}
+		this.activity = new AtomicInteger(this.numThreads);
+		this.aborted = new AtomicBoolean(false);
+		this.incumbentReward = Double.NEGATIVE_INFINITY;
+		this.incumbent = null;
+
+		HDASearchNode inode = new HDASearchNode(sih, null, null, 0., this.heuristic.h(initialState));
+		this.send(inode);
+
+		int nexpanded = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+		try{
+			for(Future<Integer> result : executor.invokeAll(this.workers)){
+				nexpanded += result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("HDA* was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("An HDA* worker failed.", e.getCause());
+		} finally{
+			executor.shutdown();
+			this.workers = null;
+		}
+
+		//search to goal complete. Now follow back pointers to set policy
+		this.encodePlanIntoPolicy(this.incumbent);
+
+		DPrint.cl(debugCode, "Num Expanded: " + nexpanded + "; Solution reward: " + this.incumbentReward);
+
+	}
+
+
+	/**
+	 * Returns the index of the worker that owns the state of a search node.
+	 * @param node the search node
+	 * @return the index of the worker that owns the state of the search node
+	 */
+	protected int owner(HDASearchNode node){
+		return (node.s.hashCode() & 0x7fffffff) % this.numThreads;
+	}
+
+
+	/**
+	 * Sends a search node to the inbox of the worker that owns its state.
+	 * @param node the search node to send
+	 */
+	protected void send(HDASearchNode node){
+		this.activity.incrementAndGet();
+		this.workers.get(this.owner(node)).inbox.add(node);
+	}
+
+
+	/**
+	 * Makes an expanded goal node the incumbent solution if its cumulative reward is higher than that of the current incumbent.
+	 * @param node the expanded goal node
+	 */
+	protected synchronized void offerSolution(HDASearchNode node){
+		if(node.g > this.incumbentReward){
+			this.incumbent = node;
+			this.incumbentReward = node.g;
+		}
+	}
+
+
+	/**
+	 * A {@link PrioritizedSearchNode} whose priority is its f-score and that also stores g(n): the cumulative reward to its state.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class HDASearchNode extends PrioritizedSearchNode{
+
+		/**
+		 * The cumulative reward to this node's state
+		 */
+		public double g;
+
+
+		/**
+		 * Initializes.
+		 * @param s the hashed state of the node
+		 * @param ga the action that generated the node
+		 * @param bp the parent node
+		 * @param g the cumulative reward to the state
+		 * @param h the heuristic value of the state
+		 */
+		public HDASearchNode(StateHashTuple s, GroundedAction ga, HDASearchNode bp, double g, double h){
+			super(s, ga, bp, g + h);
+			this.g = g;
+		}
+
+	}
+
+
+	/**
+	 * A worker that owns the states whose hash codes map to it. It repeatedly moves the nodes in its inbox into its open queue, ignoring
+	 * nodes that do not improve on the best cumulative reward found to their state, and expands the node in its open queue with the highest
+	 * f-score, sending each successor to its owner. A worker is idle when its inbox is empty and it has no node whose f-score is greater than
+	 * the incumbent's cumulative reward; the search ends when every worker is idle and no nodes are in transit.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected class HDAWorker implements Callable<Integer>{
+
+		/**
+		 * The lock-free queue of nodes sent to this worker
+		 */
+		protected ConcurrentLinkedQueue<HDASearchNode>		inbox = new ConcurrentLinkedQueue<HDASearchNode>();
+
+		/**
+		 * The open queue of this worker's states
+		 */
+		protected IntKeyedSearchNodeHeap					openQueue = new IntKeyedSearchNodeHeap(new IntDaryHeap());
+
+		/**
+		 * The node with the best cumulative reward found to each of this worker's states that has been opened, which holds the state's id in the open queue
+		 */
+		protected Map<StateHashTuple, HDASearchNode>		bestNodes = new HashMap<StateHashTuple, HDASearchNode>();
+
+
+		@Override
+		public Integer call(){
+
+			int nexpanded = 0;
+			int idleChecks = 0;
+			boolean busy = true;
+			try{
+				while(true){
+
+					if(!busy){
+						if(aborted.get()){
+							return nexpanded;
+						}
+						if(this.inbox.isEmpty()){
+							if(activity.get() == 0){
+								return nexpanded;
+							}
+							//back off so that idle workers leave the processors to the busy ones
+							if(++idleChecks < 64){
+								Thread.yield();
+							}
+							else{
+								LockSupport.parkNanos(IDLEPARKNANOS);
+							}
+							continue;
+						}
+						idleChecks = 0;
+						//a node in transit keeps the activity positive, so become busy before receiving it
+						activity.incrementAndGet();
+						busy = true;
+					}
+
+					HDASearchNode received;
+					while((received = this.inbox.poll()) != null){
+						this.receive(received);
+						activity.decrementAndGet();
+					}
+
+					PrioritizedSearchNode top = this.openQueue.peek();
+					if(top == null || top.priority <= incumbentReward || aborted.get()){
+						busy = false;
+						activity.decrementAndGet();
+						continue;
+					}
+
+					this.expand((HDASearchNode)this.openQueue.poll());
+					nexpanded++;
+
+				}
+			} catch(RuntimeException e){
+				aborted.set(true);
+				throw e;
+			}
+
+		}
+
+
+		/**
+		 * Adds a received node to the open queue if it improves on the best cumulative reward found to its state.
+		 * @param node the received node
+		 */
+		protected void receive(HDASearchNode node){
+
+			HDASearchNode best = this.bestNodes.get(node.s);
+			if(best == null){
+				node.id = this.bestNodes.size();
+				this.bestNodes.put(node.s, node);
+				this.openQueue.insert(node);
+			}
+			else if(best.g >= node.g){
+				return ; //no need to open because this is no better than a path already found
+			}
+			else if(this.openQueue.contains(best.id)){
+				//a node in the open queue has not been expanded, so no other node points back to it and it is safe to modify
+				best.setAuxInfoTo(node);
+				best.g = node.g;
+				this.openQueue.refreshPriority(best);
+			}
+			else{
+				node.id = best.id;
+				this.bestNodes.put(node.s, node);
+				this.openQueue.insert(node);
+			}
+
+		}
+
+
+		/**
+		 * Expands a node, offering it as a solution if it is a goal, and otherwise sending its successors to their owners.
+		 * @param node the node to expand
+		 */
+		protected void expand(HDASearchNode node){
+
+			State s = node.s.s;
+			if(gc.satisfies(s)){
+				offerSolution(node);
+				return ;
+			}
+
+			if(tf.isTerminal(s)){
+				return ; //do not expand nodes from a terminal state
+			}
+
+			for(Action a : actions){
+				List<GroundedAction> gas = a.getAllApplicableGroundedActions(s);
+				for(GroundedAction ga : gas){
+					State ns = ga.executeIn(s);
+					StateHashTuple nsh = stateHash(ns);
+
+					double g = node.g + rf.reward(s, ga, ns);
+					HDASearchNode npsn = new HDASearchNode(nsh, ga, node, g, heuristic.h(ns));
+					if(npsn.priority <= incumbentReward){
+						continue; //cannot improve on the incumbent solution
+					}
+
+					send(npsn);
+				}
+			}
+
+		}
+
+	}
+
+}
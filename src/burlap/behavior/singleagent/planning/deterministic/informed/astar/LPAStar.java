@@ -0,0 +1,502 @@
+package burlap.behavior.singleagent.planning.deterministic.informed.astar;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.singleagent.planning.StateConditionTest;
+import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
+import burlap.behavior.singleagent.planning.deterministic.SearchNode;
+import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.datastructures.HashIndexedHeap;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.auxiliary.common.NullTermination;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+
+/**
+ * An implementation of Lifelong Planning A* (LPA*) [1], an incremental version of A* that reuses the results of its previous search when the
+ * costs or transitions of some states change. As with {@link AStar}, costs are represented by negative rewards and the heuristic should return
+ * non-positive values; LPA* additionally requires the heuristic to be consistent for its guarantees.
+ * <p/>
+ * The planner keeps the graph of transitions it has generated, along with the g and rhs values of every generated state, between planning calls.
+ * When the transitions or rewards of some states change, such as when a wall is added to a grid world or the reward function is modified, report
+ * each state whose outgoing transitions or rewards may have changed with {@link #reportStateChanged(State)}. The planner regenerates the transitions
+ * of those states and marks the affected states for repair, and the next call to {@link #planFromState(State)} only re-expands the states whose shortest
+ * path costs changed, rather than searching from scratch. Reporting a change clears the cached plan, so the next call always replans.
+ * <p/>
+ * LPA* searches forward from a fixed initial state. If {@link #planFromState(State)} is called from a different initial state, the g and rhs values are
+ * reinitialized, but the generated transitions are kept so the domain's actions do not need to be called again. D* Lite, which keeps its values when the
+ * initial state moves, searches backward from the goal and requires the predecessors of states, which the actions of a domain do not provide.
+ * <p/>
+ * Multiple goal states are supported by connecting every generated goal state to a virtual goal node with a zero cost transition; goal states are not
+ * expanded further. If a terminal function is provided via the setter method defined for OO-MDPs, then the search algorithm will not expand any nodes
+ * that are terminal states.
+ * <p/>
+ * 1. Koenig, Sven, Maxim Likhachev, and David Furcy. "Lifelong planning A*." Artificial Intelligence 155.1 (2004): 93-146.
+ *
+ * @author James MacGlashan
+ *
+ */
+public class LPAStar extends DeterministicPlanner {
+
+	/**
+	 * The heuristic function.
+	 */
+	protected Heuristic								heuristic;
+
+	/**
+	 * The generated node of each state
+	 */
+	protected Map<StateHashTuple, LPANode>			nodes;
+
+	/**
+	 * The virtual goal node, to which every goal state has a zero cost transition
+	 */
+	protected LPANode								goalNode;
+
+	/**
+	 * The node of the initial state of the current search, or null if no search has been started
+	 */
+	protected LPANode								startNode;
+
+	/**
+	 * The priority queue of locally inconsistent nodes. Nodes that become consistent are left in the queue and are skipped when they reach its head.
+	 */
+	protected HashIndexedHeap<LPANode>				openQueue;
+
+	/**
+	 * The number of nodes expanded by the most recent planning call
+	 */
+	protected int									numExpanded;
+
+
+	/**
+	 * Initializes LPA*. Goal states are indicated by gc evaluating to true. The costs are stored as negative rewards in the reward function.
+	 * By default there are no terminal states except the goal states, so a terminal function is not taken.
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function that represents costs as negative reward
+	 * @param gc should evaluate to true for goal states; false otherwise
+	 * @param hashingFactory the state hashing factory to use
+	 * @param heuristic the planning heuristic. Should return non-positive values and be consistent.
+	 */
+	public LPAStar(Domain domain, RewardFunction rf, StateConditionTest gc, StateHashFactory hashingFactory, Heuristic heuristic){
+
+		this.deterministicPlannerInit(domain, rf, new NullTermination(), gc, hashingFactory);
+
+		this.heuristic = heuristic;
+		this.nodes = new HashMap<StateHashTuple, LPANode>();
+		this.goalNode = this.createGoalNode();
+		this.openQueue = new HashIndexedHeap<LPANode>(new LPANodeComparator());
+
+	}
+
+
+	/**
+	 * Returns the number of nodes expanded by the most recent planning call.
+	 * @return the number of nodes expanded by the most recent planning call
+	 */
+	public int getNumExpanded(){
+		return this.numExpanded;
+	}
+
+
+	@Override
+	public void resetPlannerResults(){
+		super.resetPlannerResults();
+		this.nodes.clear();
+		this.goalNode = this.createGoalNode();
+		this.startNode = null;
+		this.openQueue = new HashIndexedHeap<LPANode>(new LPANodeComparator());
+	}
+
+
+	/**
+	 * Reports that the outgoing transitions or their rewards of the given state may have changed, for instance because the reward function
+	 * or the obstacles of the domain were modified. The transitions of the state are regenerated and the states whose costs may have changed
+	 * are marked for repair by the next planning call. The cached plan is cleared. If the state has not been expanded, nothing needs to be
+	 * repaired and only the cached plan is cleared.
+	 * @param s the state whose outgoing transitions or rewards may have changed
+	 */
+	public void reportStateChanged(State s){
+
+		super.resetPlannerResults(); //the cached plan may no longer be valid
+
+		LPANode node = this.nodes.get(this.stateHash(s));
+		if(node == null || node.successors == null){
+			return ;
+		}
+
+		List<LPAEdge> oldSuccessors = node.successors;
+		for(LPAEdge e : oldSuccessors){
+			e.target.predecessors.remove(e);
+		}
+		node.successors = null;
+
+		if(this.startNode == null){
+			return ; //there are no search values to repair
+		}
+
+		for(LPAEdge e : oldSuccessors){
+			this.updateNode(e.target);
+		}
+		for(LPAEdge e : this.getSuccessors(node)){
+			this.updateNode(e.target);
+		}
+
+	}
+
+
+	@Override
+	public void planFromState(State initialState) {
+
+		StateHashTuple sih = this.stateHash(initialState);
+
+		if(mapToStateIndex.containsKey(sih)){
+			return ; //no need to plan since this is already solved
+		}
+
+		LPANode start = this.getNode(sih);
+		if(start != this.startNode){
+			this.initializeSearch(start);
+		}
+
+		this.numExpanded = 0;
+		this.computeShortestPath();
+
+		DPrint.cl(debugCode, "Num Expanded: " + this.numExpanded + "; Solution cost: " + this.goalNode.g);
+
+		SearchNode lastVisitedNode = null;
+		if(this.goalNode.g != Double.POSITIVE_INFINITY){
+			lastVisitedNode = this.extractPlan();
+		}
+
+		this.encodePlanIntoPolicy(lastVisitedNode);
+
+	}
+
+
+	/**
+	 * Resets the g and rhs values of all generated nodes and begins a new search from the given node.
+	 * @param start the node of the initial state
+	 */
+	protected void initializeSearch(LPANode start){
+
+		for(LPANode n : this.nodes.values()){
+			n.g = n.rhs = Double.POSITIVE_INFINITY;
+		}
+		this.goalNode.g = this.goalNode.rhs = Double.POSITIVE_INFINITY;
+		this.openQueue = new HashIndexedHeap<LPANode>(new LPANodeComparator());
+
+		this.startNode = start;
+		start.rhs = 0.;
+		this.enqueue(start);
+
+	}
+
+
+	/**
+	 * Expands locally inconsistent nodes in order of their keys until the virtual goal node is locally consistent and no inconsistent node
+	 * has a smaller key.
+	 */
+	protected void computeShortestPath(){
+
+		while(true){
+
+			LPANode top = this.openQueue.peek();
+			while(top != null && top.g == top.rhs){
+				this.openQueue.poll(); //became consistent after it was queued
+				top = this.openQueue.peek();
+			}
+			if(top == null){
+				break;
+			}
+
+			//goal states have the same key as the virtual goal node through their zero cost transitions, so ties must still be expanded
+			this.goalNode.computeKey(0.);
+			if(LPANode.compareKeys(top, this.goalNode) > 0 && this.goalNode.g == this.goalNode.rhs){
+				break;
+			}
+
+			this.openQueue.poll();
+			this.numExpanded++;
+
+			if(top.g > top.rhs){
+				top.g = top.rhs;
+				for(LPAEdge e : this.getSuccessors(top)){
+					this.updateNode(e.target);
+				}
+			}
+			else{
+				top.g = Double.POSITIVE_INFINITY;
+				this.updateNode(top);
+				for(LPAEdge e : this.getSuccessors(top)){
+					this.updateNode(e.target);
+				}
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * Recomputes the rhs value of a node from its predecessors and queues the node if it is locally inconsistent.
+	 * @param node the node to update
+	 */
+	protected void updateNode(LPANode node){
+
+		if(node != this.startNode){
+			node.rhs = Double.POSITIVE_INFINITY;
+			for(LPAEdge e : node.predecessors){
+				node.rhs = Math.min(node.rhs, e.source.g + e.cost);
+			}
+		}
+
+		if(node.g != node.rhs){
+			this.enqueue(node);
+		}
+
+	}
+
+
+	/**
+	 * Computes the key of a node and inserts it into the open queue, or reorders it if it is already in the queue.
+	 * @param node the node to queue
+	 */
+	protected void enqueue(LPANode node){
+		node.computeKey(node.h);
+		if(this.openQueue.containsInstance(node) != null){
+			this.openQueue.refreshPriority(node);
+		}
+		else{
+			this.openQueue.insert(node);
+		}
+	}
+
+
+	/**
+	 * Follows the predecessors with the lowest g value plus transition cost back from the virtual goal node to the initial state and returns
+	 * the search node of the goal state.
+	 * @return the search node of the goal state, whose back pointers lead to the initial state, or null if the path cannot be followed
+	 */
+	protected SearchNode extractPlan(){
+
+		LinkedList<LPAEdge> path = new LinkedList<LPAEdge>();
+		LPANode cur = this.goalNode;
+		while(cur != this.startNode){
+			LPAEdge best = null;
+			double bestV = Double.POSITIVE_INFINITY;
+			for(LPAEdge e : cur.predecessors){
+				double v = e.source.g + e.cost;
+				if(v < bestV){
+					best = e;
+					bestV = v;
+				}
+			}
+			if(best == null){
+				return null;
+			}
+			path.addFirst(best);
+			cur = best.source;
+		}
+		path.removeLast(); //the transition to the virtual goal node
+
+		SearchNode node = new SearchNode(this.startNode.s);
+		for(LPAEdge e : path){
+			node = new SearchNode(e.target.s, e.action, node);
+		}
+
+		return node;
+
+	}
+
+
+	/**
+	 * Creates the virtual goal node, which has no state and no outgoing transitions.
+	 * @return a new virtual goal node
+	 */
+	protected LPANode createGoalNode(){
+		LPANode node = new LPANode(null, 0.);
+		node.successors = new ArrayList<LPAEdge>();
+		return node;
+	}
+
+
+	/**
+	 * Returns the node of a state, creating it if the state has not been generated.
+	 * @param sh the hashed state
+	 * @return the node of the state
+	 */
+	protected LPANode getNode(StateHashTuple sh){
+		LPANode node = this.nodes.get(sh);
+		if(node == null){
+			node = new LPANode(sh, -this.heuristic.h(sh.s));
+			this.nodes.put(sh, node);
+		}
+		return node;
+	}
+
+
+	/**
+	 * Returns the outgoing transitions of a node, generating them if they have not been generated. A goal state has a single zero cost
+	 * transition to the virtual goal node and a terminal state has none.
+	 * @param node the node
+	 * @return the outgoing transitions of the node
+	 */
+	protected List<LPAEdge> getSuccessors(LPANode node){
+
+		if(node.successors != null){
+			return node.successors;
+		}
+
+		List<LPAEdge> successors = new ArrayList<LPAEdge>();
+		State s = node.s.s;
+		if(this.gc.satisfies(s)){
+			successors.add(new LPAEdge(node, this.goalNode, null, 0.));
+		}
+		else if(!this.tf.isTerminal(s)){
+			List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, s);
+			for(GroundedAction ga : gas){
+				State ns = ga.executeIn(s);
+				LPANode target = this.getNode(this.stateHash(ns));
+				if(target == node){
+					continue; //self transitions never lie on a shortest path
+				}
+				successors.add(new LPAEdge(node, target, ga, -this.rf.reward(s, ga, ns)));
+			}
+		}
+
+		for(LPAEdge e : successors){
+			e.target.predecessors.add(e);
+		}
+		node.successors = successors;
+
+		return successors;
+
+	}
+
+
+	/**
+	 * A node of the LPA* search graph, storing the g value (the cost of the best path found to the state by the last expansion of the node),
+	 * the rhs value (the one step lookahead cost computed from the g values of its predecessors), the heuristic cost to the goal, and the
+	 * generated transitions into and out of the state.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class LPANode{
+
+		public StateHashTuple		s;
+		public double				g = Double.POSITIVE_INFINITY;
+		public double				rhs = Double.POSITIVE_INFINITY;
+		public double				h;
+
+		/**
+		 * The primary key: min(g, rhs) + h
+		 */
+		public double				k1;
+
+		/**
+		 * The secondary key: min(g, rhs)
+		 */
+		public double				k2;
+
+		/**
+		 * The outgoing transitions, or null if they have not been generated
+		 */
+		public List<LPAEdge>		successors;
+
+		/**
+		 * The generated incoming transitions
+		 */
+		public List<LPAEdge>		predecessors = new ArrayList<LPAEdge>();
+
+
+		public LPANode(StateHashTuple s, double h){
+			this.s = s;
+			this.h = h;
+		}
+
+
+		/**
+		 * Sets the key of this node from its current g and rhs values.
+		 * @param h the heuristic cost to the goal
+		 */
+		public void computeKey(double h){
+			this.k2 = Math.min(this.g, this.rhs);
+			this.k1 = this.k2 + h;
+		}
+
+
+		/**
+		 * Compares the keys of two nodes lexicographically.
+		 * @param a the first node
+		 * @param b the second node
+		 * @return a negative value if a's key is smaller, 0 if they are equal, and a positive value if a's key is larger
+		 */
+		public static int compareKeys(LPANode a, LPANode b){
+			if(a.k1 < b.k1){
+				return -1;
+			}
+			if(a.k1 > b.k1){
+				return 1;
+			}
+			if(a.k2 < b.k2){
+				return -1;
+			}
+			if(a.k2 > b.k2){
+				return 1;
+			}
+			return 0;
+		}
+
+	}
+
+
+	/**
+	 * A generated transition between two nodes with its cost.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class LPAEdge{
+
+		public LPANode				source;
+		public LPANode				target;
+		public GroundedAction		action;
+		public double				cost;
+
+
+		public LPAEdge(LPANode source, LPANode target, GroundedAction action, double cost){
+			this.source = source;
+			this.target = target;
+			this.action = action;
+			this.cost = cost;
+		}
+
+	}
+
+
+	/**
+	 * Orders nodes so that the node with the smallest key is at the head of the max heap.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class LPANodeComparator implements Comparator<LPANode>{
+
+		@Override
+		public int compare(LPANode a, LPANode b) {
+			return LPANode.compareKeys(b, a);
+		}
+
+	}
+
+}
@@ -0,0 +1,208 @@
+package burlap.behavior.singleagent.planning.deterministic.uninformed.bfs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import burlap.behavior.singleagent.planning.deterministic.SearchNode;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.datastructures.LongIntHashMap;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+
+/**
+ * Implements bidirectional breadth-first frontier search for domains with a single goal state. A forward search from the initial state and a backward
+ * search from the goal state are expanded one whole layer at a time, always expanding the side with the smaller frontier, until a generated state has
+ * been visited by the other side; a shortest plan of length d then only requires each side to search to a depth of about d/2. As in {@link FrontierBFS},
+ * each side only keeps the states of its frontier and a map from the fingerprints of its visited states to their depths, and the plan is reconstructed by
+ * divide and conquer from the initial state to the meeting state and from the meeting state to the goal state.
+ * <p/>
+ * The domain's actions are not invertible, so the backward search generates the neighbors of its states by applying the actions forward. The
+ * plans it finds are therefore only shortest plans when the domain is reversible: for every action that transitions from one state to another,
+ * some action transitions back. BlocksWorld and grid worlds without one-way transitions are reversible. If the domain is not reversible, planning may
+ * fail even though the goal is reachable.
+ * <p/>
+ * If a terminal function is provided via the setter method defined for OO-MDPs, then the search algorithm will not expand any nodes
+ * that are terminal states, as if there were no actions that could be executed from that state.
+ *
+ * @author James MacGlashan
+ *
+ */
+public class BidirectionalBFS extends FrontierBFS {
+
+	/**
+	 * The goal state
+	 */
+	protected State						goalState;
+
+
+	/**
+	 * Initializes with the single goal state. The reward function is considered UniformCost, but is not used. No states are considered
+	 * terminal states, but planning will stop when it finds the goal state.
+	 * @param domain the domain in which to plan
+	 * @param goalState the goal state
+	 * @param hashingFactory the state hashing factory to use.
+	 */
+	public BidirectionalBFS(Domain domain, State goalState, StateHashFactory hashingFactory){
+		super(domain, null, hashingFactory);
+		this.goalState = goalState;
+		this.gc = new StateMatchTest(goalState);
+	}
+
+
+	@Override
+	public void planFromState(State initialState) {
+
+		StateHashTuple sih = this.stateHash(initialState);
+
+		if(mapToStateIndex.containsKey(sih)){
+			return ; //no need to plan since this is already solved
+		}
+
+		this.numExpanded = 0;
+
+		SearchNode lastVisitedNode = null;
+		MeetingResult meeting = this.bidirectionalSearch(initialState);
+		if(meeting != null){
+			DPrint.cl(debugCode, "Goal depth: " + (meeting.forwardDepth + meeting.backwardDepth) + "; Meeting depth: " + meeting.forwardDepth);
+			SearchNode meetingNode = this.reconstructPlan(new SearchNode(sih), new StateMatchTest(meeting.state), meeting.forwardDepth);
+			if(meetingNode != null){
+				lastVisitedNode = this.reconstructPlan(meetingNode, this.gc, meeting.backwardDepth);
+			}
+		}
+
+		this.encodePlanIntoPolicy(lastVisitedNode);
+
+		DPrint.cl(debugCode, "Num Expanded: " + this.numExpanded);
+
+	}
+
+
+	/**
+	 * Searches forward from the initial state and backward from the goal state until the searches meet.
+	 * @param initialState the initial state
+	 * @return the meeting state on a shortest plan and its distances from the initial state and to the goal state, or null if the searches
+	 * do not meet.
+	 */
+	protected MeetingResult bidirectionalSearch(State initialState){
+
+		long initialFingerprint = this.fingerprinter.fingerprint(initialState);
+		long goalFingerprint = this.fingerprinter.fingerprint(this.goalState);
+		if(initialFingerprint == goalFingerprint && this.gc.satisfies(initialState)){
+			return new MeetingResult(initialState, 0, 0);
+		}
+
+		LongIntHashMap forwardVisited = new LongIntHashMap();
+		LongIntHashMap backwardVisited = new LongIntHashMap();
+		forwardVisited.put(initialFingerprint, 0);
+		backwardVisited.put(goalFingerprint, 0);
+
+		List<State> forwardLayer = new ArrayList<State>();
+		List<State> backwardLayer = new ArrayList<State>();
+		forwardLayer.add(initialState);
+		backwardLayer.add(this.goalState);
+
+		int forwardDepth = 0;
+		int backwardDepth = 0;
+		while(forwardLayer.size() > 0 && backwardLayer.size() > 0){
+
+			boolean forward = forwardLayer.size() <= backwardLayer.size();
+			List<State> layer = forward ? forwardLayer : backwardLayer;
+			LongIntHashMap visited = forward ? forwardVisited : backwardVisited;
+			LongIntHashMap otherVisited = forward ? backwardVisited : forwardVisited;
+			int depth = (forward ? forwardDepth : backwardDepth) + 1;
+
+			//expand the whole layer and keep the meeting with the shortest total length
+			List<State> nextLayer = new ArrayList<State>();
+			MeetingResult best = null;
+			for(State ls : layer){
+
+				if(forward && this.tf.isTerminal(ls)){
+					continue; //don't expand terminal states
+				}
+				this.numExpanded++;
+
+				List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, ls);
+				for(GroundedAction ga : gas){
+					State ns = ga.executeIn(ls);
+					if(!forward && this.tf.isTerminal(ns)){
+						continue; //a terminal state cannot be on a plan to the goal
+					}
+					long fp = this.fingerprinter.fingerprint(ns);
+					if(!visited.put(fp, depth)){
+						continue; //already visited
+					}
+
+					int otherDepth = otherVisited.get(fp, -1);
+					if(otherDepth != -1 && (best == null || depth + otherDepth < best.forwardDepth + best.backwardDepth)){
+						best = forward ? new MeetingResult(ns, depth, otherDepth) : new MeetingResult(ns, otherDepth, depth);
+					}
+
+					nextLayer.add(ns);
+				}
+
+			}
+
+			if(best != null){
+				return best;
+			}
+
+			//the previous layer is no longer needed
+			if(forward){
+				forwardLayer = nextLayer;
+				forwardDepth = depth;
+			}
+			else{
+				backwardLayer = nextLayer;
+				backwardDepth = depth;
+			}
+
+		}
+
+		return null;
+
+	}
+
+
+	/**
+	 * The state at which the forward and backward searches met and its distances from the initial state and to the goal state.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class MeetingResult{
+
+		/**
+		 * The meeting state
+		 */
+		public State	state;
+
+		/**
+		 * The distance from the initial state to the meeting state
+		 */
+		public int		forwardDepth;
+
+		/**
+		 * The distance from the meeting state to the goal state
+		 */
+		public int		backwardDepth;
+
+
+		/**
+		 * Initializes.
+		 * @param state the meeting state
+		 * @param forwardDepth the distance from the initial state to the meeting state
+		 * @param backwardDepth the distance from the meeting state to the goal state
+		 */
+		public MeetingResult(State state, int forwardDepth, int backwardDepth){
+			this.state = state;
+			this.forwardDepth = forwardDepth;
+			this.backwardDepth = backwardDepth;
+		}
+
+	}
+
+}
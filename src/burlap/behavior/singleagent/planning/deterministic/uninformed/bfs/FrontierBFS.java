@@ -0,0 +1,281 @@
+package burlap.behavior.singleagent.planning.deterministic.uninformed.bfs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import burlap.behavior.singleagent.planning.StateConditionTest;
+import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
+import burlap.behavior.singleagent.planning.deterministic.SearchNode;
+import burlap.behavior.statehashing.FingerprintStateHashFactory;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.datastructures.LongIntHashMap;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.auxiliary.common.NullTermination;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.common.UniformCostRF;
+
+
+/**
+ * Implements breadth-first frontier search, which finds the same shortest plans as {@link BFS} while using much less memory. Rather than keeping a search node
+ * with its full state for every visited state, only the states of the layer being expanded and of the layer being generated are kept, and duplicates are
+ * detected with a set of the 64-bit fingerprints of the visited states, which takes a few bytes per state.
+ * <p/>
+ * Since the search keeps no back pointers, the plan is reconstructed by divide and conquer [1]. After a first search finds the depth d of the nearest goal,
+ * a second search records, for every state deeper than d/2, the state at depth d/2 from which it descends. When the goal is reached, that middle state is
+ * on a shortest plan, so the plans from the initial state to the middle state and from the middle state to the goal are found recursively in the same way.
+ * This expands each state O(log(d)) times, trading time for memory.
+ * <p/>
+ * Fingerprints are computed with the planner's hashing factory if it is a {@link FingerprintStateHashFactory} and with a
+ * {@link FingerprintStateHashFactory} over all attributes otherwise. Two different states with the same fingerprint would be treated as the same state;
+ * with 64-bit fingerprints this is very unlikely even for billions of states.
+ * <p/>
+ * If a terminal function is provided via the setter method defined for OO-MDPs, then the search algorithm will not expand any nodes
+ * that are terminal states, as if there were no actions that could be executed from that state. Note that terminal states
+ * are not necessarily the same as goal states, since there could be a fail condition from which the agent cannot act, but
+ * that is not explicitly represented in the transition dynamics.
+ * <p/>
+ * 1. Korf, Richard E., et al. "Frontier search." Journal of the ACM 52.5 (2005): 715-748.
+ *
+ * @author James MacGlashan
+ *
+ */
+public class FrontierBFS extends DeterministicPlanner {
+
+	/**
+	 * The factory used to fingerprint states for duplicate detection
+	 */
+	protected FingerprintStateHashFactory			fingerprinter;
+
+	/**
+	 * The number of states expanded by the searches of the most recent planning call
+	 */
+	protected int									numExpanded;
+
+
+	/**
+	 * Frontier BFS only needs reference to the domain, goal conditions, and hashing factory. The reward function is considered UniformCost, but is
+	 * not used. No states are considered terminal states, but planning will stop when it finds the goal state.
+	 * @param domain the domain in which to plan
+	 * @param gc the test for goal states
+	 * @param hashingFactory the state hashing factory to use.
+	 */
+	public FrontierBFS(Domain domain, StateConditionTest gc, StateHashFactory hashingFactory){
+		this.deterministicPlannerInit(domain, new UniformCostRF(), new NullTermination(), gc, hashingFactory);
+		if(hashingFactory instanceof FingerprintStateHashFactory){
+			this.fingerprinter = (FingerprintStateHashFactory)hashingFactory;
+		}
+		else{
+			this.fingerprinter = new FingerprintStateHashFactory();
+		}
+	}
+
+
+	/**
+	 * Returns the number of states expanded by the searches of the most recent planning call, including the expansions repeated by the
+	 * divide and conquer plan reconstruction.
+	 * @return the number of states expanded by the most recent planning call
+	 */
+	public int getNumExpanded(){
+		return this.numExpanded;
+	}
+
+
+	@Override
+	public void planFromState(State initialState) {
+
+		StateHashTuple sih = this.stateHash(initialState);
+
+		if(mapToStateIndex.containsKey(sih)){
+			return ; //no need to plan since this is already solved
+		}
+
+		this.numExpanded = 0;
+
+		FrontierResult result = this.frontierSearch(initialState, this.gc, -1);
+		SearchNode lastVisitedNode = null;
+		if(result != null){
+			DPrint.cl(debugCode, "Goal depth: " + result.depth);
+			lastVisitedNode = this.reconstructPlan(new SearchNode(sih), this.gc, result.depth);
+		}
+
+		this.encodePlanIntoPolicy(lastVisitedNode);
+
+		DPrint.cl(debugCode, "Num Expanded: " + this.numExpanded);
+
+	}
+
+
+	/**
+	 * Performs a breadth-first frontier search from a state until a state satisfying the test is generated. If the relay layer is non-negative,
+	 * the result also records the state at the relay layer from which the found state descends.
+	 * @param s the state from which to search
+	 * @param test the test for the states to find
+	 * @param relayLayer the depth of the recorded relay state, or -1 if no relay state should be recorded
+	 * @return the depth of the found state and its relay state, or null if no state satisfying the test is reachable
+	 */
+	protected FrontierResult frontierSearch(State s, StateConditionTest test, int relayLayer){
+
+		if(test.satisfies(s)){
+			return new FrontierResult(0, relayLayer == 0 ? s : null);
+		}
+
+		LongIntHashMap visited = new LongIntHashMap();
+		visited.put(this.fingerprinter.fingerprint(s), 0);
+
+		List<State> layer = new ArrayList<State>();
+		List<State> relays = new ArrayList<State>();
+		layer.add(s);
+		relays.add(relayLayer == 0 ? s : null);
+
+		int depth = 0;
+		while(layer.size() > 0){
+
+			depth++;
+			List<State> nextLayer = new ArrayList<State>();
+			List<State> nextRelays = new ArrayList<State>();
+
+			for(int i = 0; i < layer.size(); i++){
+
+				State ls = layer.get(i);
+				if(this.tf.isTerminal(ls)){
+					continue; //don't expand terminal states
+				}
+				this.numExpanded++;
+
+				List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, ls);
+				for(GroundedAction ga : gas){
+					State ns = ga.executeIn(ls);
+					if(!visited.put(this.fingerprinter.fingerprint(ns), depth)){
+						continue; //already visited
+					}
+
+					State relay = depth == relayLayer ? ns : relays.get(i);
+					if(test.satisfies(ns)){
+						return new FrontierResult(depth, relay);
+					}
+
+					nextLayer.add(ns);
+					nextRelays.add(relay);
+				}
+
+			}
+
+			//the previous layer is no longer needed
+			layer = nextLayer;
+			relays = nextRelays;
+
+		}
+
+		return null;
+
+	}
+
+
+	/**
+	 * Finds a shortest plan of the given length from the state of a search node to a state satisfying the test by divide and conquer, and
+	 * returns the search node of the final state, whose back pointers lead back to the given search node.
+	 * @param startNode the search node of the state from which to plan
+	 * @param test the test for the final state of the plan
+	 * @param depth the length of a shortest plan from the state of the search node to a state satisfying the test
+	 * @return the search node of the final state of the plan, or null if no such plan is found
+	 */
+	protected SearchNode reconstructPlan(SearchNode startNode, StateConditionTest test, int depth){
+
+		if(depth == 0){
+			return startNode;
+		}
+
+		State s = startNode.s.s;
+		if(depth == 1){
+			this.numExpanded++;
+			List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, s);
+			for(GroundedAction ga : gas){
+				State ns = ga.executeIn(s);
+				if(test.satisfies(ns)){
+					return new SearchNode(this.stateHash(ns), ga, startNode);
+				}
+			}
+			return null;
+		}
+
+		int middle = depth / 2;
+		FrontierResult result = this.frontierSearch(s, test, middle);
+		if(result == null || result.depth < middle){
+			return null; //the depth was not that of a shortest plan
+		}
+
+		SearchNode middleNode = this.reconstructPlan(startNode, new StateMatchTest(result.relay), middle);
+		if(middleNode == null){
+			return null;
+		}
+
+		return this.reconstructPlan(middleNode, test, result.depth - middle);
+
+	}
+
+
+	/**
+	 * A {@link StateConditionTest} that is satisfied by the states that are equal to a target state under the planner's state hashing factory.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected class StateMatchTest implements StateConditionTest{
+
+		/**
+		 * The hashed target state
+		 */
+		protected StateHashTuple	target;
+
+
+		/**
+		 * Initializes.
+		 * @param target the target state
+		 */
+		public StateMatchTest(State target){
+			this.target = stateHash(target);
+		}
+
+
+		@Override
+		public boolean satisfies(State s) {
+			return this.target.equals(stateHash(s));
+		}
+
+	}
+
+
+	/**
+	 * The result of a frontier search: the depth of the found state and the state at the relay layer from which it descends.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class FrontierResult{
+
+		/**
+		 * The depth of the found state
+		 */
+		public int		depth;
+
+		/**
+		 * The state at the relay layer from which the found state descends, or null if no relay layer was requested
+		 */
+		public State	relay;
+
+
+		/**
+		 * Initializes.
+		 * @param depth the depth of the found state
+		 * @param relay the relay state of the found state
+		 */
+		public FrontierResult(int depth, State relay){
+			this.depth = depth;
+			this.relay = relay;
+		}
+
+	}
+
+}
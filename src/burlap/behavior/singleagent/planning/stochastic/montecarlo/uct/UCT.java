@@ -1,15 +1,30 @@
 package burlap.behavior.singleagent.planning.stochastic.montecarlo.uct;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
+import burlap.behavior.singleagent.planning.PlanningDeadline;
 import burlap.behavior.singleagent.planning.StateConditionTest;
 import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTActionNode.UCTActionConstructor;
 import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTStateNode.UCTStateConstructor;
@@ -27,13 +42,54 @@ import burlap.oomdp.singleagent.RewardFunction;
  * that will cause the planning algorithm to terminate early once it has found a path to the goal. This may be useful if randomly finding the goal state is rare.
  * <br/>
  * <br/>
+ * When UCT is called at every step of an episode, tree reuse may be enabled with {@link #toggleTreeReuse(boolean)} so that each call keeps the
+ * subtree and statistics of the node for the state that was actually reached, rather than rebuilding the tree. The parts of previous trees that are
+ * discarded may also be kept in a bounded transposition table (see {@link #setTranspositionTableSize(int)}) so that they can be reused if their states
+ * are reached by later decisions.
+ * <br/>
+ * <br/>
+ * Rollouts may be performed by multiple worker threads with {@link #setParallelMode(ParallelMode, int)}, using root parallelization, in which
+ * each worker grows its own tree and the trees are merged when planning finishes, or tree parallelization, in which all workers share one tree
+ * and use virtual loss to spread out over it [2]; see {@link ParallelMode} for more information. In either parallel mode, the reward function,
+ * terminal function, and actions of the domain must be safe to use concurrently, and runs are not exactly repeatable since the rollouts depend
+ * on thread scheduling.
+ * <br/>
+ * <br/>
+ * UCT is an anytime planner: when planning is started with {@link #planFromState(State, PlanningDeadline)}, rollouts also stop when the deadline
+ * expires, leaving the statistics of all completed rollouts in the tree. The deadline is checked before each rollout, so planning takes at most the
+ * time of one rollout past the deadline. At least one rollout is always performed so that the root has an action to take.
+ * <br/>
+ * <br/>
  * 1. Kocsis, Levente, and Csaba Szepesvari. "Bandit based monte-carlo planning." ECML (2006). 282-293.
+ * <br/>
+ * 2. Chaslot, Guillaume M. J.-B., Mark H. M. Winands, and H. Jaap van den Herik. "Parallel Monte-Carlo Tree Search." Computers and Games (2008). 60-71.
  * 
  * @author James MacGlashan
  *
  */
-public class UCT extends OOMDPPlanner {
+public class UCT extends OOMDPPlanner implements AnytimePlanner {
 
+	/**
+	 * The ways in which rollouts can be parallelized.
+	 * <p/>
+	 * NONE performs all rollouts sequentially in the calling thread.
+	 * <p/>
+	 * ROOT gives each worker thread its own tree, which it grows from the initial state independently of the other workers. When the rollouts
+	 * are finished, the trees are merged into a single tree by summing the statistics of the nodes for the same state at the same depth.
+	 * The workers never contend with each other, but the trees duplicate the same nodes, and each worker's rollouts are only informed by
+	 * its own tree.
+	 * <p/>
+	 * TREE has all worker threads perform rollouts in the same tree. While a rollout passes through a node, it counts as a pending visit to the node
+	 * and to the selected action that returned the action's average return minus the virtual loss (see {@link UCT#setVirtualLoss(double)}), so that
+	 * other workers are steered toward other actions until the rollout is backed up. The statistics of a node are guarded by the node's monitor and
+	 * new nodes are indexed under a lock for the whole tree, so the workers contend at the nodes near the root that all rollouts pass through.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum ParallelMode{
+		NONE, ROOT, TREE
+	}
+	
 	protected List<Map<StateHashTuple, UCTStateNode>> 			stateDepthIndex;
 	protected Map <StateHashTuple, List <UCTStateNode>>			statesToStateNodes;
 	protected UCTStateNode										root;
@@ -56,6 +112,41 @@ public class UCT extends OOMDPPlanner {
 	
 	protected Random											rand;
 	
+	/**
+	 * Whether each planning call reuses the subtree of the previous tree for the initial state
+	 */
+	protected boolean											reuseTree = false;
+	
+	/**
+	 * The state nodes of previous trees that are not part of the current tree, evicted in least recently used order; null if disabled
+	 */
+	protected LRUNodeTable										transpositionTable = null;
+	
+	/**
+	 * The way in which rollouts are parallelized
+	 */
+	protected ParallelMode										parallelMode = ParallelMode.NONE;
+	
+	/**
+	 * The number of worker threads that perform rollouts when rollouts are parallelized
+	 */
+	protected int												numRolloutThreads = 1;
+	
+	/**
+	 * The amount subtracted from the average return of an action for each rollout pending through it when workers share a tree
+	 */
+	protected double											virtualLoss = 1.;
+	
+	/**
+	 * The lock that guards the tree indices when this planner is a rollout worker of a shared tree; null otherwise
+	 */
+	protected Object											sharedTreeLock = null;
+	
+	/**
+	 * The deadline of the current planning call; null if it has none
+	 */
+	protected PlanningDeadline									planningDeadline = null;
+	
 	
 	
 	/**
@@ -112,27 +203,101 @@ public class UCT extends OOMDPPlanner {
 	}
 	
 	
+	/**
+	 * Sets whether each planning call reuses the tree of the previous call. When enabled and the initial state is the root of the previous tree or
+	 * one of its successors, that node becomes the root, its subtree and statistics are kept, and the rest of the previous tree is discarded
+	 * (or moved into the transposition table, if one is used). The new rollouts are added to the kept statistics. Since the kept statistics were
+	 * sampled with a horizon measured from the previous root, they are slightly biased toward shorter horizons. The default is false.
+	 * @param reuseTree whether each planning call reuses the tree of the previous call
+	 */
+	public void toggleTreeReuse(boolean reuseTree){
+		this.reuseTree = reuseTree;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of state nodes from previous trees kept in a transposition table when tree reuse is enabled with
+	 * {@link #toggleTreeReuse(boolean)}. When the initial state of a planning call is not a successor of the previous root, the table is checked
+	 * for a node of that state from an earlier tree. When the table is full, the least recently used node is evicted and its links to its successors
+	 * are removed so that the memory of its subtree can be reclaimed. A size of 0 disables the table, which is the default.
+	 * @param maxNodes the maximum number of state nodes in the transposition table
+	 */
+	public void setTranspositionTableSize(int maxNodes){
+		if(maxNodes <= 0){
+			this.transpositionTable = null;
+		}
+		else{
+			this.transpositionTable = new LRUNodeTable(maxNodes);
+		}
+	}
+	
+	
+	/**
+	 * Sets how rollouts are parallelized and how many worker threads perform them. See {@link ParallelMode} for the available modes. The rollouts
+	 * are divided among the workers dynamically, so the total number of rollouts is the same as with sequential planning. If the mode
+	 * is {@link ParallelMode#NONE} or only one thread is used, rollouts are performed sequentially, which is the default.
+	 * @param mode the way in which rollouts are parallelized
+	 * @param numThreads the number of rollout worker threads
+	 */
+	public void setParallelMode(ParallelMode mode, int numThreads){
+		this.parallelMode = mode;
+		this.numRolloutThreads = numThreads;
+	}
+	
+	
+	/**
+	 * Sets the virtual loss used by {@link ParallelMode#TREE}. Each rollout that is pending through an action counts as a visit to the action with a return
+	 * equal to the action's average return minus the virtual loss, which lowers the upper confidence value of the action for the other workers
+	 * until the rollout is backed up. The virtual loss should be on the scale of the differences between the returns of actions. An action
+	 * that has not been tried yet but has a pending rollout is only selected by other workers if all other actions also have pending first rollouts.
+	 * The default is 1.
+	 * @param virtualLoss the amount subtracted from the average return of an action for each pending rollout
+	 */
+	public void setVirtualLoss(double virtualLoss){
+		this.virtualLoss = virtualLoss;
+	}
+	
+	
+	@Override
+	public void planFromState(State initialState, PlanningDeadline deadline){
+		this.planningDeadline = deadline;
+		try{
+			this.planFromState(initialState);
+		} finally{
+			this.planningDeadline = null;
+		}
+	}
+	
+	
 	@Override
 	public void planFromState(State initialState) {
 		
 		foundGoal = false;
 		
-		treeSize = 1;
 		numVisits = 0;
 		
 		StateHashTuple shi = this.stateHash(initialState);
-		root = stateNodeConstructor.generate(shi, 0, actions, actionNodeConstructor);
+		UCTStateNode reusableRoot = null;
+		if(this.reuseTree && this.root != null){
+			reusableRoot = this.findReusableRoot(shi);
+		}
 		
-		uniqueStatesInTree = new HashSet<StateHashTuple>();
+		if(reusableRoot != null){
+			this.reRoot(reusableRoot);
+			DPrint.cl(debugCode, "Reusing tree with " + treeSize + " nodes");
+		}
+		else{
+			this.discardTree();
+			this.initializeTree(shi);
+		}
 		
-		stateDepthIndex = new ArrayList<Map<StateHashTuple,UCTStateNode>>();
-		statesToStateNodes = new HashMap<StateHashTuple, List<UCTStateNode>>();
-		Map <StateHashTuple, UCTStateNode> depth0Map = new HashMap<StateHashTuple, UCTStateNode>();
-		depth0Map.put(shi, root);
-		stateDepthIndex.add(depth0Map);
+		if(this.parallelMode != ParallelMode.NONE && this.numRolloutThreads > 1){
+			this.parallelRollOuts(shi);
+			return ;
+		}
 		
 		
-		int lastNumUnique = 0;
+		int lastNumUnique = uniqueStatesInTree.size();
 		
 		numRollOutsFromRoot = 0;
 		while(!this.stopPlanning()){
@@ -157,6 +322,26 @@ public class UCT extends OOMDPPlanner {
 
 	}
 	
+	/**
+	 * Starts a new tree whose root is the node for the given initial state.
+	 * @param shi the hashed initial state
+	 */
+	protected void initializeTree(StateHashTuple shi){
+		
+		treeSize = 1;
+		root = stateNodeConstructor.generate(shi, 0, actions, actionNodeConstructor);
+		
+		uniqueStatesInTree = new HashSet<StateHashTuple>();
+		
+		stateDepthIndex = new ArrayList<Map<StateHashTuple,UCTStateNode>>();
+		statesToStateNodes = new HashMap<StateHashTuple, List<UCTStateNode>>();
+		Map <StateHashTuple, UCTStateNode> depth0Map = new HashMap<StateHashTuple, UCTStateNode>();
+		depth0Map.put(shi, root);
+		stateDepthIndex.add(depth0Map);
+		
+	}
+	
+	
 	@Override
 	public void resetPlannerResults(){
 		this.mapToStateIndex.clear();
@@ -164,6 +349,349 @@ public class UCT extends OOMDPPlanner {
 		this.statesToStateNodes.clear();
 		this.root = null;
 		this.numRollOutsFromRoot = 0;
+		if(this.transpositionTable != null){
+			this.transpositionTable.clear();
+		}
+	}
+	
+	
+	/**
+	 * Returns the node of the previous tree or of the transposition table to use as the root for the given initial state, or null if there is none.
+	 * The previous root is used if it is the initial state; otherwise the shallowest and most visited successor of the previous root for the initial
+	 * state is used; otherwise the node in the transposition table for the initial state is used, if any.
+	 * @param shi the hashed initial state
+	 * @return the node to use as the root, or null if the tree cannot be reused
+	 */
+	protected UCTStateNode findReusableRoot(StateHashTuple shi){
+		
+		if(root.state.equals(shi)){
+			return root;
+		}
+		
+		UCTStateNode best = null;
+		for(UCTActionNode anode : root.actionNodes){
+			List <UCTStateNode> successors = anode.successorStates.get(shi);
+			if(successors == null){
+				continue;
+			}
+			for(UCTStateNode snode : successors){
+				if(best == null || snode.depth < best.depth || (snode.depth == best.depth && snode.n > best.n)){
+					best = snode;
+				}
+			}
+		}
+		
+		if(best == null && this.transpositionTable != null){
+			best = this.transpositionTable.get(shi);
+		}
+		
+		return best;
+		
+	}
+	
+	
+	/**
+	 * Makes the given node the root of the tree. The depths of the nodes reachable from the new root are relabeled by their distance from it and
+	 * the tree indices are rebuilt from them; nodes at the maximum horizon lose their successors since rollouts never pass them. The nodes of the
+	 * previous tree that are not reachable from the new root are discarded or moved into the transposition table.
+	 * @param newRoot the node to make the root
+	 */
+	protected void reRoot(UCTStateNode newRoot){
+		
+		List <UCTStateNode> oldNodes = this.allTreeNodes();
+		
+		treeSize = 0;
+		uniqueStatesInTree = new HashSet<StateHashTuple>();
+		stateDepthIndex = new ArrayList<Map<StateHashTuple,UCTStateNode>>();
+		statesToStateNodes = new HashMap<StateHashTuple, List<UCTStateNode>>();
+		
+		Set <UCTStateNode> kept = Collections.newSetFromMap(new IdentityHashMap<UCTStateNode, Boolean>());
+		LinkedList <UCTStateNode> queue = new LinkedList<UCTStateNode>();
+		newRoot.depth = 0;
+		kept.add(newRoot);
+		queue.add(newRoot);
+		while(queue.size() > 0){
+			
+			UCTStateNode snode = queue.poll();
+			if(this.queryTreeIndex(snode.state, snode.depth) == null){
+				this.addNodeToIndexTree(snode);
+			}
+			uniqueStatesInTree.add(snode.state);
+			
+			for(UCTActionNode anode : snode.actionNodes){
+				if(snode.depth >= maxHorizon){
+					anode.successorStates.clear();
+					continue;
+				}
+				for(UCTStateNode suc : anode.getAllSuccessors()){
+					if(kept.add(suc)){
+						suc.depth = snode.depth + 1;
+						queue.offer(suc);
+					}
+				}
+			}
+			
+		}
+		
+		root = newRoot;
+		
+		if(this.transpositionTable != null){
+			for(UCTStateNode snode : kept){
+				this.transpositionTable.remove(snode.state);
+			}
+			for(UCTStateNode snode : oldNodes){
+				if(!kept.contains(snode) && !uniqueStatesInTree.contains(snode.state)){
+					UCTStateNode stored = this.transpositionTable.get(snode.state);
+					if(stored == null || snode.n > stored.n){
+						this.transpositionTable.put(snode.state, snode);
+					}
+				}
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Moves the nodes of the current tree into the transposition table, if one is used, before a new tree is started.
+	 */
+	protected void discardTree(){
+		if(this.transpositionTable == null || this.root == null){
+			return;
+		}
+		for(UCTStateNode snode : this.allTreeNodes()){
+			UCTStateNode stored = this.transpositionTable.get(snode.state);
+			if(stored == null || snode.n > stored.n){
+				this.transpositionTable.put(snode.state, snode);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns all state nodes indexed in the current tree.
+	 * @return all state nodes indexed in the current tree
+	 */
+	protected List <UCTStateNode> allTreeNodes(){
+		List <UCTStateNode> nodes = new ArrayList<UCTStateNode>(treeSize);
+		for(Map<StateHashTuple, UCTStateNode> depthNodes : stateDepthIndex){
+			nodes.addAll(depthNodes.values());
+		}
+		return nodes;
+	}
+	
+	
+	/**
+	 * Performs the rollouts from the root with the rollout worker threads, using root or tree parallelization. The workers claim rollouts from
+	 * a shared counter until the maximum number of rollouts is reached, the deadline of the planning call expires, or one of them finds a goal state,
+	 * if planning stops at goal states.
+	 * @param shi the hashed initial state
+	 */
+	protected void parallelRollOuts(StateHashTuple shi){
+		
+		boolean shareTree = this.parallelMode == ParallelMode.TREE;
+		if(shareTree){
+			this.useConcurrentTree();
+		}
+		Object treeLock = new Object();
+		
+		final AtomicInteger nextRollOut = new AtomicInteger();
+		final AtomicInteger completedRollOuts = new AtomicInteger();
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		
+		List <UCT> workers = new ArrayList<UCT>(this.numRolloutThreads);
+		List <Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(this.numRolloutThreads);
+		for(int w = 0; w < this.numRolloutThreads; w++){
+			final UCT worker = this.createRollOutWorker(new Random(this.rand.nextLong()));
+			if(shareTree){
+				worker.shareTree(this, treeLock);
+			}
+			else{
+				worker.initializeTree(shi);
+			}
+			workers.add(worker);
+			tasks.add(new Callable<Integer>() {
+				
+				@Override
+				public Integer call(){
+					while(!stop.get() && !(completedRollOuts.get() > 0 && deadlineExpired()) && (maxRollOutsFromRoot == -1 || nextRollOut.getAndIncrement() < maxRollOutsFromRoot)){
+						worker.initializeRollOut();
+						worker.treeRollOut(worker.root, 0, maxHorizon);
+						completedRollOuts.incrementAndGet();
+						if(worker.foundGoal){
+							stop.set(true);
+						}
+					}
+					return worker.numVisits;
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(this.numRolloutThreads);
+		try{
+			for(Future<Integer> result : executor.invokeAll(tasks)){
+				numVisits += result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Parallel UCT was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("A parallel UCT rollout failed.", e.getCause());
+		} finally{
+			executor.shutdown();
+		}
+		
+		if(shareTree){
+			treeSize = 0;
+			for(Map<StateHashTuple, UCTStateNode> depthNodes : stateDepthIndex){
+				treeSize += depthNodes.size();
+			}
+		}
+		else{
+			for(UCT worker : workers){
+				this.mergeTree(worker);
+			}
+		}
+		
+		foundGoal = stop.get();
+		numRollOutsFromRoot = completedRollOuts.get();
+		
+		DPrint.cl(debugCode, "\nRollouts: " + numRollOutsFromRoot + "; tree size: " + treeSize + "; total visits: " + numVisits + "; Best Action Expected Return: " + this.bestReturnAction(root).averageReturn());
+		
+	}
+	
+	
+	/**
+	 * Creates a planner with the same settings as this planner that performs rollouts for one rollout worker thread.
+	 * @param workerRand the random number generator the worker uses to break ties between actions
+	 * @return a planner that performs rollouts for a rollout worker thread
+	 */
+	protected UCT createRollOutWorker(Random workerRand){
+		
+		UCT worker = new UCT(this.domain, this.rf, this.tf, this.gamma, this.hashingFactory, this.maxHorizon, this.maxRollOutsFromRoot, 0);
+		worker.explorationBias = this.explorationBias;
+		worker.actions = this.actions;
+		worker.containsParameterizedActions = this.containsParameterizedActions;
+		worker.stateNodeConstructor = this.stateNodeConstructor;
+		worker.actionNodeConstructor = this.actionNodeConstructor;
+		worker.goalCondition = this.goalCondition;
+		worker.virtualLoss = this.virtualLoss;
+		worker.debugCode = this.debugCode;
+		worker.rand = workerRand;
+		
+		return worker;
+	}
+	
+	
+	/**
+	 * Replaces the tree indices with concurrent versions holding the same nodes so that the tree can be shared by rollout workers.
+	 */
+	protected void useConcurrentTree(){
+		
+		List<Map<StateHashTuple, UCTStateNode>> concurrentDepthIndex = new CopyOnWriteArrayList<Map<StateHashTuple,UCTStateNode>>();
+		for(Map<StateHashTuple, UCTStateNode> depthNodes : stateDepthIndex){
+			concurrentDepthIndex.add(new ConcurrentHashMap<StateHashTuple, UCTStateNode>(depthNodes));
+		}
+		stateDepthIndex = concurrentDepthIndex;
+		
+		statesToStateNodes = new ConcurrentHashMap<StateHashTuple, List<UCTStateNode>>(statesToStateNodes);
+		
+		Set<StateHashTuple> concurrentUniqueStates = Collections.newSetFromMap(new ConcurrentHashMap<StateHashTuple, Boolean>());
+		concurrentUniqueStates.addAll(uniqueStatesInTree);
+		uniqueStatesInTree = concurrentUniqueStates;
+		
+	}
+	
+	
+	/**
+	 * Makes this planner a rollout worker that performs its rollouts in the tree of another planner. The other planner's tree indices must be concurrent
+	 * (see {@link #useConcurrentTree()}).
+	 * @param planner the planner whose tree is shared
+	 * @param treeLock the lock that guards the shared tree indices
+	 */
+	protected void shareTree(UCT planner, Object treeLock){
+		root = planner.root;
+		stateDepthIndex = planner.stateDepthIndex;
+		statesToStateNodes = planner.statesToStateNodes;
+		uniqueStatesInTree = planner.uniqueStatesInTree;
+		treeSize = 0;
+		sharedTreeLock = treeLock;
+	}
+	
+	
+	/**
+	 * Merges the tree of a root parallelization rollout worker into this planner's tree. A node of the worker's tree for a state and depth that already
+	 * has a node in this tree has its visit count and action statistics added to those of this tree's node; the other nodes of the worker's
+	 * tree are moved into this tree. The successors of the worker's nodes are redirected to the corresponding nodes of this tree.
+	 * @param worker the worker whose tree is merged into this tree
+	 */
+	protected void mergeTree(UCT worker){
+		
+		List <UCTStateNode> workerNodes = worker.allTreeNodes();
+		Map <UCTStateNode, UCTStateNode> merged = new IdentityHashMap<UCTStateNode, UCTStateNode>(workerNodes.size());
+		for(UCTStateNode wnode : workerNodes){
+			UCTStateNode snode = this.queryTreeIndex(wnode.state, wnode.depth);
+			if(snode == null){
+				this.addNodeToIndexTree(wnode);
+				uniqueStatesInTree.add(wnode.state);
+				snode = wnode;
+			}
+			merged.put(wnode, snode);
+		}
+		
+		for(UCTStateNode wnode : workerNodes){
+			
+			UCTStateNode snode = merged.get(wnode);
+			if(snode != wnode){
+				snode.n += wnode.n;
+			}
+			
+			for(int i = 0; i < wnode.actionNodes.size(); i++){
+				
+				UCTActionNode wanode = wnode.actionNodes.get(i);
+				UCTActionNode anode = this.matchingActionNode(snode, wanode, i);
+				List <UCTStateNode> successors = wanode.getAllSuccessors();
+				if(snode == wnode){
+					//the node was moved, so only its successors need to be redirected
+					wanode.successorStates.clear();
+				}
+				else{
+					anode.n += wanode.n;
+					anode.sumReturn += wanode.sumReturn;
+				}
+				
+				for(UCTStateNode suc : successors){
+					UCTStateNode msuc = merged.get(suc);
+					anode.addSuccessor(msuc != null ? msuc : suc);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	
+	/**
+	 * Returns the action node of a state node for the same action as the action node of another node for the same state.
+	 * @param snode the state node whose action node is returned
+	 * @param other the action node of the other node
+	 * @param index the index of the action node in the other node's action nodes
+	 * @return the action node of the state node for the same action
+	 */
+	protected UCTActionNode matchingActionNode(UCTStateNode snode, UCTActionNode other, int index){
+		
+		//nodes for the same state are generated with the same actions in the same order
+		if(index < snode.actionNodes.size() && snode.actionNodes.get(index).action.equals(other.action)){
+			return snode.actionNodes.get(index);
+		}
+		
+		for(UCTActionNode anode : snode.actionNodes){
+			if(anode.action.equals(other.action)){
+				return anode;
+			}
+		}
+		
+		throw new RuntimeException("Cannot merge UCT trees; the node for state " + snode.state.s.getCompleteStateDescription() + " has no node for action " + other.action.toString());
 	}
 	
 	/*
@@ -202,7 +730,7 @@ public class UCT extends OOMDPPlanner {
 		
 		
 		
-		UCTActionNode anode = this.selectActionNode(node);
+		UCTActionNode anode = this.selectRollOutActionNode(node);
 		
 		if(anode == null){
 			//no actions can be performed in this state
@@ -231,10 +759,8 @@ public class UCT extends OOMDPPlanner {
 			
 			//then this state already exists in the tree
 			
-			if(!anode.referencesSuccessor(snprime)){ 
-				//then this successor has not been generated by this state-action pair before and should be indexed
-				anode.addSuccessor(snprime);
-			}
+			//index the successor if it has not been generated by this state-action pair before
+			this.addSuccessor(anode, snprime);
 			
 			futureReturn = this.treeRollOut(snprime, depth + depthChange, childrenLeftToAdd);
 			sampledReturn = r + Math.pow(gamma, depthChange) * futureReturn;
@@ -257,13 +783,10 @@ public class UCT extends OOMDPPlanner {
 			
 		}
 		
-		node.n++;
-		anode.update(sampledReturn);
+		this.backUpRollOut(node, anode, sampledReturn);
 		
 		if(shouldConnectNode || foundGoalOnRollout){
-			this.addNodeToIndexTree(snprime);
-			anode.addSuccessor(snprime);
-			uniqueStatesInTree.add(snprime.state);
+			this.connectNode(anode, snprime);
 		}
 		
 		
@@ -272,9 +795,117 @@ public class UCT extends OOMDPPlanner {
 	
 	
 	
+	/**
+	 * Selects the action node through which a rollout continues from a state node. When the tree is shared by rollout workers, the action is selected
+	 * while holding the state node's monitor and the rollout is counted as pending for the state node and the selected action node until it is backed up.
+	 * @param snode the state node from which the rollout continues
+	 * @return the selected action node, or null if there are no actions that can be performed in the state
+	 */
+	protected UCTActionNode selectRollOutActionNode(UCTStateNode snode){
+		
+		if(this.sharedTreeLock == null){
+			return this.selectActionNode(snode);
+		}
+		
+		synchronized(snode){
+			UCTActionNode anode = this.selectActionNode(snode);
+			if(anode != null){
+				snode.pendingRollouts++;
+				anode.pendingRollouts++;
+			}
+			return anode;
+		}
+		
+	}
+	
+	
+	/**
+	 * Updates the statistics of a state node and the action node through which a rollout continued from it with the return sampled by the rollout.
+	 * @param snode the state node
+	 * @param anode the action node selected by the rollout
+	 * @param sampledReturn the return sampled by the rollout from the state node
+	 */
+	protected void backUpRollOut(UCTStateNode snode, UCTActionNode anode, double sampledReturn){
+		
+		if(this.sharedTreeLock == null){
+			snode.n++;
+			anode.update(sampledReturn);
+			return ;
+		}
+		
+		synchronized(snode){
+			snode.pendingRollouts--;
+			anode.pendingRollouts--;
+			snode.n++;
+			anode.update(sampledReturn);
+		}
+		
+	}
+	
+	
+	/**
+	 * Connects a new state node to the tree as a successor of an action node. When the tree is shared by rollout workers and another worker has already
+	 * connected a node for the same state at the same depth, that node is used as the successor instead.
+	 * @param anode the action node of which the state node is a successor
+	 * @param snode the state node to connect
+	 */
+	protected void connectNode(UCTActionNode anode, UCTStateNode snode){
+		
+		if(this.sharedTreeLock == null){
+			this.addNodeToIndexTree(snode);
+			anode.addSuccessor(snode);
+			uniqueStatesInTree.add(snode.state);
+			return ;
+		}
+		
+		synchronized(this.sharedTreeLock){
+			UCTStateNode indexed = this.queryTreeIndex(snode.state, snode.depth);
+			if(indexed == null){
+				this.addNodeToIndexTree(snode);
+			}
+			else{
+				snode = indexed;
+			}
+			uniqueStatesInTree.add(snode.state);
+		}
+		this.addSuccessor(anode, snode);
+		
+	}
+	
+	
+	/**
+	 * Adds a state node as a successor of an action node if the action node does not already reference it. The action node's monitor is
+	 * only taken when the tree is shared by rollout workers, so sequential and root parallel rollouts do not lock.
+	 * @param anode the action node
+	 * @param snode the successor state node
+	 */
+	protected void addSuccessor(UCTActionNode anode, UCTStateNode snode){
+		
+		if(this.sharedTreeLock == null){
+			anode.addSuccessorIfAbsent(snode);
+			return ;
+		}
+		
+		synchronized(anode){
+			anode.addSuccessorIfAbsent(snode);
+		}
+		
+	}
+	
+	
+	/**
+	 * Returns whether the deadline of the current planning call has expired.
+	 * @return true if the current planning call has a deadline that has expired; false otherwise.
+	 */
+	protected boolean deadlineExpired(){
+		return this.planningDeadline != null && this.planningDeadline.hasExpired();
+	}
+	
+	
 	/**
 	 * Returns true if rollouts and planning should cease. Planning will stop
-	 * if the planner is told to terminate upon finding a goal and one was found, or if
+	 * if the planner is told to terminate upon finding a goal and one was found, if
+	 * the deadline of the current planning call has expired after at least one rollout, or if
 	 * the maximum number of rollouts have already been performed.
 	 * @return true if rollouts and planning should cease; false otherwise.
 	 */
@@ -282,6 +913,9 @@ public class UCT extends OOMDPPlanner {
 		if(foundGoal){
 			return true;
 		}
+		if(numRollOutsFromRoot > 0 && this.deadlineExpired()){
+			return true;
+		}
 		if(maxRollOutsFromRoot == -1){
 			return false;
 		}
@@ -313,7 +947,7 @@ public class UCT extends OOMDPPlanner {
 		for(UCTActionNode an : snode.actionNodes){
 			
 			if(!untriedNodes){
-				if(an.n == 0){
+				if(an.n == 0 && an.pendingRollouts == 0){
 					untriedNodes = true;
 					candidates.clear();
 					candidates.add(an);
@@ -330,7 +964,7 @@ public class UCT extends OOMDPPlanner {
 					}
 				}
 			}
-			else if(an.n == 0){
+			else if(an.n == 0 && an.pendingRollouts == 0){
 				candidates.add(an);
 			}
 			
@@ -369,7 +1003,18 @@ public class UCT extends OOMDPPlanner {
 	 * @return the upper confidence Q-value
 	 */
 	protected double computeUCTQ(UCTStateNode snode, UCTActionNode anode){
-		return anode.averageReturn() + this.explorationQBoost(snode.n, anode.n);
+		
+		if(anode.pendingRollouts > 0){
+			if(anode.n == 0){
+				return Double.NEGATIVE_INFINITY; //another worker is trying this action for the first time
+			}
+			//count each pending rollout as a visit whose return is the average return minus the virtual loss
+			int na = anode.n + anode.pendingRollouts;
+			double q = anode.averageReturn() - anode.pendingRollouts * this.virtualLoss / na;
+			return q + this.explorationQBoost(snode.n + snode.pendingRollouts, na);
+		}
+		
+		return anode.averageReturn() + this.explorationQBoost(snode.n + snode.pendingRollouts, anode.n);
 	}
 	
 	
@@ -407,7 +1052,12 @@ public class UCT extends OOMDPPlanner {
 	protected void addNodeToIndexTree(UCTStateNode snode){
 		
 		while(stateDepthIndex.size() <= snode.depth){
-			stateDepthIndex.add(new HashMap<StateHashTuple, UCTStateNode>());
+			if(this.sharedTreeLock == null){
+				stateDepthIndex.add(new HashMap<StateHashTuple, UCTStateNode>());
+			}
+			else{
+				stateDepthIndex.add(new ConcurrentHashMap<StateHashTuple, UCTStateNode>());
+			}
 		}
 		
 		stateDepthIndex.get(snode.depth).put(snode.state, snode);
@@ -485,4 +1135,45 @@ public class UCT extends OOMDPPlanner {
 	}
 	
 
+	
+	
+	/**
+	 * A map from states to state nodes with a maximum size that evicts its least recently used entry when the maximum size is exceeded. An evicted
+	 * node's links to its successors are removed, so that the subtree below it is no longer kept in memory through it.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class LRUNodeTable extends LinkedHashMap<StateHashTuple, UCTStateNode>{
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The maximum number of state nodes in the table
+		 */
+		protected int				maxNodes;
+		
+		
+		/**
+		 * Initializes.
+		 * @param maxNodes the maximum number of state nodes in the table
+		 */
+		public LRUNodeTable(int maxNodes){
+			super(16, 0.75f, true);
+			this.maxNodes = maxNodes;
+		}
+		
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StateHashTuple, UCTStateNode> eldest){
+			if(this.size() <= this.maxNodes){
+				return false;
+			}
+			for(UCTActionNode anode : eldest.getValue().actionNodes){
+				anode.successorStates.clear();
+			}
+			return true;
+		}
+		
+	}
+
 }
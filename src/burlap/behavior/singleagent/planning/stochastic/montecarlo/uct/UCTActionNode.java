@@ -30,6 +30,12 @@ public class UCTActionNode {
 	 */
 	public int											n;
 	
+	/**
+	 * The number of rollouts that are currently passing through this action node and have not yet been backed up. Only used when the tree
+	 * is shared by parallel rollout workers, in which case the pending rollouts are counted as virtual losses.
+	 */
+	public int											pendingRollouts;
+	
 	/**
 	 * The possible successor states. Stores a list of nodes for the same outcome state
 	 * since options may reach the same outcome state after a different number steps causing a further depth in the tree.
@@ -45,6 +51,7 @@ public class UCTActionNode {
 		action = a;
 		sumReturn = 0.;
 		n = 0;
+		pendingRollouts = 0;
 		successorStates = new HashMap<StateHashTuple, List<UCTStateNode>>();
 	}
 	
@@ -71,6 +78,16 @@ public class UCTActionNode {
 	 * @param node
 	 */
 	public void addSuccessor(UCTStateNode node){
+		this.addSuccessorIfAbsent(node);
+	}
+	
+	/**
+	 * Adds a successor node to the list of possible successors if this action node does not already reference it. This method does not lock;
+	 * when parallel rollout workers share the tree, callers must hold this node's monitor.
+	 * @param node the successor state node to add
+	 * @return true if the node was added; false if it was already a successor of this action node
+	 */
+	public boolean addSuccessorIfAbsent(UCTStateNode node){
 		
 		List <UCTStateNode> succesorsMatchingState = successorStates.get(node.state);
 		if(succesorsMatchingState == null){
@@ -80,8 +97,11 @@ public class UCTActionNode {
 		
 		if(!succesorsMatchingState.contains(node)){
 			succesorsMatchingState.add(node);
+			return true;
 		}
 		
+		return false;
+		
 	}
 	
 	/**
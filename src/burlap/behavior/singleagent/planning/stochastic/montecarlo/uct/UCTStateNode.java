@@ -10,6 +10,9 @@ import burlap.oomdp.singleagent.GroundedAction;
 
 /**
  * UCT State Node that wraps a hashed state object and provided additional state statistics necessary for UCT.
+ * <br/>
+ * When the tree is shared by parallel rollout workers, the statistics of a state node and of its action nodes are only modified while holding
+ * the state node's monitor.
  * 
  * 
  * @author James MacGlashan
@@ -32,6 +35,12 @@ public class UCTStateNode {
 	 */
 	public int						n;
 	
+	/**
+	 * The number of rollouts that are currently passing through this node and have not yet been backed up. Only used when the tree
+	 * is shared by parallel rollout workers, in which case the pending rollouts are counted as virtual visits.
+	 */
+	public int						pendingRollouts;
+	
 	/**
 	 * The possible actions (nodes) that can be performed from this state.
 	 */
@@ -51,6 +60,7 @@ public class UCTStateNode {
 		depth = d;
 		
 		n = 0;
+		pendingRollouts = 0;
 		
 		actionNodes = new ArrayList<UCTActionNode>();
 		
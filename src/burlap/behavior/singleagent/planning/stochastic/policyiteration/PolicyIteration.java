@@ -1,5 +1,6 @@
 package burlap.behavior.singleagent.planning.stochastic.policyiteration;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -7,8 +8,10 @@ import java.util.Map;
 import java.util.Set;
 
 import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.Policy.ActionProb;
 import burlap.behavior.singleagent.planning.ActionTransitions;
 import burlap.behavior.singleagent.planning.HashedTransitionProbability;
+import burlap.behavior.singleagent.planning.IndexedTransitionModel;
 import burlap.behavior.singleagent.planning.PlannerDerivedPolicy;
 import burlap.behavior.singleagent.planning.ValueFunctionPlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyDeterministicQPolicy;
@@ -58,6 +61,25 @@ public class PolicyIteration extends ValueFunctionPlanner {
 	protected boolean												foundReachableStates = false;
 	
 	
+	/**
+	 * The method used to evaluate a policy in indexed mode.
+	 */
+	protected PolicyEvaluationMethod								evaluationMethod = PolicyEvaluationMethod.SWEEPS;
+	
+	
+	/**
+	 * The methods for evaluating a policy over the indexed transition model.
+	 * SWEEPS: repeated in place fixed-policy Bellman sweeps over the states.
+	 * BICGSTAB: solves the linear system (I - gamma P_pi) v = r_pi with the (Jacobi preconditioned) BiCGSTAB Krylov method, warm started from the current values.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum PolicyEvaluationMethod{
+		SWEEPS,
+		BICGSTAB
+	}
+	
+	
 	
 	/**
 	 * Initializes the planner.
@@ -115,6 +137,22 @@ public class PolicyIteration extends ValueFunctionPlanner {
 	}
 	
 	
+	/**
+	 * Sets the method used to evaluate each policy. Evaluation with {@link PolicyEvaluationMethod#BICGSTAB} solves for the value function of the policy
+	 * as a sparse linear system, which converges in far fewer matrix-vector products than sweeps need when gamma is close to 1. It runs over the compiled
+	 * indexed transition model, so selecting it also enables indexed backups (see {@link #toggleIndexedBackups(boolean)}). In both methods, evaluation stops
+	 * once a fixed-policy Bellman backup would change no state's value by more than the maximum evaluation delta, or after the maximum number of evaluation
+	 * iterations, where an iteration of BiCGSTAB performs two matrix-vector products. The default is {@link PolicyEvaluationMethod#SWEEPS}.
+	 * @param method the policy evaluation method to use
+	 */
+	public void setPolicyEvaluationMethod(PolicyEvaluationMethod method){
+		this.evaluationMethod = method;
+		if(method == PolicyEvaluationMethod.BICGSTAB){
+			this.toggleIndexedBackups(true);
+		}
+	}
+	
+	
 	/**
 	 * Returns the policy that was last computed.
 	 * @return the policy that was last computed.
@@ -129,6 +167,7 @@ public class PolicyIteration extends ValueFunctionPlanner {
 	 */
 	public void recomputeReachableStates(){
 		this.foundReachableStates = false;
+		this.clearIndexedModel();
 	}
 	
 	
@@ -171,6 +210,10 @@ public class PolicyIteration extends ValueFunctionPlanner {
 			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use planFromState method at least once or instead.");
 		}
 		
+		if(this.usingIndexedBackups()){
+			return this.evaluatePolicyIndexed();
+		}
+		
 		double maxChangeInPolicyEvaluation = Double.NEGATIVE_INFINITY;
 		
 		Set <StateHashTuple> states = mapToStateIndex.keySet();
@@ -205,6 +248,265 @@ public class PolicyIteration extends ValueFunctionPlanner {
 	
 	
 	
+	/**
+	 * Computes the value function under following the current evaluative policy using the compiled
+	 * {@link burlap.behavior.singleagent.planning.IndexedTransitionModel}. The policy's action distribution is queried once for each state,
+	 * after which each evaluation sweep is performed over int state ids and a double array value function. The resulting values are
+	 * copied into the value function map.
+	 * @return the maximum single iteration change in the value function
+	 */
+	protected double evaluatePolicyIndexed(){
+		
+		this.compileIndexedModel();
+		
+		IndexedTransitionModel model = this.indexedModel;
+		double [] V = this.indexedValueFunction;
+		int n = model.numExpandedStates();
+		Policy p = (Policy)this.evaluativePolicy;
+		
+		//the policy is fixed during evaluation, so its action probabilities only need to be computed once
+		double [][] actionProbs = new double[n][];
+		for(int s = 0; s < n; s++){
+			if(model.isTerminal(s)){
+				continue;
+			}
+			State st = model.getStateIndex().getStateForEnumertionId(s);
+			List<ActionProb> policyDistribution = p.getActionDistributionForState(st);
+			actionProbs[s] = new double[model.numActions(s)];
+			for(int a = 0; a < actionProbs[s].length; a++){
+				actionProbs[s][a] = Policy.getProbOfActionGivenDistribution(st, model.getAction(s, a), policyDistribution);
+			}
+		}
+		
+		if(this.evaluationMethod == PolicyEvaluationMethod.BICGSTAB){
+			double maxChange = this.solvePolicyValues(model, actionProbs, V);
+			this.writeBackIndexedValues();
+			return maxChange;
+		}
+		
+		double maxChangeInPolicyEvaluation = Double.NEGATIVE_INFINITY;
+		
+		int i = 0;
+		for(i = 0; i < this.maxIterations; i++){
+			
+			double delta = 0.;
+			for(int s = 0; s < n; s++){
+				
+				double v = V[s];
+				double weightedQ = model.fixedPolicyBackup(s, actionProbs[s], V);
+				V[s] = weightedQ;
+				delta = Math.max(Math.abs(weightedQ - v), delta);
+				
+			}
+			
+			maxChangeInPolicyEvaluation = Math.max(delta, maxChangeInPolicyEvaluation);
+			
+			if(delta < this.maxEvalDelta){
+				break; //approximated well enough; stop iterating
+			}
+			
+		}
+		
+		this.writeBackIndexedValues();
+		
+		DPrint.cl(this.debugCode, "Policy Eval Passes: " + i);
+		
+		return maxChangeInPolicyEvaluation;
+		
+	}
+	
+	
+	/**
+	 * Solves for the values of the expanded states of the indexed model under a fixed policy with BiCGSTAB [1], using the given values as the initial
+	 * guess. The unknowns are the values of the expanded states; terminal states have a value of 0, and the values of states that were not expanded
+	 * are constants. With v the values, the residual b - Av of the system (I - gamma P_pi) v = r_pi is the change that a fixed-policy Bellman backup
+	 * would make to each value, so the solve stops once its max norm is below the maximum evaluation delta. The system is Jacobi preconditioned, and
+	 * the solver restarts from the true residual if the iteration breaks down or if the recursively updated residual has drifted from it.
+	 * <p/>
+	 * 1. Van der Vorst, Henk A. "Bi-CGSTAB: A fast and smoothly converging variant of Bi-CG for the solution of nonsymmetric linear systems."
+	 * SIAM Journal on Scientific and Statistical Computing 13.2 (1992): 631-644.
+	 * @param model the indexed transition model
+	 * @param actionProbs the probability of the policy selecting each action of each expanded state
+	 * @param V the value function, indexed by state id, which holds the initial guess and is overwritten with the solution
+	 * @return the maximum change in the value of any state
+	 */
+	protected double solvePolicyValues(IndexedTransitionModel model, double [][] actionProbs, double [] V){
+		
+		int n = model.numExpandedStates();
+		double [] x = new double[n];
+		System.arraycopy(V, 0, x, 0, n);
+		
+		//right hand side: expected rewards plus the discounted values of states that are not unknowns
+		double [] b = new double[n];
+		double [] invDiag = new double[n];
+		for(int s = 0; s < n; s++){
+			double diag = 1.;
+			if(!model.isTerminal(s)){
+				int firstRow = model.getFirstRow(s);
+				for(int a = 0; a < actionProbs[s].length; a++){
+					double pa = actionProbs[s][a];
+					if(pa == 0.){
+						continue;
+					}
+					int r = firstRow + a;
+					double w = pa * model.getRowDiscount(r);
+					b[s] += pa * model.getRowReward(r);
+					int end = model.getFirstEntry(r+1);
+					for(int e = model.getFirstEntry(r); e < end; e++){
+						int c = model.getColumn(e);
+						if(c >= n){
+							b[s] += w * model.getProbability(e) * V[c];
+						}
+						else if(c == s){
+							diag -= w * model.getProbability(e);
+						}
+					}
+				}
+			}
+			invDiag[s] = diag != 0. ? 1. / diag : 1.;
+		}
+		
+		double [] r = new double[n];
+		double [] rHat = new double[n];
+		double [] p = new double[n];
+		double [] v = new double[n];
+		double [] y = new double[n];
+		double [] z = new double[n];
+		double [] t = new double[n];
+		
+		int i = 0;
+		boolean restart = true;
+		double rho = 1., alpha = 1., omega = 1.;
+		while(i < this.maxIterations){
+			
+			if(restart){
+				//(re)start from the true residual
+				this.policyMatVec(model, actionProbs, x, r);
+				for(int s = 0; s < n; s++){
+					r[s] = b[s] - r[s];
+				}
+				if(maxNorm(r) < this.maxEvalDelta){
+					break;
+				}
+				System.arraycopy(r, 0, rHat, 0, n);
+				Arrays.fill(p, 0.);
+				Arrays.fill(v, 0.);
+				rho = alpha = omega = 1.;
+				restart = false;
+			}
+			
+			i++;
+			
+			double rhoNext = dot(rHat, r);
+			if(rhoNext == 0. || omega == 0.){
+				restart = true;
+				continue;
+			}
+			double beta = (rhoNext / rho) * (alpha / omega);
+			rho = rhoNext;
+			for(int s = 0; s < n; s++){
+				p[s] = r[s] + beta * (p[s] - omega * v[s]);
+				y[s] = invDiag[s] * p[s];
+			}
+			this.policyMatVec(model, actionProbs, y, v);
+			double rHatV = dot(rHat, v);
+			if(rHatV == 0.){
+				restart = true;
+				continue;
+			}
+			alpha = rho / rHatV;
+			for(int s = 0; s < n; s++){
+				x[s] += alpha * y[s];
+				r[s] -= alpha * v[s];
+			}
+			if(maxNorm(r) < this.maxEvalDelta){
+				restart = true; //verify convergence against the true residual
+				continue;
+			}
+			
+			for(int s = 0; s < n; s++){
+				z[s] = invDiag[s] * r[s];
+			}
+			this.policyMatVec(model, actionProbs, z, t);
+			double tt = dot(t, t);
+			omega = tt != 0. ? dot(t, r) / tt : 0.;
+			for(int s = 0; s < n; s++){
+				x[s] += omega * z[s];
+				r[s] -= omega * t[s];
+			}
+			if(maxNorm(r) < this.maxEvalDelta){
+				restart = true; //verify convergence against the true residual
+			}
+			
+		}
+		
+		double maxChange = 0.;
+		for(int s = 0; s < n; s++){
+			maxChange = Math.max(Math.abs(x[s] - V[s]), maxChange);
+			V[s] = x[s];
+		}
+		
+		DPrint.cl(this.debugCode, "Policy Eval BiCGSTAB iterations: " + i);
+		
+		return maxChange;
+		
+	}
+	
+	
+	/**
+	 * Computes the product y = (I - gamma P_pi) x of the policy evaluation system over the expanded states of the indexed model. Terminal
+	 * states have the row of the identity, and transitions to states that were not expanded are omitted since their values are constants.
+	 * @param model the indexed transition model
+	 * @param actionProbs the probability of the policy selecting each action of each expanded state
+	 * @param x the vector to multiply
+	 * @param y the vector in which the product is stored
+	 */
+	protected void policyMatVec(IndexedTransitionModel model, double [][] actionProbs, double [] x, double [] y){
+		int n = x.length;
+		for(int s = 0; s < n; s++){
+			double sum = 0.;
+			if(!model.isTerminal(s)){
+				int firstRow = model.getFirstRow(s);
+				for(int a = 0; a < actionProbs[s].length; a++){
+					double pa = actionProbs[s][a];
+					if(pa == 0.){
+						continue;
+					}
+					int r = firstRow + a;
+					double rowSum = 0.;
+					int end = model.getFirstEntry(r+1);
+					for(int e = model.getFirstEntry(r); e < end; e++){
+						int c = model.getColumn(e);
+						if(c < n){
+							rowSum += model.getProbability(e) * x[c];
+						}
+					}
+					sum += pa * model.getRowDiscount(r) * rowSum;
+				}
+			}
+			y[s] = x[s] - sum;
+		}
+	}
+	
+	
+	protected static double dot(double [] a, double [] b){
+		double sum = 0.;
+		for(int i = 0; i < a.length; i++){
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+	
+	
+	protected static double maxNorm(double [] a){
+		double max = 0.;
+		for(double v : a){
+			max = Math.max(Math.abs(v), max);
+		}
+		return max;
+	}
+	
+	
 	/**
 	 * This method will find all reachable states that will be used when computing the value function.
 	 * This method will not do anything if all reachable states from the input state have been discovered from previous calls to this method.
@@ -217,12 +519,18 @@ public class PolicyIteration extends ValueFunctionPlanner {
 		
 		StateHashTuple sih = this.stateHash(si);
 		//if this is not a new state and we are not required to perform a new reachability analysis, then this method does not need to do anything.
-		if(transitionDynamics.containsKey(sih) && this.foundReachableStates){
+		if(mapToStateIndex.containsKey(sih) && this.foundReachableStates){
 			return false; //no need for additional reachability testing
 		}
 		
 		DPrint.cl(this.debugCode, "Starting reachability analysis");
 		
+		if(this.compilesReachabilityToMappedModel()){
+			this.compileReachableStatesToMappedModel(sih, false);
+			this.foundReachableStates = true;
+			return true;
+		}
+		
 		//add to the open list
 		LinkedList <StateHashTuple> openList = new LinkedList<StateHashTuple>();
 		Set <StateHashTuple> openedSet = new HashSet<StateHashTuple>();
@@ -234,7 +542,7 @@ public class PolicyIteration extends ValueFunctionPlanner {
 			StateHashTuple sh = openList.poll();
 			
 			//skip this if it's already been expanded
-			if(transitionDynamics.containsKey(sh)){
+			if(mapToStateIndex.containsKey(sh)){
 				continue;
 			}
 			
@@ -265,6 +573,7 @@ public class PolicyIteration extends ValueFunctionPlanner {
 		DPrint.cl(this.debugCode, "Finished reachability analysis; # states: " + mapToStateIndex.size());
 		
 		this.foundReachableStates = true;
+		this.clearIndexedModel();
 		
 		return true;
 		
@@ -5,9 +5,21 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
+import burlap.behavior.singleagent.planning.PlanningDeadline;
 import burlap.behavior.singleagent.planning.ValueFunctionPlanner;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -17,6 +29,7 @@ import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.State;
 import burlap.oomdp.core.TerminalFunction;
 import burlap.oomdp.core.TransitionProbability;
+import burlap.oomdp.singleagent.Action;
 import burlap.oomdp.singleagent.GroundedAction;
 import burlap.oomdp.singleagent.RewardFunction;
 
@@ -39,6 +52,16 @@ import burlap.oomdp.singleagent.RewardFunction;
  * the method {@link #setStateSelectionMode(StateSelectionMode)}. Another optional state selection mode is to always choose the next state
  * with the highest uncertainty, but this tends to be even slower due to being overly conservative so it is not reccommended in genral.
  * See the {@link StateSelectionMode} documentation for more information.
+ * <p/>
+ * Rollouts may also be run in parallel by multiple worker threads with {@link #setNumRolloutThreads(int)}. The workers share the lower and
+ * upper bound value functions, which are stored in concurrent maps, and each worker makes its random choices with its own random number
+ * generator, seeded from {@link burlap.debugtools.RandomFactory#getMapped(int)} with id 0. Concurrent updates of the same state are not
+ * synchronized, so the interleaving of the workers' updates depends on thread scheduling and runs with more than one worker are not exactly
+ * repeatable. In parallel mode, the reward function, terminal function, and actions of the domain must be safe to use concurrently.
+ * <p/>
+ * Bounded RTDP is an anytime planner: when planning is started with {@link #planFromState(State, PlanningDeadline)}, planning also stops when the
+ * deadline expires and the bounds hold the updates made so far. The deadline is checked before each rollout step and before a rollout is backed up
+ * in reverse, so planning takes at most the time of one rollout step or one reverse backup past the deadline.
  * 
  * 
  * 
@@ -52,7 +75,7 @@ import burlap.oomdp.singleagent.RewardFunction;
  * @author James MacGlashan
  *
  */
-public class BoundedRTDP extends ValueFunctionPlanner {
+public class BoundedRTDP extends ValueFunctionPlanner implements AnytimePlanner {
 
 	
 	/**
@@ -156,6 +179,18 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	protected boolean							runRolloutsInReverse = true;
 	
 	
+	/**
+	 * The number of worker threads that perform rollouts. The default is 1, which performs rollouts sequentially in the calling thread.
+	 */
+	protected int								numRolloutThreads = 1;
+	
+	
+	/**
+	 * The deadline of the current planning call; null if it has none
+	 */
+	protected PlanningDeadline					planningDeadline = null;
+	
+	
 	
 	/**
 	 * Initializes.
@@ -231,13 +266,38 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 		this.runRolloutsInReverse = runRolloutsInRevers;
 	}
 	
+	/**
+	 * Sets the number of worker threads that perform rollouts. If more than one thread is used, the rollouts are performed in parallel against
+	 * shared concurrent lower and upper bound value functions until a rollout finishes with a margin for the initial state that is no larger than the
+	 * max permitted difference, or the maximum number of rollouts is reached.
+	 * @param numThreads the number of rollout worker threads
+	 */
+	public void setNumRolloutThreads(int numThreads){
+		this.numRolloutThreads = numThreads;
+	}
+	
+	@Override
+	public void planFromState(State initialState, PlanningDeadline deadline){
+		this.planningDeadline = deadline;
+		try{
+			this.planFromState(initialState);
+		} finally{
+			this.planningDeadline = null;
+		}
+	}
+	
 	@Override
 	public void planFromState(State initialState) {
 	
 		DPrint.cl(this.debugCode, "Beginning Planning.");
-		int nr = 0;
-		while(this.runRollout(initialState) > this.maxDiff && (nr < this.maxRollouts || this.maxRollouts == -1)){
-			nr++;
+		if(this.numRolloutThreads > 1){
+			this.parallelPlanFromState(initialState);
+		}
+		else{
+			int nr = 0;
+			while(!this.deadlineExpired() && this.runRollout(initialState) > this.maxDiff && (nr < this.maxRollouts || this.maxRollouts == -1)){
+				nr++;
+			}
 		}
 		
 		
@@ -245,6 +305,15 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 
 	}
 	
+	/**
+	 * Returns whether the deadline of the current planning call has expired.
+	 * @return true if the current planning call has a deadline that has expired; false otherwise.
+	 */
+	protected boolean deadlineExpired(){
+		return this.planningDeadline != null && this.planningDeadline.hasExpired();
+	}
+	
+	
 	/**
 	 * Sets the value function to use to be the upper bound.
 	 */
@@ -281,34 +350,124 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	}
 	
 	
+	/**
+	 * Runs rollouts from the initial state with the rollout worker threads until a rollout finishes with a margin that is no larger than the
+	 * max permitted difference or the maximum number of rollouts is reached.
+	 * @param initialState the initial state from which planning rollouts are performed.
+	 */
+	protected void parallelPlanFromState(final State initialState){
+		
+		if(!(this.lowerBoundV instanceof ConcurrentHashMap)){
+			this.lowerBoundV = new ConcurrentHashMap<StateHashTuple, Double>(this.lowerBoundV);
+			this.upperBoundV = new ConcurrentHashMap<StateHashTuple, Double>(this.upperBoundV);
+			if(this.currentValueFunctionIsLower){
+				this.setValueFunctionToLowerBound();
+			}
+			else{
+				this.setValueFunctionToUpperBound();
+			}
+		}
+		this.useConcurrentMaps();
+		
+		final AtomicInteger nextRollout = new AtomicInteger();
+		final AtomicBoolean converged = new AtomicBoolean(false);
+		
+		Random seeds = RandomFactory.getMapped(0);
+		List <Callable<Object>> workers = new ArrayList<Callable<Object>>(this.numRolloutThreads);
+		for(int w = 0; w < this.numRolloutThreads; w++){
+			final Random rand = new Random(seeds.nextLong());
+			workers.add(new Callable<Object>() {
+				
+				@Override
+				public Object call(){
+					while(!converged.get() && !deadlineExpired()){
+						int nr = nextRollout.getAndIncrement();
+						if(nr > maxRollouts && maxRollouts != -1){
+							break;
+						}
+						if(BoundedRTDP.this.runRollout(initialState, rand) <= maxDiff){
+							converged.set(true);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(this.numRolloutThreads);
+		try{
+			for(Future<Object> result : executor.invokeAll(workers)){
+				result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Parallel Bounded RTDP was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("A parallel Bounded RTDP rollout failed.", e.getCause());
+		} finally{
+			executor.shutdown();
+		}
+		
+		if(this.defaultToLowerValueAfterPlanning){
+			this.setValueFunctionToLowerBound();
+		}
+		else{
+			this.setValueFunctionToUpperBound();
+		}
+		
+	}
+	
+	
 	/**
 	 * Runs a planning rollout from the provided state.
 	 * @param s the initial state from which a planning rollout should be performed.
 	 * @return the margin between the lower bound and upper bound value function for the initial state.
 	 */
 	public double runRollout(State s){
+		
+		double lastGap = this.runRollout(s, RandomFactory.getMapped(0));
+		
+		if(this.defaultToLowerValueAfterPlanning){
+			this.setValueFunctionToLowerBound();
+		}
+		else{
+			this.setValueFunctionToUpperBound();
+		}
+		
+		return lastGap;
+	}
+	
+	
+	/**
+	 * Runs a planning rollout from the provided state, making random choices with the given random number generator. The lower and upper bound
+	 * value functions are read and updated directly, so the {@link ValueFunctionPlanner} valueFunction reference is not changed and
+	 * rollouts may be run concurrently.
+	 * @param s the initial state from which a planning rollout should be performed.
+	 * @param rand the random number generator used to break ties and select next states.
+	 * @return the margin between the lower bound and upper bound value function for the initial state.
+	 */
+	protected double runRollout(State s, Random rand){
 		LinkedList<StateHashTuple> trajectory = new LinkedList<StateHashTuple>();
 		
 		StateHashTuple csh = this.hashingFactory.hashState(s);
 		
-		while(!this.tf.isTerminal(csh.s) && (trajectory.size() < this.maxDepth+1 || this.maxDepth == -1)){
+		int nUpdates = 0;
+		int nSteps = 0;
+		while(!this.tf.isTerminal(csh.s) && (nSteps < this.maxDepth+1 || this.maxDepth == -1) && !this.deadlineExpired()){
 			
 			if(this.runRolloutsInReverse){
 				trajectory.offerFirst(csh);
 			}
 			
-			this.setValueFunctionToLowerBound();
-			QValue mxL = this.maxQ(csh.s);
+			QValue mxL = this.maxQ(csh.s, true, rand);
 			this.lowerBoundV.put(csh, mxL.q);
 			
-			this.setValueFunctionToUpperBound();
-			QValue mxU = this.maxQ(csh.s);
+			QValue mxU = this.maxQ(csh.s, false, rand);
 			this.upperBoundV.put(csh, mxU.q);
 			
-			numBellmanUpdates += 2;
-			this.numSteps++;
+			nUpdates += 2;
+			nSteps++;
 			
-			StateSelectionAndExpectedGap select = this.getNextState(csh.s, (GroundedAction)mxU.a);
+			StateSelectionAndExpectedGap select = this.getNextState(csh.s, (GroundedAction)mxU.a, rand);
 			csh = select.sh;
 			
 			if(select.expectedGap < this.maxDiff){
@@ -327,18 +486,16 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 		double lastGap = 0.;
 		
 		//run in reverse
-		if(this.runRolloutsInReverse){
+		if(this.runRolloutsInReverse && !this.deadlineExpired()){
 			while(trajectory.size() > 0){
 				StateHashTuple sh = trajectory.pop();
-				this.setValueFunctionToLowerBound();
-				QValue mxL = this.maxQ(sh.s);
+				QValue mxL = this.maxQ(sh.s, true, rand);
 				this.lowerBoundV.put(sh, mxL.q);
 				
-				this.setValueFunctionToUpperBound();
-				QValue mxU = this.maxQ(sh.s);
+				QValue mxU = this.maxQ(sh.s, false, rand);
 				this.upperBoundV.put(sh, mxU.q);
 				
-				numBellmanUpdates += 2;
+				nUpdates += 2;
 				lastGap = mxU.q - mxL.q;
 				
 			}
@@ -347,12 +504,9 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 			lastGap = this.getGap(this.hashingFactory.hashState(s));
 		}
 		
-		
-		if(this.defaultToLowerValueAfterPlanning){
-			this.setValueFunctionToLowerBound();
-		}
-		else{
-			this.setValueFunctionToUpperBound();
+		synchronized(this){
+			this.numBellmanUpdates += nUpdates;
+			this.numSteps += nSteps;
 		}
 		
 		return lastGap;
@@ -363,9 +517,10 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	 * Selects a next state for expansion when action a is applied in state s.
 	 * @param s the source state of the transition
 	 * @param a the action applied in the source state
+	 * @param rand the random number generator used for random selections
 	 * @return a {@link StateSelectionAndExpectedGap} object holding the next state to be expanded and the expected margin size of this transition.
 	 */
-	protected StateSelectionAndExpectedGap getNextState(State s, GroundedAction a){
+	protected StateSelectionAndExpectedGap getNextState(State s, GroundedAction a, Random rand){
 		
 		if(this.selectionMode == StateSelectionMode.MODELBASED){
 			StateHashTuple nsh =  this.hashingFactory.hashState(a.executeIn(s));
@@ -373,10 +528,10 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 			return new StateSelectionAndExpectedGap(nsh, gap);
 		}
 		else if(this.selectionMode == StateSelectionMode.WEIGHTEDMARGIN){
-			return this.getNextStateBySampling(s, a);
+			return this.getNextStateBySampling(s, a, rand);
 		}
 		else if(this.selectionMode == StateSelectionMode.MAXMARGIN){
-			return this.getNextStateByMaxMargin(s, a);
+			return this.getNextStateByMaxMargin(s, a, rand);
 		}
 		throw new RuntimeException("Unknown state selection mode.");
 	}
@@ -387,9 +542,10 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	 * Ties are broken randomly.
 	 * @param s the source state of the transition
 	 * @param a the action applied in the source state
+	 * @param rand the random number generator used to break ties
 	 * @return a {@link StateSelectionAndExpectedGap} object holding the next state to be expanded and the expected margin size of this transition.
 	 */
-	protected StateSelectionAndExpectedGap getNextStateByMaxMargin(State s, GroundedAction a){
+	protected StateSelectionAndExpectedGap getNextStateByMaxMargin(State s, GroundedAction a, Random rand){
 		
 		List<TransitionProbability> tps = a.action.getTransitions(s, a.params);
 		double sum = 0.;
@@ -409,7 +565,7 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 			}
 		}
 		
-		int rint = RandomFactory.getMapped(0).nextInt(maxStates.size());
+		int rint = rand.nextInt(maxStates.size());
 		StateSelectionAndExpectedGap select = new StateSelectionAndExpectedGap(maxStates.get(rint), sum);
 		
 		return select;
@@ -421,9 +577,10 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	 * upper bound value functions.
 	 * @param s the source state of the transition
 	 * @param a the action applied in the source state
+	 * @param rand the random number generator used to sample the next state
 	 * @return a {@link StateSelectionAndExpectedGap} object holding the next state to be expanded and the expected margin size of this transition.
 	 */
-	protected StateSelectionAndExpectedGap getNextStateBySampling(State s, GroundedAction a){
+	protected StateSelectionAndExpectedGap getNextStateBySampling(State s, GroundedAction a, Random rand){
 		
 		List<TransitionProbability> tps = a.action.getTransitions(s, a.params);
 		double sum = 0.;
@@ -438,7 +595,7 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 			sum += weightedGap[i];
 		}
 		
-		double roll = RandomFactory.getMapped(0).nextDouble();
+		double roll = rand.nextDouble();
 		double cumSum = 0.;
 		for(int i = 0; i < weightedGap.length; i++){
 			cumSum += weightedGap[i]/sum;
@@ -459,23 +616,92 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 	 * @return the lower bound and upper bound value function margin/gap for the given state
 	 */
 	protected double getGap(StateHashTuple sh){
-		this.setValueFunctionToLowerBound();
-		double l = this.value(sh);
-		this.setValueFunctionToUpperBound();
-		double u = this.value(sh);
+		double l = this.boundValue(sh, true);
+		double u = this.boundValue(sh, false);
 		double gap = u-l;
 		return gap;
 	}
 	
 	
+	/**
+	 * Returns the lower or upper bound value of the given state. Terminal states have a value of 0 and states without a stored bound
+	 * have the value of the bound's initialization.
+	 * @param sh the hashed state
+	 * @param lower if true, the lower bound is returned; if false, the upper bound is returned.
+	 * @return the lower or upper bound value of the state
+	 */
+	protected double boundValue(StateHashTuple sh, boolean lower){
+		if(this.tf.isTerminal(sh.s)){
+			return 0.;
+		}
+		Double V = lower ? this.lowerBoundV.get(sh) : this.upperBoundV.get(sh);
+		if(V == null){
+			return lower ? this.lowerVInit.value(sh.s) : this.upperVInit.value(sh.s);
+		}
+		return V;
+	}
+	
+	
+	/**
+	 * Returns the Q-value of an action in a state with respect to the lower or upper bound value function. This computation
+	 * *is* compatible with {@link burlap.behavior.singleagent.options.Option} objects.
+	 * @param s the state
+	 * @param ga the action
+	 * @param lower if true, the lower bound Q-value is returned; if false, the upper bound Q-value is returned.
+	 * @return the lower or upper bound Q-value
+	 */
+	protected double boundQ(State s, GroundedAction ga, boolean lower){
+		
+		double q = 0.;
+		
+		if(ga.action instanceof Option){
+			
+			Option o = (Option)ga.action;
+			q += o.getExpectedRewards(s, ga.params);
+			
+			//option transition probabilities are discounted, so no discount factor is needed
+			for(TransitionProbability tp : o.getTransitions(s, ga.params)){
+				q += tp.p * this.boundValue(this.hashingFactory.hashState(tp.s), lower);
+			}
+			
+		}
+		else{
+			
+			for(TransitionProbability tp : ga.action.getTransitions(s, ga.params)){
+				double r = this.rf.reward(s, ga, tp.s);
+				q += tp.p * (r + this.gamma * this.boundValue(this.hashingFactory.hashState(tp.s), lower));
+			}
+			
+		}
+		
+		return q;
+	}
+	
+	
 	/**
 	 * Returns the maximum Q-value entry for the given state with ties broken randomly. 
 	 * @param s the query state for the Q-value
 	 * @return the maximum Q-value entry for the given state with ties broken randomly. 
 	 */
 	protected QValue maxQ(State s){
+		return this.maxQ(s, this.currentValueFunctionIsLower, RandomFactory.getMapped(0));
+	}
+	
+	
+	/**
+	 * Returns the maximum lower or upper bound Q-value entry for the given state with ties broken randomly.
+	 * @param s the query state for the Q-value
+	 * @param lower if true, the lower bound Q-values are used; if false, the upper bound Q-values are used.
+	 * @param rand the random number generator used to break ties
+	 * @return the maximum Q-value entry for the given state with ties broken randomly.
+	 */
+	protected QValue maxQ(State s, boolean lower, Random rand){
 		
-		List<QValue> qs = this.getQs(s);
+		List<GroundedAction> gas = Action.getAllApplicableGroundedActionsFromActionList(this.actions, s);
+		List<QValue> qs = new ArrayList<QValue>(gas.size());
+		for(GroundedAction ga : gas){
+			qs.add(new QValue(s, ga, this.boundQ(s, ga, lower)));
+		}
 		double max = Double.NEGATIVE_INFINITY;
 		List<QValue> maxQs = new ArrayList<QValue>(qs.size());
 		
@@ -491,7 +717,7 @@ public class BoundedRTDP extends ValueFunctionPlanner {
 		}
 		
 		//return random max
-		int rint = RandomFactory.getMapped(0).nextInt(maxQs.size());
+		int rint = rand.nextInt(maxQs.size());
 		
 		return maxQs.get(rint);
 	}
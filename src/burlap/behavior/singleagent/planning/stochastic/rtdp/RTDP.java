@@ -1,16 +1,31 @@
 package burlap.behavior.singleagent.planning.stochastic.rtdp;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.ActionTransitions;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
+import burlap.behavior.singleagent.planning.HashedTransitionProbability;
+import burlap.behavior.singleagent.planning.PlanningDeadline;
 import burlap.behavior.singleagent.planning.ValueFunctionPlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
 import burlap.debugtools.DPrint;
+import burlap.debugtools.RandomFactory;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.State;
 import burlap.oomdp.core.TerminalFunction;
@@ -28,6 +43,18 @@ import burlap.oomdp.singleagent.RewardFunction;
  * <p/>
  * To ensure optimality, an optimistic value function initialization should be used. However, RTDP excels when a good value function initialization
  * (e.g., an admissible heuristic) can be provided.
+ * <p/>
+ * Rollouts may also be run in parallel by multiple worker threads with {@link #setNumRolloutThreads(int)}. The workers share the value
+ * function and cached transition dynamics, which are stored in concurrent maps, and each worker samples its rollouts with its own random
+ * number generator, seeded from {@link burlap.debugtools.RandomFactory#getMapped(int)} with id 0, so that the rollouts of a worker do not
+ * contend with those of other workers for a shared generator. Concurrent Bellman updates of the same state are not synchronized; since RTDP
+ * is an asynchronous dynamic programming method, a worker reading a slightly stale value only delays convergence. Note that the
+ * interleaving of the workers' updates depends on thread scheduling, so runs with more than one worker are not exactly repeatable.
+ * In parallel mode, the reward function, terminal function, and actions of the domain must be safe to use concurrently.
+ * <p/>
+ * RTDP is an anytime planner: when planning is started with {@link #planFromState(State, PlanningDeadline)}, planning also stops when the deadline
+ * expires and the value function holds the updates made so far. In normal mode the deadline is checked before each rollout step, so planning takes at most
+ * the time of one step past the deadline; in batch mode it is checked before each rollout.
  * 
  * 
  * 
@@ -37,7 +64,7 @@ import burlap.oomdp.singleagent.RewardFunction;
  * @author James MacGlashan
  *
  */
-public class RTDP extends ValueFunctionPlanner {
+public class RTDP extends ValueFunctionPlanner implements AnytimePlanner {
 
 	
 	/**
@@ -80,6 +107,24 @@ public class RTDP extends ValueFunctionPlanner {
 	protected int						numberOfBellmanUpdates = 0;
 	
 	
+	/**
+	 * The number of worker threads that perform rollouts. The default is 1, which performs rollouts sequentially in the calling thread.
+	 */
+	protected int						numRolloutThreads = 1;
+	
+	
+	/**
+	 * Whether the rollout policy is the default greedy Q policy, in which case each parallel worker uses its own copy of it.
+	 */
+	protected boolean					usingDefaultRolloutPolicy = true;
+	
+	
+	/**
+	 * The deadline of the current planning call; null if it has none
+	 */
+	protected PlanningDeadline			planningDeadline = null;
+	
+	
 	
 	/**
 	 * Initializes the planner. The value function will be initialized to vInit by default everywhere and will use a greedy policy with random tie breaks
@@ -164,6 +209,7 @@ public class RTDP extends ValueFunctionPlanner {
 	 */
 	public void setRollOutPolicy(Policy p){
 		this.rollOutPolicy = p;
+		this.usingDefaultRolloutPolicy = false;
 	}
 	
 	/**
@@ -193,6 +239,19 @@ public class RTDP extends ValueFunctionPlanner {
 		this.useBatch = useBatch;
 	}
 	
+	/**
+	 * Sets the number of worker threads that perform rollouts. If more than one thread is used, the rollouts are performed in parallel
+	 * against a shared concurrent value function until the total number of rollouts is reached or the required number of consecutive rollouts
+	 * (in order of completion) have a value function change smaller than the max delta. Each worker uses its own copy of the default greedy
+	 * rollout policy that breaks ties with the worker's random number generator; a rollout policy set with {@link #setRollOutPolicy(Policy)}
+	 * is shared by all workers and must be safe to use concurrently. For actions that are not options, the outcome of each rollout step is
+	 * sampled from the cached transition dynamics with the worker's random number generator.
+	 * @param numThreads the number of rollout worker threads
+	 */
+	public void setNumRolloutThreads(int numThreads){
+		this.numRolloutThreads = numThreads;
+	}
+	
 	/**
 	 * Returns the total number of Bellman updates across all planning
 	 * @return the total number of Bellman updates across all planning
@@ -201,10 +260,23 @@ public class RTDP extends ValueFunctionPlanner {
 		return this.numberOfBellmanUpdates;
 	}
 	
+	@Override
+	public void planFromState(State initialState, PlanningDeadline deadline){
+		this.planningDeadline = deadline;
+		try{
+			this.planFromState(initialState);
+		} finally{
+			this.planningDeadline = null;
+		}
+	}
+	
 	@Override
 	public void planFromState(State initialState) {
 		
-		if(!useBatch){
+		if(this.numRolloutThreads > 1){
+			this.parallelRTDP(initialState);
+		}
+		else if(!useBatch){
 			this.normalRTDP(initialState);
 		}
 		else{
@@ -216,6 +288,15 @@ public class RTDP extends ValueFunctionPlanner {
 
 
 	
+	/**
+	 * Returns whether the deadline of the current planning call has expired.
+	 * @return true if the current planning call has a deadline that has expired; false otherwise.
+	 */
+	protected boolean deadlineExpired(){
+		return this.planningDeadline != null && this.planningDeadline.hasExpired();
+	}
+	
+	
 	/**
 	 * Runs normal RTDP in which bellman updates are performed after each action selection.
 	 * @param initialState the initial state from which to plan
@@ -224,12 +305,12 @@ public class RTDP extends ValueFunctionPlanner {
 		
 		int totalStates = 0;
 		int consecutiveSmallDeltas = 0;
-		for(int i = 0; i < numRollouts; i++){
+		for(int i = 0; i < numRollouts && !this.deadlineExpired(); i++){
 			
 			State curState = initialState;
 			int nSteps = 0;
 			double delta = 0;
-			while(!this.tf.isTerminal(curState) && nSteps < this.maxDepth){
+			while(!this.tf.isTerminal(curState) && nSteps < this.maxDepth && !this.deadlineExpired()){
 				
 				StateHashTuple sh = this.hashingFactory.hashState(curState);
 				
@@ -276,7 +357,7 @@ public class RTDP extends ValueFunctionPlanner {
 		int totalStates = 0;
 		
 		int consecutiveSmallDeltas = 0;
-		for(int i = 0; i < numRollouts; i++){
+		for(int i = 0; i < numRollouts && !this.deadlineExpired(); i++){
 			
 			EpisodeAnalysis ea = this.rollOutPolicy.evaluateBehavior(initialState, rf, tf, maxDepth);
 			LinkedList <StateHashTuple> orderedStates = new LinkedList<StateHashTuple>();
@@ -303,6 +384,148 @@ public class RTDP extends ValueFunctionPlanner {
 	}
 	
 	
+	/**
+	 * Runs normal or batch RTDP with rollouts performed concurrently by the rollout worker threads.
+	 * @param initialState the initial state from which to plan
+	 */
+	protected void parallelRTDP(final State initialState){
+		
+		this.useConcurrentMaps();
+		
+		final AtomicInteger nextRollout = new AtomicInteger();
+		final AtomicInteger consecutiveSmallDeltas = new AtomicInteger();
+		final AtomicBoolean converged = new AtomicBoolean(false);
+		
+		Random seeds = RandomFactory.getMapped(0);
+		List <Callable<Integer>> workers = new ArrayList<Callable<Integer>>(this.numRolloutThreads);
+		for(int w = 0; w < this.numRolloutThreads; w++){
+			final Random rand = new Random(seeds.nextLong());
+			final Policy policy = this.usingDefaultRolloutPolicy ? new GreedyQPolicy(this, rand) : this.rollOutPolicy;
+			workers.add(new Callable<Integer>() {
+				
+				@Override
+				public Integer call(){
+					int nSteps = 0;
+					while(!converged.get() && !deadlineExpired() && nextRollout.getAndIncrement() < numRollouts){
+						
+						LinkedList <StateHashTuple> orderedStates = new LinkedList<StateHashTuple>();
+						double delta = RTDP.this.runWorkerRollout(initialState, policy, rand, orderedStates);
+						nSteps += orderedStates.size();
+						
+						if(delta < maxDelta){
+							if(consecutiveSmallDeltas.incrementAndGet() >= minNumRolloutsWithSmallValueChange){
+								converged.set(true);
+							}
+						}
+						else{
+							consecutiveSmallDeltas.set(0);
+						}
+						
+					}
+					return nSteps;
+				}
+			});
+		}
+		
+		int totalStates = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(this.numRolloutThreads);
+		try{
+			for(Future<Integer> result : executor.invokeAll(workers)){
+				totalStates += result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Parallel RTDP was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("A parallel RTDP rollout failed.", e.getCause());
+		} finally{
+			executor.shutdown();
+		}
+		
+		DPrint.cl(debugCode, "Passes: " + Math.min(nextRollout.get(), numRollouts) + "; Num states: " + totalStates);
+		
+	}
+	
+	
+	/**
+	 * Performs one rollout of a parallel rollout worker. In normal mode, each visited state is updated when it is visited; in batch mode,
+	 * the visited states are updated in reverse once the rollout is complete.
+	 * @param initialState the initial state of the rollout
+	 * @param policy the rollout policy of the worker
+	 * @param rand the random number generator of the worker
+	 * @param orderedStates a list to which the visited states are added, most recent first
+	 * @return the maximum change in the value function for the visited states
+	 */
+	protected double runWorkerRollout(State initialState, Policy policy, Random rand, LinkedList <StateHashTuple> orderedStates){
+		
+		double delta = 0.;
+		StateHashTuple sh = this.stateHash(initialState);
+		while(!this.tf.isTerminal(sh.s) && orderedStates.size() < this.maxDepth && (this.useBatch || !this.deadlineExpired())){
+			
+			orderedStates.addFirst(sh);
+			
+			//select an action
+			GroundedAction ga = (GroundedAction)policy.getAction(sh.s);
+			
+			if(!this.useBatch){
+				//update this state's value
+				double curV = this.value(sh);
+				double nV = this.performBellmanUpdateOn(sh);
+				delta = Math.max(Math.abs(nV - curV), delta);
+			}
+			
+			//take the action
+			sh = this.sampleNextState(sh, ga, rand);
+			
+		}
+		
+		if(this.useBatch){
+			for(StateHashTuple bsh : orderedStates){
+				double v = this.value(bsh);
+				double maxQ = this.performBellmanUpdateOn(bsh);
+				delta = Math.max(Math.abs(maxQ - v), delta);
+			}
+		}
+		
+		synchronized(this){
+			this.numberOfBellmanUpdates += orderedStates.size();
+		}
+		
+		return delta;
+		
+	}
+	
+	
+	/**
+	 * Samples the outcome state of applying an action in a state with the given random number generator. If transition dynamics are cached
+	 * and the action is not an option, the outcome is sampled from the cached transition dynamics; otherwise the action is executed.
+	 * @param sh the hashed state in which the action is applied
+	 * @param ga the action to apply
+	 * @param rand the random number generator used to sample the outcome
+	 * @return the hashed outcome state
+	 */
+	protected StateHashTuple sampleNextState(StateHashTuple sh, GroundedAction ga, Random rand){
+		
+		if(this.useCachedTransitions && !(ga.action instanceof Option)){
+			for(ActionTransitions at : this.getActionsTransitions(sh)){
+				if(at.matchingTransitions(ga)){
+					double roll = rand.nextDouble();
+					double cumSum = 0.;
+					for(HashedTransitionProbability tp : at.transitions){
+						cumSum += tp.p;
+						if(roll < cumSum){
+							return tp.sh;
+						}
+					}
+					return at.transitions.get(at.transitions.size()-1).sh; //rounding error in the probability sum
+				}
+			}
+		}
+		
+		return this.stateHash(ga.executeIn(sh.s));
+		
+	}
+	
+	
 	/**
 	 * Performs ordered Bellman updates on the list of (hashed) states provided to it.
 	 * @param states the ordered list of states on which to perform Bellamn updates.
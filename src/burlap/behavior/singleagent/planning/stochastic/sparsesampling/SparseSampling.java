@@ -2,15 +2,30 @@ package burlap.behavior.singleagent.planning.stochastic.sparsesampling;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.QValue;
 import burlap.behavior.singleagent.ValueFunctionInitialization;
 import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
+import burlap.behavior.singleagent.planning.PlanningDeadline;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.statehashing.NameDependentStateHashFactory;
 import burlap.behavior.statehashing.StateHashFactory;
@@ -44,6 +59,11 @@ import burlap.oomdp.singleagent.RewardFunction;
  * subsequent tree creations, thereby limiting the amount of additional computation required. However, if memory is scarce, the class can be told to forget all prior planning
  * results, except the Q-value estimate for the most recently planned for state, by using the {@link #forgetPreviousPlanResults} method.
  * <p/>
+ * Alternatively, the memory can be bounded while keeping some reuse across planning calls. With {@link #setMaxCachedNodes(int)}, the state nodes are kept in a
+ * cache of a maximum size that evicts the nodes least recently used by a tree, and among those, the nodes of the lowest height, whose values are the
+ * cheapest to estimate again. With {@link #setMaxCachedRootStates(int)}, only the Q-values of the most recently used root states are kept. The hits and
+ * misses of state node lookups are counted so that the cache size can be tuned; see {@link #getNodeCacheHitRate()}.
+ * <p/>
  * By default, the C parameter (number of state transition samples) is fixed for all nodes; however, it may also be set to use a variable C that reduces the number
  * of sampled states the further down in the tree it is according to C_i = C_0 * gamma^(2i), where i is the depth of the node from the root and gamma is the discount
  * factor.
@@ -62,6 +82,20 @@ import burlap.oomdp.singleagent.RewardFunction;
  * required factored access to the probability of each length of each transition, which is not available from Options (it's aggregated into the transition function
  * itself). An exception will be thrown if {@link Option}s are used with the full Bellman transitions.
  * <p/>
+ * Sparse Sampling is an anytime planner: when planning is started with {@link #planFromState(State, PlanningDeadline)}, it uses iterative deepening,
+ * estimating the Q-values of the initial state with trees of height 0, 1, 2, ..., H until the deadline expires, and keeps the Q-values of the tallest
+ * tree that was completed. Since the state nodes are indexed by their height, the nodes of each tree are reused by the next taller tree, so
+ * iterative deepening adds little computation to the tallest tree. The deadline is checked before each state node value is estimated, so planning
+ * takes at most the time of one node estimate past the deadline. The Q-values of a tree of height 0 are the leaf values, so Q-values are always
+ * available. If planning stops before the tree of height H is completed, a later planning call for the same state will continue deepening.
+ * <p/>
+ * The tree may also be expanded by multiple threads with {@link #setNumThreads(int)}. A node near the root first samples the outcomes of all of its actions and
+ * then estimates the values of its distinct successor nodes as parallel tasks, down to the depth set with {@link #setParallelDepth(int)}; deeper nodes
+ * are expanded serially by the thread that reaches them. A thread that waits for its tasks runs the ones that no other thread has started, so nested tasks
+ * cannot starve the thread pool. The node index is then a concurrent map and each node estimates its value while holding its monitor, so a node that
+ * is reached by several subtrees is still only estimated once, with the other threads waiting for its value. Since nodes only wait for nodes of lower
+ * heights, the threads cannot deadlock. The reward function, terminal function, and actions of the domain must be safe to use concurrently.
+ * <p/>
  * 
  * 
  * 1. Kearns, Michael, Yishay Mansour, and Andrew Y. Ng. "A sparse sampling algorithm for near-optimal planning in large Markov decision processes." 
@@ -71,7 +105,7 @@ import burlap.oomdp.singleagent.RewardFunction;
  * @author James MacGlashan
  *
  */
-public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
+public class SparseSampling extends OOMDPPlanner implements QComputablePlanner, AnytimePlanner{
 
 	/**
 	 * The height of the tree
@@ -107,15 +141,71 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	
 	
 	/**
-	 * The tree nodes indexed by state and height.
+	 * The tree nodes indexed by state and height when the number of cached nodes is not bounded.
 	 */
 	protected Map<HashedHeightState, StateNode> nodesByHeight;
 	
+	/**
+	 * The bounded index of tree nodes by state and height; null if the number of cached nodes is not bounded.
+	 */
+	protected NodeCache nodeCache = null;
+	
 	/**
 	 * The root state node Q-values that have been estimated by previous planning calls.
 	 */
 	protected Map<StateHashTuple, List<QValue>> rootLevelQValues;
 	
+	/**
+	 * The root states whose Q-values were estimated with a tree shorter than the height H because a planning deadline expired.
+	 */
+	protected Set<StateHashTuple> partiallyPlannedRoots;
+	
+	/**
+	 * The deadline of the current planning call; null if it has none
+	 */
+	protected PlanningDeadline planningDeadline = null;
+	
+	/**
+	 * The number of threads that expand the tree. The default is 1, which expands the tree serially in the calling thread.
+	 */
+	protected int numThreads = 1;
+	
+	/**
+	 * The depth from the root down to which the successor nodes of a node are estimated as parallel tasks. The default is 2.
+	 */
+	protected int parallelDepth = 2;
+	
+	/**
+	 * The executor that runs the parallel tasks of the current tree; null when the tree is expanded serially.
+	 */
+	protected ExecutorService expansionExecutor = null;
+	
+	/**
+	 * The height of the root of the tree that is currently being built.
+	 */
+	protected int treeRootHeight;
+	
+	
+	/**
+	 * The number of trees that have been built, which identifies the tree that most recently used each cached node.
+	 */
+	protected int numTreesBuilt = 0;
+	
+	/**
+	 * The number of state node lookups that found an existing node
+	 */
+	protected AtomicLong nodeCacheHits = new AtomicLong();
+	
+	/**
+	 * The number of state node lookups that created a new node
+	 */
+	protected AtomicLong nodeCacheMisses = new AtomicLong();
+	
+	/**
+	 * The number of state nodes evicted from the bounded node cache
+	 */
+	protected AtomicLong nodeCacheEvictions = new AtomicLong();
+	
 	
 	/**
 	 * The total number of pseudo-Bellman updates
@@ -143,6 +233,7 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		this.c = c;
 		this.nodesByHeight = new HashMap<SparseSampling.HashedHeightState, SparseSampling.StateNode>();
 		this.rootLevelQValues = new HashMap<StateHashTuple, List<QValue>>();
+		this.partiallyPlannedRoots = new HashSet<StateHashTuple>();
 		if(this.c < 0){
 			this.computeExactValueFunction = true;
 		}
@@ -247,10 +338,47 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	public void setForgetPreviousPlanResults(boolean forgetPreviousPlanResults){
 		this.forgetPreviousPlanResults = forgetPreviousPlanResults;
 		if(this.forgetPreviousPlanResults){
-			this.nodesByHeight.clear();
+			this.clearNodeIndex();
 		}
 	}
 	
+	
+	/**
+	 * Bounds the number of state nodes that are kept for reuse by subsequent trees. When the bound is reached, the node least recently used by a tree is
+	 * evicted, and among the nodes last used by the same tree, the node with the lowest height, since the value of a node of height h takes on the order of
+	 * (|A|C)^h value estimates to recompute. An evicted node that is needed again is simply estimated again. A bound that is much smaller than a single
+	 * tree causes a lot of recomputation within the tree, so the bound should be at least the number of nodes of one tree. Changing the bound discards
+	 * the cached nodes.
+	 * @param maxNodes the maximum number of cached state nodes; if less than 1, the number of cached nodes is not bounded, which is the default.
+	 */
+	public void setMaxCachedNodes(int maxNodes){
+		this.clearNodeIndex();
+		if(maxNodes > 0){
+			this.nodeCache = new NodeCache(maxNodes);
+		}
+		else{
+			this.nodeCache = null;
+		}
+	}
+	
+	
+	/**
+	 * Bounds the number of root states whose estimated Q-values are kept. When the bound is reached, the Q-values of the least recently queried root state are
+	 * evicted and will be planned for again if the state is queried again.
+	 * @param maxRoots the maximum number of root states whose Q-values are kept; if less than 1, the number is not bounded, which is the default.
+	 */
+	public void setMaxCachedRootStates(int maxRoots){
+		Map<StateHashTuple, List<QValue>> roots;
+		if(maxRoots > 0){
+			roots = new RootQValueCache(maxRoots);
+		}
+		else{
+			roots = new HashMap<StateHashTuple, List<QValue>>();
+		}
+		roots.putAll(this.rootLevelQValues);
+		this.rootLevelQValues = roots;
+	}
+	
 	/**
 	 * Sets the {@link ValueFunctionInitialization} object to use for settting the value of leaf nodes.
 	 * @param vinit the {@link ValueFunctionInitialization} object to use for settting the value of leaf nodes.
@@ -259,6 +387,27 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		this.vinit = vinit;
 	}
 	
+	/**
+	 * Sets the number of threads that expand the tree. If more than one thread is used, the successor nodes of the nodes near the root are estimated as
+	 * parallel tasks and the node index is made concurrent.
+	 * @param numThreads the number of threads that expand the tree, including the calling thread
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads = numThreads;
+	}
+	
+	
+	/**
+	 * Sets the depth from the root down to which the successor nodes of a node are estimated as parallel tasks when multiple threads are used. With a depth
+	 * of 1, only the successors of the root are parallel tasks; each additional level multiplies the number of tasks by about the number of actions
+	 * times C, which lets more threads share the work at the cost of more task overhead. The default is 2.
+	 * @param parallelDepth the depth down to which successor nodes are estimated as parallel tasks
+	 */
+	public void setParallelDepth(int parallelDepth){
+		this.parallelDepth = parallelDepth;
+	}
+	
+	
 	/**
 	 * Returns the debug code used for logging plan results with {@link DPrint}.
 	 * @return the debug code used for logging plan results with {@link DPrint}.
@@ -289,7 +438,46 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	 * @return the total number of state nodes that have been created.
 	 */
 	public int getNumberOfStateNodesCreated(){
-		return this.nodesByHeight.size() + this.rootLevelQValues.size();
+		int numNodes = this.nodeCache != null ? this.nodeCache.size() : this.nodesByHeight.size();
+		return numNodes + this.rootLevelQValues.size();
+	}
+	
+	/**
+	 * Returns the number of state node lookups that found an existing node, either from the same tree or from a previous tree, since the
+	 * {@link #resetPlannerResults()} call.
+	 * @return the number of state node lookups that found an existing node
+	 */
+	public long getNodeCacheHits(){
+		return this.nodeCacheHits.get();
+	}
+	
+	/**
+	 * Returns the number of state node lookups that created a new node since the {@link #resetPlannerResults()} call.
+	 * @return the number of state node lookups that created a new node
+	 */
+	public long getNodeCacheMisses(){
+		return this.nodeCacheMisses.get();
+	}
+	
+	/**
+	 * Returns the number of state nodes evicted from the bounded node cache since the {@link #resetPlannerResults()} call.
+	 * @return the number of state nodes evicted from the bounded node cache
+	 */
+	public long getNodeCacheEvictions(){
+		return this.nodeCacheEvictions.get();
+	}
+	
+	/**
+	 * Returns the fraction of state node lookups that found an existing node since the {@link #resetPlannerResults()} call.
+	 * @return the fraction of state node lookups that found an existing node; 0 if there were no lookups.
+	 */
+	public double getNodeCacheHitRate(){
+		long hits = this.nodeCacheHits.get();
+		long lookups = hits + this.nodeCacheMisses.get();
+		if(lookups == 0){
+			return 0.;
+		}
+		return (double)hits / (double)lookups;
 	}
 	
 	
@@ -298,34 +486,102 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		
 		if(this.forgetPreviousPlanResults){
 			this.rootLevelQValues.clear();
+			this.partiallyPlannedRoots.clear();
 		}
 		
 		StateHashTuple sh = this.hashingFactory.hashState(initialState);
-		if(this.rootLevelQValues.containsKey(sh)){
+		if(this.rootLevelQValues.containsKey(sh) && !this.partiallyPlannedRoots.contains(sh)){
 			return; //already planned for this state
 		}
 		
 		DPrint.cl(this.debugCode, "Beginning Planning.");
 		int oldUpdates = this.numUpdates;
 		
-		StateNode sn = this.getStateNode(initialState, this.h);
-		rootLevelQValues.put(sh, sn.estimateQs());
+		rootLevelQValues.put(sh, this.estimateRootQs(initialState, this.h));
 		
 		DPrint.cl(this.debugCode, "Finished Planning with " + (this.numUpdates - oldUpdates) + " value esitmates; for a cumulative total of: " + this.numUpdates);
 		
 		if(this.forgetPreviousPlanResults){
-			this.nodesByHeight.clear();
+			this.clearNodeIndex();
 		}
 		
+		this.partiallyPlannedRoots.remove(sh);
 		this.mapToStateIndex.put(sh, sh);
 
 	}
+	
+	
+	@Override
+	public void planFromState(State initialState, PlanningDeadline deadline){
+		
+		if(this.forgetPreviousPlanResults){
+			this.rootLevelQValues.clear();
+			this.partiallyPlannedRoots.clear();
+		}
+		
+		StateHashTuple sh = this.hashingFactory.hashState(initialState);
+		if(this.rootLevelQValues.containsKey(sh) && !this.partiallyPlannedRoots.contains(sh)){
+			return; //already planned for this state
+		}
+		
+		DPrint.cl(this.debugCode, "Beginning Planning.");
+		int oldUpdates = this.numUpdates;
+		
+		int height = 0;
+		this.planningDeadline = deadline;
+		try{
+			for(; height <= this.h; height++){
+				if(height > 0 && deadline.hasExpired()){
+					break;
+				}
+				List<QValue> qs;
+				try{
+					qs = this.estimateRootQs(initialState, height);
+				} catch(DeadlineExpiredException e){
+					break;
+				}
+				rootLevelQValues.put(sh, qs);
+			}
+		} finally{
+			this.planningDeadline = null;
+		}
+		
+		DPrint.cl(this.debugCode, "Finished Planning to height " + (height-1) + " of " + this.h + " with " + (this.numUpdates - oldUpdates) + " value esitmates; for a cumulative total of: " + this.numUpdates);
+		
+		if(this.forgetPreviousPlanResults){
+			this.clearNodeIndex();
+		}
+		
+		if(height > this.h){
+			this.partiallyPlannedRoots.remove(sh);
+		}
+		else{
+			this.partiallyPlannedRoots.add(sh);
+		}
+		this.mapToStateIndex.put(sh, sh);
+		
+	}
 
 	@Override
 	public void resetPlannerResults() {
-		this.nodesByHeight.clear();
+		this.clearNodeIndex();
 		this.rootLevelQValues.clear();
+		this.partiallyPlannedRoots.clear();
 		this.numUpdates = 0;
+		this.nodeCacheHits.set(0);
+		this.nodeCacheMisses.set(0);
+		this.nodeCacheEvictions.set(0);
+	}
+	
+	
+	/**
+	 * Removes all state nodes from the node index.
+	 */
+	protected void clearNodeIndex(){
+		this.nodesByHeight.clear();
+		if(this.nodeCache != null){
+			this.nodeCache.clear();
+		}
 	}
 	
 	
@@ -379,7 +635,7 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		}
 		
 		//convert height from bottom to depth from root
-		int d = this.h = height;
+		int d = this.h - height;
 		int vc = (int) (this.c * Math.pow(this.gamma, 2*d));
 		if(vc == 0){
 			vc = 1;
@@ -388,6 +644,36 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	}
 	
 	
+	/**
+	 * Builds a tree of the given height from the given state and returns the estimated Q-values of the state. If multiple threads are used, the tree is
+	 * expanded in parallel.
+	 * @param s the root state of the tree
+	 * @param height the height of the tree
+	 * @return the estimated Q-values of the root state
+	 */
+	protected List<QValue> estimateRootQs(State s, int height){
+		
+		this.treeRootHeight = height;
+		this.numTreesBuilt++;
+		if(this.numThreads <= 1){
+			return this.getStateNode(s, height).estimateQs();
+		}
+		
+		if(this.nodeCache == null && !(this.nodesByHeight instanceof ConcurrentMap)){
+			this.nodesByHeight = new ConcurrentHashMap<HashedHeightState, StateNode>(this.nodesByHeight);
+		}
+		
+		this.expansionExecutor = Executors.newFixedThreadPool(this.numThreads - 1);
+		try{
+			return this.getStateNode(s, height).estimateQs();
+		} finally{
+			this.expansionExecutor.shutdown();
+			this.expansionExecutor = null;
+		}
+		
+	}
+	
+	
 	/**
 	 * Either returns, or creates, indexes, and returns, the state node for the given state at the given height in the tree
 	 * @param s the state
@@ -396,11 +682,32 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	 */
 	protected StateNode getStateNode(State s, int height){
 		StateHashTuple sh = this.hashingFactory.hashState(s);
+		if(this.nodeCache != null){
+			return this.nodeCache.getStateNode(sh, height);
+		}
+		
 		HashedHeightState hhs = new HashedHeightState(sh, height);
 		StateNode sn = this.nodesByHeight.get(hhs);
 		if(sn == null){
 			sn = new StateNode(sh, height);
-			this.nodesByHeight.put(hhs, sn);
+			if(this.nodesByHeight instanceof ConcurrentMap){
+				//another thread may have indexed a node for the same state and height since the lookup
+				StateNode indexed = ((ConcurrentMap<HashedHeightState, StateNode>)this.nodesByHeight).putIfAbsent(hhs, sn);
+				if(indexed != null){
+					sn = indexed;
+					this.nodeCacheHits.incrementAndGet();
+				}
+				else{
+					this.nodeCacheMisses.incrementAndGet();
+				}
+			}
+			else{
+				this.nodesByHeight.put(hhs, sn);
+				this.nodeCacheMisses.incrementAndGet();
+			}
+		}
+		else{
+			this.nodeCacheHits.incrementAndGet();
 		}
 		
 		return sn;
@@ -434,6 +741,11 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		 */
 		boolean closed = false;
 		
+		/**
+		 * The number of the tree that most recently used this node, which orders the evictions of the bounded node cache.
+		 */
+		int lastUsed;
+		
 		
 		/**
 		 * Creates a node for the given hased state at the given height
@@ -451,6 +763,9 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		 * @return a {@link List} of the estiamted Q-values for each action.
 		 */
 		public List<QValue> estimateQs(){
+			if(this.height > 0 && SparseSampling.this.expansionExecutor != null && SparseSampling.this.treeRootHeight - this.height < SparseSampling.this.parallelDepth){
+				return this.parallelEstimateQs();
+			}
 			List<GroundedAction> gas = SparseSampling.this.getAllGroundedActions(this.sh.s);
 			List<QValue> qs = new ArrayList<QValue>(gas.size());
 			for(GroundedAction ga : gas){
@@ -473,6 +788,107 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 			return qs;
 		}
 		
+		/**
+		 * Estimates the Q-values for this node like {@link #estimateQs()}, but first samples the outcomes of all actions and then estimates the values of the
+		 * distinct successor nodes as parallel tasks. The calling thread runs the tasks that no other thread has started before waiting for the rest.
+		 * @return a {@link List} of the estiamted Q-values for each action.
+		 */
+		protected List<QValue> parallelEstimateQs(){
+			
+			List<GroundedAction> gas = SparseSampling.this.getAllGroundedActions(this.sh.s);
+			List<List<SampledOutcome>> outcomes = new ArrayList<List<SampledOutcome>>(gas.size());
+			Map<StateNode, FutureTask<Double>> tasks = new IdentityHashMap<StateNode, FutureTask<Double>>();
+			for(GroundedAction ga : gas){
+				List<SampledOutcome> actionOutcomes = this.sampleOutcomes(ga);
+				for(SampledOutcome o : actionOutcomes){
+					final StateNode nsn = o.node;
+					if(!nsn.closed && !tasks.containsKey(nsn)){
+						FutureTask<Double> task = new FutureTask<Double>(new Callable<Double>() {
+							
+							@Override
+							public Double call(){
+								return nsn.estimateV();
+							}
+						});
+						tasks.put(nsn, task);
+						SparseSampling.this.expansionExecutor.execute(task);
+					}
+				}
+				outcomes.add(actionOutcomes);
+			}
+			
+			//help with the tasks that have not been started, then wait for the others
+			for(FutureTask<Double> task : tasks.values()){
+				task.run();
+			}
+			RuntimeException failure = null;
+			for(FutureTask<Double> task : tasks.values()){
+				try{
+					task.get();
+				} catch(InterruptedException e){
+					throw new RuntimeException("Parallel Sparse Sampling was interrupted.", e);
+				} catch(ExecutionException e){
+					if(failure == null){
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException("A parallel Sparse Sampling subtree failed.", e.getCause());
+					}
+				}
+			}
+			if(failure != null){
+				throw failure;
+			}
+			
+			List<QValue> qs = new ArrayList<QValue>(gas.size());
+			for(int i = 0; i < gas.size(); i++){
+				double sum = 0.;
+				for(SampledOutcome o : outcomes.get(i)){
+					sum += o.p * (o.r + Math.pow(SparseSampling.this.gamma, o.k) * o.node.estimateV());
+				}
+				if(!SparseSampling.this.computeExactValueFunction){
+					sum /= (double)outcomes.get(i).size();
+				}
+				qs.add(new QValue(this.sh.s, gas.get(i), sum));
+			}
+			
+			return qs;
+		}
+		
+		
+		/**
+		 * Returns the outcomes used to estimate the Q-value of an action: C sampled outcomes with probability 1 each (to be averaged), or all outcomes of the
+		 * full transition dynamics with their probabilities if the exact value function is computed.
+		 * @param ga the action whose outcomes are returned
+		 * @return the outcomes used to estimate the Q-value of the action
+		 */
+		protected List<SampledOutcome> sampleOutcomes(GroundedAction ga){
+			
+			List<SampledOutcome> outcomes = new ArrayList<SampledOutcome>();
+			
+			if(!SparseSampling.this.computeExactValueFunction){
+				int c = SparseSampling.this.getCAtHeight(this.height);
+				for(int i = 0; i < c; i++){
+					State ns = ga.executeIn(this.sh.s);
+					int k = 1;
+					if(ga.action instanceof Option){
+						k = ((Option)ga.action).getLastNumSteps();
+					}
+					double r = SparseSampling.this.rf.reward(this.sh.s, ga, ns);
+					outcomes.add(new SampledOutcome(1., r, k, SparseSampling.this.getStateNode(ns, this.height-k)));
+				}
+			}
+			else{
+				if(ga.action instanceof Option){
+					throw new RuntimeException("Sparse Sampling Planner with Full Bellman updates turned on cannot work with options because it needs factored access to the depth for each option transition. Use the standard sampling mode instead.");
+				}
+				for(TransitionProbability tp : ga.action.getTransitions(this.sh.s, ga.params)){
+					double r = SparseSampling.this.rf.reward(this.sh.s, ga, tp.s);
+					outcomes.add(new SampledOutcome(tp.p, r, 1, SparseSampling.this.getStateNode(tp.s, this.height-1)));
+				}
+			}
+			
+			return outcomes;
+		}
+		
+		
 		/**
 		 * Estimates the Q-value using sampling from the transition dynamics. This is the standard Sparse Sampling procedure.
 		 * @param ga the action for which the Q-value estimate is to be returned
@@ -543,14 +959,19 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 		
 		
 		/**
-		 * Returns the estimated Q-value if this node is closed, or estimates it and closes it otherwise.
+		 * Returns the estimated Q-value if this node is closed, or estimates it and closes it otherwise. The value is estimated while holding this node's monitor
+		 * so that when the tree is expanded in parallel, other threads that reach this node wait for its value instead of estimating it again.
 		 * @return the estimated Q-value for this node.
 		 */
-		public double estimateV(){
+		public synchronized double estimateV(){
 			if(this.closed){
 				return this.v;
 			}
 			
+			if(SparseSampling.this.planningDeadline != null && SparseSampling.this.planningDeadline.hasExpired()){
+				throw new DeadlineExpiredException();
+			}
+			
 			if(SparseSampling.this.tf.isTerminal(this.sh.s)){
 				this.v = 0.;
 				this.closed = true;
@@ -563,7 +984,9 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 			for(QValue q : qs){
 				max = Math.max(max, q.q);
 			}
-			SparseSampling.this.numUpdates++;
+			synchronized(SparseSampling.this){
+				SparseSampling.this.numUpdates++;
+			}
 			this.v = max;
 			this.closed = true;
 			return max;
@@ -572,6 +995,162 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	}
 	
 	
+	/**
+	 * A bounded index of state nodes by state and height. The nodes of each height are kept in least recently used order; when the index is full, the
+	 * least recently used node of each height is a candidate for eviction and the candidate that was last used by the oldest tree is evicted, with
+	 * ties going to the candidate of the lowest height. The index is synchronized so that the threads that expand a tree in parallel can share it.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected class NodeCache{
+		
+		/**
+		 * The maximum number of state nodes in the index
+		 */
+		protected int maxNodes;
+		
+		/**
+		 * The nodes of each height in least recently used order, by increasing height
+		 */
+		protected TreeMap<Integer, LinkedHashMap<HashedHeightState, StateNode>> nodesAtHeight = new TreeMap<Integer, LinkedHashMap<HashedHeightState,StateNode>>();
+		
+		/**
+		 * The number of state nodes in the index
+		 */
+		protected int size = 0;
+		
+		
+		/**
+		 * Initializes.
+		 * @param maxNodes the maximum number of state nodes in the index
+		 */
+		public NodeCache(int maxNodes){
+			this.maxNodes = maxNodes;
+		}
+		
+		
+		/**
+		 * Either returns, or creates, indexes, and returns, the state node for the given hashed state at the given height, evicting a node if the
+		 * index is full.
+		 * @param sh the hashed state
+		 * @param height the height of the node
+		 * @return the state node for the given state at the given height
+		 */
+		public synchronized StateNode getStateNode(StateHashTuple sh, int height){
+			
+			LinkedHashMap<HashedHeightState, StateNode> nodes = this.nodesAtHeight.get(height);
+			if(nodes == null){
+				nodes = new LinkedHashMap<HashedHeightState, StateNode>(16, 0.75f, true);
+				this.nodesAtHeight.put(height, nodes);
+			}
+			
+			HashedHeightState hhs = new HashedHeightState(sh, height);
+			StateNode sn = nodes.get(hhs);
+			if(sn != null){
+				SparseSampling.this.nodeCacheHits.incrementAndGet();
+			}
+			else{
+				SparseSampling.this.nodeCacheMisses.incrementAndGet();
+				if(this.size >= this.maxNodes){
+					this.evict();
+				}
+				sn = new StateNode(sh, height);
+				nodes.put(hhs, sn);
+				this.size++;
+			}
+			sn.lastUsed = SparseSampling.this.numTreesBuilt;
+			
+			return sn;
+		}
+		
+		
+		/**
+		 * Returns the number of state nodes in the index.
+		 * @return the number of state nodes in the index
+		 */
+		public synchronized int size(){
+			return this.size;
+		}
+		
+		
+		/**
+		 * Removes all state nodes from the index.
+		 */
+		public synchronized void clear(){
+			this.nodesAtHeight.clear();
+			this.size = 0;
+		}
+		
+		
+		/**
+		 * Evicts the least recently used node of the height whose least recently used node was last used by the oldest tree. An evicted node that
+		 * is still being estimated by a tree finishes its estimate, but is not found by later lookups.
+		 */
+		protected void evict(){
+			
+			LinkedHashMap<HashedHeightState, StateNode> victimNodes = null;
+			StateNode victim = null;
+			for(LinkedHashMap<HashedHeightState, StateNode> nodes : this.nodesAtHeight.values()){
+				if(nodes.isEmpty()){
+					continue;
+				}
+				StateNode eldest = nodes.values().iterator().next();
+				if(victim == null || eldest.lastUsed < victim.lastUsed){
+					victim = eldest;
+					victimNodes = nodes;
+				}
+			}
+			
+			if(victim != null){
+				victimNodes.remove(new HashedHeightState(victim.sh, victim.height));
+				this.size--;
+				SparseSampling.this.nodeCacheEvictions.incrementAndGet();
+			}
+			
+		}
+		
+	}
+	
+	
+	/**
+	 * A map of the estimated Q-values of root states that evicts the least recently queried root state when it holds more than a maximum number of
+	 * root states. The evicted state is also forgotten as a planned state.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected class RootQValueCache extends LinkedHashMap<StateHashTuple, List<QValue>>{
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The maximum number of root states in the map
+		 */
+		protected int maxRoots;
+		
+		
+		/**
+		 * Initializes.
+		 * @param maxRoots the maximum number of root states in the map
+		 */
+		public RootQValueCache(int maxRoots){
+			super(16, 0.75f, true);
+			this.maxRoots = maxRoots;
+		}
+		
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StateHashTuple, List<QValue>> eldest){
+			if(this.size() <= this.maxRoots){
+				return false;
+			}
+			SparseSampling.this.partiallyPlannedRoots.remove(eldest.getKey());
+			SparseSampling.this.mapToStateIndex.remove(eldest.getKey());
+			return true;
+		}
+		
+	}
+	
+	
 	/**
 	 * Tuple for a state and its height in a tree that can be hashed for quick retrieval.
 	 * @author James MacGlashan
@@ -614,6 +1193,64 @@ public class SparseSampling extends OOMDPPlanner implements QComputablePlanner{
 	}
 
 	
+	/**
+	 * An outcome of an action used to estimate its Q-value when the tree is expanded in parallel.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class SampledOutcome{
+		
+		/**
+		 * The probability of the outcome; 1 for sampled outcomes, which are averaged
+		 */
+		public double p;
+		
+		/**
+		 * The reward received for the outcome
+		 */
+		public double r;
+		
+		/**
+		 * The number of steps taken to reach the outcome
+		 */
+		public int k;
+		
+		/**
+		 * The state node of the outcome state
+		 */
+		public StateNode node;
+		
+		
+		/**
+		 * Initializes.
+		 * @param p the probability of the outcome
+		 * @param r the reward received for the outcome
+		 * @param k the number of steps taken to reach the outcome
+		 * @param node the state node of the outcome state
+		 */
+		public SampledOutcome(double p, double r, int k, StateNode node){
+			this.p = p;
+			this.r = r;
+			this.k = k;
+			this.node = node;
+		}
+		
+	}
+	
+	
+	/**
+	 * Thrown while a tree is being built when the deadline of the planning call expires, to abandon the tree. The state nodes whose
+	 * values were not estimated remain open, so they are estimated again when they are next needed.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class DeadlineExpiredException extends RuntimeException{
+
+		private static final long serialVersionUID = 1L;
+		
+	}
+	
+	
 	/**
 	 * Retuns the log value at the given bases. That is: log_base(x)
 	 * @param base the log base
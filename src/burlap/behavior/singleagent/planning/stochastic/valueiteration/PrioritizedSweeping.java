@@ -1,16 +1,23 @@
 package burlap.behavior.singleagent.planning.stochastic.valueiteration;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import burlap.behavior.singleagent.auxiliary.StateIndex;
 import burlap.behavior.singleagent.planning.ActionTransitions;
 import burlap.behavior.singleagent.planning.HashedTransitionProbability;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
 import burlap.datastructures.HashIndexedHeap;
+import burlap.datastructures.IntBucketQueue;
+import burlap.datastructures.IntDaryHeap;
+import burlap.datastructures.IntPriorityQueue;
 import burlap.debugtools.DPrint;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.State;
@@ -26,6 +33,13 @@ import burlap.oomdp.singleagent.RewardFunction;
  * of a state to which it transitions. This means that there is greater memory utilization in this algorithm than standard VI because the backwards transition dynamics must be stored.
  * The priority queue takes C*lg(N) time to manage at each step, where C is the number of backpointers per state,
  * but if large gains can be achieved by the ordeing of the states, then this cost may be worth it.
+ * <p/>
+ * The priority queue may instead be an int-keyed d-ary heap or bucket queue of node ids, which is set with
+ * {@link #setPriorityQueueType(PriorityQueueType)}; see {@link PriorityQueueType} for more information.
+ * <p/>
+ * If indexed backups are enabled with {@link #toggleIndexedBackups(boolean)}, each backup is performed on the compiled
+ * {@link burlap.behavior.singleagent.planning.IndexedTransitionModel} using the state id stored in each priority node, rather than on the
+ * hashed transition dynamics.
  * 
  * 
  * 1. Li, Lihong, Michael L. Littman, and L. Littman. Prioritized sweeping converges to the optimal value function. Tech. Rep. DCS-TR-631, 2008.
@@ -35,10 +49,61 @@ import burlap.oomdp.singleagent.RewardFunction;
 public class PrioritizedSweeping extends ValueIteration{
 
 	/**
-	 * The priority queue of states
+	 * The data structures that can be used for the priority queue of states. The default is HASHINDEXEDHEAP.<p/>
+	 * HASHINDEXEDHEAP uses a {@link burlap.datastructures.HashIndexedHeap}, which updates a hash map with the position of every node that
+	 * moves in the heap.
+	 * <p/>
+	 * DARYHEAP assigns each state's node an int id when it is created and orders the ids with an {@link burlap.datastructures.IntDaryHeap},
+	 * so updating the priority of a node does not require any hashing.
+	 * <p/>
+	 * BUCKETQUEUE assigns each state's node an int id and orders the ids with an {@link burlap.datastructures.IntBucketQueue}, which updates
+	 * priorities in constant time. Priorities are rounded down to a multiple of the bucket resolution (see {@link #setBucketQueueResolution(double)}),
+	 * so the states in a bucket are backed up in no particular order, and priorities of {@link #MAXBUCKETLEVEL} or more resolutions,
+	 * including the priority of states that have not been backed up, share the highest bucket.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum PriorityQueueType{
+		HASHINDEXEDHEAP, DARYHEAP, BUCKETQUEUE
+	}
+	
+	
+	/**
+	 * The number of priority levels of a bucket priority queue
+	 */
+	public static final int MAXBUCKETLEVEL = 1 << 16;
+	
+	
+	/**
+	 * The priority queue of states; null when an int-keyed priority queue is used
 	 */
 	protected HashIndexedHeap<BPTRNode> priorityNodes;
 	
+	/**
+	 * The data structure used for the priority queue
+	 */
+	protected PriorityQueueType priorityQueueType = PriorityQueueType.HASHINDEXEDHEAP;
+	
+	/**
+	 * The int-keyed priority queue of node ids; null when the hash indexed heap is used
+	 */
+	protected IntPriorityQueue priorityQueue;
+	
+	/**
+	 * The node of each state, indexed by node id, when an int-keyed priority queue is used
+	 */
+	protected List<BPTRNode> nodes;
+	
+	/**
+	 * The node of each state when an int-keyed priority queue is used
+	 */
+	protected Map<StateHashTuple, BPTRNode> nodesByState;
+	
+	/**
+	 * The difference in priority between the levels of a bucket priority queue; if not positive, maxDelta is used
+	 */
+	protected double bucketResolution = -1.;
+	
 	/**
 	 * THe maximum number Bellman backups permitted
 	 */
@@ -62,6 +127,42 @@ public class PrioritizedSweeping extends ValueIteration{
 		this.priorityNodes = new HashIndexedHeap<PrioritizedSweeping.BPTRNode>(new BPTRNodeComparator());
 		this.maxBackups = maxBackups;
 	}
+	
+	
+	/**
+	 * Sets the data structure used for the priority queue of states. See the {@link PriorityQueueType} documentation for more information on the types.
+	 * Any states already found are moved to the new priority queue with their current priorities.
+	 * @param type the data structure used for the priority queue
+	 */
+	public void setPriorityQueueType(PriorityQueueType type){
+		List<BPTRNode> existing = this.getAllNodes();
+		this.priorityQueueType = type;
+		this.createPriorityQueue();
+		for(BPTRNode node : existing){
+			node.id = -1;
+			this.addNode(node);
+		}
+	}
+	
+	
+	/**
+	 * Sets the difference in priority between the levels of the priority queue when it is a {@link PriorityQueueType#BUCKETQUEUE}. By default,
+	 * the resolution is maxDelta, so the states in the highest bucket are backed up until no state's priority exceeds maxDelta.
+	 * Must be set before any states are found.
+	 * @param resolution the difference in priority between the levels of the bucket priority queue
+	 */
+	public void setBucketQueueResolution(double resolution){
+		if(resolution <= 0.){
+			throw new RuntimeException("The bucket queue resolution must be positive.");
+		}
+		if(this.priorityQueue instanceof IntBucketQueue && this.priorityQueue.size() > 0){
+			throw new RuntimeException("Cannot change the bucket queue resolution after states have been found.");
+		}
+		this.bucketResolution = resolution;
+		if(this.priorityQueueType == PriorityQueueType.BUCKETQUEUE){
+			this.createPriorityQueue();
+		}
+	}
 
 
 	@Override
@@ -80,25 +181,61 @@ public class PrioritizedSweeping extends ValueIteration{
 		
 		DPrint.cl(this.debugCode, "Beginning Planning.");
 		
+		boolean indexed = this.usingIndexedBackups();
+		if(indexed){
+			this.compileIndexedModel();
+			StateIndex index = this.indexedModel.getStateIndex();
+			for(BPTRNode node : this.getAllNodes()){
+				node.index = index.getIndex(node.sh);
+				if(node.index == -1){
+					throw new RuntimeException("Cannot run indexed prioritized sweeping because a priority node state was not found in the indexed model.");
+				}
+			}
+		}
+		
 		double lastDelta = Double.POSITIVE_INFINITY;
 		int numBackups = 0;
 		while(lastDelta > this.maxDelta && (numBackups < this.maxBackups || this.maxBackups == -1)){
 			
-			BPTRNode node = this.priorityNodes.poll();
+			BPTRNode node;
+			if(this.priorityQueue == null){
+				node = this.priorityNodes.poll();
+			}
+			else{
+				node = this.nodes.get(this.priorityQueue.peek());
+			}
 			lastDelta = node.priority;
 			
-			double oldV = this.value(node.sh);
-			double newV = this.performBellmanUpdateOn(node.sh);
+			double oldV;
+			double newV;
+			if(indexed){
+				oldV = this.indexedValueFunction[node.index];
+				newV = this.performIndexedBellmanUpdateOn(node.index);
+			}
+			else{
+				oldV = this.value(node.sh);
+				newV = this.performBellmanUpdateOn(node.sh);
+			}
 			double delta = Math.abs(newV-oldV);
 			
 			//update this nodes priority
 			node.priority = delta* node.maxSelfTransitionProb;
-			this.priorityNodes.insert(node);
+			if(this.priorityQueue == null){
+				this.priorityNodes.insert(node);
+			}
+			else{
+				this.priorityQueue.updatePriority(node.id, this.queuePriority(node.priority));
+			}
 			
 			//update priority of nodes that transition to it
 			for(BPTR bptr : node.backPointers){
 				bptr.backNode.priority = Math.max(bptr.backNode.priority, bptr.forwardMaxProbability*delta);
-				this.priorityNodes.refreshPriority(bptr.backNode);
+				if(this.priorityQueue == null){
+					this.priorityNodes.refreshPriority(bptr.backNode);
+				}
+				else{
+					this.priorityQueue.updatePriority(bptr.backNode.id, this.queuePriority(bptr.backNode.priority));
+				}
 			}
 			
 			lastDelta = Math.max(lastDelta, delta);
@@ -106,6 +243,10 @@ public class PrioritizedSweeping extends ValueIteration{
 			
 		}
 		
+		if(indexed){
+			this.writeBackIndexedValues();
+		}
+		
 		DPrint.cl(this.debugCode, "Finished planning with " + numBackups + " Bellman backups");
 		
 	}
@@ -168,12 +309,29 @@ public class PrioritizedSweeping extends ValueIteration{
 		
 		this.foundReachableStates = true;
 		this.hasRunVI = false;
+		this.clearIndexedModel();
 		
 		return true;
 		
 	}
 	
 	
+	/**
+	 * Performs a Bellman update on the state with the given id in the indexed model and stores the result in the indexed value function.
+	 * States that are not expanded in the indexed model keep their current value.
+	 * @param s the state id
+	 * @return the new value of the state
+	 */
+	protected double performIndexedBellmanUpdateOn(int s){
+		if(s >= this.indexedModel.numExpandedStates()){
+			return this.indexedValueFunction[s];
+		}
+		double v = this.indexedModel.bellmanBackup(s, this.indexedValueFunction);
+		this.indexedValueFunction[s] = v;
+		return v;
+	}
+	
+	
 	/**
 	 * Returns or creates, stores, and returns a priority back pointer node for the given hased state 
 	 * @param sh the hashed state for which its node should be returned.
@@ -181,19 +339,114 @@ public class PrioritizedSweeping extends ValueIteration{
 	 */
 	protected BPTRNode getNodeFor(StateHashTuple sh){
 		
-		BPTRNode node = new BPTRNode(sh);
-		BPTRNode stored = this.priorityNodes.containsInstance(node);
-		if(stored != null){
-			node = stored;
+		if(this.priorityQueue == null){
+			BPTRNode node = new BPTRNode(sh);
+			BPTRNode stored = this.priorityNodes.containsInstance(node);
+			if(stored != null){
+				node = stored;
+			}
+			else{
+				this.priorityNodes.insert(node);
+			}
+			return node;
 		}
-		else{
-			this.priorityNodes.insert(node);
+		
+		BPTRNode node = this.nodesByState.get(sh);
+		if(node == null){
+			node = new BPTRNode(sh);
+			this.addNode(node);
 		}
 		
 		return node;
 	}
 	
 	
+	/**
+	 * Creates an empty priority queue of the type set with {@link #setPriorityQueueType(PriorityQueueType)}.
+	 */
+	protected void createPriorityQueue(){
+		if(this.priorityQueueType == PriorityQueueType.HASHINDEXEDHEAP){
+			this.priorityNodes = new HashIndexedHeap<PrioritizedSweeping.BPTRNode>(new BPTRNodeComparator());
+			this.priorityQueue = null;
+			this.nodes = null;
+			this.nodesByState = null;
+			return ;
+		}
+		
+		this.priorityNodes = null;
+		if(this.priorityQueueType == PriorityQueueType.BUCKETQUEUE){
+			this.priorityQueue = new IntBucketQueue(this.getBucketQueueResolution(), 16);
+		}
+		else{
+			this.priorityQueue = new IntDaryHeap();
+		}
+		this.nodes = new ArrayList<BPTRNode>();
+		this.nodesByState = new HashMap<StateHashTuple, BPTRNode>();
+	}
+	
+	
+	/**
+	 * Adds a node that is not in the priority queue to the priority queue, assigning it an id if an int-keyed priority queue is used.
+	 * @param node the node to add
+	 */
+	protected void addNode(BPTRNode node){
+		if(this.priorityQueue == null){
+			this.priorityNodes.insert(node);
+			return ;
+		}
+		node.id = this.nodes.size();
+		this.nodes.add(node);
+		this.nodesByState.put(node.sh, node);
+		this.priorityQueue.insert(node.id, this.queuePriority(node.priority));
+	}
+	
+	
+	/**
+	 * Returns the nodes of all states that have been found.
+	 * @return the nodes of all states that have been found
+	 */
+	protected List<BPTRNode> getAllNodes(){
+		if(this.priorityQueue == null){
+			List<BPTRNode> all = new ArrayList<BPTRNode>(this.priorityNodes.size());
+			for(BPTRNode node : this.priorityNodes){
+				all.add(node);
+			}
+			return all;
+		}
+		return new ArrayList<BPTRNode>(this.nodes);
+	}
+	
+	
+	/**
+	 * Returns the priority with which a node of the given priority is stored in the int-keyed priority queue. For a bucket queue, this is
+	 * the priority rounded down to a multiple of the resolution and capped at {@link #MAXBUCKETLEVEL} resolutions; otherwise it is the priority.
+	 * @param priority the priority of a node
+	 * @return the priority stored in the int-keyed priority queue
+	 */
+	protected double queuePriority(double priority){
+		if(this.priorityQueueType != PriorityQueueType.BUCKETQUEUE){
+			return priority;
+		}
+		double resolution = this.getBucketQueueResolution();
+		return Math.min(Math.floor(priority / resolution), MAXBUCKETLEVEL) * resolution;
+	}
+	
+	
+	/**
+	 * Returns the difference in priority between the levels of a bucket priority queue.
+	 * @return the difference in priority between the levels of a bucket priority queue
+	 */
+	protected double getBucketQueueResolution(){
+		if(this.bucketResolution > 0.){
+			return this.bucketResolution;
+		}
+		if(this.maxDelta <= 0.){
+			throw new RuntimeException("A bucket priority queue requires a positive maxDelta or bucket queue resolution.");
+		}
+		return this.maxDelta;
+	}
+	
+	
 	
 	/**
 	 * A node for state thar contains a list of its back pointers, their max probability of transition to this state, and the priority of this nodes state.
@@ -203,6 +456,8 @@ public class PrioritizedSweeping extends ValueIteration{
 	protected class BPTRNode{
 		
 		public StateHashTuple sh;
+		public int id = -1;
+		public int index = -1;
 		public List<BPTR> backPointers;
 		public double maxSelfTransitionProb = 0.;
 		public double priority = Double.MAX_VALUE;
@@ -0,0 +1,312 @@
+package burlap.behavior.singleagent.planning.stochastic.valueiteration;
+
+import burlap.behavior.singleagent.planning.IndexedTransitionModel;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+
+/**
+ * An implementation of Topological Value Iteration as described by Dai and Goldsmith [1]. The reachable states and their cached transition
+ * dynamics are compiled into an {@link burlap.behavior.singleagent.planning.IndexedTransitionModel}, whose transition graph is decomposed into
+ * strongly connected components with Tarjan's algorithm [2]. Since the value of a state only depends on the values of the states in its own
+ * component and of components downstream of it, the components are solved one at a time in reverse topological order, each with Gauss-Seidel
+ * sweeps over only its own states until its maximum value change is smaller than the threshold (or the maximum number of iterations is reached).
+ * A component with a single state and no self transitions is solved with a single Bellman backup.
+ * <p/>
+ * On acyclic domains, such as goal trees or layered graphs, this computes the value function with exactly one backup per state, and on
+ * domains that are mostly acyclic it avoids sweeping over states whose values have already converged. On a single strongly connected
+ * state space it performs the same sweeps as indexed VI.
+ * <p/>
+ * Indexed backups are always used by this planner. The reachability analysis is the same as that of {@link ValueIteration}, so
+ * it may also be run in parallel with {@link #setNumReachabilityThreads(int)}, but sweeps are not run in parallel: since each sweep only covers
+ * the states of one component, {@link #setParallelVI(int, ValueIteration.ParallelUpdateMode)} is ignored with a warning printed to this planner's debug code.
+ *
+ *
+ * 1. Dai, Peng, and Judy Goldsmith. "Topological Value Iteration Algorithm for Markov Decision Processes." IJCAI. 2007.
+ * <p/>
+ * 2. Tarjan, Robert. "Depth-first search and linear graph algorithms." SIAM Journal on Computing 1.2 (1972): 146-160.
+ * @author James MacGlashan
+ *
+ */
+public class TopologicalValueIteration extends ValueIteration {
+
+	/**
+	 * The expanded state ids ordered by component, with the components in reverse topological order
+	 */
+	protected int []						componentOrder;
+
+	/**
+	 * The position in {@link #componentOrder} at which each component starts, followed by the number of expanded states
+	 */
+	protected int []						componentStarts;
+
+	/**
+	 * The number of Bellman backups performed by the last run
+	 */
+	protected int							numBackups;
+
+
+	/**
+	 * Initializes the planner.
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function
+	 * @param tf the terminal state function
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factor to use
+	 * @param maxDelta when the maximum change in the value of a component is smaller than this value, the component is considered solved.
+	 * @param maxIterations the maximum number of sweeps over any one component.
+	 */
+	public TopologicalValueIteration(Domain domain, RewardFunction rf, TerminalFunction tf, double gamma, StateHashFactory hashingFactory, double maxDelta, int maxIterations){
+		super(domain, rf, tf, gamma, hashingFactory, maxDelta, maxIterations);
+		this.toggleIndexedBackups(true);
+	}
+
+
+	/**
+	 * Ignored, since the components are always swept serially; a warning is printed if more than one thread is requested.
+	 */
+	@Override
+	public void setParallelVI(int numThreads, ParallelUpdateMode mode){
+		if(numThreads > 1){
+			DPrint.cl(this.debugCode, "Warning: topological value iteration sweeps components serially; ignoring the request for " + numThreads + " parallel VI threads.");
+		}
+	}
+
+
+	/**
+	 * Returns the number of strongly connected components of the reachable states found by the last run.
+	 * @return the number of strongly connected components, or 0 if the planner has not run.
+	 */
+	public int numComponents(){
+		if(this.componentStarts == null){
+			return 0;
+		}
+		return this.componentStarts.length - 1;
+	}
+
+
+	/**
+	 * Returns the number of Bellman backups performed by the last run.
+	 * @return the number of Bellman backups performed by the last run.
+	 */
+	public int numBackups(){
+		return this.numBackups;
+	}
+
+
+	@Override
+	public void resetPlannerResults(){
+		super.resetPlannerResults();
+		this.componentOrder = null;
+		this.componentStarts = null;
+		this.numBackups = 0;
+	}
+
+
+	/**
+	 * Solves the strongly connected components of the reachable states in reverse topological order. In general, this method should only be called
+	 * indirectly through the {@link #planFromState(burlap.oomdp.core.State)} method. The {@link #performReachabilityFrom(burlap.oomdp.core.State)} must
+	 * have been performed at least once in the past or a runtime exception will be thrown.
+	 */
+	@Override
+	public void runVI(){
+
+		if(!this.foundReachableStates){
+			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use the planFromState or performReachabilityFrom method at least once before calling runVI.");
+		}
+
+		this.compileIndexedModel();
+		this.computeComponents();
+
+		IndexedTransitionModel model = this.indexedModel;
+		double [] V = this.indexedValueFunction;
+
+		this.numBackups = 0;
+		int maxPasses = 0;
+		for(int c = 0; c < this.componentStarts.length-1; c++){
+
+			int start = this.componentStarts[c];
+			int end = this.componentStarts[c+1];
+
+			if(end - start == 1 && !this.hasSelfTransition(this.componentOrder[start])){
+				int s = this.componentOrder[start];
+				V[s] = model.bellmanBackup(s, V);
+				this.numBackups++;
+				continue;
+			}
+
+			int i = 0;
+			for(i = 0; i < this.maxIterations; i++){
+
+				double delta = 0.;
+				for(int j = start; j < end; j++){
+					int s = this.componentOrder[j];
+					double v = V[s];
+					double maxQ = model.bellmanBackup(s, V);
+					V[s] = maxQ;
+					delta = Math.max(Math.abs(maxQ - v), delta);
+				}
+				this.numBackups += end - start;
+
+				if(delta < this.maxDelta){
+					break; //approximated well enough; stop iterating
+				}
+
+			}
+			maxPasses = Math.max(maxPasses, i);
+
+		}
+
+		this.writeBackIndexedValues();
+
+		DPrint.cl(this.debugCode, "Components: " + this.numComponents() + "; backups: " + this.numBackups + "; max component passes: " + maxPasses);
+
+		this.hasRunVI = true;
+
+	}
+
+
+	/**
+	 * Decomposes the transition graph of the expanded states of the indexed model into strongly connected components with an iterative version of
+	 * Tarjan's algorithm, which finds the components in reverse topological order. Transitions to states that were not expanded are ignored, since
+	 * those states keep their initial values. The results are stored in {@link #componentOrder} and {@link #componentStarts}.
+	 */
+	protected void computeComponents(){
+
+		IndexedTransitionModel model = this.indexedModel;
+		int n = model.numExpandedStates();
+
+		int [] index = new int[n];
+		int [] low = new int[n];
+		boolean [] onStack = new boolean[n];
+		int [] stack = new int[n];
+		int stackSize = 0;
+
+		//the depth first search path and the next transition entry to visit of each state on it
+		int [] path = new int[n];
+		int [] nextEntry = new int[n];
+		int pathSize = 0;
+
+		int [] order = new int[n];
+		int orderSize = 0;
+		int [] starts = new int[n+1];
+		int nComponents = 0;
+
+		int nextIndex = 1; //0 marks unvisited states
+
+		for(int root = 0; root < n; root++){
+
+			if(index[root] != 0){
+				continue;
+			}
+
+			index[root] = low[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			path[pathSize] = root;
+			nextEntry[pathSize] = this.firstEntry(root);
+			pathSize++;
+
+			while(pathSize > 0){
+
+				int s = path[pathSize-1];
+				int e = nextEntry[pathSize-1];
+				int end = this.endEntry(s);
+
+				//advance to the next unvisited successor
+				boolean descended = false;
+				for(; e < end; e++){
+					int c = model.getColumn(e);
+					if(c >= n){
+						continue;
+					}
+					if(index[c] == 0){
+						nextEntry[pathSize-1] = e+1;
+						index[c] = low[c] = nextIndex++;
+						stack[stackSize++] = c;
+						onStack[c] = true;
+						path[pathSize] = c;
+						nextEntry[pathSize] = this.firstEntry(c);
+						pathSize++;
+						descended = true;
+						break;
+					}
+					else if(onStack[c]){
+						low[s] = Math.min(low[s], index[c]);
+					}
+				}
+				if(descended){
+					continue;
+				}
+
+				//all successors visited; pop s and emit its component if it is the root of one
+				pathSize--;
+				if(pathSize > 0){
+					int parent = path[pathSize-1];
+					low[parent] = Math.min(low[parent], low[s]);
+				}
+
+				if(low[s] == index[s]){
+					starts[nComponents++] = orderSize;
+					int t;
+					do{
+						t = stack[--stackSize];
+						onStack[t] = false;
+						order[orderSize++] = t;
+					}while(t != s);
+				}
+
+			}
+
+		}
+
+		starts[nComponents] = orderSize;
+
+		int [] componentStarts = new int[nComponents+1];
+		System.arraycopy(starts, 0, componentStarts, 0, nComponents+1);
+
+		this.componentOrder = order;
+		this.componentStarts = componentStarts;
+
+	}
+
+
+	/**
+	 * Returns whether an expanded state has a transition to itself.
+	 * @param s the state id
+	 * @return true if the state has a transition to itself; false otherwise.
+	 */
+	protected boolean hasSelfTransition(int s){
+		int end = this.endEntry(s);
+		for(int e = this.firstEntry(s); e < end; e++){
+			if(this.indexedModel.getColumn(e) == s){
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the first transition entry of an expanded state in the indexed model.
+	 * @param s the state id
+	 * @return the first transition entry of the state
+	 */
+	protected int firstEntry(int s){
+		return this.indexedModel.getFirstEntry(this.indexedModel.getFirstRow(s));
+	}
+
+
+	/**
+	 * Returns the end (exclusive) transition entry of an expanded state in the indexed model.
+	 * @param s the state id
+	 * @return the end transition entry of the state
+	 */
+	protected int endEntry(int s){
+		return this.indexedModel.getFirstEntry(this.indexedModel.getFirstRow(s) + this.indexedModel.numActions(s));
+	}
+
+}
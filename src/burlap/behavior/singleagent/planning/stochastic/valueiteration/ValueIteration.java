@@ -1,13 +1,24 @@
 package burlap.behavior.singleagent.planning.stochastic.valueiteration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import burlap.behavior.singleagent.auxiliary.ParallelReachability;
+import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.singleagent.planning.ActionTransitions;
 import burlap.behavior.singleagent.planning.HashedTransitionProbability;
+import burlap.behavior.singleagent.planning.IndexedTransitionModel;
 import burlap.behavior.singleagent.planning.ValueFunctionPlanner;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
@@ -15,6 +26,7 @@ import burlap.debugtools.DPrint;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.State;
 import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.Action;
 import burlap.oomdp.singleagent.RewardFunction;
 
 
@@ -27,6 +39,19 @@ import burlap.oomdp.singleagent.RewardFunction;
  * that VI does not pass over non-reachable states.
  * 
  * This implementation is compatible with options.
+ * <p/>
+ * If indexed backups are enabled with {@link #toggleIndexedBackups(boolean)}, the reachable states and their cached transition dynamics are
+ * compiled into an {@link burlap.behavior.singleagent.planning.IndexedTransitionModel} before VI is run and each sweep is performed over
+ * int state ids and a double array value function, without any state hashing.
+ * <p/>
+ * Indexed VI may also be run in parallel across multiple threads with {@link #setParallelVI(int, ParallelUpdateMode)}. The expanded states
+ * are split into contiguous partitions of state ids and each sweep backs up the partitions concurrently, either as a synchronous
+ * (Jacobi) update against a double buffered value function or as a chunked Gauss-Seidel update, in which each partition uses the values
+ * it has already updated in the current sweep and the previous sweep's values of all other partitions. Each partition reports its maximum
+ * value change, so the convergence check is deterministic and independent of thread scheduling.
+ * <p/>
+ * The reachability analysis may also be run in parallel with {@link #setNumReachabilityThreads(int)}, which expands each level of the
+ * breadth first search across multiple threads (see {@link burlap.behavior.singleagent.auxiliary.ParallelReachability}).
  * 
  * 
  * @author James MacGlashan
@@ -63,6 +88,44 @@ public class ValueIteration extends ValueFunctionPlanner{
 	protected boolean												hasRunVI = false;
 	
 	
+	/**
+	 * The number of threads used to run indexed VI. A value of 1 runs the sequential sweep.
+	 */
+	protected int													numParallelThreads = 1;
+	
+	
+	/**
+	 * The update scheme used when indexed VI is run across multiple threads.
+	 */
+	protected ParallelUpdateMode									parallelUpdateMode = ParallelUpdateMode.JACOBI;
+	
+	
+	/**
+	 * The number of partitions of the state ids that are processed as separate tasks in a parallel sweep. If 0 or less, four partitions
+	 * per thread are used.
+	 */
+	protected int													numParallelPartitions = 0;
+	
+	
+	/**
+	 * The number of threads used to expand the frontiers of the reachability analysis.
+	 */
+	protected int													numReachabilityThreads = 1;
+	
+	
+	/**
+	 * The update schemes for parallel value iteration.
+	 * JACOBI: every state is backed up from the previous sweep's value function and the new values are written to a second buffer.
+	 * CHUNKED_GAUSS_SEIDEL: each partition is swept in place, using its own values from the current sweep and the previous sweep's values of all other partitions.
+	 * @author James MacGlashan
+	 *
+	 */
+	public static enum ParallelUpdateMode{
+		JACOBI,
+		CHUNKED_GAUSS_SEIDEL
+	}
+	
+	
 	/**
 	 * Initializers the planner.
 	 * @param domain the domain in which to plan
@@ -90,6 +153,7 @@ public class ValueIteration extends ValueFunctionPlanner{
 	public void recomputeReachableStates(){
 		this.foundReachableStates = false;
 		this.transitionDynamics = new HashMap<StateHashTuple, List<ActionTransitions>>();
+		this.clearIndexedModel();
 	}
 	
 	
@@ -103,6 +167,50 @@ public class ValueIteration extends ValueFunctionPlanner{
 	}
 	
 	
+	/**
+	 * Sets VI to sweep the state space in parallel across the given number of threads using the given update scheme. Parallel VI runs over
+	 * the compiled indexed transition model, so calling this method with more than one thread also enables indexed backups
+	 * (see {@link #toggleIndexedBackups(boolean)}). Setting the number of threads to 1 restores the sequential sweep.
+	 * @param numThreads the number of threads to use
+	 * @param mode the update scheme to use
+	 */
+	public void setParallelVI(int numThreads, ParallelUpdateMode mode){
+		if(numThreads < 1){
+			throw new RuntimeException("The number of threads for parallel VI must be at least 1; received: " + numThreads);
+		}
+		this.numParallelThreads = numThreads;
+		this.parallelUpdateMode = mode;
+		if(numThreads > 1){
+			this.toggleIndexedBackups(true);
+		}
+	}
+	
+	
+	/**
+	 * Sets the number of partitions of the state ids that are processed as separate tasks in a parallel sweep. Using more partitions than threads
+	 * balances the load between threads. Note that in {@link ParallelUpdateMode#CHUNKED_GAUSS_SEIDEL} mode the partitioning affects which values each
+	 * backup reads and therefore the number of sweeps to convergence. If 0 or less, four partitions per thread are used, which is the default.
+	 * @param numPartitions the number of partitions to use
+	 */
+	public void setNumParallelPartitions(int numPartitions){
+		this.numParallelPartitions = numPartitions;
+	}
+	
+	
+	/**
+	 * Sets the number of threads used to expand the frontiers of the breadth first search that finds the reachable states. Expansion
+	 * computes the transition dynamics of each state, which is thread safe for standard actions; if the domain's actions include options,
+	 * whose transition computations share caches, the reachability analysis is always run in the calling thread.
+	 * @param numThreads the number of threads to use
+	 */
+	public void setNumReachabilityThreads(int numThreads){
+		if(numThreads < 1){
+			throw new RuntimeException("The number of threads for reachability analysis must be at least 1; received: " + numThreads);
+		}
+		this.numReachabilityThreads = numThreads;
+	}
+	
+	
 	@Override
 	public void planFromState(State initialState){
 		this.initializeOptionsForExpectationComputations();
@@ -131,6 +239,11 @@ public class ValueIteration extends ValueFunctionPlanner{
 			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use the planFromState or performReachabilityFrom method at least once before calling runVI.");
 		}
 		
+		if(this.usingIndexedBackups()){
+			this.runIndexedVI();
+			return ;
+		}
+		
 		Set <StateHashTuple> states = mapToStateIndex.keySet();
 		
 		int i = 0;
@@ -158,6 +271,143 @@ public class ValueIteration extends ValueFunctionPlanner{
 	}
 	
 	
+	/**
+	 * Runs VI on the compiled {@link burlap.behavior.singleagent.planning.IndexedTransitionModel} of the reachable states until the specified termination
+	 * conditions are met and then copies the resulting values into the value function map. The model is compiled first if needed.
+	 */
+	protected void runIndexedVI(){
+		
+		this.compileIndexedModel();
+		
+		if(this.numParallelThreads > 1){
+			this.runParallelIndexedVI();
+			return ;
+		}
+		
+		IndexedTransitionModel model = this.indexedModel;
+		double [] V = this.indexedValueFunction;
+		int n = model.numExpandedStates();
+		
+		int i = 0;
+		for(i = 0; i < this.maxIterations; i++){
+			
+			double delta = 0.;
+			for(int s = 0; s < n; s++){
+				
+				double v = V[s];
+				double maxQ = model.bellmanBackup(s, V);
+				V[s] = maxQ;
+				delta = Math.max(Math.abs(maxQ - v), delta);
+				
+			}
+			
+			if(delta < this.maxDelta){
+				break; //approximated well enough; stop iterating
+			}
+			
+		}
+		
+		this.writeBackIndexedValues();
+		
+		DPrint.cl(this.debugCode, "Passes: " + i);
+		
+		this.hasRunVI = true;
+		
+	}
+	
+	
+	/**
+	 * Runs VI on the compiled {@link burlap.behavior.singleagent.planning.IndexedTransitionModel} with each sweep split into partitions of state ids that
+	 * are backed up concurrently according to the parallel update mode. The sweep's maximum value change is the maximum of the changes reported by
+	 * the partitions. The resulting values are copied into the value function map. The model must already be compiled.
+	 */
+	protected void runParallelIndexedVI(){
+		
+		final IndexedTransitionModel model = this.indexedModel;
+		int n = model.numExpandedStates();
+		
+		int nPartitions = this.numParallelPartitions > 0 ? this.numParallelPartitions : 4*this.numParallelThreads;
+		nPartitions = Math.max(1, Math.min(nPartitions, n));
+		int [] bounds = new int[nPartitions+1];
+		for(int p = 0; p <= nPartitions; p++){
+			bounds[p] = (int)((long)n * p / nPartitions);
+		}
+		
+		//both buffers hold the (fixed) values of non-expanded states, so only the expanded range needs to be written in a sweep
+		double [] V = this.indexedValueFunction;
+		double [] nextV = V.clone();
+		
+		final boolean jacobi = this.parallelUpdateMode == ParallelUpdateMode.JACOBI;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.numParallelThreads, nPartitions));
+		List <Callable<Double>> sweepTasks = new ArrayList<Callable<Double>>(nPartitions);
+		
+		int i = 0;
+		try{
+			for(i = 0; i < this.maxIterations; i++){
+				
+				final double [] curV = V;
+				final double [] newV = nextV;
+				sweepTasks.clear();
+				for(int p = 0; p < nPartitions; p++){
+					final int lo = bounds[p];
+					final int hi = bounds[p+1];
+					sweepTasks.add(new Callable<Double>() {
+						
+						@Override
+						public Double call(){
+							double delta = 0.;
+							if(jacobi){
+								for(int s = lo; s < hi; s++){
+									double maxQ = model.bellmanBackup(s, curV);
+									newV[s] = maxQ;
+									delta = Math.max(Math.abs(maxQ - curV[s]), delta);
+								}
+							}
+							else{
+								System.arraycopy(curV, lo, newV, lo, hi-lo);
+								for(int s = lo; s < hi; s++){
+									double maxQ = model.bellmanBackup(s, newV, curV, lo, hi);
+									delta = Math.max(Math.abs(maxQ - newV[s]), delta);
+									newV[s] = maxQ;
+								}
+							}
+							return delta;
+						}
+					});
+				}
+				
+				double delta = 0.;
+				for(Future<Double> result : executor.invokeAll(sweepTasks)){
+					delta = Math.max(result.get(), delta);
+				}
+				
+				V = newV;
+				nextV = curV;
+				
+				if(delta < this.maxDelta){
+					break; //approximated well enough; stop iterating
+				}
+				
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Parallel value iteration was interrupted.", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("A parallel value iteration sweep failed.", e.getCause());
+		} finally{
+			executor.shutdown();
+		}
+		
+		this.indexedValueFunction = V;
+		this.writeBackIndexedValues();
+		
+		DPrint.cl(this.debugCode, "Passes: " + i);
+		
+		this.hasRunVI = true;
+		
+	}
+	
+	
 	/**
 	 * This method will find all reachable states that will be used by the {@link #runVI()} method and will cache all the transition dynamics.
 	 * This method will not do anything if all reachable states from the input state have been discovered from previous calls to this method.
@@ -176,6 +426,18 @@ public class ValueIteration extends ValueFunctionPlanner{
 		
 		DPrint.cl(this.debugCode, "Starting reachability analysis");
 		
+		if(this.compilesReachabilityToMappedModel()){
+			this.compileReachableStatesToMappedModel(sih, !this.stopReachabilityFromTerminalStates);
+			this.foundReachableStates = true;
+			this.hasRunVI = false;
+			return true;
+		}
+		
+		if(this.numReachabilityThreads > 1 && !this.actionsIncludeOptions()){
+			this.performParallelReachabilityFrom(sih);
+			return true;
+		}
+		
 		//add to the open list
 		LinkedList <StateHashTuple> openList = new LinkedList<StateHashTuple>();
 		Set <StateHashTuple> openedSet = new HashSet<StateHashTuple>();
@@ -219,12 +481,90 @@ public class ValueIteration extends ValueFunctionPlanner{
 		
 		this.foundReachableStates = true;
 		this.hasRunVI = false;
+		this.clearIndexedModel();
 		
 		return true;
 		
 	}
 	
 	
+	/**
+	 * Finds all reachable states from the given state that have not already been found with a level-synchronous parallel breadth first
+	 * search and caches their transition dynamics. The transition dynamics are computed concurrently by the search and are only
+	 * added to this planner's data structures once the search has finished.
+	 * @param sih the hashed source state
+	 */
+	protected void performParallelReachabilityFrom(StateHashTuple sih){
+		
+		final Map <StateHashTuple, List<ActionTransitions>> expanded = new ConcurrentHashMap<StateHashTuple, List<ActionTransitions>>();
+		
+		//mapToStateIndex is only read during the search, so it can be safely shared among the expanding threads
+		ParallelReachability search = new ParallelReachability(this.numReachabilityThreads);
+		List <StateHashTuple> found = search.search(sih, new ParallelReachability.StateExpander() {
+			
+			@Override
+			public List<StateHashTuple> expand(StateHashTuple sh) {
+				
+				//skip this if it's already been expanded
+				if(mapToStateIndex.containsKey(sh)){
+					return null;
+				}
+				
+				//do not need to expand from terminal states if set to prune
+				if(tf.isTerminal(sh.s) && stopReachabilityFromTerminalStates){
+					return null;
+				}
+				
+				List <ActionTransitions> transitions = computeActionsTransitions(sh.s);
+				expanded.put(sh, transitions);
+				
+				List <StateHashTuple> successors = new ArrayList<StateHashTuple>();
+				for(ActionTransitions at : transitions){
+					for(HashedTransitionProbability tp : at.transitions){
+						if(!mapToStateIndex.containsKey(tp.sh)){
+							successors.add(tp.sh);
+						}
+					}
+				}
+				
+				return successors;
+			}
+		});
+		
+		for(StateHashTuple sh : found){
+			if(mapToStateIndex.containsKey(sh)){
+				continue;
+			}
+			mapToStateIndex.put(sh, sh);
+			List <ActionTransitions> transitions = expanded.get(sh);
+			if(transitions != null && this.useCachedTransitions){
+				transitionDynamics.put(sh, transitions);
+			}
+		}
+		
+		DPrint.cl(this.debugCode, "Finished reachability analysis; # states: " + mapToStateIndex.size());
+		
+		this.foundReachableStates = true;
+		this.hasRunVI = false;
+		this.clearIndexedModel();
+		
+	}
+	
+	
+	/**
+	 * Returns whether any of the actions of this planner are options.
+	 * @return true if any of the actions of this planner are options; false otherwise.
+	 */
+	protected boolean actionsIncludeOptions(){
+		for(Action a : this.actions){
+			if(a instanceof Option){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
 	
 
 	
@@ -0,0 +1,331 @@
+package burlap.behavior.statehashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import burlap.oomdp.core.Attribute;
+import burlap.oomdp.core.Attribute.AttributeType;
+import burlap.oomdp.core.ObjectClass;
+import burlap.oomdp.core.ObjectInstance;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.values.UnsetValueException;
+
+
+/**
+ * A hashing factory that computes a canonical 64-bit fingerprint for each state once, and uses it both for hash codes and
+ * to short-circuit equality checks. Two {@link FingerprintStateHashTuple}s whose fingerprints differ are immediately
+ * reported as unequal without running the O(n^2) object matching of {@link burlap.oomdp.core.State#equals(Object)};
+ * the full state equality check is only performed when the fingerprints match, so hash collisions never cause two different
+ * states to be treated as the same. Because the 32-bit hash code is folded from the 64-bit fingerprint, this also avoids the
+ * overflow-driven collisions that the multiplicative volumes of the {@link DiscreteStateHashFactory} suffer from in large domains.
+ * <p/>
+ * The fingerprint is object order invariant (and object name invariant, like standard OO-MDP state equality): each object
+ * instance is hashed from its true class name and its attribute values, the object hashes are mixed and summed, and the sum is
+ * combined with the number of objects. All hashing is computed from the attribute values themselves (strings are hashed
+ * character-wise and real values from their bit representation), so the fingerprint of a state is stable across JVM runs
+ * and may be used to key persisted data.
+ * <p/>
+ * As with the {@link DiscreteStateHashFactory}, the attributes used for fingerprinting may be restricted on a per class basis. If
+ * any attributes are specified for a class, only those attributes will be used for that class; classes with no specification
+ * use all of their attributes. Equality checks always compare the full states.
+ * @author James MacGlashan
+ *
+ */
+public class FingerprintStateHashFactory implements StateHashFactory {
+
+	/**
+	 * The attributes to use in fingerprinting for each class. If null, or if a class has no entry, all attributes of a class are used.
+	 */
+	protected Map<String, List<Attribute>>	attributesForHashCode;
+
+	/**
+	 * The seed fingerprint of each true class name, cached so class names only need to be hashed once.
+	 */
+	protected Map<String, Long>				classSeeds = new ConcurrentHashMap<String, Long>();
+
+
+	/**
+	 * Initializes this hashing factory to fingerprint with all attributes of all object classes.
+	 */
+	public FingerprintStateHashFactory() {
+		attributesForHashCode = null;
+	}
+
+	/**
+	 * Initializes this hashing factory to fingerprint with only the attributes for the specified classes in the provided map
+	 * @param attributesForHashCode a map from object class names to the attributes that should be used in the fingerprint for those object classes.
+	 */
+	public FingerprintStateHashFactory(Map<String, List<Attribute>> attributesForHashCode){
+		this.attributesForHashCode = attributesForHashCode;
+	}
+
+
+	/**
+	 * Sets which attributes to use in the fingerprint for the given class.
+	 * @param classname the name of the class
+	 * @param atts the attributes whose values in object instances should be used to compute fingerprints
+	 */
+	public void setAttributesForClass(String classname, List <Attribute> atts){
+		if(attributesForHashCode == null){
+			attributesForHashCode = new HashMap<String, List<Attribute>>();
+		}
+		attributesForHashCode.put(classname, new ArrayList<Attribute>(atts));
+	}
+
+
+	/**
+	 * Specifies that an additional attribute of the specified class should be used for computing fingerprints.
+	 * @param classname the name of the class
+	 * @param att the attribute whose values will be included in the computation of fingerprints
+	 */
+	public void addAttributeForClass(String classname, Attribute att){
+		if(attributesForHashCode == null){
+			attributesForHashCode = new HashMap<String, List<Attribute>>();
+		}
+		List <Attribute> atts = attributesForHashCode.get(classname);
+		if(atts == null){
+			atts = new ArrayList<Attribute>();
+			attributesForHashCode.put(classname, atts);
+		}
+		for(Attribute attInList : atts){
+			if(attInList.name.equals(att.name)){
+				return ;
+			}
+		}
+		atts.add(att);
+	}
+
+
+	@Override
+	public StateHashTuple hashState(State s){
+		return new FingerprintStateHashTuple(s);
+	}
+
+
+	/**
+	 * Computes the 64-bit fingerprint of the given state.
+	 * @param s the state to fingerprint
+	 * @return the 64-bit fingerprint of the state
+	 */
+	public long fingerprint(State s){
+
+		List <ObjectInstance> obs = s.getAllObjects();
+		long sum = 0L;
+		for(ObjectInstance o : obs){
+			sum += mix64(this.objectFingerprint(o));
+		}
+
+		return mix64(sum + obs.size() * 0x9E3779B97F4A7C15L);
+	}
+
+
+	/**
+	 * Computes the 64-bit fingerprint of a single object instance from its true class name and the values
+	 * of its attributes used for fingerprinting.
+	 * @param o the object instance to fingerprint
+	 * @return the 64-bit fingerprint of the object instance
+	 */
+	public long objectFingerprint(ObjectInstance o){
+
+		String className = o.getTrueClassName();
+		long h = this.classSeed(className);
+
+		List <Attribute> atts = null;
+		if(attributesForHashCode != null){
+			atts = attributesForHashCode.get(className);
+		}
+		if(atts == null){
+			ObjectClass oc = o.getObjectClass();
+			atts = oc.attributeList;
+		}
+
+		for(Attribute att : atts){
+			h = mix64(h * 0x100000001B3L + valueFingerprint(o, att));
+		}
+
+		return h;
+	}
+
+
+	/**
+	 * Returns the cached seed fingerprint for the given class name.
+	 * @param className the true class name of an object
+	 * @return the seed fingerprint for the class
+	 */
+	protected long classSeed(String className){
+		Long seed = classSeeds.get(className);
+		if(seed == null){
+			seed = mix64(stringFingerprint(className));
+			classSeeds.put(className, seed);
+		}
+		return seed;
+	}
+
+
+	/**
+	 * Returns a 64-bit fingerprint of the value an object instance has for the given attribute. Unset values
+	 * all share a single fingerprint.
+	 * @param o the object instance
+	 * @param att the attribute whose value should be fingerprinted
+	 * @return the 64-bit fingerprint of the value
+	 */
+	public static long valueFingerprint(ObjectInstance o, Attribute att){
+
+		try{
+			AttributeType type = att.type;
+			if(type == AttributeType.DISC || type == AttributeType.BOOLEAN || type == AttributeType.INT){
+				return o.getDiscValForAttribute(att.name);
+			}
+			else if(type == AttributeType.REAL || type == AttributeType.REALUNBOUND){
+				double v = o.getRealValForAttribute(att.name);
+				if(v == 0.){
+					v = 0.; //so that -0. and 0. fingerprint the same since they are equal values
+				}
+				return Double.doubleToLongBits(v);
+			}
+			else if(type == AttributeType.RELATIONAL || type == AttributeType.STRING){
+				return stringFingerprint(o.getStringValForAttribute(att.name));
+			}
+			else if(type == AttributeType.MULTITARGETRELATIONAL){
+				//sum so that the fingerprint is independent of target order
+				Set <String> targets = o.getAllRelationalTargets(att.name);
+				long sum = targets.size();
+				for(String t : targets){
+					sum += mix64(stringFingerprint(t));
+				}
+				return sum;
+			}
+			else if(type == AttributeType.INTARRAY){
+				int [] array = o.getIntArrayValForAttribute(att.name);
+				long h = array.length;
+				for(int v : array){
+					h = h * 0x100000001B3L + v;
+				}
+				return h;
+			}
+			else if(type == AttributeType.DOUBLEARRAY){
+				double [] array = o.getDoubleArrayValForAttribute(att.name);
+				long h = array.length;
+				for(double v : array){
+					h = h * 0x100000001B3L + Double.doubleToLongBits(v == 0. ? 0. : v);
+				}
+				return h;
+			}
+		}catch(UnsetValueException e){
+			return 0x5BD1E9955BD1E995L;
+		}
+
+		throw new RuntimeException("Cannot fingerprint attribute " + att.name + " of type " + att.type);
+	}
+
+
+	/**
+	 * Returns a 64-bit FNV-1a hash of the characters of the given string.
+	 * @param str the string to hash
+	 * @return a 64-bit hash of the string
+	 */
+	public static long stringFingerprint(String str){
+		long h = 0xCBF29CE484222325L;
+		for(int i = 0; i < str.length(); i++){
+			h ^= str.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return h;
+	}
+
+
+	/**
+	 * The finalizing mix function of the SplitMix64 generator, which spreads the bits of the input across the whole
+	 * 64-bit output.
+	 * @param z the value to mix
+	 * @return the mixed value
+	 */
+	public static long mix64(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+
+	/**
+	 * A {@link StateHashTuple} that caches the 64-bit fingerprint of its state. Equality checks between tuples of this
+	 * type reject on fingerprint mismatch and only perform the full state comparison when fingerprints match.
+	 * @author James MacGlashan
+	 *
+	 */
+	public class FingerprintStateHashTuple extends StateHashTuple{
+
+		protected long fingerprint;
+
+
+		public FingerprintStateHashTuple(State s) {
+			super(s);
+		}
+
+
+		/**
+		 * Returns the 64-bit fingerprint of this tuple's state, computing it if it has not been computed already.
+		 * @return the 64-bit fingerprint of this tuple's state
+		 */
+		public long getFingerprint(){
+			if(needToRecomputeHashCode){
+				this.computeHashCode();
+			}
+			return fingerprint;
+		}
+
+
+		@Override
+		public void computeHashCode(){
+			this.fingerprint = FingerprintStateHashFactory.this.fingerprint(s);
+			this.hashCode = (int)(fingerprint ^ (fingerprint >>> 32));
+			needToRecomputeHashCode = false;
+		}
+
+
+		@Override
+		public boolean equals(Object other){
+			if(this == other){
+				return true;
+			}
+			if(other instanceof FingerprintStateHashTuple){
+				FingerprintStateHashTuple o = (FingerprintStateHashTuple)other;
+				if(this.comparableFingerprints(o) && this.getFingerprint() != o.getFingerprint()){
+					return false;
+				}
+				return s.equals(o.s);
+			}
+			return super.equals(other);
+		}
+
+
+		/**
+		 * Returns whether the fingerprint of the given tuple was computed in the same way as this tuple's, in which case
+		 * a fingerprint mismatch means the states differ. This is true when both tuples were produced by the same factory,
+		 * or by factories that both fingerprint all attributes.
+		 * @param o the other tuple
+		 * @return true if fingerprints of the two tuples may be compared; false otherwise.
+		 */
+		protected boolean comparableFingerprints(FingerprintStateHashTuple o){
+			FingerprintStateHashFactory f = FingerprintStateHashFactory.this;
+			FingerprintStateHashFactory of = o.getFactory();
+			return f == of || (f.attributesForHashCode == null && of.attributesForHashCode == null);
+		}
+
+
+		/**
+		 * Returns the factory that produced this tuple.
+		 * @return the factory that produced this tuple
+		 */
+		public FingerprintStateHashFactory getFactory(){
+			return FingerprintStateHashFactory.this;
+		}
+
+	}
+
+}
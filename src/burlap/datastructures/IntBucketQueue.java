@@ -0,0 +1,304 @@
+package burlap.datastructures;
+
+import java.util.Arrays;
+
+
+/**
+ * A bucket (Dial) priority queue of int ids for priorities that are integer multiples of a fixed resolution, such as the f-scores of A* in
+ * domains with integer costs and an integer heuristic. Each priority level has a bucket of ids, so inserting an id or changing its priority
+ * takes constant time, and removing the id with the highest priority takes constant time plus the number of empty levels skipped since the
+ * last removal. Ids with the same priority are removed in last in, first out order.
+ * <p/>
+ * The buckets span the range between the lowest and highest priority levels that have been inserted, so this queue is only suitable when
+ * that range is small compared to the number of ids, as it is in best-first searches whose priorities change by small steps. A priority that
+ * is not a multiple of the resolution causes a runtime exception to be thrown. The arrays indexed by id grow as larger ids are inserted, so
+ * ids should be small non-negative ints.
+ * @author James MacGlashan
+ *
+ */
+public class IntBucketQueue implements IntPriorityQueue {
+
+	/**
+	 * The maximum number of priority levels spanned by the buckets
+	 */
+	public static final int				MAX_LEVELS = 1 << 26;
+
+
+	/**
+	 * The difference in priority between consecutive priority levels
+	 */
+	protected double					resolution;
+
+	/**
+	 * The ids in each bucket; bucket b holds the ids with priority level minLevel + b
+	 */
+	protected int [][]					buckets = new int[0][];
+
+	/**
+	 * The number of ids in each bucket
+	 */
+	protected int []					bucketSizes = new int[0];
+
+	/**
+	 * The priority level of the first bucket
+	 */
+	protected long						minLevel;
+
+	/**
+	 * The highest bucket that may be non-empty, or -1 if there are no buckets
+	 */
+	protected int						top = -1;
+
+	/**
+	 * The number of ids in the queue
+	 */
+	protected int						size;
+
+	/**
+	 * The priority level of each id in the queue
+	 */
+	protected long []					levels;
+
+	/**
+	 * The position of each id in its bucket, or -1 if the id is not in the queue
+	 */
+	protected int []					slots;
+
+
+	/**
+	 * Initializes a queue for integer priorities.
+	 */
+	public IntBucketQueue(){
+		this(1., 16);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param resolution the difference in priority between consecutive priority levels; all priorities must be integer multiples of it
+	 * @param capacity the expected number of ids
+	 */
+	public IntBucketQueue(double resolution, int capacity){
+		if(resolution <= 0.){
+			throw new RuntimeException("The resolution of a bucket queue must be positive.");
+		}
+		this.resolution = resolution;
+		capacity = Math.max(capacity, 1);
+		this.levels = new long[capacity];
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, -1);
+	}
+
+
+	@Override
+	public int size(){
+		return this.size;
+	}
+
+
+	@Override
+	public boolean contains(int id){
+		return id < this.slots.length && this.slots[id] != -1;
+	}
+
+
+	@Override
+	public double priority(int id){
+		return this.levels[id] * this.resolution;
+	}
+
+
+	@Override
+	public void insert(int id, double priority){
+		if(this.contains(id)){
+			this.updatePriority(id, priority);
+			return ;
+		}
+		this.ensureIdCapacity(id);
+		this.add(id, this.level(priority));
+		this.size++;
+	}
+
+
+	@Override
+	public void updatePriority(int id, double priority){
+		if(!this.contains(id)){
+			return ;
+		}
+		long level = this.level(priority);
+		if(level == this.levels[id]){
+			return ;
+		}
+		this.remove(id);
+		this.add(id, level);
+	}
+
+
+	@Override
+	public int peek(){
+		if(this.size == 0){
+			return -1;
+		}
+		this.skipEmptyBuckets();
+		return this.buckets[this.top][this.bucketSizes[this.top]-1];
+	}
+
+
+	@Override
+	public int poll(){
+		if(this.size == 0){
+			return -1;
+		}
+		this.skipEmptyBuckets();
+		int id = this.buckets[this.top][--this.bucketSizes[this.top]];
+		this.slots[id] = -1;
+		this.size--;
+		return id;
+	}
+
+
+	@Override
+	public void clear(){
+		for(int b = 0; b < this.bucketSizes.length; b++){
+			for(int i = 0; i < this.bucketSizes[b]; i++){
+				this.slots[this.buckets[b][i]] = -1;
+			}
+			this.bucketSizes[b] = 0;
+		}
+		this.size = 0;
+	}
+
+
+	/**
+	 * Returns the priority level of a priority.
+	 * @param priority the priority
+	 * @return the priority level of the priority
+	 */
+	protected long level(double priority){
+		long level = Math.round(priority / this.resolution);
+		if(Math.abs(level * this.resolution - priority) > 1e-9 * Math.max(1., Math.abs(priority))){
+			throw new RuntimeException("The priority " + priority + " is not a multiple of the bucket queue resolution " + this.resolution + ".");
+		}
+		return level;
+	}
+
+
+	/**
+	 * Adds an id that is not in any bucket to the bucket of the given priority level.
+	 * @param id the id
+	 * @param level the priority level
+	 */
+	protected void add(int id, long level){
+		int b = this.bucketFor(level);
+		int [] bucket = this.buckets[b];
+		int n = this.bucketSizes[b];
+		if(bucket == null){
+			bucket = this.buckets[b] = new int[4];
+		}
+		else if(n == bucket.length){
+			bucket = this.buckets[b] = Arrays.copyOf(bucket, 2*n);
+		}
+		bucket[n] = id;
+		this.bucketSizes[b] = n+1;
+		this.levels[id] = level;
+		this.slots[id] = n;
+		if(b > this.top){
+			this.top = b;
+		}
+	}
+
+
+	/**
+	 * Removes an id from its bucket by moving the last id of the bucket into its position.
+	 * @param id the id, which must be in the queue
+	 */
+	protected void remove(int id){
+		int b = (int)(this.levels[id] - this.minLevel);
+		int [] bucket = this.buckets[b];
+		int last = bucket[--this.bucketSizes[b]];
+		int slot = this.slots[id];
+		bucket[slot] = last;
+		this.slots[last] = slot;
+		this.slots[id] = -1;
+	}
+
+
+	/**
+	 * Moves {@link #top} down to the highest non-empty bucket. The queue must not be empty.
+	 */
+	protected void skipEmptyBuckets(){
+		while(this.bucketSizes[this.top] == 0){
+			this.top--;
+		}
+	}
+
+
+	/**
+	 * Returns the bucket of a priority level, growing the bucket arrays if the level is outside of the range they span.
+	 * @param level the priority level
+	 * @return the index of the bucket of the level
+	 */
+	protected int bucketFor(long level){
+
+		int n = this.bucketSizes.length;
+		if(n == 0){
+			this.minLevel = level;
+			this.growBuckets(0, 16);
+			return 0;
+		}
+
+		long b = level - this.minLevel;
+		if(b >= 0 && b < n){
+			return (int)b;
+		}
+
+		long span = b < 0 ? n - b : b + 1;
+		if(span > MAX_LEVELS){
+			throw new RuntimeException("The priorities in the bucket queue span more than " + MAX_LEVELS + " levels.");
+		}
+		int newLength = (int)Math.min(MAX_LEVELS, Math.max(span, 2L*n));
+		if(b < 0){
+			//grow downward, shifting the existing buckets up
+			int shift = newLength - n;
+			this.growBuckets(shift, newLength);
+			this.minLevel -= shift;
+			return (int)(level - this.minLevel);
+		}
+		this.growBuckets(0, newLength);
+		return (int)b;
+
+	}
+
+
+	/**
+	 * Replaces the bucket arrays with arrays of the given length, with the existing buckets starting at the given offset.
+	 * @param offset the new index of the first existing bucket
+	 * @param length the new number of buckets
+	 */
+	protected void growBuckets(int offset, int length){
+		int [][] nBuckets = new int[length][];
+		int [] nSizes = new int[length];
+		System.arraycopy(this.buckets, 0, nBuckets, offset, this.buckets.length);
+		System.arraycopy(this.bucketSizes, 0, nSizes, offset, this.bucketSizes.length);
+		this.buckets = nBuckets;
+		this.bucketSizes = nSizes;
+		this.top += offset;
+	}
+
+
+	/**
+	 * Grows the arrays indexed by id so that they can hold the given id.
+	 * @param id the id
+	 */
+	protected void ensureIdCapacity(int id){
+		if(id < this.slots.length){
+			return ;
+		}
+		int n = Math.max(id+1, 2*this.slots.length);
+		int oldLength = this.slots.length;
+		this.slots = Arrays.copyOf(this.slots, n);
+		Arrays.fill(this.slots, oldLength, n, -1);
+		this.levels = Arrays.copyOf(this.levels, n);
+	}
+
+}
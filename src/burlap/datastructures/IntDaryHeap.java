@@ -0,0 +1,224 @@
+package burlap.datastructures;
+
+import java.util.Arrays;
+
+
+/**
+ * An indexed d-ary max heap of int ids with double priorities. The heap is stored in an int array and the heap position and priority of each
+ * id are stored in arrays indexed by the id, so, unlike {@link HashIndexedHeap}, inserting an id, changing its priority, or checking whether
+ * it is in the heap requires no hashing or boxing. Each operation takes O(d log_d(n)) time; a larger arity d makes the heap shallower, which
+ * speeds up insertions and priority increases at the cost of more comparisons per removal. The default arity is 4.
+ * <p/>
+ * The arrays indexed by id grow as larger ids are inserted, so ids should be small non-negative ints.
+ * @author James MacGlashan
+ *
+ */
+public class IntDaryHeap implements IntPriorityQueue {
+
+	/**
+	 * The number of children of each heap node
+	 */
+	protected int						arity;
+
+	/**
+	 * The heap ordered ids
+	 */
+	protected int []					heap;
+
+	/**
+	 * The number of ids in the heap
+	 */
+	protected int						size;
+
+	/**
+	 * The heap position of each id, or -1 if the id is not in the heap
+	 */
+	protected int []					positions;
+
+	/**
+	 * The priority of each id in the heap
+	 */
+	protected double []					priorities;
+
+
+	/**
+	 * Initializes a 4-ary heap.
+	 */
+	public IntDaryHeap(){
+		this(4, 16);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param arity the number of children of each heap node; must be at least 2
+	 * @param capacity the expected number of ids
+	 */
+	public IntDaryHeap(int arity, int capacity){
+		if(arity < 2){
+			throw new RuntimeException("The arity of a heap must be at least 2.");
+		}
+		this.arity = arity;
+		capacity = Math.max(capacity, 1);
+		this.heap = new int[capacity];
+		this.positions = new int[capacity];
+		Arrays.fill(this.positions, -1);
+		this.priorities = new double[capacity];
+	}
+
+
+	@Override
+	public int size(){
+		return this.size;
+	}
+
+
+	@Override
+	public boolean contains(int id){
+		return id < this.positions.length && this.positions[id] != -1;
+	}
+
+
+	@Override
+	public double priority(int id){
+		return this.priorities[id];
+	}
+
+
+	@Override
+	public void insert(int id, double priority){
+		if(this.contains(id)){
+			this.updatePriority(id, priority);
+			return ;
+		}
+		this.ensureIdCapacity(id);
+		if(this.size == this.heap.length){
+			this.heap = Arrays.copyOf(this.heap, 2*this.heap.length);
+		}
+		this.priorities[id] = priority;
+		this.siftUp(this.size++, id);
+	}
+
+
+	@Override
+	public void updatePriority(int id, double priority){
+		if(!this.contains(id)){
+			return ;
+		}
+		double old = this.priorities[id];
+		this.priorities[id] = priority;
+		if(priority > old){
+			this.siftUp(this.positions[id], id);
+		}
+		else if(priority < old){
+			this.siftDown(this.positions[id], id);
+		}
+	}
+
+
+	@Override
+	public int peek(){
+		if(this.size == 0){
+			return -1;
+		}
+		return this.heap[0];
+	}
+
+
+	@Override
+	public int poll(){
+		if(this.size == 0){
+			return -1;
+		}
+		int top = this.heap[0];
+		this.positions[top] = -1;
+		this.size--;
+		if(this.size > 0){
+			this.siftDown(0, this.heap[this.size]);
+		}
+		return top;
+	}
+
+
+	@Override
+	public void clear(){
+		for(int i = 0; i < this.size; i++){
+			this.positions[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+
+	/**
+	 * Moves an id from the given heap position toward the root until its parent has a priority at least as high as its own.
+	 * @param pos the heap position at which the id is placed
+	 * @param id the id
+	 */
+	protected void siftUp(int pos, int id){
+		double p = this.priorities[id];
+		while(pos > 0){
+			int parent = (pos - 1) / this.arity;
+			int pid = this.heap[parent];
+			if(this.priorities[pid] >= p){
+				break;
+			}
+			this.heap[pos] = pid;
+			this.positions[pid] = pos;
+			pos = parent;
+		}
+		this.heap[pos] = id;
+		this.positions[id] = pos;
+	}
+
+
+	/**
+	 * Moves an id from the given heap position toward the leaves until none of its children has a higher priority.
+	 * @param pos the heap position at which the id is placed
+	 * @param id the id
+	 */
+	protected void siftDown(int pos, int id){
+		double p = this.priorities[id];
+		while(true){
+			int first = pos * this.arity + 1;
+			if(first >= this.size){
+				break;
+			}
+			int end = Math.min(first + this.arity, this.size);
+			int best = first;
+			double bestP = this.priorities[this.heap[first]];
+			for(int c = first+1; c < end; c++){
+				double cp = this.priorities[this.heap[c]];
+				if(cp > bestP){
+					best = c;
+					bestP = cp;
+				}
+			}
+			if(bestP <= p){
+				break;
+			}
+			int cid = this.heap[best];
+			this.heap[pos] = cid;
+			this.positions[cid] = pos;
+			pos = best;
+		}
+		this.heap[pos] = id;
+		this.positions[id] = pos;
+	}
+
+
+	/**
+	 * Grows the arrays indexed by id so that they can hold the given id.
+	 * @param id the id
+	 */
+	protected void ensureIdCapacity(int id){
+		if(id < this.positions.length){
+			return ;
+		}
+		int n = Math.max(id+1, 2*this.positions.length);
+		int oldLength = this.positions.length;
+		this.positions = Arrays.copyOf(this.positions, n);
+		Arrays.fill(this.positions, oldLength, n, -1);
+		this.priorities = Arrays.copyOf(this.priorities, n);
+	}
+
+}
@@ -0,0 +1,64 @@
+package burlap.datastructures;
+
+
+/**
+ * A priority queue of int ids, each with a double priority, that supports constant time "contains" checks and changing the priority of an id
+ * that is already in the queue. Ids index arrays inside the queue, so they should be small non-negative ints, such as the ids assigned by a
+ * {@link burlap.behavior.singleagent.auxiliary.StateIndex}. The id with the highest priority is dequeued first.
+ * @author James MacGlashan
+ *
+ */
+public interface IntPriorityQueue {
+
+	/**
+	 * Returns the number of ids in the queue.
+	 * @return the number of ids in the queue
+	 */
+	public int size();
+
+	/**
+	 * Returns whether the given id is in the queue.
+	 * @param id the id to check
+	 * @return true if the id is in the queue; false otherwise.
+	 */
+	public boolean contains(int id);
+
+	/**
+	 * Returns the priority of an id in the queue.
+	 * @param id the id, which must be in the queue
+	 * @return the priority of the id
+	 */
+	public double priority(int id);
+
+	/**
+	 * Inserts an id into the queue with the given priority. If the id is already in the queue, its priority is changed instead.
+	 * @param id the id to insert
+	 * @param priority the priority of the id
+	 */
+	public void insert(int id, double priority);
+
+	/**
+	 * Changes the priority of an id in the queue. If the id is not in the queue, nothing happens.
+	 * @param id the id whose priority is changed
+	 * @param priority the new priority of the id
+	 */
+	public void updatePriority(int id, double priority);
+
+	/**
+	 * Returns the id with the highest priority without removing it, or -1 if the queue is empty.
+	 * @return the id with the highest priority or -1 if the queue is empty
+	 */
+	public int peek();
+
+	/**
+	 * Removes and returns the id with the highest priority, or -1 if the queue is empty.
+	 * @return the id with the highest priority or -1 if the queue is empty
+	 */
+	public int poll();
+
+	/**
+	 * Removes all ids from the queue.
+	 */
+	public void clear();
+
+}
@@ -0,0 +1,195 @@
+package burlap.datastructures;
+
+import java.util.Arrays;
+
+
+/**
+ * A hash map from long keys to int values that stores its entries in primitive arrays with open addressing and linear probing, so each entry
+ * takes 12 bytes of array space (divided by the load factor) and no objects are allocated per entry. This is useful for recording very large
+ * numbers of 64-bit state fingerprints, such as the duplicate detection sets of frontier searches. Entries cannot be removed individually.
+ * @author James MacGlashan
+ *
+ */
+public class LongIntHashMap {
+
+	/**
+	 * The maximum fraction of the slots that may be used before the arrays are doubled
+	 */
+	protected static final double		MAXLOAD = 0.7;
+
+
+	/**
+	 * The key in each slot; 0 marks an empty slot
+	 */
+	protected long []					keys;
+
+	/**
+	 * The value in each slot
+	 */
+	protected int []					values;
+
+	/**
+	 * The number of entries, including the entry for the key 0
+	 */
+	protected int						size;
+
+	/**
+	 * Whether the key 0, which cannot be stored in a slot, has an entry
+	 */
+	protected boolean					hasZeroKey;
+
+	/**
+	 * The value of the key 0
+	 */
+	protected int						zeroValue;
+
+
+	/**
+	 * Initializes an empty map.
+	 */
+	public LongIntHashMap(){
+		this(16);
+	}
+
+
+	/**
+	 * Initializes an empty map with enough slots for the given number of entries.
+	 * @param capacity the expected number of entries
+	 */
+	public LongIntHashMap(int capacity){
+		int n = 16;
+		while(n * MAXLOAD < capacity){
+			n <<= 1;
+		}
+		this.keys = new long[n];
+		this.values = new int[n];
+	}
+
+
+	/**
+	 * Returns the number of entries in the map.
+	 * @return the number of entries in the map
+	 */
+	public int size(){
+		return this.size;
+	}
+
+
+	/**
+	 * Returns whether the map has an entry for the given key.
+	 * @param key the key to check
+	 * @return true if the map has an entry for the key; false otherwise.
+	 */
+	public boolean containsKey(long key){
+		if(key == 0L){
+			return this.hasZeroKey;
+		}
+		return this.keys[this.slot(key)] == key;
+	}
+
+
+	/**
+	 * Returns the value of the given key, or the missing value if the map has no entry for the key.
+	 * @param key the key
+	 * @param missingValue the value to return if the map has no entry for the key
+	 * @return the value of the key, or the missing value if the map has no entry for the key
+	 */
+	public int get(long key, int missingValue){
+		if(key == 0L){
+			return this.hasZeroKey ? this.zeroValue : missingValue;
+		}
+		int i = this.slot(key);
+		return this.keys[i] == key ? this.values[i] : missingValue;
+	}
+
+
+	/**
+	 * Sets the value of the given key.
+	 * @param key the key
+	 * @param value the value of the key
+	 * @return true if the map did not already have an entry for the key; false if the value of an existing entry was replaced.
+	 */
+	public boolean put(long key, int value){
+
+		if(key == 0L){
+			boolean added = !this.hasZeroKey;
+			this.hasZeroKey = true;
+			this.zeroValue = value;
+			if(added){
+				this.size++;
+			}
+			return added;
+		}
+
+		int i = this.slot(key);
+		if(this.keys[i] == key){
+			this.values[i] = value;
+			return false;
+		}
+
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.size++;
+		if(this.size > this.keys.length * MAXLOAD){
+			this.rehash(this.keys.length << 1);
+		}
+		return true;
+
+	}
+
+
+	/**
+	 * Removes all entries from the map.
+	 */
+	public void clear(){
+		Arrays.fill(this.keys, 0L);
+		this.size = 0;
+		this.hasZeroKey = false;
+	}
+
+
+	/**
+	 * Returns the slot that holds the given non-zero key, or the empty slot in which it would be stored if the map has no entry for it.
+	 * @param key the non-zero key
+	 * @return the slot of the key
+	 */
+	protected int slot(long key){
+		int mask = this.keys.length - 1;
+		int i = mix(key) & mask;
+		while(this.keys[i] != 0L && this.keys[i] != key){
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+
+	/**
+	 * Moves the entries into new arrays with the given number of slots.
+	 * @param n the new number of slots, which must be a power of 2
+	 */
+	protected void rehash(int n){
+		long [] oldKeys = this.keys;
+		int [] oldValues = this.values;
+		this.keys = new long[n];
+		this.values = new int[n];
+		for(int j = 0; j < oldKeys.length; j++){
+			if(oldKeys[j] != 0L){
+				int i = this.slot(oldKeys[j]);
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+	}
+
+
+	/**
+	 * Mixes the bits of a key into an int so that keys that differ only in their high bits do not share slots.
+	 * @param key the key
+	 * @return the mixed bits of the key
+	 */
+	protected static int mix(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+}
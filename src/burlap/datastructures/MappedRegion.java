@@ -0,0 +1,101 @@
+package burlap.datastructures;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A region of a file that is memory-mapped in chunks of at most 1GB ({@link #CHUNK_SIZE} bytes), so that the region may be larger than the 2GB
+ * limit of a single {@link java.nio.MappedByteBuffer}. Values are read and written by their byte position relative to the start of the region.
+ * A value must not span two chunks, which is guaranteed when values of a given size are stored at positions that are multiples of that
+ * size, or when the writer of the file pads its records so that none crosses a multiple of {@link #CHUNK_SIZE}.
+ * <p/>
+ * The mapping remains valid after the channel it was mapped from is closed and is released when this object is garbage collected.
+ * @author James MacGlashan
+ *
+ */
+public class MappedRegion {
+
+	/**
+	 * The number of bits of the chunk size
+	 */
+	public static final int					CHUNK_SHIFT = 30;
+
+	/**
+	 * The size of a chunk in bytes
+	 */
+	public static final long				CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+	protected static final long				CHUNK_MASK = CHUNK_SIZE - 1;
+
+
+	/**
+	 * The mapped chunks of this region
+	 */
+	protected final MappedByteBuffer []		chunks;
+
+	/**
+	 * The size of this region in bytes
+	 */
+	protected final long					size;
+
+
+	/**
+	 * Maps a region of a file.
+	 * @param channel the channel of the file
+	 * @param mode the mapping mode
+	 * @param offset the byte offset of the region in the file
+	 * @param size the size of the region in bytes
+	 * @throws IOException if the region cannot be mapped
+	 */
+	public MappedRegion(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException{
+		this.size = size;
+		int nChunks = (int)((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+		this.chunks = new MappedByteBuffer[nChunks];
+		for(int c = 0; c < nChunks; c++){
+			long start = (long)c << CHUNK_SHIFT;
+			this.chunks[c] = channel.map(mode, offset + start, Math.min(CHUNK_SIZE, size - start));
+		}
+	}
+
+
+	/**
+	 * Returns the size of this region in bytes.
+	 * @return the size of this region in bytes
+	 */
+	public long size(){
+		return this.size;
+	}
+
+	public byte getByte(long pos){
+		return this.chunks[(int)(pos >>> CHUNK_SHIFT)].get((int)(pos & CHUNK_MASK));
+	}
+
+	public int getInt(long pos){
+		return this.chunks[(int)(pos >>> CHUNK_SHIFT)].getInt((int)(pos & CHUNK_MASK));
+	}
+
+	public long getLong(long pos){
+		return this.chunks[(int)(pos >>> CHUNK_SHIFT)].getLong((int)(pos & CHUNK_MASK));
+	}
+
+	public double getDouble(long pos){
+		return this.chunks[(int)(pos >>> CHUNK_SHIFT)].getDouble((int)(pos & CHUNK_MASK));
+	}
+
+	public void putDouble(long pos, double v){
+		this.chunks[(int)(pos >>> CHUNK_SHIFT)].putDouble((int)(pos & CHUNK_MASK), v);
+	}
+
+
+	/**
+	 * Writes any changes to this region to the file.
+	 */
+	public void force(){
+		for(MappedByteBuffer chunk : this.chunks){
+			chunk.force();
+		}
+	}
+
+}
@@ -28,6 +28,8 @@ public abstract class Domain {
 	protected boolean									objectIdentifierDependentDomain = false;
 	
 	protected int										debugCode = 111;
+	
+	protected FlatStateLayout							flatStateLayout;		//slot layout shared by flat states of this domain
 
 
 	/**
@@ -100,6 +102,19 @@ public abstract class Domain {
 	}
 	
 	
+	/**
+	 * Returns the {@link FlatStateLayout} shared by all {@link FlatState} objects of this domain. The layout
+	 * is created the first time this method is called.
+	 * @return the {@link FlatStateLayout} of this domain.
+	 */
+	public synchronized FlatStateLayout getFlatStateLayout(){
+		if(this.flatStateLayout == null){
+			this.flatStateLayout = new FlatStateLayout(this);
+		}
+		return this.flatStateLayout;
+	}
+	
+	
 	/**
 	 * Add an object class to define this domain. The class will not be added if this domain already has a instance with the same name.
 	 * @param oc the object class to add to this domain.
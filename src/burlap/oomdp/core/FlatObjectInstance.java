@@ -0,0 +1,498 @@
+package burlap.oomdp.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import burlap.oomdp.core.Attribute.AttributeType;
+import burlap.oomdp.core.FlatStateLayout.ObjectClassLayout;
+import burlap.oomdp.core.values.RealValue;
+import burlap.oomdp.core.values.UnsetValueException;
+
+
+/**
+ * An {@link ObjectInstance} view of an object stored in a {@link FlatState}. Rather than holding its own list of {@link Value}
+ * objects, this object reads and writes its values directly from and to the primitive arrays of the flat state to which
+ * it belongs, so changing a value of this object changes the value in the state. Value getters and setters behave
+ * identically to those of a standard {@link ObjectInstance}, including the exceptions thrown for unset values and
+ * unsupported operations. Methods that return {@link Value} objects, such as {@link #getValueForAttribute(String)}, return
+ * new {@link Value} objects constructed from the stored values.
+ * <p/>
+ * The {@link #copy()} method returns a standard {@link ObjectInstance} with the same values that is independent of the flat state.
+ * @author James MacGlashan
+ *
+ */
+public class FlatObjectInstance extends ObjectInstance {
+
+	/**
+	 * The flat state whose arrays store this object's values
+	 */
+	protected FlatState			state;
+
+	/**
+	 * The index of this object in the flat state
+	 */
+	protected int				index;
+
+
+	/**
+	 * Initializes a view of the object at the given index of the given flat state.
+	 * @param state the flat state storing the object
+	 * @param index the index of the object in the flat state
+	 */
+	protected FlatObjectInstance(FlatState state, int index){
+		super(state.structure.classLayouts[index].objectClass, state.structure.names[index], null);
+		this.state = state;
+		this.index = index;
+	}
+
+
+	/**
+	 * Moves the values of this view into a new single object flat state so that this object keeps its
+	 * values after it is removed from its original state.
+	 */
+	protected void detach(){
+		FlatState own = new FlatState(this.state.layout);
+		own.addObject(this);
+		own.views[0] = this;
+		this.state = own;
+		this.index = 0;
+	}
+
+
+	/**
+	 * Returns the flat state that stores this object's values.
+	 * @return the flat state that stores this object's values.
+	 */
+	public FlatState getFlatState(){
+		return this.state;
+	}
+
+
+	@Override
+	public ObjectInstance copy(){
+		ObjectInstance o = new ObjectInstance(this.obClass, this.name);
+		for(int i = 0; i < this.obClass.numAttributes(); i++){
+			o.values.set(i, this.state.readValue(this.index, i));
+		}
+		return o;
+	}
+
+
+	@Override
+	public void initializeValueObjects(){
+		ObjectClassLayout cl = this.classLayout();
+		for(int i = 0; i < cl.slots.length; i++){
+			if(cl.realSlot[i]){
+				this.state.setReal(this.index, i, Double.NaN);
+			}
+			else{
+				this.state.setInt(this.index, i, cl.unsetIntValue(i));
+			}
+		}
+	}
+
+
+	@Override
+	public void setName(String name){
+		this.state.renameObject(this.name, name);
+		this.name = this.state.structure.names[this.index];
+	}
+
+
+	@Override
+	public void setValue(String attName, String v){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.setValue(v);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void setValue(String attName, double v){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind]){
+			this.state.setReal(this.index, ind, v);
+		}
+		else if(cl.relationalSlot[ind]){
+			Value value = this.state.readValue(this.index, ind);
+			value.setValue(v);
+			this.state.writeValue(this.index, ind, value);
+		}
+		else{
+			this.state.setInt(this.index, ind, (int)v);
+		}
+	}
+
+
+	@Override
+	public void setValue(String attName, int v){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind]){
+			this.state.setReal(this.index, ind, (double)v);
+		}
+		else if(cl.relationalSlot[ind]){
+			Value value = this.state.readValue(this.index, ind);
+			value.setValue(v);
+			this.state.writeValue(this.index, ind, value);
+		}
+		else{
+			this.state.setInt(this.index, ind, v);
+		}
+	}
+
+
+	@Override
+	public void setValue(String attName, boolean v){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind] || cl.relationalSlot[ind]){
+			Value value = this.state.readValue(this.index, ind);
+			value.setValue(v);
+			this.state.writeValue(this.index, ind, value);
+		}
+		else{
+			this.state.setInt(this.index, ind, v ? 1 : 0);
+		}
+	}
+
+
+	@Override
+	public void setValue(String attName, int [] v){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.setValue(v);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void setValue(String attName, double [] v){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.setValue(v);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void addRelationalTarget(String attName, String target){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.addRelationalTarget(target);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void addAllRelationalTargets(String attName, Collection<String> targets) {
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.addAllRelationalTargets(targets);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void clearRelationalTargets(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.clearRelationTargets();
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	@Override
+	public void removeRelationalTarget(String attName, String target){
+		int ind = this.obClass.attributeIndex(attName);
+		Value value = this.state.readValue(this.index, ind);
+		value.removeRelationalTarget(target);
+		this.state.writeValue(this.index, ind, value);
+	}
+
+
+	/**
+	 * Returns whether the flat states of this object and the given object share their value arrays, which is the case for a flat
+	 * state and its copies until either of them has a value set.
+	 */
+	@Override
+	public boolean sharesValuesWith(ObjectInstance o){
+		if(!(o instanceof FlatObjectInstance)){
+			return false;
+		}
+		FlatState os = ((FlatObjectInstance)o).state;
+		return this.state.intValues == os.intValues && this.state.realValues == os.realValues;
+	}
+
+
+	@Override
+	public Value getValueForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		return this.state.readValue(this.index, ind);
+	}
+
+
+	@Override
+	public double getRealValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		if(!this.classLayout().realSlot[ind]){
+			return this.state.readValue(this.index, ind).getRealVal();
+		}
+		double v = this.state.getReal(this.index, ind);
+		if(Double.isNaN(v)){
+			throw new UnsetValueException();
+		}
+		return v;
+	}
+
+
+	@Override
+	public double getNumericValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind]){
+			double v = this.state.getReal(this.index, ind);
+			if(Double.isNaN(v)){
+				throw new UnsetValueException();
+			}
+			return v;
+		}
+		if(cl.relationalSlot[ind]){
+			return this.state.readValue(this.index, ind).getNumericRepresentation();
+		}
+		int v = this.state.getInt(this.index, ind);
+		if(cl.isUnsetInt(ind, v)){
+			throw new UnsetValueException();
+		}
+		return (double)v;
+	}
+
+
+	@Override
+	public String getStringValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		return this.state.readValue(this.index, ind).getStringVal();
+	}
+
+
+	@Override
+	public int getDiscValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind] || cl.relationalSlot[ind]){
+			return this.state.readValue(this.index, ind).getDiscVal();
+		}
+		int v = this.state.getInt(this.index, ind);
+		if(cl.isUnsetInt(ind, v)){
+			throw new UnsetValueException();
+		}
+		return v;
+	}
+
+
+	@Override
+	public Set <String> getAllRelationalTargets(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		return new HashSet<String>(this.state.readValue(this.index, ind).getAllRelationalTargets());
+	}
+
+
+	@Deprecated
+	@Override
+	public boolean getBooleanValue(String attName){
+		return this.getBooleanValForAttribute(attName);
+	}
+
+
+	@Override
+	public boolean getBooleanValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		ObjectClassLayout cl = this.classLayout();
+		if(cl.realSlot[ind] || cl.relationalSlot[ind]){
+			return this.state.readValue(this.index, ind).getBooleanValue();
+		}
+		return this.state.getInt(this.index, ind) != 0;
+	}
+
+
+	@Deprecated
+	@Override
+	public int [] getIntArrayValue(String attName){
+		return this.getIntArrayValForAttribute(attName);
+	}
+
+
+	@Override
+	public int [] getIntArrayValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		return this.state.readValue(this.index, ind).getIntArray().clone();
+	}
+
+
+	@Deprecated
+	@Override
+	public double [] getDoubleArrayValue(String attName){
+		return this.getDoubleArrayValForAttribute(attName);
+	}
+
+
+	@Override
+	public double [] getDoubleArrayValForAttribute(String attName){
+		int ind = this.obClass.attributeIndex(attName);
+		return this.state.readValue(this.index, ind).getDoubleArray().clone();
+	}
+
+
+	@Override
+	public List <Value> getValues(){
+		int n = this.obClass.numAttributes();
+		List<Value> newValues = new ArrayList<Value>(n);
+		for(int i = 0; i < n; i++){
+			newValues.add(this.state.readValue(this.index, i));
+		}
+		return newValues;
+	}
+
+
+	@Override
+	public List<String> unsetAttributes(){
+		LinkedList<String> unsetAtts = new LinkedList<String>();
+		for(Value v : this.getValues()){
+			if(!v.valueHasBeenSet()){
+				unsetAtts.add(v.attName());
+			}
+		}
+		return unsetAtts;
+	}
+
+
+	@Override
+	public String getObjectDescription(){
+
+		String desc = name + " (" + this.getTrueClassName() + ")\n";
+		for(Value v : this.getValues()){
+			desc = desc + "\t" + v.attName() + ":\t" + v.getStringVal() + "\n";
+		}
+
+		return desc;
+
+	}
+
+
+	@Override
+	public String getObjectDesriptionWithNullForUnsetAttributes(){
+		String desc = name + " (" + this.getTrueClassName() + ")\n";
+		for(Value v : this.getValues()){
+			if(v.valueHasBeenSet()) {
+				desc = desc + "\t" + v.attName() + ":\t" + v.getStringVal() + "\n";
+			}
+			else{
+				desc = desc + "\t" + v.attName() + ":\tnull\n";
+			}
+		}
+
+		return desc;
+	}
+
+
+	@Override
+	public double[] getObservableFeatureVec(){
+
+		double [] obsFeatureVec = new double[obClass.observableAttributeIndices.size()];
+		for(int i = 0; i < obsFeatureVec.length; i++){
+			int ind = obClass.observableAttributeIndices.get(i);
+			obsFeatureVec[i] = this.state.readValue(this.index, ind).getNumericRepresentation();
+		}
+
+		return obsFeatureVec;
+	}
+
+
+	@Override
+	public double [] getNormalizedObservableFeatureVec(){
+
+		double [] obsFeatureVec = new double[obClass.observableAttributeIndices.size()];
+		for(int i = 0; i < obsFeatureVec.length; i++){
+			int ind = obClass.observableAttributeIndices.get(i);
+			Value v = this.state.readValue(this.index, ind);
+			Attribute a = v.getAttribute();
+			if(a.type != AttributeType.REAL && a.type != AttributeType.INT){
+				throw new RuntimeException("Cannot get a normalized numeric value for attribute " + a.name + " because it is not a REAL or INT type.");
+			}
+			double dv = v.getNumericRepresentation();
+			double n = (dv - a.lowerLim) / (a.upperLim - a.lowerLim);
+			obsFeatureVec[i] = n;
+		}
+
+		return obsFeatureVec;
+
+	}
+
+
+	@Override
+	public boolean valueEquals(ObjectInstance obj){
+
+		if(obj instanceof FlatObjectInstance){
+			FlatObjectInstance fo = (FlatObjectInstance)obj;
+			if(fo.state.layout == this.state.layout){
+				return this.state.objectValueEquals(this.index, fo.state, fo.index);
+			}
+		}
+
+		if(!obClass.name.equals(obj.obClass.name)){
+			return false;
+		}
+
+		for(int i = 0; i < this.obClass.numAttributes(); i++){
+			Value v = this.state.readValue(this.index, i);
+			Value ov = obj.getValueForAttribute(v.attName());
+			if(!v.equals(ov)){
+				return false;
+			}
+		}
+
+		return true;
+
+	}
+
+
+	@Override
+	public int valueHashCode(){
+		//computed directly from the slots in the same way the value objects of a standard object instance compute it
+		ObjectClassLayout cl = this.classLayout();
+		int h = this.obClass.name.hashCode();
+		for(int i = 0; i < cl.slots.length; i++){
+			int vh;
+			if(cl.realSlot[i]){
+				vh = RealValue.realHashCode(this.state.getReal(this.index, i));
+			}
+			else if(cl.relationalSlot[i]){
+				vh = this.state.layout.nameForId(this.state.getInt(this.index, i)).hashCode();
+			}
+			else{
+				vh = this.state.getInt(this.index, i);
+			}
+			h = 31*h + vh;
+		}
+		if(h == 0){
+			h = 1;
+		}
+		return h;
+	}
+
+
+	/**
+	 * Returns the slot layout of this object's class.
+	 * @return the slot layout of this object's class.
+	 */
+	protected ObjectClassLayout classLayout(){
+		return this.state.structure.classLayouts[this.index];
+	}
+
+}
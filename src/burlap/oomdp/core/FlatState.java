@@ -0,0 +1,997 @@
+package burlap.oomdp.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import burlap.oomdp.core.FlatStateLayout.ObjectClassLayout;
+
+
+/**
+ * A compact {@link State} implementation that stores the attribute values of all of its objects in a single int array and a
+ * single double array rather than in a list of {@link ObjectInstance} objects that each hold a list of {@link Value} objects.
+ * Where each object's values are stored in these arrays is defined by the {@link FlatStateLayout} of the domain, which is shared by
+ * all flat states of the domain, and the object names and object class assignments are stored in a structure that is shared
+ * by all copies of a state until an object is added, removed, or renamed. Copies of a flat state also share the value arrays
+ * until either state has a value set, at which point the modified state copies the arrays. As a result, copying a flat state
+ * (as is done by every {@link burlap.oomdp.singleagent.Action#performAction(State, String[])} call) allocates only the new
+ * state object, and the value arrays are copied at most once, when the action changes the state.
+ * <p/>
+ * Objects of a flat state are still accessed and modified through the standard {@link ObjectInstance} API; the returned
+ * objects are {@link FlatObjectInstance} views that read and write the arrays of the state directly, so existing domain code
+ * works without modification. The views of a state are created lazily, when the first of them is requested. Note that unlike a standard
+ * {@link State}, {@link #addObject(ObjectInstance)} stores a copy of the values of the added object; changes to the
+ * added object after it is added will not be reflected in the state. Instead, retrieve the object from the state with
+ * {@link #getObject(String)} and modify it.
+ * <p/>
+ * Only object classes whose attributes are all of type {@link burlap.oomdp.core.Attribute.AttributeType#DISC},
+ * {@link burlap.oomdp.core.Attribute.AttributeType#BOOLEAN}, {@link burlap.oomdp.core.Attribute.AttributeType#INT},
+ * {@link burlap.oomdp.core.Attribute.AttributeType#REAL}, {@link burlap.oomdp.core.Attribute.AttributeType#REALUNBOUND},
+ * or {@link burlap.oomdp.core.Attribute.AttributeType#RELATIONAL} can be stored in a flat state. To use flat states with a planning or learning algorithm, simply convert the initial state of the
+ * problem into a flat state with the {@link #FlatState(Domain, State)} constructor; all states produced by
+ * actions from it will also be flat states.
+ * <p/>
+ * A flat state that is no longer modified may be read by several threads at once, as parallel planners do: the views and object indices
+ * that are created lazily are built under the state's lock and published through volatile fields, so no thread sees them partially built.
+ * @author James MacGlashan
+ *
+ */
+public class FlatState extends State {
+
+	/**
+	 * The layout that defines where object values are stored
+	 */
+	protected FlatStateLayout					layout;
+
+	/**
+	 * The object names and object classes of this state, which is shared with copies of this state
+	 */
+	protected ObjectStructure					structure;
+
+	/**
+	 * The values of all discrete, boolean and int attributes of all objects
+	 */
+	protected int []							intValues;
+
+	/**
+	 * The values of all real attributes of all objects
+	 */
+	protected double []							realValues;
+
+	/**
+	 * Whether the value arrays are shared with a copy of this state and must be copied before they are modified
+	 */
+	protected boolean							sharedValues = false;
+
+	/**
+	 * The lazily created object instance views of each object; null until the first view is requested. The array is filled
+	 * before it is assigned and is not modified afterwards by readers, so it can be read without locking.
+	 */
+	protected volatile FlatObjectInstance []	views;
+
+	/**
+	 * Whether the object instance lists and maps of the parent {@link State} class have been populated with views. It is set
+	 * after the lists and maps are built, so a thread that reads true also sees them fully built.
+	 */
+	protected volatile boolean					indexed = false;
+
+
+
+	/**
+	 * Initializes an empty flat state for the given domain.
+	 * @param domain the domain of the state
+	 */
+	public FlatState(Domain domain){
+		this(domain.getFlatStateLayout());
+	}
+
+
+	/**
+	 * Initializes an empty flat state that uses the given layout.
+	 * @param layout the layout defining where object values are stored.
+	 */
+	public FlatState(FlatStateLayout layout){
+		this.layout = layout;
+		this.structure = new ObjectStructure(new String[0], new ObjectClassLayout[0]);
+		this.intValues = new int[0];
+		this.realValues = new double[0];
+	}
+
+
+	/**
+	 * Initializes a flat state for the given domain with a copy of the objects and values of the source state.
+	 * @param domain the domain of the state
+	 * @param source the state whose objects and values will be copied
+	 */
+	public FlatState(Domain domain, State source){
+		this(domain.getFlatStateLayout(), source);
+	}
+
+
+	/**
+	 * Initializes a flat state that uses the given layout with a copy of the objects and values of the source state.
+	 * @param layout the layout defining where object values are stored.
+	 * @param source the state whose objects and values will be copied
+	 */
+	public FlatState(FlatStateLayout layout, State source){
+
+		this.layout = layout;
+
+		List <ObjectInstance> obs = source.getAllObjects();
+		String [] names = new String[obs.size()];
+		ObjectClassLayout [] classLayouts = new ObjectClassLayout[obs.size()];
+		for(int i = 0; i < names.length; i++){
+			ObjectInstance o = obs.get(i);
+			names[i] = layout.internName(o.getName());
+			classLayouts[i] = layout.getClassLayout(o.getObjectClass());
+		}
+
+		this.structure = new ObjectStructure(names, classLayouts);
+		this.intValues = new int[this.structure.numInts];
+		this.realValues = new double[this.structure.numReals];
+
+		for(int i = 0; i < names.length; i++){
+			this.copyValuesInto(i, obs.get(i));
+		}
+
+	}
+
+
+	/**
+	 * Initializes this state as a copy of the source flat state. The object structure is shared and the value arrays
+	 * are shared until either state modifies a value.
+	 * @param src the source flat state to copy.
+	 */
+	protected FlatState(FlatState src){
+		this.layout = src.layout;
+		this.structure = src.structure;
+		this.intValues = src.intValues;
+		this.realValues = src.realValues;
+		this.sharedValues = true;
+		src.sharedValues = true;
+	}
+
+
+	@Override
+	public State copy(){
+		return new FlatState(this);
+	}
+
+
+	/**
+	 * Returns the {@link FlatStateLayout} used by this state.
+	 * @return the {@link FlatStateLayout} used by this state.
+	 */
+	public FlatStateLayout getLayout(){
+		return this.layout;
+	}
+
+
+	/**
+	 * Since copying a flat state does not copy any values until they are modified, a semi-deep copy is simply a copy.
+	 */
+	@Override
+	public State semiDeepCopy(String...deepCopyObjectNames){
+		return this.copy();
+	}
+
+
+	/**
+	 * Since copying a flat state does not copy any values until they are modified, a semi-deep copy is simply a copy.
+	 */
+	@Override
+	public State semiDeepCopy(ObjectInstance...deepCopyObjects){
+		return this.copy();
+	}
+
+
+	/**
+	 * Since copying a flat state does not copy any values until they are modified, a semi-deep copy is simply a copy.
+	 */
+	@Override
+	public State semiDeepCopy(Set<ObjectInstance> deepCopyObjects){
+		return this.copy();
+	}
+
+
+	/**
+	 * The object instance lists and maps of the parent {@link State} class are only populated when they are needed (see {@link #ensureObjectInstancesIndexed()}).
+	 */
+	@Override
+	protected void initDataStructures(){
+		//lazily created
+	}
+
+
+	@Override
+	protected void ensureObjectInstancesIndexed(){
+		if(!this.indexed){
+			this.buildObjectInstanceIndex();
+		}
+	}
+
+
+	/**
+	 * Populates the object instance lists and maps of the parent {@link State} class with views if another thread has not already done so.
+	 */
+	protected synchronized void buildObjectInstanceIndex(){
+
+		if(this.indexed){
+			return;
+		}
+
+		this.objectInstances = new ArrayList<ObjectInstance>(this.structure.observable.length);
+		this.hiddenObjectInstances = new ArrayList<ObjectInstance>(this.structure.hidden.length);
+		this.objectMap = new HashMap<String, ObjectInstance>(this.structure.names.length);
+		this.objectIndexByTrueClass = new HashMap<String, List<ObjectInstance>>();
+
+		for(int i : this.structure.observable){
+			this.objectInstances.add(this.view(i));
+		}
+		for(int i : this.structure.hidden){
+			this.hiddenObjectInstances.add(this.view(i));
+		}
+		for(int i = 0; i < this.structure.names.length; i++){
+			this.objectMap.put(this.structure.names[i], this.view(i));
+		}
+		for(Map.Entry<String, int[]> e : this.structure.classIndex.entrySet()){
+			this.objectIndexByTrueClass.put(e.getKey(), this.views(e.getValue()));
+		}
+
+		this.indexed = true;
+
+	}
+
+
+	/**
+	 * Adds a copy of object instance o to this state. Subsequent changes to o will not affect this state.
+	 * @param o the object instance whose copy is to be added to this state.
+	 */
+	@Override
+	public void addObject(ObjectInstance o){
+
+		if(this.structure.indexOf(o.getName()) != -1){
+			return ; //don't add an object that conflicts with another object of the same name
+		}
+
+		int n = this.structure.names.length;
+		String [] names = new String[n+1];
+		ObjectClassLayout [] classLayouts = new ObjectClassLayout[n+1];
+		System.arraycopy(this.structure.names, 0, names, 0, n);
+		System.arraycopy(this.structure.classLayouts, 0, classLayouts, 0, n);
+		names[n] = this.layout.internName(o.getName());
+		classLayouts[n] = this.layout.getClassLayout(o.getObjectClass());
+
+		ObjectStructure nStructure = new ObjectStructure(names, classLayouts);
+
+		int [] nIntValues = new int[nStructure.numInts];
+		double [] nRealValues = new double[nStructure.numReals];
+		System.arraycopy(this.intValues, 0, nIntValues, 0, this.intValues.length);
+		System.arraycopy(this.realValues, 0, nRealValues, 0, this.realValues.length);
+
+		FlatObjectInstance [] nViews = new FlatObjectInstance[n+1];
+		if(this.views != null){
+			System.arraycopy(this.views, 0, nViews, 0, n);
+		}
+
+		this.structure = nStructure;
+		this.intValues = nIntValues;
+		this.realValues = nRealValues;
+		this.sharedValues = false;
+		this.views = nViews;
+		this.indexed = false;
+		this.canonicalOrdering = null;
+
+		this.copyValuesInto(n, o);
+
+	}
+
+
+	@Override
+	public void removeObject(String oname){
+
+		int ind = this.structure.indexOf(oname);
+		if(ind == -1){
+			return ; //make sure we're removing something that actually exists in this state!
+		}
+
+		int n = this.structure.names.length;
+		String [] names = new String[n-1];
+		ObjectClassLayout [] classLayouts = new ObjectClassLayout[n-1];
+		FlatObjectInstance [] nViews = this.views != null ? new FlatObjectInstance[n-1] : null;
+		int j = 0;
+		for(int i = 0; i < n; i++){
+			if(i != ind){
+				names[j] = this.structure.names[i];
+				classLayouts[j] = this.structure.classLayouts[i];
+				if(nViews != null){
+					nViews[j] = this.views[i];
+					if(nViews[j] != null){
+						nViews[j].index = j;
+					}
+				}
+				j++;
+			}
+		}
+
+		ObjectStructure nStructure = new ObjectStructure(names, classLayouts);
+		int [] nIntValues = new int[nStructure.numInts];
+		double [] nRealValues = new double[nStructure.numReals];
+		for(int i = 0; i < names.length; i++){
+			int oi = i < ind ? i : i+1;
+			ObjectClassLayout cl = classLayouts[i];
+			System.arraycopy(this.intValues, this.structure.intOffsets[oi], nIntValues, nStructure.intOffsets[i], cl.numInts);
+			System.arraycopy(this.realValues, this.structure.realOffsets[oi], nRealValues, nStructure.realOffsets[i], cl.numReals);
+		}
+
+		FlatObjectInstance removed = this.views != null ? this.views[ind] : null;
+		if(removed != null){
+			//detach the view so that it keeps its last values
+			removed.detach();
+		}
+
+		this.structure = nStructure;
+		this.intValues = nIntValues;
+		this.realValues = nRealValues;
+		this.sharedValues = false;
+		this.views = nViews;
+		this.indexed = false;
+		this.canonicalOrdering = null;
+
+	}
+
+
+	@Override
+	public void removeObject(ObjectInstance o){
+		if(o == null){
+			return ;
+		}
+		this.removeObject(o.getName());
+	}
+
+
+	@Override
+	public void renameObject(String originalName, String newName){
+
+		int ind = this.structure.indexOf(originalName);
+		if(ind == -1){
+			return ;
+		}
+
+		String [] names = this.structure.names.clone();
+		names[ind] = this.layout.internName(newName);
+		this.structure = new ObjectStructure(names, this.structure.classLayouts);
+		if(this.views != null && this.views[ind] != null){
+			this.views[ind].name = names[ind];
+		}
+		this.indexed = false;
+		this.canonicalOrdering = null;
+
+	}
+
+
+	@Override
+	public void renameObject(ObjectInstance o, String newName){
+		this.renameObject(o.getName(), newName);
+	}
+
+
+	@Override
+	public Map <String, String> getObjectMatchingTo(State so, boolean enforceStateExactness){
+		this.ensureObjectInstancesIndexed();
+		return super.getObjectMatchingTo(so, enforceStateExactness);
+	}
+
+
+	@Override
+	public boolean equals(Object other){
+
+		if(this == other){
+			return true;
+		}
+
+		if(!(other instanceof State)){
+			return false;
+		}
+
+		if(other instanceof FlatState && ((FlatState)other).layout == this.layout){
+			return this.flatEquals((FlatState)other);
+		}
+
+		this.ensureObjectInstancesIndexed();
+		return super.equals(other);
+
+	}
+
+
+	/**
+	 * Returns a hash code that is consistent with equality between flat states of the same layout: like {@link #equals(Object)},
+	 * it ignores object names and the order of objects, so it is the sum of hash codes of the object class and values of each object.
+	 */
+	@Override
+	public int hashCode(){
+		int h = 0;
+		for(int i = 0; i < this.structure.names.length; i++){
+			h += this.objectValueHashCode(i);
+		}
+		return h;
+	}
+
+
+	@Override
+	public int numTotalObjets(){
+		return this.structure.names.length;
+	}
+
+	@Override
+	public int numObservableObjects(){
+		return this.structure.observable.length;
+	}
+
+	@Override
+	public int numHiddenObjects(){
+		return this.structure.hidden.length;
+	}
+
+	@Override
+	public ObjectInstance getObject(String oname){
+		int ind = this.structure.indexOf(oname);
+		if(ind == -1){
+			return null;
+		}
+		return this.view(ind);
+	}
+
+	@Override
+	public ObjectInstance getObservableObjectAt(int i){
+		if(i >= this.structure.observable.length){
+			return null;
+		}
+		return this.view(this.structure.observable[i]);
+	}
+
+	@Override
+	public ObjectInstance getHiddenObjectAt(int i){
+		if(i >= this.structure.hidden.length){
+			return null;
+		}
+		return this.view(this.structure.hidden[i]);
+	}
+
+	@Override
+	public List <ObjectInstance> getObservableObjects(){
+		return this.views(this.structure.observable);
+	}
+
+	@Override
+	public List <ObjectInstance> getHiddenObjects(){
+		return this.views(this.structure.hidden);
+	}
+
+	@Override
+	public List <ObjectInstance> getAllObjects(){
+		List <ObjectInstance> objects = this.views(this.structure.observable);
+		for(int i : this.structure.hidden){
+			objects.add(this.view(i));
+		}
+		return objects;
+	}
+
+	@Deprecated
+	@Override
+	public List <ObjectInstance> getObjectsOfTrueClass(String oclass){
+		return this.getObjectsOfClass(oclass);
+	}
+
+	@Override
+	public List <ObjectInstance> getObjectsOfClass(String oclass){
+		int [] inds = this.structure.classIndex.get(oclass);
+		if(inds == null){
+			return new ArrayList<ObjectInstance>();
+		}
+		return this.views(inds);
+	}
+
+	@Override
+	public ObjectInstance getFirstObjectOfClass(String oclass){
+		int [] inds = this.structure.classIndex.get(oclass);
+		if(inds == null){
+			return null;
+		}
+		return this.view(inds[0]);
+	}
+
+	@Override
+	public Set <String> getObjectClassesPresent(){
+		return new HashSet<String>(this.structure.classIndex.keySet());
+	}
+
+	@Override
+	public List <List <ObjectInstance>> getAllObjectsByTrueClass(){
+		List <List <ObjectInstance>> res = new ArrayList<List<ObjectInstance>>(this.structure.classIndex.size());
+		for(int [] inds : this.structure.classIndex.values()){
+			res.add(this.views(inds));
+		}
+		return res;
+	}
+
+	@Override
+	public String getStateDescription(){
+		this.ensureObjectInstancesIndexed();
+		return super.getStateDescription();
+	}
+
+	@Override
+	public Map<String, List<String>> getAllUnsetAttributes(){
+		this.ensureObjectInstancesIndexed();
+		return super.getAllUnsetAttributes();
+	}
+
+	@Override
+	public String getCompleteStateDescription(){
+		this.ensureObjectInstancesIndexed();
+		return super.getCompleteStateDescription();
+	}
+
+	@Override
+	public String getCompleteStateDescriptionWithUnsetAttributesAsNull(){
+		this.ensureObjectInstancesIndexed();
+		return super.getCompleteStateDescriptionWithUnsetAttributesAsNull();
+	}
+
+	@Override
+	public List <List <String>> getPossibleBindingsGivenParamOrderGroups(String [] paramClasses, String [] paramOrderGroups){
+		this.ensureObjectInstancesIndexed();
+		return super.getPossibleBindingsGivenParamOrderGroups(paramClasses, paramOrderGroups);
+	}
+
+
+
+	/**
+	 * Returns the object instance view for the object at the given index, creating it if it does not already exist.
+	 * @param i the index of the object
+	 * @return the object instance view for the object
+	 */
+	protected FlatObjectInstance view(int i){
+		FlatObjectInstance [] vs = this.views;
+		if(vs == null || vs[i] == null){
+			vs = this.createViews();
+		}
+		return vs[i];
+	}
+
+
+	/**
+	 * Creates the missing object instance views of this state in a new array and publishes it, if another thread has not already done so.
+	 * @return the array of object instance views
+	 */
+	protected synchronized FlatObjectInstance [] createViews(){
+		FlatObjectInstance [] vs = this.views;
+		int n = this.structure.names.length;
+		FlatObjectInstance [] nvs = vs != null ? vs.clone() : new FlatObjectInstance[n];
+		for(int i = 0; i < n; i++){
+			if(nvs[i] == null){
+				nvs[i] = new FlatObjectInstance(this, i);
+			}
+		}
+		this.views = nvs;
+		return nvs;
+	}
+
+
+	/**
+	 * Returns a new list of the object instance views for the objects at the given indices.
+	 * @param inds the indices of the objects
+	 * @return a new list of the object instance views
+	 */
+	protected List <ObjectInstance> views(int [] inds){
+		List <ObjectInstance> res = new ArrayList<ObjectInstance>(inds.length);
+		for(int i : inds){
+			res.add(this.view(i));
+		}
+		return res;
+	}
+
+
+	/**
+	 * Returns the int value stored for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @return the stored int value
+	 */
+	protected int getInt(int obIndex, int attIndex){
+		return this.intValues[this.structure.intOffsets[obIndex] + this.structure.classLayouts[obIndex].slots[attIndex]];
+	}
+
+
+	/**
+	 * Returns the double value stored for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @return the stored double value
+	 */
+	protected double getReal(int obIndex, int attIndex){
+		return this.realValues[this.structure.realOffsets[obIndex] + this.structure.classLayouts[obIndex].slots[attIndex]];
+	}
+
+
+	/**
+	 * Sets the int value stored for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @param v the value to store
+	 */
+	protected void setInt(int obIndex, int attIndex, int v){
+		if(this.sharedValues){
+			this.copySharedValues();
+		}
+		this.intValues[this.structure.intOffsets[obIndex] + this.structure.classLayouts[obIndex].slots[attIndex]] = v;
+	}
+
+
+	/**
+	 * Sets the double value stored for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @param v the value to store
+	 */
+	protected void setReal(int obIndex, int attIndex, double v){
+		if(this.sharedValues){
+			this.copySharedValues();
+		}
+		this.realValues[this.structure.realOffsets[obIndex] + this.structure.classLayouts[obIndex].slots[attIndex]] = v;
+	}
+
+
+	/**
+	 * Replaces the value arrays that are shared with a copy of this state with private copies of them.
+	 */
+	protected void copySharedValues(){
+		this.intValues = this.intValues.clone();
+		this.realValues = this.realValues.clone();
+		this.sharedValues = false;
+	}
+
+
+	/**
+	 * Returns a new {@link Value} object holding the value stored for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @return a new {@link Value} object holding the stored value
+	 */
+	protected Value readValue(int obIndex, int attIndex){
+		ObjectClassLayout cl = this.structure.classLayouts[obIndex];
+		Value v = cl.objectClass.attributeList.get(attIndex).valueConstructor();
+		if(cl.realSlot[attIndex]){
+			double d = this.getReal(obIndex, attIndex);
+			if(!Double.isNaN(d)){
+				v.setValue(d);
+			}
+		}
+		else if(cl.relationalSlot[attIndex]){
+			v.setValue(this.layout.nameForId(this.getInt(obIndex, attIndex)));
+		}
+		else{
+			int iv = this.getInt(obIndex, attIndex);
+			if(!cl.isUnsetInt(attIndex, iv)){
+				v.setValue(iv);
+			}
+		}
+		return v;
+	}
+
+
+	/**
+	 * Stores the value of the given {@link Value} object for the given attribute index of the object at the given index.
+	 * @param obIndex the object index
+	 * @param attIndex the attribute index of the object's class
+	 * @param v the value to store
+	 */
+	protected void writeValue(int obIndex, int attIndex, Value v){
+		ObjectClassLayout cl = this.structure.classLayouts[obIndex];
+		if(cl.realSlot[attIndex]){
+			this.setReal(obIndex, attIndex, v.valueHasBeenSet() ? v.getRealVal() : Double.NaN);
+		}
+		else if(cl.relationalSlot[attIndex]){
+			this.setInt(obIndex, attIndex, this.layout.nameId(v.getStringVal()));
+		}
+		else{
+			this.setInt(obIndex, attIndex, v.valueHasBeenSet() ? v.getDiscVal() : cl.unsetIntValue(attIndex));
+		}
+	}
+
+
+	/**
+	 * Copies the values of the given object instance into the value slots of the object at the given index.
+	 * @param obIndex the object index
+	 * @param o the object instance whose values will be copied
+	 */
+	protected void copyValuesInto(int obIndex, ObjectInstance o){
+
+		if(o instanceof FlatObjectInstance && ((FlatObjectInstance)o).state != null){
+			FlatObjectInstance fo = (FlatObjectInstance)o;
+			FlatState src = fo.state;
+			ObjectClassLayout cl = this.structure.classLayouts[obIndex];
+			if(src.structure.classLayouts[fo.index] == cl){
+				System.arraycopy(src.intValues, src.structure.intOffsets[fo.index], this.intValues, this.structure.intOffsets[obIndex], cl.numInts);
+				System.arraycopy(src.realValues, src.structure.realOffsets[fo.index], this.realValues, this.structure.realOffsets[obIndex], cl.numReals);
+				return;
+			}
+		}
+
+		List <Value> values = o.getValues();
+		for(int i = 0; i < values.size(); i++){
+			this.writeValue(obIndex, i, values.get(i));
+		}
+
+	}
+
+
+	/**
+	 * Returns whether the object at index i of this state has the same values as the object at index j of the given flat state
+	 * (which must use the same layout as this state).
+	 * @param i the index of the object in this state
+	 * @param so the other flat state
+	 * @param j the index of the object in the other flat state
+	 * @return true if the objects have the same object class and values; false otherwise.
+	 */
+	protected boolean objectValueEquals(int i, FlatState so, int j){
+
+		ObjectClassLayout cl = this.structure.classLayouts[i];
+		if(cl != so.structure.classLayouts[j]){
+			return false;
+		}
+
+		int io = this.structure.intOffsets[i];
+		int oio = so.structure.intOffsets[j];
+		for(int k = 0; k < cl.numInts; k++){
+			if(this.intValues[io+k] != so.intValues[oio+k]){
+				return false;
+			}
+		}
+
+		int ro = this.structure.realOffsets[i];
+		int oro = so.structure.realOffsets[j];
+		for(int k = 0; k < cl.numReals; k++){
+			if(this.realValues[ro+k] != so.realValues[oro+k]){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Returns a hash code of the object class and values of the object at the given index, which is equal for any two objects for which
+	 * {@link #objectValueEquals(int, FlatState, int)} is true.
+	 * @param i the index of the object
+	 * @return the hash code of the object class and values of the object
+	 */
+	protected int objectValueHashCode(int i){
+
+		ObjectClassLayout cl = this.structure.classLayouts[i];
+		int h = cl.objectClass.name.hashCode();
+
+		int io = this.structure.intOffsets[i];
+		for(int k = 0; k < cl.numInts; k++){
+			h = 31*h + this.intValues[io+k];
+		}
+
+		int ro = this.structure.realOffsets[i];
+		for(int k = 0; k < cl.numReals; k++){
+			double d = this.realValues[ro+k];
+			long bits = d == 0. ? 0L : Double.doubleToLongBits(d); //0. and -0. are equal
+			h = 31*h + (int)(bits ^ (bits >>> 32));
+		}
+
+		return h;
+	}
+
+
+	/**
+	 * Performs an object identifier independent equality check between this state and a flat state that uses the same layout.
+	 * Objects are first compared position-wise, which succeeds immediately for states that are copies of each other, and
+	 * a search for a matching object is only performed when the objects at the same position differ.
+	 * @param so the other flat state
+	 * @return true if the states are equal; false otherwise
+	 */
+	protected boolean flatEquals(FlatState so){
+
+		if(this.structure == so.structure && this.intValues == so.intValues && this.realValues == so.realValues){
+			return true; //copies that have not been modified
+		}
+
+		if(this.structure.names.length != so.structure.names.length){
+			return false;
+		}
+
+		for(Map.Entry<String, int[]> e : this.structure.classIndex.entrySet()){
+
+			int [] inds = e.getValue();
+			int [] oinds = so.structure.classIndex.get(e.getKey());
+			if(oinds == null || inds.length != oinds.length){
+				return false;
+			}
+
+			boolean [] matched = null;
+			for(int k = 0; k < inds.length; k++){
+
+				if(matched == null){
+					if(this.objectValueEquals(inds[k], so, oinds[k])){
+						continue;
+					}
+					//positional matching failed; mark the previous position-wise matches
+					matched = new boolean[oinds.length];
+					for(int m = 0; m < k; m++){
+						matched[m] = true;
+					}
+				}
+
+				boolean foundMatch = false;
+				for(int m = 0; m < oinds.length; m++){
+					if(!matched[m] && this.objectValueEquals(inds[k], so, oinds[m])){
+						matched[m] = true;
+						foundMatch = true;
+						break;
+					}
+				}
+				if(!foundMatch){
+					return false;
+				}
+
+			}
+
+		}
+
+		return true;
+	}
+
+
+
+	/**
+	 * The names and object classes of the objects of a flat state, along with the offsets into the value arrays
+	 * for each object and the indices of objects by name and class. Object structures are immutable so that they
+	 * can be shared between copies of a state.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class ObjectStructure{
+
+		/**
+		 * The (interned) name of each object
+		 */
+		protected final String []					names;
+
+		/**
+		 * The object class layout of each object
+		 */
+		protected final ObjectClassLayout []		classLayouts;
+
+		/**
+		 * The offset into the int value array for each object
+		 */
+		protected final int []						intOffsets;
+
+		/**
+		 * The offset into the double value array for each object
+		 */
+		protected final int []						realOffsets;
+
+		/**
+		 * The total number of int values
+		 */
+		protected final int							numInts;
+
+		/**
+		 * The total number of double values
+		 */
+		protected final int							numReals;
+
+		/**
+		 * The indices of the observable objects
+		 */
+		protected final int []						observable;
+
+		/**
+		 * The indices of the hidden objects
+		 */
+		protected final int []						hidden;
+
+		/**
+		 * The index of each object by its name
+		 */
+		protected final Map <String, Integer>		nameIndex;
+
+		/**
+		 * The indices of objects by their object class name
+		 */
+		protected final Map <String, int[]>			classIndex;
+
+
+		/**
+		 * Computes the structure for the given object names and object class layouts.
+		 * @param names the object names
+		 * @param classLayouts the object class layout of each object
+		 */
+		public ObjectStructure(String [] names, ObjectClassLayout [] classLayouts){
+
+			this.names = names;
+			this.classLayouts = classLayouts;
+			this.intOffsets = new int[names.length];
+			this.realOffsets = new int[names.length];
+			this.nameIndex = new HashMap<String, Integer>(names.length*2);
+
+			int ni = 0;
+			int nr = 0;
+			int nHidden = 0;
+			Map <String, List<Integer>> classLists = new LinkedHashMap<String, List<Integer>>();
+			for(int i = 0; i < names.length; i++){
+				ObjectClassLayout cl = classLayouts[i];
+				this.intOffsets[i] = ni;
+				this.realOffsets[i] = nr;
+				ni += cl.numInts;
+				nr += cl.numReals;
+				if(cl.objectClass.hidden){
+					nHidden++;
+				}
+				this.nameIndex.put(names[i], i);
+				List <Integer> cll = classLists.get(cl.objectClass.name);
+				if(cll == null){
+					cll = new ArrayList<Integer>();
+					classLists.put(cl.objectClass.name, cll);
+				}
+				cll.add(i);
+			}
+			this.numInts = ni;
+			this.numReals = nr;
+
+			this.observable = new int[names.length - nHidden];
+			this.hidden = new int[nHidden];
+			int oi = 0;
+			int hi = 0;
+			for(int i = 0; i < names.length; i++){
+				if(classLayouts[i].objectClass.hidden){
+					this.hidden[hi] = i;
+					hi++;
+				}
+				else{
+					this.observable[oi] = i;
+					oi++;
+				}
+			}
+
+			this.classIndex = new LinkedHashMap<String, int[]>(classLists.size()*2);
+			for(Map.Entry<String, List<Integer>> e : classLists.entrySet()){
+				List <Integer> cll = e.getValue();
+				int [] inds = new int[cll.size()];
+				for(int i = 0; i < inds.length; i++){
+					inds[i] = cll.get(i);
+				}
+				this.classIndex.put(e.getKey(), inds);
+			}
+
+		}
+
+
+		/**
+		 * Returns the index of the object with the given name or -1 if there is no such object.
+		 * @param name the name of the object
+		 * @return the index of the object with the given name or -1 if there is no such object.
+		 */
+		public int indexOf(String name){
+			Integer ind = this.nameIndex.get(name);
+			if(ind == null){
+				return -1;
+			}
+			return ind;
+		}
+
+	}
+
+
+}
@@ -0,0 +1,270 @@
+package burlap.oomdp.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.oomdp.core.Attribute.AttributeType;
+
+
+/**
+ * Defines how the attribute values of object instances are laid out in the primitive arrays of a {@link FlatState}.
+ * Each {@link ObjectClass} is assigned an {@link ObjectClassLayout} that maps every attribute index of the class (as defined
+ * by {@link ObjectClass#attributeIndex(String)}) to a slot in either an int block (for {@link AttributeType#DISC},
+ * {@link AttributeType#BOOLEAN}, {@link AttributeType#INT}, and {@link AttributeType#RELATIONAL} attributes) or a double block (for {@link AttributeType#REAL}
+ * and {@link AttributeType#REALUNBOUND} attributes). Other attribute types cannot be stored in a flat state.
+ * <p/>
+ * A layout is shared by all flat states of a domain (see {@link Domain#getFlatStateLayout()}) so that the per-class indexing
+ * is computed only once. The layout also interns object names and assigns each an int id, which is how the target
+ * of a single-target relational attribute is stored in the int block. The empty string, which indicates an unset
+ * relational target, always has id 0.
+ * @author James MacGlashan
+ *
+ */
+public class FlatStateLayout {
+
+	/**
+	 * The domain whose object classes this layout indexes.
+	 */
+	protected Domain								domain;
+
+	/**
+	 * The layout for each object class, indexed by the object class name.
+	 */
+	protected Map <String, ObjectClassLayout>		classLayouts;
+
+	/**
+	 * The int id of each interned object name.
+	 */
+	protected Map <String, Integer>					nameIds;
+	
+	/**
+	 * The interned object names, indexed by their id.
+	 */
+	protected List <String>							names;
+
+
+	/**
+	 * Initializes an empty layout for the given domain. Object class layouts are computed lazily as they are requested.
+	 * @param domain the domain whose object classes this layout indexes.
+	 */
+	public FlatStateLayout(Domain domain){
+		this.domain = domain;
+		this.classLayouts = new HashMap<String, ObjectClassLayout>();
+		this.nameIds = new HashMap<String, Integer>();
+		this.names = new ArrayList<String>();
+		this.nameId("");
+	}
+
+
+	/**
+	 * Returns the domain for which this layout is defined.
+	 * @return the domain for which this layout is defined.
+	 */
+	public Domain getDomain(){
+		return this.domain;
+	}
+
+
+	/**
+	 * Returns the layout for the given object class, computing it if it has not been computed before or if the attributes
+	 * of the object class have changed since it was last computed. A runtime exception is thrown if the object class
+	 * has an attribute type that cannot be stored in a flat state.
+	 * @param oc the object class for which the layout should be returned
+	 * @return the layout for the given object class
+	 */
+	public synchronized ObjectClassLayout getClassLayout(ObjectClass oc){
+		ObjectClassLayout cl = this.classLayouts.get(oc.name);
+		if(cl == null || cl.objectClass != oc || cl.slots.length != oc.numAttributes()){
+			cl = new ObjectClassLayout(oc);
+			this.classLayouts.put(oc.name, cl);
+		}
+		return cl;
+	}
+
+
+	/**
+	 * Returns the interned instance of the given object name.
+	 * @param name the object name to intern
+	 * @return the interned instance of the given object name
+	 */
+	public synchronized String internName(String name){
+		return this.names.get(this.nameId(name));
+	}
+	
+	
+	/**
+	 * Returns the int id of the given object name, interning it if it has not been interned before.
+	 * @param name the object name
+	 * @return the int id of the object name
+	 */
+	public synchronized int nameId(String name){
+		Integer id = this.nameIds.get(name);
+		if(id == null){
+			id = this.names.size();
+			this.nameIds.put(name, id);
+			this.names.add(name);
+		}
+		return id;
+	}
+	
+	
+	/**
+	 * Returns the interned object name with the given id.
+	 * @param id the id of the object name
+	 * @return the interned object name with the given id.
+	 */
+	public synchronized String nameForId(int id){
+		return this.names.get(id);
+	}
+
+
+	/**
+	 * Returns whether all attributes of the given object class can be stored in a flat state.
+	 * @param oc the object class to check
+	 * @return true if all attributes of the object class can be stored in a flat state; false otherwise.
+	 */
+	public static boolean supportsObjectClass(ObjectClass oc){
+		for(Attribute att : oc.attributeList){
+			if(!isIntType(att.type) && !isRealType(att.type)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns whether values for the given attribute type are stored in the int block of a flat state.
+	 * @param type the attribute type
+	 * @return true if the values are stored in the int block; false otherwise.
+	 */
+	public static boolean isIntType(AttributeType type){
+		return type == AttributeType.DISC || type == AttributeType.BOOLEAN || type == AttributeType.INT || type == AttributeType.RELATIONAL;
+	}
+
+
+	/**
+	 * Returns whether values for the given attribute type are stored in the double block of a flat state.
+	 * @param type the attribute type
+	 * @return true if the values are stored in the double block; false otherwise.
+	 */
+	public static boolean isRealType(AttributeType type){
+		return type == AttributeType.REAL || type == AttributeType.REALUNBOUND;
+	}
+
+
+
+	/**
+	 * The slot layout of a single object class. For each attribute index of the object class, {@link #slots} specifies
+	 * the offset of the value within the object's int block (if {@link #realSlot} is false for the attribute) or the object's
+	 * double block (if {@link #realSlot} is true for the attribute).
+	 * @author James MacGlashan
+	 *
+	 */
+	public static class ObjectClassLayout{
+
+		/**
+		 * The object class that this layout defines
+		 */
+		public final ObjectClass	objectClass;
+
+		/**
+		 * The number of int slots each object of this class requires
+		 */
+		public final int			numInts;
+
+		/**
+		 * The number of double slots each object of this class requires
+		 */
+		public final int			numReals;
+
+		/**
+		 * The slot offset for each attribute index
+		 */
+		public final int []			slots;
+
+		/**
+		 * Whether the slot for each attribute index is in the double block (true) or the int block (false)
+		 */
+		public final boolean []		realSlot;
+
+		/**
+		 * Whether the int slot for each attribute index stores a relational target name id (true) or a numeric value (false)
+		 */
+		public final boolean []		relationalSlot;
+
+		/**
+		 * The attribute types for each attribute index
+		 */
+		public final AttributeType [] types;
+
+
+		/**
+		 * Computes the layout for the given object class.
+		 * @param oc the object class for which to compute the layout.
+		 */
+		public ObjectClassLayout(ObjectClass oc){
+
+			this.objectClass = oc;
+			int n = oc.numAttributes();
+			this.slots = new int[n];
+			this.realSlot = new boolean[n];
+			this.relationalSlot = new boolean[n];
+			this.types = new AttributeType[n];
+
+			int ni = 0;
+			int nr = 0;
+			for(int i = 0; i < n; i++){
+				Attribute att = oc.attributeList.get(i);
+				this.types[i] = att.type;
+				if(isIntType(att.type)){
+					this.slots[i] = ni;
+					this.relationalSlot[i] = att.type == AttributeType.RELATIONAL;
+					ni++;
+				}
+				else if(isRealType(att.type)){
+					this.slots[i] = nr;
+					this.realSlot[i] = true;
+					nr++;
+				}
+				else{
+					throw new RuntimeException("FlatState cannot store the value of attribute " + att.name + " of object class " + oc.name + " because its type (" + att.type + ") is not a discrete, boolean, int, real, or single-target relational type.");
+				}
+			}
+
+			this.numInts = ni;
+			this.numReals = nr;
+
+		}
+
+
+		/**
+		 * Returns the int value used to indicate an unset value for the attribute at the given index. Discrete and boolean
+		 * attributes are unset with -1; int attributes are always considered set and default to 0; relational attributes default
+		 * to the empty target, whose name id is 0.
+		 * @param attIndex the attribute index
+		 * @return the int value representing an unset value
+		 */
+		public int unsetIntValue(int attIndex){
+			if(this.types[attIndex] == AttributeType.INT || this.relationalSlot[attIndex]){
+				return 0;
+			}
+			return -1;
+		}
+
+
+		/**
+		 * Returns whether the given int value represents an unset value for the attribute at the given index.
+		 * @param attIndex the attribute index
+		 * @param v the stored int value
+		 * @return true if the value is unset; false otherwise.
+		 */
+		public boolean isUnsetInt(int attIndex, int v){
+			return v == -1 && this.types[attIndex] != AttributeType.INT && !this.relationalSlot[attIndex];
+		}
+
+	}
+
+}
@@ -18,6 +18,8 @@ public class ObjectInstance {
 	protected ObjectClass					obClass;			//object class to which this object belongs
 	protected String						name;				//name of the object for disambiguation
 	protected List <Value>					values;				//the values for each attribute
+	protected boolean						sharedValues;		//whether the values list is shared with a copy of this object
+	protected int							valueHash;			//cached hash code of the values; 0 if it needs to be computed
 	
 	
 	
@@ -36,9 +38,24 @@ public class ObjectInstance {
 		
 	}
 	
+	/**
+	 * Initializes an object instance for a given object class and name without creating any value objects. This constructor
+	 * is for subclasses that store their values in a different representation, such as {@link FlatObjectInstance}.
+	 * @param obClass the object class to which this object belongs
+	 * @param name the name of the object
+	 * @param values the value list to use, which may be null if the subclass does not use it
+	 */
+	protected ObjectInstance(ObjectClass obClass, String name, List <Value> values){
+		this.obClass = obClass;
+		this.name = name;
+		this.values = values;
+	}
+	
 	/**
 	 * Creates a new object instance that is a deep copy of the specified object instance's values.
-	 * The object class and name is a shallow copy.
+	 * The object class and name is a shallow copy. The copy is made lazily: since value objects are never modified
+	 * once they are assigned to an object instance (setting a value assigns a modified copy), both objects share the same
+	 * value list until either of them sets a value, at which point the modifying object makes its own copy of the list.
 	 * @param o the source object instance from which this will object will copy.
 	 */
 	public ObjectInstance(ObjectInstance o){
@@ -46,7 +63,10 @@ public class ObjectInstance {
 		this.obClass = o.obClass;
 		this.name = o.name;
 		
-		this.values = new ArrayList <Value>(o.values);
+		this.values = o.values;
+		this.sharedValues = true;
+		o.sharedValues = true;
+		this.valueHash = o.valueHash;
 			
 	}
 	
@@ -70,6 +90,8 @@ public class ObjectInstance {
 		for(Attribute att : obClass.attributeList){
 			values.add(att.valueConstructor());
 		}
+		sharedValues = false;
+		valueHash = 0;
 		
 	}
 	
@@ -93,7 +115,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 		
 	}
 	
@@ -108,7 +130,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -121,7 +143,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -134,7 +156,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -147,7 +169,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -160,7 +182,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.setValue(v);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -174,7 +196,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.addRelationalTarget(target);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -189,7 +211,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.addAllRelationalTargets(targets);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -201,7 +223,7 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.clearRelationTargets();
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
 	}
 	
 	/**
@@ -214,7 +236,34 @@ public class ObjectInstance {
 		Value value = values.get(ind);
 		Value newValue = value.copy();
 		newValue.removeRelationalTarget(target);
-		values.set(ind, newValue);
+		this.replaceValue(ind, newValue);
+	}
+	
+	
+	/**
+	 * Assigns a new value object to the attribute at the given index. If the value list of this object is shared
+	 * with a copy of this object, the list is first copied so that the copy is unaffected.
+	 * @param ind the index of the attribute
+	 * @param newValue the new value object for the attribute
+	 */
+	protected void replaceValue(int ind, Value newValue){
+		if(this.sharedValues){
+			this.values = new ArrayList <Value>(this.values);
+			this.sharedValues = false;
+		}
+		this.values.set(ind, newValue);
+		this.valueHash = 0;
+	}
+	
+	
+	/**
+	 * Returns whether this object instance shares its value storage with the given object instance, which is the case for an object
+	 * and its copies until either of them has a value set.
+	 * @param o the other object instance
+	 * @return true if the two objects share their value storage; false otherwise.
+	 */
+	public boolean sharesValuesWith(ObjectInstance o){
+		return this.values == o.values;
 	}
 	
 	
@@ -501,6 +550,21 @@ public class ObjectInstance {
 		if(!obClass.name.equals(obj.obClass.name)){
 			return false;
 		}
+		
+		//cached value hashes that differ mean the values differ
+		if(this.valueHash != 0 && obj.valueHash != 0 && this.valueHash != obj.valueHash){
+			return false;
+		}
+		
+		if(obj.obClass == this.obClass && obj.values != null){
+			//same class definition, so values can be compared positionally without copying them
+			for(int i = 0; i < values.size(); i++){
+				if(!values.get(i).equals(obj.values.get(i))){
+					return false;
+				}
+			}
+			return true;
+		}
 	
 		for(Value v : values){
 		
@@ -516,6 +580,28 @@ public class ObjectInstance {
 	}
 	
 	
+	/**
+	 * Returns a hash code of the object class name and value assignments of this object instance that is consistent
+	 * with {@link #valueEquals(ObjectInstance)}: object instances with identical value assignments have the same value hash code.
+	 * Unlike {@link #hashCode()}, the object name does not affect the value hash code. The hash code is cached until a value of this object is set.
+	 * @return a hash code of the value assignments of this object instance.
+	 */
+	public int valueHashCode(){
+		int h = this.valueHash;
+		if(h == 0){
+			h = obClass.name.hashCode();
+			for(Value v : values){
+				h = 31*h + v.hashCode();
+			}
+			if(h == 0){
+				h = 1; //0 marks an uncomputed hash
+			}
+			this.valueHash = h;
+		}
+		return h;
+	}
+	
+	
 	public int hashCode(){
 		return name.hashCode();
 	}
@@ -34,6 +34,12 @@ public class State {
 	 * Map of object instances organized by class name
 	 */
 	protected Map <String, List <ObjectInstance>>			objectIndexByTrueClass;
+	
+	/**
+	 * Cached canonical ordering of the object instances of each class, used for linear time equality checks. Null if it has not
+	 * been computed since the objects of this state last changed.
+	 */
+	protected CanonicalOrdering								canonicalOrdering;
 
 	
 	
@@ -43,13 +49,15 @@ public class State {
 	
 	
 	/**
-	 * Initializes this state as a deep copy of the object instances in the provided source state s
+	 * Initializes this state as a deep copy of the object instances in the provided source state s. Object instances
+	 * are copied with {@link ObjectInstance#copy()}, which shares the value storage of the source object until either
+	 * object has a value set, so objects that are never modified in the copy are never duplicated.
 	 * @param s the source state from which this state will be initialized.
 	 */
 	public State(State s){
 		
-		
-		this.initDataStructures();
+		s.ensureObjectInstancesIndexed();
+		this.initDataStructures(s.objectInstances.size(), s.hiddenObjectInstances.size(), s.objectIndexByTrueClass.size());
 		
 		for(ObjectInstance o : s.objectInstances){
 			this.addObject(o.copy());
@@ -72,7 +80,8 @@ public class State {
 	
 	/**
 	 * Performs a semi-deep copy of the state in which only the objects with the names in deepCopyObjectNames are deep copied and the rest of the
-	 * objects are shallowed copied.
+	 * objects are shallowed copied. Since {@link #copy()} shares the value storage of objects until they are modified, a full copy is
+	 * typically only slightly more expensive than a semi-deep copy and is safe to use regardless of which objects an action modifies.
 	 * @param deepCopyObjectNames the names of the objects to be deep copied.
 	 * @return a new state that is a mix of a shallow and deep copy of this state.
 	 */
@@ -143,6 +152,43 @@ public class State {
 	}
 	
 	
+	/**
+	 * Initializes the data structures with capacities for the given number of objects so that they do not need to be
+	 * resized as objects are added.
+	 * @param nObservable the number of observable objects that will be added
+	 * @param nHidden the number of hidden objects that will be added
+	 * @param nClasses the number of object classes of the objects that will be added
+	 */
+	protected void initDataStructures(int nObservable, int nHidden, int nClasses){
+		
+		objectInstances = new ArrayList <ObjectInstance>(nObservable);
+		hiddenObjectInstances = new ArrayList <ObjectInstance>(nHidden);
+		objectMap = new HashMap <String, ObjectInstance>(hashCapacity(nObservable + nHidden));
+		
+		objectIndexByTrueClass = new HashMap <String, List <ObjectInstance>>(hashCapacity(nClasses));
+	}
+	
+	
+	/**
+	 * Returns the initial capacity a {@link HashMap} needs to hold n elements without being resized.
+	 * @param n the number of elements
+	 * @return the required initial capacity
+	 */
+	private static int hashCapacity(int n){
+		return Math.max(4, (int)(n / 0.75f) + 1);
+	}
+	
+	
+	/**
+	 * Ensures that the object instance lists and maps of this state are populated before they are accessed directly. 
+	 * This state always keeps them populated, so this method does nothing; subclasses that store their objects in
+	 * a different representation, such as {@link FlatState}, override it to populate them on demand.
+	 */
+	protected void ensureObjectInstancesIndexed(){
+		//always populated
+	}
+	
+	
 	/**
 	 * Adds object instance o to this state.
 	 * @param o the object instance to be added to this state.
@@ -168,7 +214,7 @@ public class State {
 		
 		
 		this.addObjectClassIndexing(o);
-		
+		this.canonicalOrdering = null;
 		
 	}
 	
@@ -177,12 +223,13 @@ public class State {
 		String otclass = o.getTrueClassName();
 		
 		//manage true indexing
-		if(objectIndexByTrueClass.containsKey(otclass)){
-			objectIndexByTrueClass.get(otclass).add(o);
+		List <ObjectInstance> classList = objectIndexByTrueClass.get(otclass);
+		if(classList != null){
+			classList.add(o);
 		}
 		else{
 			
-			ArrayList <ObjectInstance> classList = new ArrayList <ObjectInstance>();
+			classList = new ArrayList <ObjectInstance>();
 			classList.add(o);
 			objectIndexByTrueClass.put(otclass, classList);
 			
@@ -225,6 +272,7 @@ public class State {
 		objectMap.remove(oname);
 		
 		this.removeObjectClassIndexing(o);
+		this.canonicalOrdering = null;
 		
 	}
 	
@@ -283,6 +331,9 @@ public class State {
 	 * are not OO-MDP-wise identical (i.e., if there is a not a bijection
 	 *  between value-identical objects of the two states). If enforceExactness is false and the states are not identical,
 	 *  the the method will return the largest matching between objects that can be made.
+	 * <p/>
+	 * Objects are matched by merging the canonical orderings (see {@link #getCanonicalOrdering()}) of the two states, so only
+	 * objects with the same value hash code are compared.
 	 * @param so the state to whose objects the receiving state's objects should be matched
 	 * @param enforceStateExactness whether to require that states are identical to return a matching
 	 * @return a matching from this receiving state's objects to objects in so that have identical values. 
@@ -295,32 +346,21 @@ public class State {
 			return new HashMap<String, String>(); //states are not equal and therefore cannot be matched
 		}
 		
-		Set<String> matchedObs = new HashSet<String>();
+		CanonicalOrdering ordering = this.getCanonicalOrdering();
+		CanonicalOrdering oordering = so.getCanonicalOrdering();
 		
-		for(List <ObjectInstance> objects : objectIndexByTrueClass.values()){
-			
-			String oclass = objects.get(0).getTrueClassName();
-			List <ObjectInstance> oobjects = so.getObjectsOfTrueClass(oclass);
-			if(objects.size() != oobjects.size() && enforceStateExactness){
-				return new HashMap<String, String>(); //states are not equal and therefore cannot be matched
-			}
+		for(Map.Entry<String, CanonicalClassOrder> e : ordering.classOrders.entrySet()){
 			
-			for(ObjectInstance o : objects){
-				boolean foundMatch = false;
-				for(ObjectInstance oo : oobjects){
-					if(matchedObs.contains(oo.getName())){
-						continue; //already matched this one; check another
-					}
-					if(o.valueEquals(oo)){
-						foundMatch = true;
-						matchedObs.add(oo.getName());
-						matching.put(o.getName(), oo.getName());
-						break;
-					}
-				}
-				if(!foundMatch && enforceStateExactness){
+			CanonicalClassOrder oorder = oordering.classOrders.get(e.getKey());
+			if(oorder == null){
+				if(enforceStateExactness){
 					return new HashMap<String, String>(); //states are not equal and therefore cannot be matched
 				}
+				continue;
+			}
+			
+			if(!e.getValue().matchTo(oorder, enforceStateExactness, matching)){
+				return new HashMap<String, String>(); //states are not equal and therefore cannot be matched
 			}
 			
 		}
@@ -330,7 +370,12 @@ public class State {
 	
 	
 	
-	
+	/**
+	 * Two states are equal if there is a bijection between their object instances in which matched objects belong to the same class
+	 * and have identical value assignments (object names are ignored). Rather than searching all pairs of objects of each class, the
+	 * canonical orderings (see {@link #getCanonicalOrdering()}) of the two states are merged, which takes linear time unless
+	 * many objects of a class share a value hash code.
+	 */
 	@Override
 	public boolean equals(Object other){
 	
@@ -348,40 +393,42 @@ public class State {
 			return false;
 		}
 		
-		Set<String> matchedObjects = new HashSet<String>();
-		for(List <ObjectInstance> objects : objectIndexByTrueClass.values()){
-			
-			String oclass = objects.get(0).getTrueClassName();
-			List <ObjectInstance> oobjects = so.getObjectsOfTrueClass(oclass);
-			if(objects.size() != oobjects.size()){
+		CanonicalOrdering ordering = this.getCanonicalOrdering();
+		CanonicalOrdering oordering = so.getCanonicalOrdering();
+		
+		if(ordering.classOrders.size() != oordering.classOrders.size()){
+			return false;
+		}
+		
+		for(Map.Entry<String, CanonicalClassOrder> e : ordering.classOrders.entrySet()){
+			CanonicalClassOrder oorder = oordering.classOrders.get(e.getKey());
+			if(oorder == null || !e.getValue().matchTo(oorder, true, null)){
 				return false;
 			}
-			
-			for(ObjectInstance o : objects){
-				boolean foundMatch = false;
-				for(ObjectInstance oo : oobjects){
-					String ooname = oo.getName();
-					if(matchedObjects.contains(ooname)){
-						continue;
-					}
-					if(o.valueEquals(oo)){
-						foundMatch = true;
-						matchedObjects.add(ooname);
-						break;
-					}
-				}
-				if(!foundMatch){
-					return false;
-				}
-			}
-			
 		}
 		
-		
 		return true;
 	}
 	
 	
+	/**
+	 * Returns the canonical ordering of the object instances of this state, in which the objects of each class are sorted by their
+	 * {@link ObjectInstance#valueHashCode()}. The ordering is computed lazily and cached. Adding or removing objects invalidates
+	 * the cache, and since object instances may be modified directly, a cached ordering is revalidated against the current value hash
+	 * codes of the objects (which are themselves cached by the objects) before it is returned and recomputed if any of them changed.
+	 * @return the canonical ordering of the object instances of this state.
+	 */
+	protected CanonicalOrdering getCanonicalOrdering(){
+		this.ensureObjectInstancesIndexed();
+		CanonicalOrdering ordering = this.canonicalOrdering;
+		if(ordering == null || !ordering.isValidFor(this.objectIndexByTrueClass)){
+			ordering = new CanonicalOrdering(this.objectIndexByTrueClass);
+			this.canonicalOrdering = ordering;
+		}
+		return ordering;
+	}
+	
+	
 	/**
 	 * Returns the number of observable and hidden object instances in this state.
 	 * @return the number of observable and hidden object instances in this state.
@@ -961,4 +1008,225 @@ public class State {
 	
 	
 	
+
+	
+	
+	/**
+	 * An immutable canonical ordering of the object instances of a state, in which the objects of each class are sorted
+	 * by their {@link ObjectInstance#valueHashCode()}. Because object instances with identical values have identical value
+	 * hash codes, two states are equal only if, for each class, their sorted hash code sequences are identical and the objects
+	 * in each run of equal hash codes can be matched to each other.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class CanonicalOrdering{
+		
+		/**
+		 * The canonical ordering of the objects of each class, indexed by the true class name
+		 */
+		public final Map <String, CanonicalClassOrder>	classOrders;
+		
+		
+		/**
+		 * Computes the canonical ordering of the given objects.
+		 * @param objectIndexByTrueClass the object instances of a state, organized by their true class name
+		 */
+		public CanonicalOrdering(Map <String, List <ObjectInstance>> objectIndexByTrueClass){
+			this.classOrders = new HashMap<String, CanonicalClassOrder>(hashCapacity(objectIndexByTrueClass.size()));
+			for(Map.Entry<String, List<ObjectInstance>> e : objectIndexByTrueClass.entrySet()){
+				this.classOrders.put(e.getKey(), new CanonicalClassOrder(e.getValue()));
+			}
+		}
+		
+		
+		/**
+		 * Returns whether this ordering still holds for the given objects; that is, whether it orders the same number of objects
+		 * of each class and the value hash codes of the objects have not changed since the ordering was computed.
+		 * @param objectIndexByTrueClass the object instances of a state, organized by their true class name
+		 * @return true if this ordering is still valid; false otherwise.
+		 */
+		public boolean isValidFor(Map <String, List <ObjectInstance>> objectIndexByTrueClass){
+			if(this.classOrders.size() != objectIndexByTrueClass.size()){
+				return false;
+			}
+			for(Map.Entry<String, List<ObjectInstance>> e : objectIndexByTrueClass.entrySet()){
+				CanonicalClassOrder order = this.classOrders.get(e.getKey());
+				if(order == null || order.objects.length != e.getValue().size() || !order.hashesAreCurrent()){
+					return false;
+				}
+			}
+			return true;
+		}
+		
+	}
+	
+	
+	/**
+	 * The object instances of a single class sorted by their {@link ObjectInstance#valueHashCode()}, along with the value hash codes
+	 * at the time the order was computed.
+	 * @author James MacGlashan
+	 *
+	 */
+	protected static class CanonicalClassOrder{
+		
+		/**
+		 * The object instances sorted by their value hash code
+		 */
+		public final ObjectInstance []		objects;
+		
+		/**
+		 * The value hash code of each object in {@link #objects}, in ascending order
+		 */
+		public final int []					hashes;
+		
+		
+		/**
+		 * Sorts the given object instances by their value hash code.
+		 * @param obs the object instances of a single class
+		 */
+		public CanonicalClassOrder(List <ObjectInstance> obs){
+			
+			int n = obs.size();
+			
+			//pack the hash code in the high bits and the list index in the low bits so a primitive sort orders by hash code
+			long [] keys = new long[n];
+			for(int i = 0; i < n; i++){
+				keys[i] = ((long)obs.get(i).valueHashCode() << 32) | i;
+			}
+			Arrays.sort(keys);
+			
+			this.objects = new ObjectInstance[n];
+			this.hashes = new int[n];
+			for(int i = 0; i < n; i++){
+				this.objects[i] = obs.get((int)keys[i]);
+				this.hashes[i] = (int)(keys[i] >> 32);
+			}
+			
+		}
+		
+		
+		/**
+		 * Returns whether the value hash codes of the objects are the same as when this order was computed.
+		 * @return true if none of the object value hash codes have changed; false otherwise.
+		 */
+		public boolean hashesAreCurrent(){
+			for(int i = 0; i < this.objects.length; i++){
+				if(this.objects[i].valueHashCode() != this.hashes[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		
+		/**
+		 * Matches the objects in this order to value-identical objects in the given order by merging the two orders. Only objects
+		 * in runs of equal value hash codes are compared to each other.
+		 * @param o the order of the objects of the same class in another state
+		 * @param exact whether every object in both orders must be matched
+		 * @param matching a map to which the name of each matched object in this order is added with the name of the object to which it is matched; may be null
+		 * @return false if exact is true and the objects could not all be matched; true otherwise.
+		 */
+		public boolean matchTo(CanonicalClassOrder o, boolean exact, Map <String, String> matching){
+			
+			int n = this.objects.length;
+			int m = o.objects.length;
+			if(exact && n != m){
+				return false;
+			}
+			
+			int i = 0;
+			int j = 0;
+			while(i < n && j < m){
+				
+				int h = this.hashes[i];
+				int oh = o.hashes[j];
+				if(h < oh){
+					if(exact){
+						return false;
+					}
+					i++;
+					continue;
+				}
+				if(oh < h){
+					if(exact){
+						return false;
+					}
+					j++;
+					continue;
+				}
+				
+				int ie = i+1;
+				while(ie < n && this.hashes[ie] == h){
+					ie++;
+				}
+				int je = j+1;
+				while(je < m && o.hashes[je] == h){
+					je++;
+				}
+				if(exact && ie-i != je-j){
+					return false;
+				}
+				
+				if(!this.matchRun(i, ie, o, j, je, exact, matching)){
+					return false;
+				}
+				
+				i = ie;
+				j = je;
+				
+			}
+			
+			return !exact || (i == n && j == m);
+		}
+		
+		
+		/**
+		 * Matches the objects of a run of equal value hash codes in this order to those of a run in another order.
+		 * @param i the start index of the run in this order
+		 * @param ie the end index (exclusive) of the run in this order
+		 * @param o the other order
+		 * @param j the start index of the run in the other order
+		 * @param je the end index (exclusive) of the run in the other order
+		 * @param exact whether every object in the runs must be matched
+		 * @param matching a map to which matched object names are added; may be null
+		 * @return false if exact is true and the objects could not all be matched; true otherwise.
+		 */
+		protected boolean matchRun(int i, int ie, CanonicalClassOrder o, int j, int je, boolean exact, Map <String, String> matching){
+			
+			//the common case: hash codes are unique within the class
+			if(ie-i == 1 && je-j == 1){
+				if(this.objects[i].valueEquals(o.objects[j])){
+					if(matching != null){
+						matching.put(this.objects[i].getName(), o.objects[j].getName());
+					}
+					return true;
+				}
+				return !exact;
+			}
+			
+			boolean [] matched = new boolean[je-j];
+			for(int k = i; k < ie; k++){
+				boolean foundMatch = false;
+				for(int l = j; l < je; l++){
+					if(!matched[l-j] && this.objects[k].valueEquals(o.objects[l])){
+						matched[l-j] = true;
+						foundMatch = true;
+						if(matching != null){
+							matching.put(this.objects[k].getName(), o.objects[l].getName());
+						}
+						break;
+					}
+				}
+				if(!foundMatch && exact){
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+	}
+	
+
 }
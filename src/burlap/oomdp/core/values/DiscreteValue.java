@@ -134,6 +134,11 @@ public class DiscreteValue extends Value{
 		return (double)this.discVal;
 	}
 	
+	@Override
+	public int hashCode(){
+		return this.discVal;
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		
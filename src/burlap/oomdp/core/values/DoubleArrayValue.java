@@ -159,6 +159,18 @@ public class DoubleArrayValue extends Value{
 	}
 	
 	
+	@Override
+	public int hashCode(){
+		if(this.doubleArray == null){
+			return 0;
+		}
+		int h = 1;
+		for(double v : this.doubleArray){
+			h = 31*h + RealValue.realHashCode(v);
+		}
+		return h;
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		if(!(obj instanceof DoubleArrayValue)){
@@ -1,5 +1,6 @@
 package burlap.oomdp.core.values;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 
@@ -149,6 +150,11 @@ public class IntArrayValue extends Value {
 		return doubleArray;
 	}
 	
+	@Override
+	public int hashCode(){
+		return Arrays.hashCode(this.intArray);
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		if(!(obj instanceof IntArrayValue)){
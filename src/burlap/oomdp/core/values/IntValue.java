@@ -123,6 +123,11 @@ public class IntValue extends Value {
 	}
 	
 	
+	@Override
+	public int hashCode(){
+		return this.intVal;
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		if(!(obj instanceof IntValue)){
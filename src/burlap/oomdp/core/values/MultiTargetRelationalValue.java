@@ -133,6 +133,11 @@ public class MultiTargetRelationalValue extends Value {
 	}
 	
 	
+	@Override
+	public int hashCode(){
+		return this.targetObjects.hashCode();
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		
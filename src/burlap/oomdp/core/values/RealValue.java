@@ -124,6 +124,25 @@ public class RealValue extends Value {
 		return this.realVal;
 	}
 	
+	@Override
+	public int hashCode(){
+		return realHashCode(this.realVal);
+	}
+	
+	
+	/**
+	 * Returns a hash code for a double value that is consistent with double equality (==), so that 0 and -0 have the same hash code.
+	 * @param v the double value
+	 * @return a hash code for the double value
+	 */
+	public static int realHashCode(double v){
+		if(v == 0.){
+			return 0;
+		}
+		long bits = Double.doubleToLongBits(v);
+		return (int)(bits ^ (bits >>> 32));
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		
@@ -123,6 +123,11 @@ public class RelationalValue extends Value {
 	}
 
 	
+	@Override
+	public int hashCode(){
+		return this.target.hashCode();
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		
@@ -114,6 +114,11 @@ public class StringValue extends Value {
 	}
 	
 	
+	@Override
+	public int hashCode(){
+		return this.stringVal.hashCode();
+	}
+	
 	@Override
 	public boolean equals(Object obj){
 		if(!(obj instanceof StringValue)){
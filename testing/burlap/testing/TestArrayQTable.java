@@ -0,0 +1,142 @@
+package burlap.testing;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.auxiliary.StateReachability;
+import burlap.behavior.singleagent.learning.tdmethods.QLearning;
+import burlap.behavior.singleagent.learning.tdmethods.SarsaLam;
+import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
+import burlap.behavior.statehashing.DiscreteStateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
+import burlap.oomdp.singleagent.common.SinglePFTF;
+import burlap.oomdp.singleagent.common.UniformCostRF;
+
+public class TestArrayQTable {
+	public static final double delta = 0.000001;
+	GridWorldDomain gw;
+	Domain domain;
+	RewardFunction rf;
+	TerminalFunction tf;
+	DiscreteStateHashFactory hashingFactory;
+	State initialState;
+
+	@Before
+	public void setup() {
+		this.gw = new GridWorldDomain(11, 11);
+		this.gw.setMapToFourRooms();
+		this.domain = this.gw.generateDomain();
+		this.rf = new UniformCostRF();
+		this.tf = new SinglePFTF(this.domain.getPropFunction(GridWorldDomain.PFATLOCATION));
+		this.hashingFactory = new DiscreteStateHashFactory();
+		this.hashingFactory.setAttributesForClass(GridWorldDomain.CLASSAGENT,
+				this.domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.initialState = GridWorldDomain.getOneAgentOneLocationState(this.domain);
+		GridWorldDomain.setAgent(this.initialState, 0, 0);
+		GridWorldDomain.setLocation(this.initialState, 0, 10, 10);
+	}
+
+	@Test
+	public void testArrayQTable() {
+		for(int lambdaTrial = 0; lambdaTrial < 2; lambdaTrial++){
+			
+			//the same random seeds give the same episodes, so both storages must learn the same Q-values
+			QLearning [] learners = new QLearning[2];
+			for(int i = 0; i < 2; i++){
+				RandomFactory.seedMapped(0, 4783);
+				Domain seededDomain = this.gw.generateDomain();
+				TerminalFunction seededTF = new SinglePFTF(seededDomain.getPropFunction(GridWorldDomain.PFATLOCATION));
+				if(lambdaTrial == 0){
+					learners[i] = new QLearning(seededDomain, this.rf, seededTF, 0.99, this.hashingFactory, 0., 0.5);
+				}
+				else{
+					learners[i] = new SarsaLam(seededDomain, this.rf, seededTF, 0.99, this.hashingFactory, 0., 0.5, 0.9);
+				}
+				learners[i].toggleArrayQTable(i == 1);
+				for(int e = 0; e < 20; e++){
+					learners[i].runLearningEpisodeFrom(this.initialState);
+				}
+				Assert.assertTrue(learners[i].getLastLearningEpisode().numTimeSteps() > 0);
+			}
+			
+			for(State s : StateReachability.getReachableStates(this.initialState, (SADomain)this.domain, this.hashingFactory)){
+				List<QValue> qs = learners[0].getQs(s);
+				for(QValue q : qs){
+					Assert.assertEquals(q.q, learners[1].getQ(s, q.a).q, delta);
+				}
+				Assert.assertEquals(qs.size(), learners[1].getQs(s).size());
+			}
+		}
+	}
+	
+	@Test
+	public void testArrayQTableActionSelection() {
+		
+		//with the array table, selecting actions with the epsilon greedy and greedy policies must not create Q-value objects on any learning step
+		final int [] qValueQueries = new int[1];
+		for(int trial = 0; trial < 4; trial++){
+			qValueQueries[0] = 0;
+			QLearning learner;
+			if(trial % 2 == 0){
+				learner = new QLearning(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0., 0.5){
+					@Override
+					protected List<QValue> getQs(StateHashTuple s) {
+						qValueQueries[0]++;
+						return super.getQs(s);
+					}
+					@Override
+					protected QValue getQ(StateHashTuple s, GroundedAction a) {
+						qValueQueries[0]++;
+						return super.getQ(s, a);
+					}
+				};
+			}
+			else{
+				learner = new SarsaLam(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0., 0.5, 0.9){
+					@Override
+					protected List<QValue> getQs(StateHashTuple s) {
+						qValueQueries[0]++;
+						return super.getQs(s);
+					}
+					@Override
+					protected QValue getQ(StateHashTuple s, GroundedAction a) {
+						qValueQueries[0]++;
+						return super.getQ(s, a);
+					}
+				};
+			}
+			if(trial >= 2){
+				learner.setLearningPolicy(new GreedyQPolicy(learner));
+			}
+			learner.toggleArrayQTable(true);
+			
+			for(int e = 0; e < 10; e++){
+				learner.runLearningEpisodeFrom(this.initialState);
+			}
+			this.assertReachesGoal(learner.getLastLearningEpisode());
+			Assert.assertEquals(0, qValueQueries[0]);
+			
+			//the list storage queries its Q-value objects
+			learner.toggleArrayQTable(false);
+			learner.runLearningEpisodeFrom(this.initialState);
+			Assert.assertTrue(qValueQueries[0] > 0);
+		}
+	}
+
+	public void assertReachesGoal(EpisodeAnalysis analysis) {
+		Assert.assertTrue(this.tf.isTerminal(analysis.getState(analysis.numTimeSteps()-1)));
+	}
+}
@@ -0,0 +1,175 @@
+package burlap.testing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.auxiliary.StateReachability;
+import burlap.behavior.singleagent.learning.tdmethods.SarsaLam;
+import burlap.behavior.singleagent.learning.tdmethods.SparseEligibilityTraces;
+import burlap.behavior.singleagent.learning.tdmethods.SparseEligibilityTraces.TraceType;
+import burlap.behavior.singleagent.learning.tdmethods.vfa.GradientDescentSarsaLam;
+import burlap.behavior.singleagent.vfa.cmac.CMACFeatureDatabase;
+import burlap.behavior.statehashing.DiscreteStateHashFactory;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.AbstractGroundedAction;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
+import burlap.oomdp.singleagent.common.SinglePFTF;
+import burlap.oomdp.singleagent.common.UniformCostRF;
+
+public class TestEligibilityTraces {
+	public static final double delta = 0.000001;
+	GridWorldDomain gw;
+	Domain domain;
+	RewardFunction rf;
+	TerminalFunction tf;
+	DiscreteStateHashFactory hashingFactory;
+	State initialState;
+
+	@Before
+	public void setup() {
+		this.gw = new GridWorldDomain(11, 11);
+		this.gw.setMapToFourRooms();
+		this.domain = this.gw.generateDomain();
+		this.rf = new UniformCostRF();
+		this.tf = new SinglePFTF(this.domain.getPropFunction(GridWorldDomain.PFATLOCATION));
+		this.hashingFactory = new DiscreteStateHashFactory();
+		this.hashingFactory.setAttributesForClass(GridWorldDomain.CLASSAGENT,
+				this.domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.initialState = GridWorldDomain.getOneAgentOneLocationState(this.domain);
+		GridWorldDomain.setAgent(this.initialState, 0, 0);
+		GridWorldDomain.setLocation(this.initialState, 0, 10, 10);
+	}
+
+	@Test
+	public void testSparseEligibilityTraces() {
+		
+		//the sparse traces must agree with a map under random additions, removals, and decays
+		SparseEligibilityTraces<Integer> traces = new SparseEligibilityTraces<Integer>(0.05);
+		Map<Integer, Double> expected = new HashMap<Integer, Double>();
+		Random rand = new Random(8923);
+		for(int step = 0; step < 5000; step++){
+			int key = rand.nextInt(200) * 37;
+			int i = traces.indexOf(key);
+			Assert.assertEquals(expected.containsKey(key), i != -1);
+			if(rand.nextInt(4) == 0){
+				traces.remove(key);
+				expected.remove(key);
+			}
+			else if(i == -1){
+				traces.add(key, key, 1., 0.);
+				expected.put(key, 1.);
+			}
+			if(step % 50 == 0){
+				traces.decay(0.5);
+				for(Integer k : new ArrayList<Integer>(expected.keySet())){
+					if(expected.get(k) * 0.5 < 0.05){
+						expected.remove(k);
+					}
+					else{
+						expected.put(k, expected.get(k) * 0.5);
+					}
+				}
+			}
+		}
+		Assert.assertEquals(expected.size(), traces.size());
+		for(int i = 0; i < traces.size(); i++){
+			Assert.assertEquals(traces.getKey(i), traces.getItem(i).intValue());
+			Assert.assertEquals(expected.get(traces.getKey(i)), traces.getTrace(i), delta);
+		}
+		
+		//with each trace type, the sparse traces of the array Q-table must learn the same Q-values as the list of traces
+		for(TraceType traceType : TraceType.values()){
+			SarsaLam [] learners = new SarsaLam[2];
+			for(int i = 0; i < 2; i++){
+				RandomFactory.seedMapped(0, 4783);
+				Domain seededDomain = this.gw.generateDomain();
+				TerminalFunction seededTF = new SinglePFTF(seededDomain.getPropFunction(GridWorldDomain.PFATLOCATION));
+				learners[i] = new SarsaLam(seededDomain, this.rf, seededTF, 0.99, this.hashingFactory, 0., 0.5, 0.9);
+				learners[i].setTraceType(traceType);
+				learners[i].setMinimumTrace(0.01);
+				learners[i].toggleArrayQTable(i == 1);
+				for(int e = 0; e < 20; e++){
+					learners[i].runLearningEpisodeFrom(this.initialState);
+				}
+				this.assertReachesGoal(learners[i].getLastLearningEpisode());
+			}
+			
+			for(State s : StateReachability.getReachableStates(this.initialState, (SADomain)this.domain, this.hashingFactory)){
+				for(QValue q : learners[0].getQs(s)){
+					Assert.assertEquals(q.q, learners[1].getQ(s, q.a).q, delta);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testGradientDescentSarsaLamTraces() {
+		
+		//two tilings wider than the grid give every state the same two features for each action, so two steps north can be computed by hand
+		final GroundedAction north = new GroundedAction(this.domain.getAction(GridWorldDomain.ACTIONNORTH), "");
+		Policy alwaysNorth = new Policy() {
+			
+			@Override
+			public AbstractGroundedAction getAction(State s) {
+				return north;
+			}
+			
+			@Override
+			public List<ActionProb> getActionDistributionForState(State s) {
+				return this.getDeterministicPolicy(s);
+			}
+			
+			@Override
+			public boolean isStochastic() {
+				return false;
+			}
+			
+			@Override
+			public boolean isDefinedFor(State s) {
+				return true;
+			}
+		};
+		
+		//with alpha = 0.1, gamma = 0.9, lambda = 0.5, and weights starting at 0, the first step has delta = -1 and sets both weights to -0.1.
+		//the second step still uses the Q-value of the first step's successor that was predicted before that update, so delta = -1 + 0.9*(-0.2) - 0 = -1.18,
+		//and the weights become -0.1 + 0.1*(-1.18)*e, where the decayed trace 0.45 is visited to give
+		//e = 1 for replacing traces, e = 1.45 for accumulating traces, and e = 0.45 + (1 - 0.1*(0.45+0.45)) = 1.36 for dutch traces
+		TraceType [] traceTypes = new TraceType[]{TraceType.REPLACING, TraceType.ACCUMULATING, TraceType.DUTCH};
+		double [] expectedWeights = new double[]{-0.218, -0.2711, -0.26048};
+		for(int i = 0; i < traceTypes.length; i++){
+			CMACFeatureDatabase fd = new CMACFeatureDatabase(2, CMACFeatureDatabase.TilingArrangement.UNIFORM);
+			fd.addSpecificationForAllTilings(GridWorldDomain.CLASSAGENT, this.domain.getAttribute(GridWorldDomain.ATTX), 100.);
+			fd.addSpecificationForAllTilings(GridWorldDomain.CLASSAGENT, this.domain.getAttribute(GridWorldDomain.ATTY), 100.);
+			GradientDescentSarsaLam learner = new GradientDescentSarsaLam(this.domain, this.rf, this.tf, 0.9, fd.generateVFA(0.), 0.1, alwaysNorth, Integer.MAX_VALUE, 0.5);
+			learner.setTraceType(traceTypes[i]);
+			learner.runLearningEpisodeFrom(this.initialState, 2);
+			
+			Assert.assertEquals(2*expectedWeights[i], learner.getQ(this.initialState, north).q, delta);
+			for(QValue q : learner.getQs(this.initialState)){
+				if(!q.a.equals(north)){
+					Assert.assertEquals(0., q.q, delta);
+				}
+			}
+		}
+	}
+
+	public void assertReachesGoal(EpisodeAnalysis analysis) {
+		Assert.assertTrue(this.tf.isTerminal(analysis.getState(analysis.numTimeSteps()-1)));
+	}
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.FlatState;
 import burlap.oomdp.core.GroundedProp;
 import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
@@ -36,6 +37,34 @@ public class TestGridWorld {
 		GridWorldDomain.setAgent(s, 0, 0);
 		GridWorldDomain.setLocation(s, 0, 10, 10);
 		
+		this.walkFourRooms(s);
+		
+	}
+	
+	@Test
+	public void testFlatGridWorld() {
+		//setup initial state
+		State s = GridWorldDomain.getOneAgentOneLocationState(domain);
+		GridWorldDomain.setAgent(s, 0, 0);
+		GridWorldDomain.setLocation(s, 0, 10, 10);
+		
+		State fs = new FlatState(domain, s);
+		Assert.assertEquals(s, fs);
+		Assert.assertEquals(fs, s);
+		
+		this.walkFourRooms(fs);
+		
+		//the source state should be unaffected by actions applied to the flat state
+		Assert.assertEquals(0, s.getFirstObjectOfClass(GridWorldDomain.CLASSAGENT).getDiscValForAttribute(GridWorldDomain.ATTX));
+		
+		State fsCopy = fs.copy();
+		GridWorldDomain.setAgent(fsCopy, 5, 5);
+		Assert.assertFalse(fs.equals(fsCopy));
+		Assert.assertEquals(0, fs.getFirstObjectOfClass(GridWorldDomain.CLASSAGENT).getDiscValForAttribute(GridWorldDomain.ATTX));
+		
+	}
+	
+	public void walkFourRooms(State s) {
 		
 		Action northAction = domain.getAction(GridWorldDomain.ACTIONNORTH);
 		Action eastAction = domain.getAction(GridWorldDomain.ACTIONEAST);
@@ -1,5 +1,11 @@
 package burlap.testing;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -7,14 +13,38 @@ import org.junit.Test;
 
 import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.options.MacroAction;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.options.OptionModelCompiler;
+import burlap.behavior.singleagent.options.PolicyDefinedSubgoalOption;
+import burlap.behavior.singleagent.planning.MappedTransitionModel;
+import burlap.behavior.singleagent.planning.PlanningDeadline;
 import burlap.behavior.singleagent.planning.StateConditionTest;
 import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
 import burlap.behavior.singleagent.planning.deterministic.SDPlannerPolicy;
 import burlap.behavior.singleagent.planning.deterministic.TFGoalCondition;
 import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
+import burlap.behavior.singleagent.planning.deterministic.informed.BestFirst;
+import burlap.behavior.singleagent.planning.deterministic.informed.NullHeuristic;
 import burlap.behavior.singleagent.planning.deterministic.informed.astar.AStar;
+import burlap.behavior.singleagent.planning.deterministic.informed.astar.DynamicWeightedAStar;
+import burlap.behavior.singleagent.planning.deterministic.informed.astar.HDAStar;
+import burlap.behavior.singleagent.planning.deterministic.informed.astar.LPAStar;
 import burlap.behavior.singleagent.planning.deterministic.uninformed.bfs.BFS;
+import burlap.behavior.singleagent.planning.deterministic.uninformed.bfs.BidirectionalBFS;
+import burlap.behavior.singleagent.planning.deterministic.uninformed.bfs.FrontierBFS;
 import burlap.behavior.singleagent.planning.deterministic.uninformed.dfs.DFS;
+import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCT;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTActionNode;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTStateNode;
+import burlap.behavior.singleagent.planning.stochastic.policyiteration.PolicyIteration;
+import burlap.behavior.singleagent.planning.stochastic.rtdp.RTDP;
+import burlap.behavior.singleagent.planning.stochastic.sparsesampling.SparseSampling;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.PrioritizedSweeping;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.TopologicalValueIteration;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
 import burlap.behavior.statehashing.DiscreteStateHashFactory;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.domain.singleagent.gridworld.GridWorldStateParser;
@@ -22,7 +52,10 @@ import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.ObjectInstance;
 import burlap.oomdp.core.State;
 import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.core.TransitionProbability;
+import burlap.oomdp.singleagent.GroundedAction;
 import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
 import burlap.oomdp.singleagent.common.SinglePFTF;
 import burlap.oomdp.singleagent.common.UniformCostRF;
 
@@ -35,6 +68,7 @@ public class TestPlanning {
 	TerminalFunction tf;
 	StateConditionTest goalCondition;
 	DiscreteStateHashFactory hashingFactory;
+	State initialState;
 	@Before
 	public void setup() {
 		this.gw = new GridWorldDomain(11, 11);
@@ -46,14 +80,13 @@ public class TestPlanning {
 		this.hashingFactory = new DiscreteStateHashFactory();
 		this.hashingFactory.setAttributesForClass(GridWorldDomain.CLASSAGENT,
 				this.domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.initialState = GridWorldDomain.getOneAgentOneLocationState(this.domain);
+		GridWorldDomain.setAgent(this.initialState, 0, 0);
+		GridWorldDomain.setLocation(this.initialState, 0, 10, 10);
 	}
 	
 	@Test
 	public void testBFS() {
-		State initialState = GridWorldDomain.getOneAgentOneLocationState(domain);
-		GridWorldDomain.setAgent(initialState, 0, 0);
-		GridWorldDomain.setLocation(initialState, 0, 10, 10);
-		
 		DeterministicPlanner planner = new BFS(this.domain, this.goalCondition, this.hashingFactory);
 		planner.planFromState(initialState);
 		Policy p = new SDPlannerPolicy(planner);
@@ -62,11 +95,178 @@ public class TestPlanning {
 	}
 	
 	@Test
-	public void testDFS() {
-		State initialState = GridWorldDomain.getOneAgentOneLocationState(domain);
-		GridWorldDomain.setAgent(initialState, 0, 0);
-		GridWorldDomain.setLocation(initialState, 0, 10, 10);
+	public void testFrontierBFS() {
+		DeterministicPlanner planner = new FrontierBFS(this.domain, this.goalCondition, this.hashingFactory);
+		planner.planFromState(initialState);
+		Policy p = new SDPlannerPolicy(planner);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testBidirectionalBFS() {
+		State goalState = initialState.copy();
+		GridWorldDomain.setAgent(goalState, 10, 10);
+		
+		DeterministicPlanner planner = new BidirectionalBFS(this.domain, goalState, this.hashingFactory);
+		planner.planFromState(initialState);
+		Policy p = new SDPlannerPolicy(planner);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testIndexedValueIteration() {
+		ValueIteration hashed = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		hashed.planFromState(initialState);
+		
+		ValueIteration indexed = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		indexed.toggleIndexedBackups(true);
+		indexed.planFromState(initialState);
+		
+		ValueIteration jacobi = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		jacobi.setParallelVI(2, ValueIteration.ParallelUpdateMode.JACOBI);
+		jacobi.setNumReachabilityThreads(2);
+		jacobi.planFromState(initialState);
+		
+		ValueIteration chunked = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		chunked.setParallelVI(2, ValueIteration.ParallelUpdateMode.CHUNKED_GAUSS_SEIDEL);
+		chunked.planFromState(initialState);
+		
+		Assert.assertEquals(hashed.getAllStates().size(), indexed.getAllStates().size());
+		Assert.assertEquals(hashed.getAllStates().size(), jacobi.getAllStates().size());
+		for(State s : hashed.getAllStates()){
+			Assert.assertEquals(hashed.value(s), indexed.value(s), 0.001);
+			Assert.assertEquals(hashed.value(s), jacobi.value(s), 0.001);
+			Assert.assertEquals(hashed.value(s), chunked.value(s), 0.001);
+		}
+		
+		Policy p = new GreedyQPolicy(indexed);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testParallelRTDP() {
+		ValueIteration vi = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		vi.planFromState(initialState);
+		
+		RTDP rtdp = new RTDP(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0., 1000, 0.0001, 200);
+		rtdp.setNumRolloutThreads(2);
+		rtdp.planFromState(initialState);
+		
+		Assert.assertEquals(vi.value(initialState), rtdp.value(initialState), 0.001);
+		
+		Policy p = new GreedyQPolicy(rtdp);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testTopologicalValueIteration() {
+		ValueIteration vi = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		vi.planFromState(initialState);
+		
+		TopologicalValueIteration tvi = new TopologicalValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		tvi.setParallelVI(2, ValueIteration.ParallelUpdateMode.JACOBI); //ignored; components are swept serially
+		tvi.planFromState(initialState);
 		
+		Assert.assertEquals(vi.getAllStates().size(), tvi.getAllStates().size());
+		for(State s : vi.getAllStates()){
+			Assert.assertEquals(vi.value(s), tvi.value(s), 0.001);
+		}
+		
+		Policy p = new GreedyQPolicy(tvi);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testPrioritizedSweepingQueues() {
+		ValueIteration vi = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		vi.planFromState(initialState);
+		
+		for(PrioritizedSweeping.PriorityQueueType type : PrioritizedSweeping.PriorityQueueType.values()){
+			PrioritizedSweeping ps = new PrioritizedSweeping(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, -1);
+			ps.setPriorityQueueType(type);
+			ps.planFromState(initialState);
+			
+			Assert.assertEquals(vi.getAllStates().size(), ps.getAllStates().size());
+			for(State s : vi.getAllStates()){
+				Assert.assertEquals(vi.value(s), ps.value(s), 0.01);
+			}
+		}
+	}
+	
+	@Test
+	public void testBiCGSTABPolicyIteration() {
+		ValueIteration vi = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		vi.planFromState(initialState);
+		
+		PolicyIteration pi = new PolicyIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000, 100);
+		pi.setPolicyEvaluationMethod(PolicyIteration.PolicyEvaluationMethod.BICGSTAB);
+		pi.planFromState(initialState);
+		
+		Assert.assertEquals(vi.getAllStates().size(), pi.getAllStates().size());
+		for(State s : vi.getAllStates()){
+			Assert.assertEquals(vi.value(s), pi.value(s), 0.01);
+		}
+		
+		Policy p = new GreedyQPolicy(pi);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testMappedValueIteration() throws IOException {
+		File file = File.createTempFile("burlap-vi", ".model");
+		file.deleteOnExit();
+		
+		ValueIteration indexed = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		indexed.toggleIndexedBackups(true);
+		indexed.planFromState(initialState);
+		
+		ValueIteration mapped = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		mapped.toggleIndexedBackups(true);
+		mapped.toggleReleaseCompiledTransitionDynamics(true);
+		mapped.setMappedTransitionModelFile(file);
+		
+		//the reachability analysis writes each state's transitions to the mapped model as it expands the state
+		mapped.performReachabilityFrom(initialState);
+		Assert.assertTrue(mapped.getIndexedModel() instanceof MappedTransitionModel);
+		Assert.assertEquals(indexed.getAllStates().size(), mapped.getIndexedModel().numExpandedStates());
+		mapped.planFromState(initialState);
+		
+		MappedTransitionModel reopened = MappedTransitionModel.open(file, this.domain.getActions(), false);
+		Assert.assertEquals(indexed.getAllStates().size(), reopened.numStates());
+		for(State s : indexed.getAllStates()){
+			Assert.assertEquals(indexed.value(s), mapped.value(s), delta);
+			Assert.assertEquals(indexed.value(s), reopened.getValue(s, Double.NaN), delta);
+		}
+		
+		//the released hashed transitions are regenerated to compute Q-values
+		List<QValue> indexedQs = indexed.getQs(initialState);
+		List<QValue> mappedQs = mapped.getQs(initialState);
+		Assert.assertEquals(indexedQs.size(), mappedQs.size());
+		for(QValue q : indexedQs){
+			Assert.assertEquals(q.q, mapped.getQ(initialState, q.a).q, delta);
+		}
+		
+		File piFile = File.createTempFile("burlap-pi", ".model");
+		piFile.deleteOnExit();
+		PolicyIteration mappedPI = new PolicyIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000, 100);
+		mappedPI.toggleIndexedBackups(true);
+		mappedPI.toggleReleaseCompiledTransitionDynamics(true);
+		mappedPI.setMappedTransitionModelFile(piFile);
+		mappedPI.planFromState(initialState);
+		Assert.assertTrue(mappedPI.getIndexedModel() instanceof MappedTransitionModel);
+		for(State s : indexed.getAllStates()){
+			Assert.assertEquals(indexed.value(s), mappedPI.value(s), 0.01);
+		}
+	}
+	
+	@Test
+	public void testDFS() {
 		DeterministicPlanner planner = new DFS(this.domain, this.goalCondition, this.hashingFactory, -1 , true);
 		planner.planFromState(initialState);
 		Policy p = new SDPlannerPolicy(planner);
@@ -76,10 +276,6 @@ public class TestPlanning {
 	
 	@Test
 	public void testAStar() {
-		State initialState = GridWorldDomain.getOneAgentOneLocationState(domain);
-		GridWorldDomain.setAgent(initialState, 0, 0);
-		GridWorldDomain.setLocation(initialState, 0, 10, 10);
-		
 		Heuristic mdistHeuristic = new Heuristic() {
 			
 			@Override
@@ -117,6 +313,250 @@ public class TestPlanning {
 		this.evaluateEpisode(analysis, true);
 	}
 	
+	@Test
+	public void testAStarIntKeyedOpenQueues() {
+		//uniform costs and a null heuristic keep the f-scores integers, as the bucket queue requires
+		BestFirst.OpenQueueType [] types = new BestFirst.OpenQueueType[]{BestFirst.OpenQueueType.DARYHEAP, BestFirst.OpenQueueType.BUCKETQUEUE};
+		for(BestFirst.OpenQueueType type : types){
+			AStar planner = new AStar(domain, rf, goalCondition, hashingFactory, new NullHeuristic());
+			planner.setOpenQueueType(type);
+			planner.planFromState(initialState);
+			Policy p = new SDPlannerPolicy(planner);
+			
+			EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+			this.evaluateEpisode(analysis, true);
+			
+			//with a null heuristic the dynamic weight has no effect, so the plan is still optimal
+			DynamicWeightedAStar dwaPlanner = new DynamicWeightedAStar(domain, rf, goalCondition, hashingFactory, new NullHeuristic(), 2., 20);
+			dwaPlanner.setOpenQueueType(type);
+			dwaPlanner.planFromState(initialState);
+			p = new SDPlannerPolicy(dwaPlanner);
+			analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+			this.evaluateEpisode(analysis, true);
+		}
+	}
+	
+	@Test
+	public void testHDAStar() {
+		DeterministicPlanner planner = new HDAStar(domain, rf, goalCondition, hashingFactory, new NullHeuristic(), 3);
+		planner.planFromState(initialState);
+		Policy p = new SDPlannerPolicy(planner);
+		
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis, true);
+	}
+	
+	@Test
+	public void testLPAStar() {
+		LPAStar planner = new LPAStar(domain, rf, goalCondition, hashingFactory, new NullHeuristic());
+		planner.planFromState(initialState);
+		Policy p = new SDPlannerPolicy(planner);
+		this.evaluateEpisode(p.evaluateBehavior(initialState, this.rf, this.tf), true);
+		
+		//block a doorway and report the states whose transitions changed
+		this.gw.setObstacleInCell(8, 4);
+		int [][] changed = new int[][]{{8, 4}, {7, 4}, {9, 4}, {8, 3}, {8, 5}};
+		for(int [] c : changed){
+			State cs = initialState.copy();
+			GridWorldDomain.setAgent(cs, c[0], c[1]);
+			planner.reportStateChanged(cs);
+		}
+		planner.planFromState(initialState);
+		EpisodeAnalysis analysis = p.evaluateBehavior(initialState, this.rf, this.tf);
+		this.evaluateEpisode(analysis);
+		
+		DeterministicPlanner bfs = new BFS(this.domain, this.goalCondition, this.hashingFactory);
+		bfs.planFromState(initialState);
+		EpisodeAnalysis bfsAnalysis = new SDPlannerPolicy(bfs).evaluateBehavior(initialState, this.rf, this.tf);
+		Assert.assertEquals(bfsAnalysis.numTimeSteps(), analysis.numTimeSteps());
+	}
+	
+	@Test
+	public void testUCTTreeReuse() {
+		UCT uct = new UCT(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 20, 100, 2);
+		uct.toggleTreeReuse(true);
+		uct.setTranspositionTableSize(1000);
+		uct.planFromState(initialState);
+		
+		//the most visited successor of the root that moved the agent should become the next root with its statistics intact
+		UCTStateNode next = null;
+		for(UCTActionNode an : uct.getRoot().actionNodes){
+			for(UCTStateNode sn : an.getAllSuccessors()){
+				if(!sn.state.equals(uct.getRoot().state) && (next == null || sn.n > next.n)){
+					next = sn;
+				}
+			}
+		}
+		Assert.assertNotNull(next);
+		int previousVisits = next.n;
+		
+		uct.planFromState(next.state.s);
+		Assert.assertSame(next, uct.getRoot());
+		Assert.assertEquals(0, uct.getRoot().depth);
+		Assert.assertTrue(uct.getRoot().n > previousVisits);
+		
+		//planning from the original state again must not fail, whether or not its node was kept
+		uct.planFromState(initialState);
+		Assert.assertEquals(this.hashingFactory.hashState(initialState), uct.getRoot().state);
+	}
+	
+	@Test
+	public void testParallelUCT() {
+		for(UCT.ParallelMode mode : new UCT.ParallelMode[]{UCT.ParallelMode.ROOT, UCT.ParallelMode.TREE}){
+			UCT uct = new UCT(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 20, 500, 2);
+			uct.setParallelMode(mode, 3);
+			uct.planFromState(initialState);
+			
+			//every rollout is backed up through the root exactly once and no virtual losses remain
+			UCTStateNode root = uct.getRoot();
+			Assert.assertEquals(500, root.n);
+			Assert.assertEquals(0, root.pendingRollouts);
+			int actionVisits = 0;
+			for(UCTActionNode an : root.actionNodes){
+				Assert.assertEquals(0, an.pendingRollouts);
+				actionVisits += an.n;
+			}
+			Assert.assertEquals(root.n, actionVisits);
+		}
+	}
+	
+	@Test
+	public void testAnytimePlanning() {
+		//UCT with no rollout limit stops when the deadline is cancelled, after at least one rollout
+		FutureTask<Object> signal = new FutureTask<Object>(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, null);
+		signal.cancel(false);
+		UCT uct = new UCT(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 20, -1, 2);
+		uct.planFromState(initialState, new PlanningDeadline(signal));
+		Assert.assertEquals(1, uct.getRoot().n);
+		
+		//sparse sampling that is out of time still has the leaf Q-values, and keeps deepening when given enough time
+		SparseSampling ss = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 3, -1);
+		ss.planFromState(initialState, new PlanningDeadline(0));
+		Assert.assertEquals(0., ss.getQs(initialState).get(0).q, TestPlanning.delta);
+		ss.planFromState(initialState, new PlanningDeadline(60000));
+		SparseSampling full = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 3, -1);
+		for(QValue q : full.getQs(initialState)){
+			Assert.assertEquals(q.q, ss.getQ(initialState, q.a).q, TestPlanning.delta);
+		}
+		
+		//RTDP stops without performing any rollouts when the deadline has already expired
+		RTDP rtdp = new RTDP(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0., 1000, 0.0001, 200);
+		rtdp.planFromState(initialState, new PlanningDeadline(0));
+		Assert.assertEquals(0, rtdp.getNumberOfBellmanUpdates());
+		rtdp.planFromState(initialState, new PlanningDeadline(60000));
+		Policy p = new GreedyQPolicy(rtdp);
+		this.evaluateEpisode(p.evaluateBehavior(initialState, this.rf, this.tf), true);
+	}
+	
+	@Test
+	public void testParallelSparseSampling() {
+		SparseSampling serial = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 6, -1);
+		serial.planFromState(initialState);
+		
+		SparseSampling parallel = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 6, -1);
+		parallel.setNumThreads(3);
+		parallel.planFromState(initialState);
+		
+		//the exact values are the same and nodes shared by several subtrees are only estimated once
+		Assert.assertEquals(serial.getNumberOfValueEsitmates(), parallel.getNumberOfValueEsitmates());
+		for(QValue q : serial.getQs(initialState)){
+			Assert.assertEquals(q.q, parallel.getQ(initialState, q.a).q, TestPlanning.delta);
+		}
+	}
+
+	@Test
+	public void testSparseSamplingNodeCache() {
+
+		SparseSampling unbounded = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 6, -1);
+		unbounded.planFromState(initialState);
+
+		SparseSampling bounded = new SparseSampling(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 6, -1);
+		bounded.setMaxCachedNodes(20);
+		bounded.setMaxCachedRootStates(1);
+		bounded.planFromState(initialState);
+
+		//evictions only cause recomputation, so the exact values are the same
+		Assert.assertTrue(bounded.getNodeCacheEvictions() > 0);
+		Assert.assertTrue(bounded.getNumberOfStateNodesCreated() <= 21);
+		Assert.assertTrue(bounded.getNodeCacheHits() > 0);
+		Assert.assertTrue(bounded.getNodeCacheHitRate() > 0. && bounded.getNodeCacheHitRate() < 1.);
+		for(QValue q : unbounded.getQs(initialState)){
+			Assert.assertEquals(q.q, bounded.getQ(initialState, q.a).q, TestPlanning.delta);
+		}
+
+		//planning for another root evicts the Q-values of the first, which are then planned for again
+		State nextState = GridWorldDomain.getOneAgentOneLocationState(domain);
+		GridWorldDomain.setAgent(nextState, 1, 0);
+		GridWorldDomain.setLocation(nextState, 0, 10, 10);
+		bounded.planFromState(nextState);
+		Assert.assertTrue(bounded.getNumberOfStateNodesCreated() <= 21);
+		int numEstimates = bounded.getNumberOfValueEsitmates();
+		bounded.getQs(initialState);
+		Assert.assertTrue(bounded.getNumberOfValueEsitmates() > numEstimates);
+	}
+
+	@Test
+	public void testOptionModelCompiler() {
+		ValueIteration subgoalPlanner = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		subgoalPlanner.planFromState(initialState);
+		Policy subgoalPolicy = new GreedyQPolicy(subgoalPlanner);
+		List<GroundedAction> northEast = new ArrayList<GroundedAction>();
+		northEast.add(new GroundedAction(this.domain.getAction(GridWorldDomain.ACTIONNORTH), ""));
+		northEast.add(new GroundedAction(this.domain.getAction(GridWorldDomain.ACTIONEAST), ""));
+		
+		List<Option> compiled = new ArrayList<Option>();
+		compiled.add(new PolicyDefinedSubgoalOption("toGoal", subgoalPolicy, this.goalCondition));
+		compiled.add(new MacroAction("northEast", northEast));
+		OptionModelCompiler compiler = new OptionModelCompiler(compiled, this.rf, 0.99, this.hashingFactory);
+		compiler.setNumThreads(2);
+		compiler.compileReachable(initialState, (SADomain)this.domain, this.tf);
+		
+		List<Option> lazy = new ArrayList<Option>();
+		lazy.add(new PolicyDefinedSubgoalOption("toGoal", subgoalPolicy, this.goalCondition));
+		lazy.add(new MacroAction("northEast", northEast));
+		
+		ValueIteration compiledPlanner = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		ValueIteration lazyPlanner = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		for(int i = 0; i < compiled.size(); i++){
+			compiledPlanner.addNonDomainReferencedAction(compiled.get(i));
+			lazyPlanner.addNonDomainReferencedAction(lazy.get(i));
+			lazy.get(i).setExpectationHashingFactory(this.hashingFactory);
+		}
+		
+		//the compiled models are the ones that would be computed on demand
+		for(State s : subgoalPlanner.getAllStates()){
+			if(this.tf.isTerminal(s)){
+				continue;
+			}
+			for(int i = 0; i < compiled.size(); i++){
+				Assert.assertTrue(compiled.get(i).getCompiledModel().getInitiationStateId(s) != -1);
+				Assert.assertEquals(lazy.get(i).getExpectedRewards(s, new String[0]), compiled.get(i).getExpectedRewards(s, new String[0]), TestPlanning.delta);
+				List<TransitionProbability> lazyTransitions = lazy.get(i).getTransitions(s, new String[0]);
+				List<TransitionProbability> compiledTransitions = compiled.get(i).getTransitions(s, new String[0]);
+				Assert.assertEquals(lazyTransitions.size(), compiledTransitions.size());
+				for(TransitionProbability tp : lazyTransitions){
+					double p = 0.;
+					for(TransitionProbability ctp : compiledTransitions){
+						if(this.hashingFactory.hashState(ctp.s).equals(this.hashingFactory.hashState(tp.s))){
+							p = ctp.p;
+						}
+					}
+					Assert.assertEquals(tp.p, p, TestPlanning.delta);
+				}
+			}
+		}
+		
+		compiledPlanner.planFromState(initialState);
+		lazyPlanner.planFromState(initialState);
+		for(State s : lazyPlanner.getAllStates()){
+			Assert.assertEquals(lazyPlanner.value(s), compiledPlanner.value(s), TestPlanning.delta);
+		}
+	}
+	
 	public void evaluateEpisode(EpisodeAnalysis analysis) {
 		this.evaluateEpisode(analysis, false);
 	}
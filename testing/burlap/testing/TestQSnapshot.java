@@ -0,0 +1,179 @@
+package burlap.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.auxiliary.QSnapshot;
+import burlap.behavior.singleagent.auxiliary.QSnapshotWriter;
+import burlap.behavior.singleagent.auxiliary.StateReachability;
+import burlap.behavior.singleagent.learning.tdmethods.QLearning;
+import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.statehashing.DiscreteStateHashFactory;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
+import burlap.oomdp.singleagent.common.SinglePFTF;
+import burlap.oomdp.singleagent.common.UniformCostRF;
+
+public class TestQSnapshot {
+	public static final double delta = 0.000001;
+	GridWorldDomain gw;
+	Domain domain;
+	RewardFunction rf;
+	TerminalFunction tf;
+	DiscreteStateHashFactory hashingFactory;
+	State initialState;
+	File dir;
+
+	@Before
+	public void setup() throws IOException {
+		this.gw = new GridWorldDomain(11, 11);
+		this.gw.setMapToFourRooms();
+		this.domain = this.gw.generateDomain();
+		this.rf = new UniformCostRF();
+		this.tf = new SinglePFTF(this.domain.getPropFunction(GridWorldDomain.PFATLOCATION));
+		this.hashingFactory = new DiscreteStateHashFactory();
+		this.hashingFactory.setAttributesForClass(GridWorldDomain.CLASSAGENT,
+				this.domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.initialState = GridWorldDomain.getOneAgentOneLocationState(this.domain);
+		GridWorldDomain.setAgent(this.initialState, 0, 0);
+		GridWorldDomain.setLocation(this.initialState, 0, 10, 10);
+
+		//snapshots are written to a temporary file next to the snapshot, so each test gets its own directory
+		this.dir = File.createTempFile("burlap-snapshots", "");
+		this.dir.delete();
+		this.dir.mkdir();
+	}
+
+	@After
+	public void teardown() {
+		for(File f : this.dir.listFiles()){
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	@Test
+	public void testValueIterationSnapshot() {
+		File file = new File(this.dir, "vi.snapshot");
+
+		ValueIteration planner = new ValueIteration(this.domain, this.rf, this.tf, 0.99, this.hashingFactory, 0.0001, 1000);
+		planner.planFromState(this.initialState);
+		QSnapshotWriter writer = new QSnapshotWriter(file);
+		planner.writeSnapshot(writer);
+		writer.close();
+
+		QSnapshot snapshot = new QSnapshot(file, this.domain.getActions());
+		Assert.assertEquals(planner.getAllStates().size(), snapshot.numStates());
+		for(State s : planner.getAllStates()){
+			Assert.assertEquals(planner.value(s), snapshot.value(s), delta);
+		}
+
+		Policy p = new GreedyQPolicy(snapshot);
+		EpisodeAnalysis analysis = p.evaluateBehavior(this.initialState, this.rf, this.tf);
+		Assert.assertEquals(21, analysis.numTimeSteps());
+	}
+
+	@Test
+	public void testQLearningSnapshot() {
+		for(int i = 0; i < 2; i++){
+			RandomFactory.seedMapped(0, 4783);
+			Domain seededDomain = this.gw.generateDomain();
+			TerminalFunction seededTF = new SinglePFTF(seededDomain.getPropFunction(GridWorldDomain.PFATLOCATION));
+			QLearning learner = new QLearning(seededDomain, this.rf, seededTF, 0.99, this.hashingFactory, 0., 0.5);
+			learner.toggleArrayQTable(i == 1);
+			for(int e = 0; e < 20; e++){
+				learner.runLearningEpisodeFrom(this.initialState);
+			}
+
+			File file = new File(this.dir, "ql" + i + ".snapshot");
+			QSnapshotWriter writer = new QSnapshotWriter(file);
+			learner.writeSnapshot(writer);
+			writer.close();
+
+			QSnapshot snapshot = new QSnapshot(file, seededDomain.getActions());
+			Assert.assertTrue(snapshot.numStates() > 0);
+			int numStored = 0;
+			for(State s : StateReachability.getReachableStates(this.initialState, (SADomain)seededDomain, this.hashingFactory)){
+				if(!snapshot.contains(s)){
+					continue;
+				}
+				numStored++;
+				List<QValue> qs = snapshot.getQs(s);
+				Assert.assertEquals(learner.getQs(s).size(), qs.size());
+				double maxQ = Double.NEGATIVE_INFINITY;
+				for(QValue q : qs){
+					Assert.assertEquals(learner.getQ(s, q.a).q, q.q, delta);
+					maxQ = Math.max(maxQ, q.q);
+				}
+				Assert.assertEquals(maxQ, snapshot.value(s), delta);
+			}
+			Assert.assertEquals(snapshot.numStates(), numStored);
+		}
+	}
+
+	@Test
+	public void testAppendReplacesRecords() {
+		File file = new File(this.dir, "append.snapshot");
+		State s1 = this.initialState;
+		State s2 = this.initialState.copy();
+		GridWorldDomain.setAgent(s2, 1, 0);
+
+		QSnapshotWriter writer = new QSnapshotWriter(file);
+		writer.add(s1, 2., this.qs(s1, new String[]{GridWorldDomain.ACTIONNORTH, GridWorldDomain.ACTIONSOUTH}, new double[]{1., 2.}));
+		writer.add(s2, 3., this.qs(s2, new String[]{GridWorldDomain.ACTIONEAST}, new double[]{3.}));
+		writer.close();
+		QSnapshot previous = new QSnapshot(file, this.domain.getActions());
+
+		writer = new QSnapshotWriter(file, true);
+		writer.add(s1, 7., this.qs(s1, new String[]{GridWorldDomain.ACTIONWEST, GridWorldDomain.ACTIONEAST}, new double[]{7., 4.}));
+		writer.close();
+
+		//the later record of a state replaces the earlier one
+		QSnapshot snapshot = new QSnapshot(file, this.domain.getActions());
+		Assert.assertEquals(2, snapshot.numStates());
+		Assert.assertEquals(7., snapshot.value(s1), 0.);
+		List<QValue> qs = snapshot.getQs(s1);
+		Assert.assertEquals(2, qs.size());
+		Assert.assertEquals(GridWorldDomain.ACTIONWEST, ((GroundedAction)qs.get(0).a).actionName());
+		Assert.assertEquals(7., qs.get(0).q, 0.);
+		Assert.assertEquals(GridWorldDomain.ACTIONEAST, ((GroundedAction)qs.get(1).a).actionName());
+		Assert.assertEquals(4., qs.get(1).q, 0.);
+
+		//the actions of the existing records are kept in the action table
+		Assert.assertEquals(3., snapshot.value(s2), 0.);
+		qs = snapshot.getQs(s2);
+		Assert.assertEquals(1, qs.size());
+		Assert.assertEquals(GridWorldDomain.ACTIONEAST, ((GroundedAction)qs.get(0).a).actionName());
+		Assert.assertEquals(3., qs.get(0).q, 0.);
+
+		//the file mapped before appending is replaced rather than modified, so it still reads the earlier records
+		Assert.assertEquals(2., previous.value(s1), 0.);
+		Assert.assertEquals(2, previous.getQs(s1).size());
+		Assert.assertEquals(1, this.dir.listFiles().length);
+	}
+
+	protected List<QValue> qs(State s, String [] actionNames, double [] qs){
+		List<QValue> result = new ArrayList<QValue>(actionNames.length);
+		for(int i = 0; i < actionNames.length; i++){
+			result.add(new QValue(s, new GroundedAction(this.domain.getAction(actionNames[i]), new String[]{}), qs[i]));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,323 @@
+package burlap.testing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import burlap.oomdp.core.Attribute;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.FlatState;
+import burlap.oomdp.core.ObjectClass;
+import burlap.oomdp.core.ObjectInstance;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.SADomain;
+
+public class TestState {
+	Domain domain;
+	ObjectClass blockClass;
+
+	@Before
+	public void setup() {
+		this.domain = new SADomain();
+		Attribute x = new Attribute(this.domain, "x", Attribute.AttributeType.REAL);
+		x.setLims(0., 10.);
+		Attribute on = new Attribute(this.domain, "on", Attribute.AttributeType.RELATIONAL);
+		Attribute n = new Attribute(this.domain, "n", Attribute.AttributeType.INT);
+		n.setLims(0, 10);
+		this.blockClass = new ObjectClass(this.domain, "block");
+		this.blockClass.addAttribute(x);
+		this.blockClass.addAttribute(on);
+		this.blockClass.addAttribute(n);
+	}
+
+	@Test
+	public void testCopyOnWriteValues() {
+		State s = this.blocksState("b", 1.5, 2.5);
+		State c1 = s.copy();
+		State c2 = s.copy();
+
+		//writing to a copy must not change the original or its siblings
+		c1.getObject("b0").setValue("x", 7.);
+		Assert.assertEquals(1.5, s.getObject("b0").getRealValForAttribute("x"), 0.);
+		Assert.assertEquals(1.5, c2.getObject("b0").getRealValForAttribute("x"), 0.);
+		Assert.assertEquals(7., c1.getObject("b0").getRealValForAttribute("x"), 0.);
+
+		//unwritten values stay shared
+		Assert.assertTrue(s.getObject("b1").sharesValuesWith(c1.getObject("b1")));
+		Assert.assertTrue(s.getObject("b0").sharesValuesWith(c2.getObject("b0")));
+		Assert.assertFalse(s.getObject("b0").sharesValuesWith(c1.getObject("b0")));
+
+		//writing to the original must not change its copies
+		s.getObject("b1").setValue("x", 9.);
+		Assert.assertEquals(2.5, c1.getObject("b1").getRealValForAttribute("x"), 0.);
+		Assert.assertEquals(2.5, c2.getObject("b1").getRealValForAttribute("x"), 0.);
+
+		//the same holds for flat states
+		State fs = new FlatState(this.domain, this.blocksState("b", 1.5, 2.5));
+		State fc1 = fs.copy();
+		State fc2 = fs.copy();
+		Assert.assertTrue(fs.getObject("b0").sharesValuesWith(fc1.getObject("b0")));
+		fc1.getObject("b0").setValue("x", 7.);
+		Assert.assertFalse(fs.getObject("b0").sharesValuesWith(fc1.getObject("b0")));
+		Assert.assertTrue(fs.getObject("b1").sharesValuesWith(fc2.getObject("b1")));
+		Assert.assertEquals(1.5, fs.getObject("b0").getRealValForAttribute("x"), 0.);
+		Assert.assertEquals(1.5, fc2.getObject("b0").getRealValForAttribute("x"), 0.);
+		fs.getObject("b1").setValue("x", 9.);
+		Assert.assertEquals(2.5, fc1.getObject("b1").getRealValForAttribute("x"), 0.);
+		Assert.assertEquals(2.5, fc2.getObject("b1").getRealValForAttribute("x"), 0.);
+	}
+
+	@Test
+	public void testFlatObjectUnsupportedSetValue() {
+		FlatState fs = new FlatState(this.domain, this.blocksState("b", 1.5, 2.5));
+		ObjectInstance b0 = fs.getObject("b0");
+
+		//unsupported value types must fail rather than silently drop the write, and leave the stored value unchanged
+		try{
+			b0.setValue("on", 3.);
+			Assert.fail("relational attribute accepted a double value");
+		} catch(UnsupportedOperationException e){}
+		try{
+			b0.setValue("on", 3);
+			Assert.fail("relational attribute accepted an int value");
+		} catch(UnsupportedOperationException e){}
+		try{
+			b0.setValue("on", true);
+			Assert.fail("relational attribute accepted a boolean value");
+		} catch(UnsupportedOperationException e){}
+		try{
+			b0.setValue("x", true);
+			Assert.fail("real attribute accepted a boolean value");
+		} catch(UnsupportedOperationException e){}
+
+		Assert.assertEquals("table", b0.getStringValForAttribute("on"));
+		Assert.assertEquals(1.5, b0.getRealValForAttribute("x"), 0.);
+
+		//supported writes reach the state
+		b0.setValue("on", "b1");
+		b0.setValue("x", 4);
+		Assert.assertEquals("b1", fs.getObject("b0").getStringValForAttribute("on"));
+		Assert.assertEquals(4., fs.getObject("b0").getRealValForAttribute("x"), 0.);
+	}
+
+	@Test
+	public void testFlatStateHashCode() {
+		//equal states with different object names and orders must have equal hash codes
+		FlatState a = new FlatState(this.domain, this.blocksState("b", 1.5, 2.5));
+		FlatState b = new FlatState(this.domain, this.blocksState("c", 2.5, 1.5));
+		Assert.assertEquals(a, b);
+		Assert.assertEquals(a.hashCode(), b.hashCode());
+
+		State c = b.copy();
+		Assert.assertEquals(a.hashCode(), c.hashCode());
+		c.getObject("c0").setValue("x", 3.5);
+		Assert.assertFalse(a.equals(c));
+	}
+
+	@Test
+	public void testFlatStateConcurrentViews() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			for(int trial = 0; trial < 200; trial++){
+				final State fs = new FlatState(this.domain, this.blocksState("b", 1.5, 2.5)).copy();
+				List<Callable<List<ObjectInstance>>> tasks = new ArrayList<Callable<List<ObjectInstance>>>();
+				for(int i = 0; i < 4; i++){
+					tasks.add(new Callable<List<ObjectInstance>>() {
+						@Override
+						public List<ObjectInstance> call(){
+							List<ObjectInstance> obs = fs.getAllObjects();
+							obs.add(fs.getObject("b1"));
+							fs.getObjectMatchingTo(fs, true);
+							return obs;
+						}
+					});
+				}
+
+				//every thread must see the same fully built views
+				List<ObjectInstance> first = null;
+				for(Future<List<ObjectInstance>> result : executor.invokeAll(tasks)){
+					List<ObjectInstance> obs = result.get();
+					Assert.assertEquals(1.5, obs.get(0).getRealValForAttribute("x"), 0.);
+					Assert.assertSame(obs.get(1), obs.get(2));
+					if(first == null){
+						first = obs;
+					}
+					for(int i = 0; i < obs.size(); i++){
+						Assert.assertSame(first.get(i), obs.get(i));
+					}
+				}
+			}
+		} finally{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testEqualityIgnoresObjectOrder() {
+		State s = this.blocksState("b", 1.5, 2.5);
+		State t = new State();
+		t.addObject(this.block("c1", 2.5, "table"));
+		t.addObject(this.block("c0", 1.5, "table"));
+		Assert.assertEquals(s, t);
+		Assert.assertEquals(t, s);
+		
+		Map<String, String> matching = s.getObjectMatchingTo(t, true);
+		Assert.assertEquals(2, matching.size());
+		Assert.assertEquals("c0", matching.get("b0"));
+		Assert.assertEquals("c1", matching.get("b1"));
+		
+		t.getObject("c0").setValue("x", 3.5);
+		Assert.assertFalse(s.equals(t));
+		Assert.assertTrue(s.getObjectMatchingTo(t, true).isEmpty());
+	}
+	
+	@Test
+	public void testEqualityWithCollidingValueHashes() {
+		//"Aa" and "BB" have the same string hash code, so blocks that differ only in which of them they are on have the same value hash code
+		Assert.assertEquals(this.block("a", 1., "Aa").valueHashCode(), this.block("b", 1., "BB").valueHashCode());
+		
+		State s = new State();
+		s.addObject(this.block("b0", 1., "Aa"));
+		s.addObject(this.block("b1", 1., "BB"));
+		s.addObject(this.block("b2", 1., "Aa"));
+		s.addObject(this.block("b3", 2., "table"));
+		
+		//the same objects in another order and with other names
+		State t = new State();
+		t.addObject(this.block("c0", 1., "BB"));
+		t.addObject(this.block("c1", 2., "table"));
+		t.addObject(this.block("c2", 1., "Aa"));
+		t.addObject(this.block("c3", 1., "Aa"));
+		Assert.assertEquals(s, t);
+		Assert.assertEquals(t, s);
+		
+		Map<String, String> matching = s.getObjectMatchingTo(t, true);
+		Assert.assertEquals(4, matching.size());
+		Assert.assertEquals("c0", matching.get("b1"));
+		Assert.assertEquals("c1", matching.get("b3"));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("c2", "c3")), new HashSet<String>(Arrays.asList(matching.get("b0"), matching.get("b2"))));
+		
+		//the same number of objects with each value hash code, but a different multiset of values
+		State u = new State();
+		u.addObject(this.block("d0", 1., "BB"));
+		u.addObject(this.block("d1", 2., "table"));
+		u.addObject(this.block("d2", 1., "BB"));
+		u.addObject(this.block("d3", 1., "Aa"));
+		Assert.assertFalse(s.equals(u));
+		Assert.assertFalse(u.equals(s));
+		Assert.assertTrue(s.getObjectMatchingTo(u, true).isEmpty());
+		
+		//without exactness, the largest matching within the runs is returned
+		Map<String, String> partial = s.getObjectMatchingTo(u, false);
+		Assert.assertEquals(3, partial.size());
+		Assert.assertEquals("d1", partial.get("b3"));
+		Assert.assertEquals("d3", partial.get("b0"));
+	}
+	
+	@Test
+	public void testInexactMatchingWithExtraObjects() {
+		State s = this.blocksState("b", 1.5, 2.5);
+		State t = this.blocksState("c", 2.5, 1.5);
+		t.addObject(this.block("c2", 4., "c0"));
+		
+		Assert.assertFalse(s.equals(t));
+		Assert.assertTrue(s.getObjectMatchingTo(t, true).isEmpty());
+		
+		Map<String, String> matching = s.getObjectMatchingTo(t, false);
+		Assert.assertEquals(2, matching.size());
+		Assert.assertEquals("c1", matching.get("b0"));
+		Assert.assertEquals("c0", matching.get("b1"));
+		
+		//the larger state matches only the objects it shares with the smaller state
+		Map<String, String> reverse = t.getObjectMatchingTo(s, false);
+		Assert.assertEquals(2, reverse.size());
+		Assert.assertFalse(reverse.containsKey("c2"));
+	}
+	
+	@Test
+	public void testCanonicalOrderingAfterObjectChanges() {
+		State s = this.blocksState("b", 1.5, 2.5);
+		State t = this.blocksState("c", 2.5, 1.5);
+		Assert.assertEquals(s, t);
+		
+		//adding and removing objects after the orderings have been cached
+		s.addObject(this.block("b2", 4., "b0"));
+		Assert.assertFalse(s.equals(t));
+		Assert.assertFalse(t.equals(s));
+		t.addObject(this.block("c2", 4., "b0"));
+		Assert.assertEquals(s, t);
+		s.removeObject("b0");
+		Assert.assertFalse(s.equals(t));
+		t.removeObject("c1");
+		Assert.assertEquals(s, t);
+		Assert.assertEquals("c0", s.getObjectMatchingTo(t, true).get("b1"));
+		
+		//setting a value in place on an object that is already in the cached ordering
+		s.getObject("b1").setValue("x", 5.5);
+		Assert.assertFalse(s.equals(t));
+		Assert.assertTrue(s.getObjectMatchingTo(t, true).isEmpty());
+		t.getObject("c0").setValue("x", 5.5);
+		Assert.assertEquals(s, t);
+		
+		//setting a value that moves an object to the other end of the ordering
+		s.getObject("b2").setValue("x", 0.5);
+		t.getObject("c2").setValue("x", 0.5);
+		Assert.assertEquals(s, t);
+		Assert.assertEquals("c2", s.getObjectMatchingTo(t, true).get("b2"));
+	}
+	
+	@Test
+	public void testNegativeZeroRealValues() {
+		State s = new State();
+		s.addObject(this.block("b0", 0., "table"));
+		s.addObject(this.block("b1", 1., "table"));
+		State t = new State();
+		t.addObject(this.block("c0", 1., "table"));
+		t.addObject(this.block("c1", -0., "table"));
+		
+		//0 and -0 are equal doubles, so the objects must have the same value hash code to be merged in the same run
+		Assert.assertEquals(s.getObject("b0").valueHashCode(), t.getObject("c1").valueHashCode());
+		Assert.assertEquals(s, t);
+		Assert.assertEquals(t, s);
+		Assert.assertEquals("c1", s.getObjectMatchingTo(t, true).get("b0"));
+		
+		FlatState fs = new FlatState(this.domain, s);
+		FlatState ft = new FlatState(this.domain, t);
+		Assert.assertEquals(fs, ft);
+		Assert.assertEquals(fs.hashCode(), ft.hashCode());
+	}
+	
+	/**
+	 * Returns a block with the given x value that is on the given target; its n value is x rounded down.
+	 */
+	protected ObjectInstance block(String name, double x, String on) {
+		ObjectInstance o = new ObjectInstance(this.blockClass, name);
+		o.setValue("x", x);
+		o.setValue("on", on);
+		o.setValue("n", (int)x);
+		return o;
+	}
+	
+	/**
+	 * Returns a state of two blocks named prefix0 and prefix1 with the given x values that are both on the table.
+	 */
+	protected State blocksState(String prefix, double x0, double x1) {
+		State s = new State();
+		double [] xs = new double[]{x0, x1};
+		for(int i = 0; i < 2; i++){
+			s.addObject(this.block(prefix + i, xs[i], "table"));
+		}
+		return s;
+	}
+
+}
@@ -0,0 +1,61 @@
+package burlap.testing;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
+import burlap.behavior.singleagent.planning.deterministic.SDPlannerPolicy;
+import burlap.behavior.singleagent.planning.deterministic.TFGoalCondition;
+import burlap.behavior.singleagent.planning.deterministic.uninformed.bfs.BFS;
+import burlap.behavior.statehashing.FingerprintStateHashFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.common.SinglePFTF;
+import burlap.oomdp.singleagent.common.UniformCostRF;
+
+public class TestStateHashing {
+	GridWorldDomain gw;
+	Domain domain;
+	RewardFunction rf;
+	TerminalFunction tf;
+	State initialState;
+
+	@Before
+	public void setup() {
+		this.gw = new GridWorldDomain(11, 11);
+		this.gw.setMapToFourRooms();
+		this.domain = this.gw.generateDomain();
+		this.rf = new UniformCostRF();
+		this.tf = new SinglePFTF(this.domain.getPropFunction(GridWorldDomain.PFATLOCATION));
+		this.initialState = GridWorldDomain.getOneAgentOneLocationState(this.domain);
+		GridWorldDomain.setAgent(this.initialState, 0, 0);
+		GridWorldDomain.setLocation(this.initialState, 0, 10, 10);
+	}
+
+	@Test
+	public void testFingerprintHashing() {
+		FingerprintStateHashFactory fingerprintFactory = new FingerprintStateHashFactory();
+		State other = this.initialState.copy();
+		Assert.assertEquals(fingerprintFactory.hashState(this.initialState), fingerprintFactory.hashState(other));
+		Assert.assertEquals(fingerprintFactory.fingerprint(this.initialState), fingerprintFactory.fingerprint(other));
+		GridWorldDomain.setAgent(other, 1, 0);
+		Assert.assertFalse(fingerprintFactory.hashState(this.initialState).equals(fingerprintFactory.hashState(other)));
+		Assert.assertFalse(fingerprintFactory.fingerprint(this.initialState) == fingerprintFactory.fingerprint(other));
+	}
+
+	@Test
+	public void testBFSWithFingerprintHashing() {
+		DeterministicPlanner planner = new BFS(this.domain, new TFGoalCondition(this.tf), new FingerprintStateHashFactory());
+		planner.planFromState(this.initialState);
+		Policy p = new SDPlannerPolicy(planner);
+		EpisodeAnalysis analysis = p.evaluateBehavior(this.initialState, this.rf, this.tf);
+		Assert.assertEquals(this.gw.getHeight() + this.gw.getWidth() - 1, analysis.numTimeSteps());
+		Assert.assertTrue(this.tf.isTerminal(analysis.getState(analysis.numTimeSteps()-1)));
+	}
+}
@@ -8,7 +8,12 @@ import org.junit.runners.Suite;
 	TestTesting.class,
 	TestGridWorld.class,
 	TestPlanning.class,
-	TestBlockDude.class
+	TestBlockDude.class,
+	TestState.class,
+	TestQSnapshot.class,
+	TestStateHashing.class,
+	TestArrayQTable.class,
+	TestEligibilityTraces.class
 })
 public class TestSuite {
 